@@ -0,0 +1,68 @@
+package net.spals.drunkr.api;
+
+import javax.ws.rs.core.Response;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.spals.drunkr.api.command.ApiCommand;
+import net.spals.drunkr.api.command.CommandType;
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.db.DatabaseService;
+import net.spals.drunkr.db.DatabaseServiceStub;
+import net.spals.drunkr.i18n.I18nSupports;
+import net.spals.drunkr.model.*;
+
+/**
+ * Parsing of each text command keyword. The commands themselves are stubbed so only the parsing is measured.
+ *
+ * @author spags
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommonTextBasedParserBenchmark {
+
+    @Param({ "CREATE", "CHECK", "BEGIN", "FINISH", "CHECKIN BEER", "DOC", "FOLLOW LIST", "FOLLOWER LIST" })
+    private String body;
+    private CommonTextBasedParser parser;
+    private String userId;
+
+    @Setup
+    public void setUp() {
+        final Person person = Persons.SPAGS;
+        final BacCalculation calculation = new BacCalculation.Builder()
+            .userId(person.id())
+            .bac(.08)
+            .timestamp(ZonedDateTimes.nowUTC())
+            .build();
+        final DatabaseService dbService = new DatabaseServiceStub()
+            .answer("getPerson", args -> Optional.of(person))
+            .answer("getLatestBacCalculation", args -> Optional.of(calculation))
+            .answer("getJobs", args -> ImmutableList.of())
+            .build();
+
+        // Every command succeeds, the list commands expect a set of people back.
+        final ApiCommand command = request -> Response.ok(ImmutableSet.of(Persons.BROCK)).build();
+        final Map<CommandType, ApiCommand> commands = new EnumMap<>(CommandType.class);
+        for (final CommandType commandType : CommandType.values()) {
+            commands.put(commandType, command);
+        }
+        parser = new CommonTextBasedParser(commands, dbService, I18nSupports.getEnglish());
+        userId = person.id().toHexString();
+    }
+
+    @Benchmark
+    public String parse() {
+        return parser.parse(Source.SMS, userId, body);
+    }
+}
@@ -0,0 +1,46 @@
+package net.spals.drunkr.common;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Parsing Untappd's checkin timestamps, comparing the {@link DateTimeFormatter} we used to parse them with
+ * {@link ZonedDateTimes#parseUntappd(String)} and {@link ZonedDateTimes#parseUntappdEpochMilli(String)}.
+ *
+ * @author spags
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZonedDateTimesBenchmark {
+
+    private static final DateTimeFormatter CHECKIN_FORMAT = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss Z");
+    private String rawDateTime;
+
+    @Setup
+    public void setUp() {
+        rawDateTime = ZonedDateTimes.formatUntappd(ZonedDateTimes.nowUTC());
+    }
+
+    @Benchmark
+    public ZonedDateTime formatter() {
+        return ZonedDateTime.parse(rawDateTime, CHECKIN_FORMAT)
+            .withZoneSameInstant(ZonedDateTimes.UTC);
+    }
+
+    @Benchmark
+    public ZonedDateTime parseUntappd() {
+        return ZonedDateTimes.parseUntappd(rawDateTime);
+    }
+
+    @Benchmark
+    public long parseUntappdEpochMilli() {
+        return ZonedDateTimes.parseUntappdEpochMilli(rawDateTime);
+    }
+}
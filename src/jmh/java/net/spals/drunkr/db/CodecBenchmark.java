@@ -0,0 +1,103 @@
+package net.spals.drunkr.db;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoClient;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.*;
+import org.bson.io.BasicOutputBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.model.*;
+import net.spals.drunkr.serialization.ObjectMappers;
+
+/**
+ * Encoding and decoding of our most written models, comparing {@link JacksonCodec} with {@link BsonStreamingCodec}.
+ *
+ * @author spags
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+    private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
+    @Param({ "jackson", "streaming" })
+    private String codecType;
+    private Codec<Checkin> checkinCodec;
+    private Codec<Notification> notificationCodec;
+    private Checkin checkin;
+    private Notification notification;
+    private byte[] checkinBytes;
+    private byte[] notificationBytes;
+
+    @Setup
+    public void setUp() {
+        final ObjectMapper mapper = ObjectMappers.mongoMapper();
+        if ("jackson".equals(codecType)) {
+            checkinCodec = new JacksonCodec<>(mapper, MongoClient.getDefaultCodecRegistry(), Checkin.class);
+            notificationCodec = new JacksonCodec<>(mapper, MongoClient.getDefaultCodecRegistry(), Notification.class);
+        } else {
+            checkinCodec = new BsonStreamingCodec<>(mapper, Checkin.class);
+            notificationCodec = new BsonStreamingCodec<>(mapper, Notification.class);
+        }
+        final Person person = Persons.SPAGS;
+        checkin = new Checkin.Builder()
+            .userId(person.id())
+            .name("Duff")
+            .producer("Duff Brewery")
+            .rating(4)
+            .style(Style.BOTTLE)
+            .size(Style.BOTTLE.getServingSize())
+            .timestamp(ZonedDateTimes.nowUTC())
+            .abv(.05)
+            .build();
+        notification = new Notification.Builder()
+            .userId(Persons.BROCK.id())
+            .sourceUserId(person.id())
+            .source(Source.SMS)
+            .message("spags has a BAC of 0.08, you may be feeling a bit of buzz with 4 drinks.")
+            .timestamp(ZonedDateTimes.nowUTC())
+            .build();
+        checkinBytes = encode(checkinCodec, checkin);
+        notificationBytes = encode(notificationCodec, notification);
+    }
+
+    private <T> byte[] encode(final Codec<T> codec, final T value) {
+        final BasicOutputBuffer buffer = new BasicOutputBuffer();
+        codec.encode(new BsonBinaryWriter(buffer), value, ENCODER_CONTEXT);
+        return buffer.toByteArray();
+    }
+
+    private <T> T decode(final Codec<T> codec, final byte[] bytes) {
+        return codec.decode(new BsonBinaryReader(ByteBuffer.wrap(bytes)), DECODER_CONTEXT);
+    }
+
+    @Benchmark
+    public byte[] encodeCheckin() {
+        return encode(checkinCodec, checkin);
+    }
+
+    @Benchmark
+    public Checkin decodeCheckin() {
+        return decode(checkinCodec, checkinBytes);
+    }
+
+    @Benchmark
+    public byte[] encodeNotification() {
+        return encode(notificationCodec, notification);
+    }
+
+    @Benchmark
+    public Notification decodeNotification() {
+        return decode(notificationCodec, notificationBytes);
+    }
+}
@@ -0,0 +1,43 @@
+package net.spals.drunkr.db;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Builds a {@link DatabaseService} which only answers the calls a benchmark makes, anything else throws.
+ * It neither matches arguments nor records calls, so the benchmarks measure our code rather than a mocking library.
+ *
+ * @author spags
+ */
+public class DatabaseServiceStub {
+
+    private final Map<String, Function<Object[], Object>> answers = new HashMap<>();
+
+    /**
+     * @param methodName the {@link DatabaseService} method to answer, whatever its arguments
+     * @param answer     given the call's arguments returns its result
+     */
+    public DatabaseServiceStub answer(final String methodName, final Function<Object[], Object> answer) {
+        answers.put(methodName, answer);
+        return this;
+    }
+
+    public DatabaseService build() {
+        final Map<String, Function<Object[], Object>> answers = ImmutableMap.copyOf(this.answers);
+        return (DatabaseService) Proxy.newProxyInstance(
+            DatabaseService.class.getClassLoader(),
+            new Class<?>[] { DatabaseService.class },
+            (proxy, method, args) -> {
+                final Function<Object[], Object> answer = answers.get(method.getName());
+                if (answer == null) {
+                    throw new UnsupportedOperationException("not stubbed: " + method.getName());
+                }
+                return answer.apply(args);
+            }
+        );
+    }
+}
@@ -0,0 +1,78 @@
+package net.spals.drunkr.service;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.model.*;
+
+/**
+ * BAC calculations over synthetic sessions, summing every checkin of the session as {@link BacBatchEngine} does.
+ *
+ * @author spags
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BacCalculatorBenchmark {
+
+    private static final Style[] STYLES = { Style.DRAFT, Style.BOTTLE, Style.WINE, Style.SHOT };
+    @Param({ "1", "10", "100" })
+    private int checkinCount;
+    private BacCalculator calculator;
+    private Person person;
+    private List<Checkin> checkins;
+    private ZonedDateTime startTime;
+    private ZonedDateTime now;
+    private double previousGramsOfAlcohol;
+
+    @Setup
+    public void setUp() {
+        calculator = BacCalculator.get();
+        person = Persons.SPAGS;
+        now = ZonedDateTimes.nowUTC();
+        // One drink every 10 minutes.
+        startTime = now.minusMinutes(10 * checkinCount);
+        checkins = new ArrayList<>(checkinCount);
+        for (int i = 0; i < checkinCount; i++) {
+            final Style style = STYLES[i % STYLES.length];
+            checkins.add(
+                new Checkin.Builder()
+                    .userId(person.id())
+                    .name(style.name())
+                    .style(style)
+                    .size(style.getServingSize())
+                    .abv(.05 + i % 10 * .01)
+                    .timestamp(startTime.plusMinutes(10 * i))
+                    .build()
+            );
+        }
+        previousGramsOfAlcohol = checkins.subList(0, checkinCount - 1).stream()
+            .mapToDouble(calculator::drinkToGramsOfAlcohol)
+            .sum();
+    }
+
+    @Benchmark
+    public double session() {
+        double gramsOfAlcohol = 0.0;
+        for (final Checkin checkin : checkins) {
+            gramsOfAlcohol += calculator.drinkToGramsOfAlcohol(checkin);
+        }
+        return calculator.round(calculator.calculate(person, gramsOfAlcohol, startTime, now));
+    }
+
+    @Benchmark
+    public double runningTotal() {
+        // With a running total only the latest checkin is added to what the session had, see DrunkrJob.
+        final double gramsOfAlcohol = previousGramsOfAlcohol
+            + calculator.drinkToGramsOfAlcohol(checkins.get(checkinCount - 1));
+        return calculator.round(calculator.calculate(person, gramsOfAlcohol, startTime, now));
+    }
+}
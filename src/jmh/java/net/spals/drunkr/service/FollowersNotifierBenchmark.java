@@ -0,0 +1,59 @@
+package net.spals.drunkr.service;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.*;
+
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.db.DatabaseService;
+import net.spals.drunkr.db.DatabaseServiceStub;
+import net.spals.drunkr.model.*;
+
+/**
+ * Fanning out a BAC message to a user's followers, against a stubbed database so only our side is measured.
+ *
+ * @author spags
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FollowersNotifierBenchmark {
+
+    private static final String MESSAGE = "spags has a BAC of 0.08, you may be feeling a bit of buzz with 4 drinks.";
+    @Param({ "0", "10", "100", "1000" })
+    private int followerCount;
+    private FollowersNotifier notifier;
+    private Person person;
+    private ZonedDateTime now;
+
+    @Setup
+    public void setUp() {
+        person = Persons.SPAGS;
+        now = ZonedDateTimes.nowUTC();
+        final ImmutableSet.Builder<ObjectId> builder = ImmutableSet.builder();
+        for (int i = 0; i < followerCount; i++) {
+            builder.add(new ObjectId());
+        }
+        final Set<ObjectId> followerIds = builder.build();
+        final DatabaseService dbService = new DatabaseServiceStub()
+            .answer("insertNotification", args -> true)
+            .answer("getFollowerIds", args -> followerIds)
+            .answer("insertNotificationsUnordered", args -> ((List<?>) args[0]).size())
+            .build();
+        notifier = new FollowersNotifier(dbService, new NotificationTimeline(dbService));
+    }
+
+    @Benchmark
+    public void notifyFollowers() {
+        notifier.notify(person, MESSAGE, Source.SMS, now);
+    }
+}
@@ -0,0 +1,122 @@
+package net.spals.drunkr.service.untappd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static net.spals.drunkr.service.untappd.CheckinPageReader.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.*;
+
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.*;
+
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.model.*;
+
+/**
+ * Reading a full page of 50 checkins from Untappd's API, comparing the Gson tree we used to build from the whole
+ * response with {@link CheckinPageReader}. Run with the gc profiler to compare the allocation per page.
+ *
+ * @author spags
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CheckinPageBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+    private ObjectId userId;
+    private byte[] page;
+
+    @Setup
+    public void setUp() {
+        userId = Persons.SPAGS.id();
+        final ZonedDateTime now = ZonedDateTimes.nowUTC();
+        final StringBuilder items = new StringBuilder();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            if (i > 0) {
+                items.append(',');
+            }
+            // Roughly what Untappd returns for a checkin, most of which we skip.
+            items.append("{")
+                .append("\"checkin_id\": ").append(1000 - i).append(',')
+                .append("\"created_at\": \"").append(ZonedDateTimes.formatUntappd(now.minusMinutes(i))).append("\",")
+                .append("\"checkin_comment\": \"Cheers to the weekend\",")
+                .append("\"rating_score\": 3.75,")
+                .append("\"user\": {\"uid\": 1, \"user_name\": \"spags\", \"first_name\": \"Spags\",")
+                .append(" \"bio\": \"\", \"location\": \"\", \"url\": \"\", \"contact\": {\"twitter\": \"spags\"}},")
+                .append("\"beer\": {\"bid\": ").append(i).append(", \"beer_name\": \"Duff ").append(i).append("\",")
+                .append(" \"beer_label\": \"https://untappd.akamaized.net/site/beer_logos/beer-duff.jpeg\",")
+                .append(" \"beer_style\": \"Lager - American Light\", \"beer_abv\": 4.2, \"beer_active\": 1},")
+                .append("\"brewery\": {\"brewery_id\": 7, \"brewery_name\": \"Duff Brewery\",")
+                .append(" \"brewery_label\": \"https://untappd.akamaized.net/site/brewery_logos/duff.jpeg\",")
+                .append(" \"country_name\": \"United States\", \"contact\": {\"twitter\": \"\", \"url\": \"\"},")
+                .append(" \"location\": {\"brewery_city\": \"Springfield\", \"lat\": 44.0, \"lng\": -123.0}},")
+                .append("\"venue\": [],")
+                .append("\"comments\": {\"total_count\": 0, \"count\": 0, \"items\": []},")
+                .append("\"toasts\": {\"total_count\": 2, \"count\": 2, \"auth_toast\": false, \"items\": [")
+                .append("{\"uid\": 2, \"user\": {\"user_name\": \"brock\"}},")
+                .append(" {\"uid\": 3, \"user\": {\"user_name\": \"spags\"}}]},")
+                .append("\"media\": {\"count\": 0, \"items\": []},")
+                .append("\"badges\": {\"retro_status\": false, \"count\": 0, \"items\": []}")
+                .append("}");
+        }
+        final String json = "{"
+            + "\"meta\": {\"code\": 200, \"response_time\": {\"time\": 0.1, \"measure\": \"seconds\"}},"
+            + "\"notifications\": [],"
+            + "\"response\": {"
+            + "\"pagination\": {\"since_url\": \"\", \"next_url\": \"\", \"max_id\": 950},"
+            + "\"checkins\": {\"count\": " + PAGE_SIZE + ", \"items\": [" + items + "]}"
+            + "}"
+            + "}";
+        page = json.getBytes(UTF_8);
+    }
+
+    @Benchmark
+    public List<Checkin> tree() {
+        // As we read pages before, the whole response as a string then parsed into a tree.
+        final JsonArray rows = new JsonParser().parse(new String(page, UTF_8))
+            .getAsJsonObject()
+            .getAsJsonObject(RESPONSE)
+            .getAsJsonObject(CHECKINS)
+            .getAsJsonArray(ITEMS);
+        final List<Checkin> checkins = new ArrayList<>(rows.size());
+        for (final JsonElement row : rows) {
+            final JsonObject checkin = row.getAsJsonObject();
+            final JsonObject beer = checkin.getAsJsonObject(BEER);
+            final JsonObject brewery = checkin.getAsJsonObject(BREWERY);
+            checkins.add(
+                new Checkin.Builder()
+                    .name(beer.get(BEER_NAME).getAsString())
+                    .userId(userId)
+                    .producer(brewery.get(BREWERY_NAME).getAsString())
+                    .rating((int) checkin.get(RATING_SCORE).getAsDouble() * 100)
+                    .style(Style.NONE)
+                    .size(Style.NONE.getServingSize())
+                    .timestamp(ZonedDateTimes.parseUntappd(checkin.get(CREATED_AT).getAsString()))
+                    .abv(beer.get(BEER_ABV).getAsDouble() / 100)
+                    .untappdId(checkin.get(CHECKIN_ID).getAsLong())
+                    .build()
+            );
+        }
+        return checkins;
+    }
+
+    @Benchmark
+    public List<Checkin> streaming() throws IOException {
+        try (final Reader json = new InputStreamReader(new ByteArrayInputStream(page), UTF_8)) {
+            return CheckinPageReader.read(userId, json);
+        }
+    }
+}
@@ -10,7 +10,6 @@ import java.util.stream.Collectors;
 
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
-import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 
 import org.apache.commons.collections4.map.HashedMap;
@@ -152,15 +151,11 @@ class CommonTextBasedParser implements TextBasedParser {
      * We grab the last calculation so this isn't going through the internal API.
      */
     private String processCheck(final Person user) {
-        final List<BacCalculation> calculations = dbService.getBacCalculations(
-            user,
-            Optional.empty(),
-            Optional.empty()
-        );
-        if (calculations.isEmpty()) {
+        final Optional<BacCalculation> latest = dbService.getLatestBacCalculation(user);
+        if (!latest.isPresent()) {
             return i18nSupport.getLabel("command.check.none");
         }
-        final BacCalculation calculation = Iterables.getLast(calculations);
+        final BacCalculation calculation = latest.get();
         return i18nSupport.getLabel("command.check", user.userName(), calculation.bac(), calculation.timestamp());
     }
 
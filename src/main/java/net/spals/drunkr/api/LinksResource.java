@@ -51,6 +51,16 @@ public class LinksResource {
         return commands.get(CommandType.LINK_UNTAPPD).run(request);
     }
 
+    @GET
+    @Path("untappd/quota")
+    public Response untappdQuota(@PathParam("userIdNameOrPhone") final Person user) {
+        LOGGER.info("GET: untappd quota for user: " + user.id());
+        final Map<String, Object> request = ImmutableMap.<String, Object>builder()
+            .put("user", user)
+            .build();
+        return commands.get(CommandType.UNTAPPD_QUOTA).run(request);
+    }
+
     @POST
     @Path("phoneRequest")
     public Response linkPhoneRequest(
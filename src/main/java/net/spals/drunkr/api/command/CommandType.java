@@ -34,6 +34,7 @@ public enum CommandType {
     NOTIFICATION_READ_ALL,
     NOTIFICATION_UPDATE,
     UNTAPPD_AUTH,
+    UNTAPPD_QUOTA,
     USER_ADD,
     USER_AUTH_REQUEST,
     USER_AUTH,
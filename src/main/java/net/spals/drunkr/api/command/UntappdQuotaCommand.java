@@ -0,0 +1,47 @@
+package net.spals.drunkr.api.command;
+
+import static javax.ws.rs.core.Response.Status.*;
+
+import javax.ws.rs.core.Response;
+import java.util.Map;
+import java.util.Optional;
+
+import com.google.inject.Inject;
+
+import net.spals.appbuilder.annotations.service.AutoBindInMap;
+import net.spals.drunkr.i18n.I18nSupport;
+import net.spals.drunkr.model.*;
+import net.spals.drunkr.service.untappd.UntappdBudget;
+
+/**
+ * Gets the {@link UntappdQuota} of the requesting {@link Person}'s access token.
+ *
+ * @author spags
+ */
+@AutoBindInMap(baseClass = ApiCommand.class, key = "UNTAPPD_QUOTA", keyType = CommandType.class)
+public class UntappdQuotaCommand implements ApiCommand {
+
+    private final UntappdBudget budget;
+    private final I18nSupport i18nSupport;
+
+    @Inject
+    UntappdQuotaCommand(final UntappdBudget budget, final I18nSupport i18nSupport) {
+        this.budget = budget;
+        this.i18nSupport = i18nSupport;
+    }
+
+    @Override
+    public Response run(final Map<String, Object> request) {
+        final Person user = (Person) request.get("user");
+        final Optional<UntappdQuota> quota = budget.getQuota(user.id());
+
+        if (quota.isPresent()) {
+            return Response.status(OK)
+                .entity(quota.get())
+                .build();
+        }
+        return ApiError.newError(NOT_FOUND, i18nSupport.getLabel("command.untappd.quota.missing", user.userName()))
+            .asResponseBuilder()
+            .build();
+    }
+}
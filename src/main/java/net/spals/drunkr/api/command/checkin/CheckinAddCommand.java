@@ -13,6 +13,8 @@ import net.spals.drunkr.api.command.CommandType;
 import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.i18n.I18nSupport;
 import net.spals.drunkr.model.*;
+import net.spals.drunkr.service.BacAccumulator;
+import net.spals.drunkr.service.UntappdPoller;
 
 /**
  * Add a new drink {@link Checkin} for requesting {@link Person}.
@@ -22,16 +24,22 @@ import net.spals.drunkr.model.*;
 @AutoBindInMap(baseClass = ApiCommand.class, key = "CHECKIN_ADD", keyType = CommandType.class)
 class CheckinAddCommand implements ApiCommand {
 
+    private final BacAccumulator accumulator;
     private final DatabaseService dbService;
     private final I18nSupport i18nSupport;
+    private final UntappdPoller poller;
 
     @Inject
     CheckinAddCommand(
+        final BacAccumulator accumulator,
         final DatabaseService dbService,
-        final I18nSupport i18nSupport
+        final I18nSupport i18nSupport,
+        final UntappdPoller poller
     ) {
+        this.accumulator = accumulator;
         this.dbService = dbService;
         this.i18nSupport = i18nSupport;
+        this.poller = poller;
     }
 
     @Override
@@ -40,6 +48,10 @@ class CheckinAddCommand implements ApiCommand {
         final boolean added = dbService.insertCheckin(checkin);
 
         if (added) {
+            // A checkin in the past may need to be added to a running job's total.
+            accumulator.added(checkin);
+            // Someone checking in is probably drinking, so stop backing off their Untappd polling.
+            poller.checkedIn(checkin.userId());
             return Response.status(CREATED)
                 .entity(checkin)
                 .build();
@@ -13,6 +13,7 @@ import net.spals.drunkr.api.command.CommandType;
 import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.i18n.I18nSupport;
 import net.spals.drunkr.model.*;
+import net.spals.drunkr.service.BacAccumulator;
 
 /**
  * Remove all checkins for the given user.
@@ -22,14 +23,17 @@ import net.spals.drunkr.model.*;
 @AutoBindInMap(baseClass = ApiCommand.class, key = "CHECKIN_REMOVE_ALL", keyType = CommandType.class)
 class CheckinRemoveAllCommand implements ApiCommand {
 
+    private final BacAccumulator accumulator;
     private final DatabaseService dbService;
     private final I18nSupport i18nSupport;
 
     @Inject
     CheckinRemoveAllCommand(
+        final BacAccumulator accumulator,
         final DatabaseService dbService,
         final I18nSupport i18nSupport
     ) {
+        this.accumulator = accumulator;
         this.dbService = dbService;
         this.i18nSupport = i18nSupport;
     }
@@ -41,6 +45,7 @@ class CheckinRemoveAllCommand implements ApiCommand {
         final boolean deleted = dbService.removeCheckins(person);
 
         if (deleted) {
+            accumulator.removedAll(person);
             return Response.status(OK)
                 .entity(checkins)
                 .build();
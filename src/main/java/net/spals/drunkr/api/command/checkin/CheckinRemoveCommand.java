@@ -15,6 +15,7 @@ import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.i18n.I18nSupport;
 import net.spals.drunkr.model.ApiError;
 import net.spals.drunkr.model.Checkin;
+import net.spals.drunkr.service.BacAccumulator;
 
 /**
  * Remove a {@link Checkin} for a user.
@@ -24,14 +25,17 @@ import net.spals.drunkr.model.Checkin;
 @AutoBindInMap(baseClass = ApiCommand.class, key = "CHECKIN_REMOVE", keyType = CommandType.class)
 class CheckinRemoveCommand implements ApiCommand {
 
+    private final BacAccumulator accumulator;
     private final DatabaseService dbService;
     private final I18nSupport i18nSupport;
 
     @Inject
     CheckinRemoveCommand(
+        final BacAccumulator accumulator,
         final DatabaseService dbService,
         final I18nSupport i18nSupport
     ) {
+        this.accumulator = accumulator;
         this.dbService = dbService;
         this.i18nSupport = i18nSupport;
     }
@@ -42,6 +46,7 @@ class CheckinRemoveCommand implements ApiCommand {
 
         final boolean deleted = dbService.removeCheckin(checkin);
         if (deleted) {
+            accumulator.removed(checkin);
             return Response.status(OK)
                 .entity(checkin)
                 .build();
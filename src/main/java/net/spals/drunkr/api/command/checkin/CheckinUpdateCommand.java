@@ -15,6 +15,7 @@ import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.i18n.I18nSupport;
 import net.spals.drunkr.model.*;
 import net.spals.drunkr.serialization.ObjectSerializer;
+import net.spals.drunkr.service.BacAccumulator;
 
 /**
  * Update an existing {@link Checkin} for the requesting {@link Person}.
@@ -24,16 +25,19 @@ import net.spals.drunkr.serialization.ObjectSerializer;
 @AutoBindInMap(baseClass = ApiCommand.class, key = "CHECKIN_UPDATE", keyType = CommandType.class)
 class CheckinUpdateCommand implements ApiCommand {
 
+    private final BacAccumulator accumulator;
     private final DatabaseService dbService;
     private final I18nSupport i18nSupport;
     private final ObjectSerializer serializer;
 
     @Inject
     CheckinUpdateCommand(
+        final BacAccumulator accumulator,
         final DatabaseService dbService,
         final I18nSupport i18nSupport,
         final ObjectSerializer serializer
     ) {
+        this.accumulator = accumulator;
         this.dbService = dbService;
         this.i18nSupport = i18nSupport;
         this.serializer = serializer;
@@ -49,6 +53,7 @@ class CheckinUpdateCommand implements ApiCommand {
         final boolean updated = dbService.updateCheckin(updatedCheckin);
 
         if (updated) {
+            accumulator.updated(checkin, updatedCheckin);
             return Response.status(OK)
                 .entity(updatedCheckin)
                 .build();
@@ -7,6 +7,8 @@ import java.util.*;
 
 import com.google.inject.Inject;
 
+import org.bson.types.ObjectId;
+
 import net.spals.appbuilder.annotations.service.AutoBindInMap;
 import net.spals.drunkr.api.command.ApiCommand;
 import net.spals.drunkr.api.command.CommandType;
@@ -44,8 +46,8 @@ class FollowerInviteCommand implements ApiCommand {
 
         if (optionalFollower.isPresent()) {
             final Person follower = optionalFollower.get();
-            final Set<Person> followers = dbService.getFollowers(user);
-            if (followers.contains(follower)) {
+            final Set<ObjectId> followerIds = dbService.getFollowerIds(user);
+            if (followerIds.contains(follower.id())) {
                 return ApiError.newError(
                     CONFLICT,
                     i18nSupport.getLabel("command.follower.invite.exists", follower.userName())
@@ -8,6 +8,8 @@ import java.util.Set;
 
 import com.google.inject.Inject;
 
+import org.bson.types.ObjectId;
+
 import net.spals.appbuilder.annotations.service.AutoBindInMap;
 import net.spals.drunkr.api.command.ApiCommand;
 import net.spals.drunkr.api.command.CommandType;
@@ -41,8 +43,8 @@ class FollowerRemoveCommand implements ApiCommand {
         final Person user = (Person) request.get("user");
         final Person follower = (Person) request.get("targetUser");
 
-        final Set<Person> following = dbService.getFollowers(user);
-        if (!following.contains(follower)) {
+        final Set<ObjectId> followerIds = dbService.getFollowerIds(user);
+        if (!followerIds.contains(follower.id())) {
             return ApiError.newError(
                 NOT_FOUND,
                 i18nSupport.getLabel("command.follower.remove.not.exists", follower.userName())
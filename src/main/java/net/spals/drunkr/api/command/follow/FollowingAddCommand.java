@@ -8,6 +8,8 @@ import java.util.*;
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
 
+import org.bson.types.ObjectId;
+
 import net.spals.appbuilder.annotations.service.AutoBindInMap;
 import net.spals.drunkr.api.command.ApiCommand;
 import net.spals.drunkr.api.command.CommandType;
@@ -42,8 +44,8 @@ class FollowingAddCommand implements ApiCommand {
 
         if (optionalToFollow.isPresent()) {
             final Person toFollow = optionalToFollow.get();
-            final Set<Person> following = dbService.getFollowing(follower);
-            if (following.contains(toFollow)) {
+            final Set<ObjectId> followingIds = dbService.getFollowingIds(follower);
+            if (followingIds.contains(toFollow.id())) {
                 return ApiError.newError(
                     CONFLICT,
                     i18nSupport.getLabel("command.follow.add.exists", toFollow.userName())
@@ -8,6 +8,8 @@ import java.util.Set;
 
 import com.google.inject.Inject;
 
+import org.bson.types.ObjectId;
+
 import net.spals.appbuilder.annotations.service.AutoBindInMap;
 import net.spals.drunkr.api.command.ApiCommand;
 import net.spals.drunkr.api.command.CommandType;
@@ -38,8 +40,8 @@ class FollowingRemoveCommand implements ApiCommand {
         final Person follower = (Person) request.get("user");
         final Person toStopFollowing = (Person) request.get("targetUser");
 
-        final Set<Person> following = dbService.getFollowing(follower);
-        if (!following.contains(toStopFollowing)) {
+        final Set<ObjectId> followingIds = dbService.getFollowingIds(follower);
+        if (!followingIds.contains(toStopFollowing.id())) {
             return ApiError.newError(
                 NOT_FOUND,
                 i18nSupport.getLabel("command.follow.remove.not.exists", toStopFollowing.userName())
@@ -6,15 +6,13 @@ import javax.ws.rs.core.Response;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.Map;
-import java.util.concurrent.*;
+import java.util.concurrent.TimeUnit;
 
 import com.google.inject.Inject;
 
 import com.netflix.governator.annotations.Configuration;
 
 import net.spals.appbuilder.annotations.service.AutoBindInMap;
-import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
-import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
 import net.spals.drunkr.api.command.ApiCommand;
 import net.spals.drunkr.api.command.CommandType;
 import net.spals.drunkr.common.RunnableWrapper;
@@ -22,8 +20,7 @@ import net.spals.drunkr.common.ZonedDateTimes;
 import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.i18n.I18nSupport;
 import net.spals.drunkr.model.*;
-import net.spals.drunkr.service.DrunkrJob;
-import net.spals.drunkr.service.DrunkrJobFactory;
+import net.spals.drunkr.service.*;
 
 /**
  * Start an instance of {@link DrunkrJob}.
@@ -34,25 +31,31 @@ import net.spals.drunkr.service.DrunkrJobFactory;
 @AutoBindInMap(baseClass = ApiCommand.class, key = "JOB_START", keyType = CommandType.class)
 class JobStartCommand implements ApiCommand {
 
+    private final BacBatchEngine batchEngine;
     private final DatabaseService dbService;
     private final DrunkrJobFactory jobFactory;
-    private final ExecutorServiceFactory executorServiceFactory;
     private final I18nSupport i18nSupport;
+    private final Leases leases;
+    private final SessionScheduler scheduler;
     @SuppressWarnings("FieldMayBeFinal")
     @Configuration("job.period")
     private long period = 60;
 
     @Inject
     JobStartCommand(
+        final BacBatchEngine batchEngine,
         final DatabaseService dbService,
         final DrunkrJobFactory jobFactory,
-        final ExecutorServiceFactory executorServiceFactory,
-        final I18nSupport i18nSupport
+        final I18nSupport i18nSupport,
+        final Leases leases,
+        final SessionScheduler scheduler
     ) {
-        this.executorServiceFactory = executorServiceFactory;
+        this.batchEngine = batchEngine;
         this.jobFactory = jobFactory;
         this.dbService = dbService;
         this.i18nSupport = i18nSupport;
+        this.leases = leases;
+        this.scheduler = scheduler;
     }
 
     @Override
@@ -66,28 +69,36 @@ class JobStartCommand implements ApiCommand {
                 .build();
         }
 
-        // Create a key based on task and user's username for a unique key.
-        // This means our job is polled and stopped via the same key.
-        final Key key = new Key.Builder(DrunkrJob.class)
-            .addTags(person.id().toHexString())
-            .build();
-        if (executorServiceFactory.get(key).map(ExecutorService::isShutdown).orElse(true)) {
-            final boolean added = dbService.insertJob(job);
+        final ZonedDateTime now = ZonedDateTimes.nowUTC();
+        // The user's session may be running on another instance, so only the DB knows if they have a running job.
+        final boolean running = dbService.getRunningJob(person, now).isPresent();
+        if (!running) {
+            // We start the session here, so the job is inserted already claimed by us.
+            final JobOptions claimedJob = batchEngine.isEnabled()
+                ? job
+                : new JobOptions.Builder()
+                    .mergeFrom(job)
+                    .leaseOwner(leases.owner())
+                    .leaseExpiry(leases.expiry(now))
+                    .build();
+            final boolean added = dbService.insertJob(claimedJob);
             if (!added) {
                 return ApiError.newError(INTERNAL_SERVER_ERROR, i18nSupport.getLabel("command.begin.fail"))
                     .asResponseBuilder()
                     .build();
             }
-            final ZonedDateTime now = ZonedDateTimes.nowUTC();
-            final long delay = Math.max(0, ChronoUnit.SECONDS.between(now, job.startTime()));
-
-            final ScheduledExecutorService executor = executorServiceFactory.createSingleThreadScheduledExecutor(key);
-            executor.scheduleAtFixedRate(
-                RunnableWrapper.wrap(jobFactory.createJob(job)),
-                delay,
-                job.period().orElse(period),
-                TimeUnit.SECONDS
-            );
+            if (!batchEngine.isEnabled()) {
+                // Sessions are keyed by the user, a session left from a job stopped elsewhere hasn't noticed yet.
+                scheduler.stop(person.id());
+                final long delay = Math.max(0, ChronoUnit.SECONDS.between(now, job.startTime()));
+                scheduler.start(
+                    person.id(),
+                    RunnableWrapper.wrap(jobFactory.createJob(claimedJob)),
+                    delay,
+                    job.period().orElse(period),
+                    TimeUnit.SECONDS
+                );
+            }
             return Response.status(OK)
                 .entity(job)
                 .build();
@@ -5,22 +5,17 @@ import static javax.ws.rs.core.Response.Status.*;
 import javax.ws.rs.core.Response;
 import java.time.ZonedDateTime;
 import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.ExecutorService;
 
 import com.google.inject.Inject;
 
 import net.spals.appbuilder.annotations.service.AutoBindInMap;
-import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
-import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
-import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key.Builder;
 import net.spals.drunkr.api.command.ApiCommand;
 import net.spals.drunkr.api.command.CommandType;
 import net.spals.drunkr.common.ZonedDateTimes;
 import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.i18n.I18nSupport;
 import net.spals.drunkr.model.*;
-import net.spals.drunkr.service.DrunkrJob;
+import net.spals.drunkr.service.SessionScheduler;
 
 /**
  * Stops but does not remove the {@link JobOptions}.
@@ -31,18 +26,18 @@ import net.spals.drunkr.service.DrunkrJob;
 class JobStopCommand implements ApiCommand {
 
     private final DatabaseService dbService;
-    private final ExecutorServiceFactory executorServiceFactory;
     private final I18nSupport i18nSupport;
+    private final SessionScheduler scheduler;
 
     @Inject
     JobStopCommand(
         final DatabaseService dbService,
-        final ExecutorServiceFactory executorServiceFactory,
-        final I18nSupport i18nSupport
+        final I18nSupport i18nSupport,
+        final SessionScheduler scheduler
     ) {
         this.dbService = dbService;
-        this.executorServiceFactory = executorServiceFactory;
         this.i18nSupport = i18nSupport;
+        this.scheduler = scheduler;
     }
 
     @Override
@@ -50,17 +45,8 @@ class JobStopCommand implements ApiCommand {
         final Person person = (Person) request.get("user");
         final JobOptions job = (JobOptions) request.get("job");
 
-        final Key key = new Builder(DrunkrJob.class)
-            .addTags(person.id().toHexString())
-            .build();
-        final Optional<ExecutorService> executor = executorServiceFactory.get(key);
-
-        final boolean isShutdown = executor.map(ExecutorService::isShutdown).orElse(true);
-
-        // Shutdown the job now or report an error if it wasn't running.
-        if (!isShutdown) {
-            executorServiceFactory.stop(key);
-        }
+        // Shutdown the job now if it was running.
+        scheduler.stop(person.id());
 
         final ZonedDateTime now = ZonedDateTimes.nowUTC();
         final boolean isStopped = !job.stopTime().map(x -> ZonedDateTimes.isOnOrAfter(x, now)).orElse(true);
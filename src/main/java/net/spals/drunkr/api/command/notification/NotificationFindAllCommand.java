@@ -11,9 +11,9 @@ import com.google.inject.Inject;
 import net.spals.appbuilder.annotations.service.AutoBindInMap;
 import net.spals.drunkr.api.command.ApiCommand;
 import net.spals.drunkr.api.command.CommandType;
-import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.model.Notification;
 import net.spals.drunkr.model.Person;
+import net.spals.drunkr.service.NotificationTimeline;
 
 /**
  * Finds all {@link Notification}s associated to the given user within the specified time frame.
@@ -23,11 +23,11 @@ import net.spals.drunkr.model.Person;
 @AutoBindInMap(baseClass = ApiCommand.class, key = "NOTIFICATION_FIND_ALL", keyType = CommandType.class)
 class NotificationFindAllCommand implements ApiCommand {
 
-    private final DatabaseService dbService;
+    private final NotificationTimeline timeline;
 
     @Inject
-    NotificationFindAllCommand(final DatabaseService dbService) {
-        this.dbService = dbService;
+    NotificationFindAllCommand(final NotificationTimeline timeline) {
+        this.timeline = timeline;
     }
 
     @Override
@@ -39,7 +39,7 @@ class NotificationFindAllCommand implements ApiCommand {
         final Optional<ZonedDateTime> toTime = (Optional<ZonedDateTime>) request.get("to");
 
         // For now we return all notifications.
-        final List<Notification> notifications = dbService.getNotifications(person, fromTime, toTime);
+        final List<Notification> notifications = timeline.getNotifications(person, fromTime, toTime);
 
         return Response.status(OK)
             .entity(notifications)
@@ -11,6 +11,8 @@ import net.spals.appbuilder.annotations.service.AutoBindInMap;
 import net.spals.drunkr.api.command.ApiCommand;
 import net.spals.drunkr.api.command.CommandType;
 import net.spals.drunkr.model.Notification;
+import net.spals.drunkr.model.Person;
+import net.spals.drunkr.service.NotificationTimeline;
 
 /**
  * Find a specific {@link Notification} given an id.
@@ -20,16 +22,20 @@ import net.spals.drunkr.model.Notification;
 @AutoBindInMap(baseClass = ApiCommand.class, key = "NOTIFICATION_FIND", keyType = CommandType.class)
 class NotificationFindCommand implements ApiCommand {
 
+    private final NotificationTimeline timeline;
+
     @Inject
-    NotificationFindCommand() {
+    NotificationFindCommand(final NotificationTimeline timeline) {
+        this.timeline = timeline;
     }
 
     @Override
     public Response run(final Map<String, Object> request) {
+        final Person user = (Person) request.get("user");
         final Notification notification = (Notification) request.get("notification");
 
         return Response.status(OK)
-            .entity(notification)
+            .entity(timeline.getTimelineNotification(user, notification).orElse(notification))
             .build();
     }
 }
\ No newline at end of file
@@ -11,9 +11,9 @@ import com.google.inject.Inject;
 import net.spals.appbuilder.annotations.service.AutoBindInMap;
 import net.spals.drunkr.api.command.ApiCommand;
 import net.spals.drunkr.api.command.CommandType;
-import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.model.Notification;
 import net.spals.drunkr.model.Person;
+import net.spals.drunkr.service.NotificationTimeline;
 
 /**
  * Reads all {@link Notification}s associated to the given user.
@@ -23,17 +23,17 @@ import net.spals.drunkr.model.Person;
 @AutoBindInMap(baseClass = ApiCommand.class, key = "NOTIFICATION_READ_ALL", keyType = CommandType.class)
 public class NotificationReadAllCommand implements ApiCommand {
 
-    private final DatabaseService dbService;
+    private final NotificationTimeline timeline;
 
     @Inject
-    NotificationReadAllCommand(final DatabaseService dbService) {
-        this.dbService = dbService;
+    NotificationReadAllCommand(final NotificationTimeline timeline) {
+        this.timeline = timeline;
     }
 
     @Override
     public Response run(final Map<String, Object> request) {
         final Person person = (Person) request.get("user");
-        final boolean read = dbService.markAllReadNotifications(person);
+        final boolean read = timeline.markAllRead(person);
 
         return Response.status(OK)
             .entity(ImmutableMap.of("read", read))
@@ -5,6 +5,7 @@ import static javax.ws.rs.core.Response.Status.OK;
 
 import javax.ws.rs.core.Response;
 import java.util.Map;
+import java.util.Optional;
 
 import com.google.inject.Inject;
 
@@ -15,6 +16,7 @@ import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.i18n.I18nSupport;
 import net.spals.drunkr.model.*;
 import net.spals.drunkr.serialization.ObjectSerializer;
+import net.spals.drunkr.service.NotificationTimeline;
 
 /**
  * Update an existing {@link Notification} for the requesting {@link Person}.
@@ -27,26 +29,44 @@ class NotificationUpdateCommand implements ApiCommand {
     private final DatabaseService dbService;
     private final I18nSupport i18nSupport;
     private final ObjectSerializer serializer;
+    private final NotificationTimeline timeline;
 
     @Inject
     NotificationUpdateCommand(
         final DatabaseService dbService,
         final I18nSupport i18nSupport,
-        final ObjectSerializer serializer
+        final ObjectSerializer serializer,
+        final NotificationTimeline timeline
     ) {
         this.dbService = dbService;
         this.i18nSupport = i18nSupport;
         this.serializer = serializer;
+        this.timeline = timeline;
     }
 
     @Override
     public Response run(final Map<String, Object> request) {
+        final Person user = (Person) request.get("user");
         final Notification notification = (Notification) request.get("notification");
 
         //noinspection unchecked
         final Map<String, Object> payload = (Map<String, Object>) request.get("payload");
-        final Notification updatedNotification = serializer.patch(notification, payload, Notification.class);
-        final boolean updated = dbService.updateNotification(updatedNotification);
+        final Optional<Notification> timelineUpdate = timeline.getTimelineNotification(user, notification);
+        final Notification updatedNotification = serializer.patch(
+            timelineUpdate.orElse(notification),
+            payload,
+            Notification.class
+        );
+        final boolean updated;
+        if (timelineUpdate.isPresent()) {
+            // Timeline updates are shared with the drinker's other followers, so only reading them is kept per follower,
+            // and as that is how far they've read it can't be taken back.
+            updated = updatedNotification.read()
+                ? timeline.markRead(user, updatedNotification)
+                : !timelineUpdate.get().read();
+        } else {
+            updated = dbService.updateNotification(updatedNotification);
+        }
 
         if (updated) {
             return Response.status(OK)
@@ -3,20 +3,17 @@ package net.spals.drunkr.api.command.user;
 import static javax.ws.rs.core.Response.Status.OK;
 
 import javax.ws.rs.core.Response;
-import java.time.ZonedDateTime;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.List;
+import java.util.Map;
 
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 
 import net.spals.appbuilder.annotations.service.AutoBindInMap;
 import net.spals.drunkr.api.command.ApiCommand;
 import net.spals.drunkr.api.command.CommandType;
-import net.spals.drunkr.common.ZonedDateTimes;
-import net.spals.drunkr.db.DatabaseService;
-import net.spals.drunkr.model.*;
+import net.spals.drunkr.model.BacStatus;
+import net.spals.drunkr.model.Person;
+import net.spals.drunkr.service.Leaderboard;
 
 /**
  * A ranking of the user's sphere of relationships and their BAC.
@@ -26,51 +23,22 @@ import net.spals.drunkr.model.*;
 @AutoBindInMap(baseClass = ApiCommand.class, key = "USER_LEADERS", keyType = CommandType.class)
 class UserLeadersCommand implements ApiCommand {
 
-    private final DatabaseService dbService;
+    private final Leaderboard leaderboard;
 
     @Inject
     UserLeadersCommand(
-        final DatabaseService dbService
+        final Leaderboard leaderboard
     ) {
-        this.dbService = dbService;
+        this.leaderboard = leaderboard;
     }
 
     @Override
     public Response run(final Map<String, Object> request) {
         final Person requestingUser = (Person) request.get("user");
 
-        // This is the user's known world, the user plus their followers plus their following.
-        final Set<Person> users = ImmutableSet.<Person>builder()
-            .add(requestingUser)
-            .addAll(dbService.getFollowing(requestingUser))
-            .build();
-        final ZonedDateTime now = ZonedDateTimes.nowUTC();
-        // Our jobs are run every 15 minutes, so query any calculation performed in that window.
-        final ZonedDateTime before = now.minusMinutes(15);
-        final Optional<ZonedDateTime> optionalNow = Optional.of(now);
-        final Optional<ZonedDateTime> optionalBefore = Optional.of(before);
-
-        final List<BacStatus> statuses = users.stream()
-            .map(
-                user -> new BacStatus.Builder()
-                    .user(user)
-                    .bac(getLatestCalculation(user, optionalBefore, optionalNow))
-                    .isDrinking(dbService.getRunningJob(user, now).isPresent())
-                    .build()
-            )
-            .sorted(Comparator.comparingDouble(BacStatus::bac))
-            .collect(Collectors.toList());
+        final List<BacStatus> statuses = leaderboard.getLeaders(requestingUser);
         return Response.status(OK)
             .entity(statuses)
             .build();
     }
-
-    private double getLatestCalculation(
-        final Person user,
-        final Optional<ZonedDateTime> before,
-        final Optional<ZonedDateTime> now
-    ) {
-        final List<BacCalculation> bac = dbService.getBacCalculations(user, before, now);
-        return bac.isEmpty() ? 0.0 : Iterables.getLast(bac).bac();
-    }
 }
@@ -15,6 +15,9 @@ public class ZonedDateTimes {
 
     private static final DateTimeFormatter API_FORMAT = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
     private static final DateTimeFormatter CHECKIN_FORMAT = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss Z");
+    private static final int CHECKIN_FORMAT_LENGTH = "Fri, 23 Dec 2017 16:17:29 +0000".length();
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+    private static final long INVALID = Long.MIN_VALUE;
     private static final String AMERICA_LOS_ANGELES = "America/Los_Angeles";
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("hh:mma yyyy-MM-dd");
     public static final ZoneId UTC = ZoneId.of("UTC");
@@ -37,8 +40,119 @@ public class ZonedDateTimes {
      * @return the parsed date as a {@link ZonedDateTime}
      */
     public static ZonedDateTime parseUntappd(final String rawDateTime) {
-        return ZonedDateTime.parse(rawDateTime, CHECKIN_FORMAT)
-            .withZoneSameInstant(ZonedDateTimes.UTC);
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(parseUntappdEpochMilli(rawDateTime)), UTC);
+    }
+
+    /**
+     * Same as {@link #parseUntappd(String)} but as epoch millis.
+     * <p>
+     * Every checkin we get from Untappd has one of these, so we read the fields straight out of the string
+     * instead of going through {@link DateTimeFormatter}. Anything not exactly of that form, i.e. another locale,
+     * is left to the formatter. Like the formatter we expect English month names, but we don't check the day of week.
+     *
+     * @param rawDateTime the date time as a string
+     * @return the parsed date as millis since the epoch
+     */
+    public static long parseUntappdEpochMilli(final String rawDateTime) {
+        final long epochSecond = parseUntappdEpochSecond(rawDateTime);
+        if (epochSecond == INVALID) {
+            return ZonedDateTime.parse(rawDateTime, CHECKIN_FORMAT).toInstant().toEpochMilli();
+        }
+        return epochSecond * 1000;
+    }
+
+    /**
+     * @return the epoch second of "EEE, dd MMM yyyy HH:mm:ss Z" or {@link #INVALID} if it isn't of that form
+     */
+    private static long parseUntappdEpochSecond(final String raw) {
+        if (raw.length() != CHECKIN_FORMAT_LENGTH
+            || raw.charAt(3) != ','
+            || raw.charAt(4) != ' '
+            || raw.charAt(7) != ' '
+            || raw.charAt(11) != ' '
+            || raw.charAt(16) != ' '
+            || raw.charAt(19) != ':'
+            || raw.charAt(22) != ':'
+            || raw.charAt(25) != ' ') {
+            return INVALID;
+        }
+        final int day = parseDigits(raw, 5, 2);
+        final int month = parseMonth(raw, 8);
+        final int year = parseDigits(raw, 12, 4);
+        final int hour = parseDigits(raw, 17, 2);
+        final int minute = parseDigits(raw, 20, 2);
+        final int second = parseDigits(raw, 23, 2);
+        final int offsetHours = parseDigits(raw, 27, 2);
+        final int offsetMinutes = parseDigits(raw, 29, 2);
+        final char sign = raw.charAt(26);
+        if (day < 1
+            || month < 1
+            || year < 0
+            || day > lengthOfMonth(year, month)
+            || hour < 0 || hour > 23
+            || minute < 0 || minute > 59
+            || second < 0 || second > 59
+            || offsetHours < 0 || offsetHours > 18
+            || offsetMinutes < 0 || offsetMinutes > 59
+            || sign != '+' && sign != '-') {
+            return INVALID;
+        }
+        final int offset = (sign == '+' ? 1 : -1) * (offsetHours * 3600 + offsetMinutes * 60);
+        return epochDay(year, month, day) * 86400 + hour * 3600 + minute * 60 + second - offset;
+    }
+
+    /**
+     * @return the non negative number of count digits starting at from, or -1 if there is a non digit
+     */
+    private static int parseDigits(final String raw, final int from, final int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            final char c = raw.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    /**
+     * @return the month 1 to 12 of the English short month name starting at from, or -1 if there is none
+     */
+    private static int parseMonth(final String raw, final int from) {
+        for (int i = 0; i < 12; i++) {
+            if (MONTHS.regionMatches(i * 3, raw, from, 3)) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int lengthOfMonth(final int year, final int month) {
+        switch (month) {
+            case 2:
+                return Year.isLeap(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Days since 1970-01-01 of the given date, as {@link LocalDate#toEpochDay()} but without creating the date.
+     */
+    private static long epochDay(final int year, final int month, final int day) {
+        // Count years from March so the leap day is the last day of the year.
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
     }
 
     /**
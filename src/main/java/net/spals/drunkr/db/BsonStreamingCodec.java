@@ -0,0 +1,188 @@
+package net.spals.drunkr.db;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.*;
+import org.bson.codecs.configuration.CodecConfigurationException;
+import org.bson.types.ObjectId;
+
+/**
+ * Codec for Mongo which streams Jackson serialization straight to and from BSON.
+ * <p>
+ * Unlike {@link JacksonCodec} there is no intermediate JSON string, Jackson writes its tokens into a {@link TokenBuffer}
+ * which are copied directly onto the {@link BsonWriter}, and likewise when reading.
+ * The documents are the same as the ones written by {@link JacksonCodec}, that is {"$oid": ...} objects are stored as
+ * {@link ObjectId}s and whole numbers are stored as int32 if they fit and int64 otherwise, i.e. epoch millis timestamps.
+ *
+ * @author spags
+ */
+public class BsonStreamingCodec<T> implements Codec<T> {
+
+    private static final String OID = "$oid";
+    private final ObjectMapper objectMapper;
+    private final Class<T> type;
+
+    BsonStreamingCodec(final ObjectMapper objectMapper, final Class<T> type) {
+        this.objectMapper = objectMapper;
+        this.type = type;
+    }
+
+    @Override
+    public T decode(final BsonReader reader, final DecoderContext decoderContext) {
+        try {
+            final TokenBuffer buffer = new TokenBuffer(objectMapper, false);
+            readDocument(reader, buffer);
+            return objectMapper.readValue(buffer.asParser(), type);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void encode(final BsonWriter writer, final T value, final EncoderContext encoderContext) {
+        try {
+            final TokenBuffer buffer = new TokenBuffer(objectMapper, false);
+            objectMapper.writeValue(buffer, value);
+            final JsonParser parser = buffer.asParser();
+            parser.nextToken();
+            writeValue(parser, writer);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Class<T> getEncoderClass() {
+        return type;
+    }
+
+    private void readDocument(final BsonReader reader, final JsonGenerator generator) throws IOException {
+        reader.readStartDocument();
+        generator.writeStartObject();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            generator.writeFieldName(reader.readName());
+            readValue(reader, generator);
+        }
+        reader.readEndDocument();
+        generator.writeEndObject();
+    }
+
+    private void readValue(final BsonReader reader, final JsonGenerator generator) throws IOException {
+        final BsonType bsonType = reader.getCurrentBsonType();
+        switch (bsonType) {
+            case DOCUMENT:
+                readDocument(reader, generator);
+                break;
+            case ARRAY:
+                reader.readStartArray();
+                generator.writeStartArray();
+                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                    readValue(reader, generator);
+                }
+                reader.readEndArray();
+                generator.writeEndArray();
+                break;
+            case OBJECT_ID:
+                // Same shape as ObjectIdModule expects.
+                generator.writeStartObject();
+                generator.writeStringField(OID, reader.readObjectId().toHexString());
+                generator.writeEndObject();
+                break;
+            case STRING:
+                generator.writeString(reader.readString());
+                break;
+            case INT32:
+                generator.writeNumber(reader.readInt32());
+                break;
+            case INT64:
+                generator.writeNumber(reader.readInt64());
+                break;
+            case DOUBLE:
+                generator.writeNumber(reader.readDouble());
+                break;
+            case DECIMAL128:
+                generator.writeNumber(reader.readDecimal128().bigDecimalValue());
+                break;
+            case DATE_TIME:
+                // We only ever write epoch millis, but be lenient with dates written by other tools.
+                generator.writeNumber(reader.readDateTime());
+                break;
+            case BOOLEAN:
+                generator.writeBoolean(reader.readBoolean());
+                break;
+            case NULL:
+                reader.readNull();
+                generator.writeNull();
+                break;
+            default:
+                throw new CodecConfigurationException("Unsupported bson type " + bsonType + " for " + type);
+        }
+    }
+
+    private void writeValue(final JsonParser parser, final BsonWriter writer) throws IOException {
+        final JsonToken token = parser.getCurrentToken();
+        switch (token) {
+            case START_OBJECT:
+                writeObject(parser, writer);
+                break;
+            case START_ARRAY:
+                writer.writeStartArray();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    writeValue(parser, writer);
+                }
+                writer.writeEndArray();
+                break;
+            case VALUE_STRING:
+                writer.writeString(parser.getText());
+                break;
+            case VALUE_NUMBER_INT:
+                // Match how mongo parses JSON numbers, which is what JacksonCodec relied on.
+                final long value = parser.getLongValue();
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    writer.writeInt32((int) value);
+                } else {
+                    writer.writeInt64(value);
+                }
+                break;
+            case VALUE_NUMBER_FLOAT:
+                writer.writeDouble(parser.getDoubleValue());
+                break;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                writer.writeBoolean(parser.getBooleanValue());
+                break;
+            case VALUE_NULL:
+                writer.writeNull();
+                break;
+            default:
+                throw new CodecConfigurationException("Unsupported json token " + token + " for " + type);
+        }
+    }
+
+    private void writeObject(final JsonParser parser, final BsonWriter writer) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.FIELD_NAME && OID.equals(parser.getCurrentName())) {
+            parser.nextToken();
+            writer.writeObjectId(new ObjectId(parser.getText()));
+            // Consume the end of the $oid object.
+            parser.nextToken();
+            return;
+        }
+        writer.writeStartDocument();
+        for (; token != JsonToken.END_OBJECT; token = parser.nextToken()) {
+            writer.writeName(parser.getCurrentName());
+            parser.nextToken();
+            writeValue(parser, writer);
+        }
+        writer.writeEndDocument();
+    }
+}
@@ -0,0 +1,50 @@
+package net.spals.drunkr.db;
+
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.codecs.Codec;
+import org.bson.codecs.configuration.CodecProvider;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import net.spals.drunkr.model.*;
+
+/**
+ * Provides a {@link BsonStreamingCodec} for the models we store, anything else is left to the next provider.
+ *
+ * @author spags
+ */
+public class BsonStreamingCodecProvider implements CodecProvider {
+
+    private static final Set<Class<?>> MODELS = ImmutableSet.of(
+        BacCalculation.class,
+        Checkin.class,
+        Follower.class,
+        JobOptions.class,
+        LinkCode.class,
+        Notification.class,
+        Person.class,
+        UntappdLink.class
+    );
+    private final ObjectMapper objectMapper;
+
+    BsonStreamingCodecProvider(final ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Reads ask for the model interfaces, but writes ask for the runtime class of the value, i.e. FreeBuilder's
+     * Checkin_Builder$Value, so both are given the codec of the model they implement.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Codec<T> get(final Class<T> type, final CodecRegistry registry) {
+        return MODELS.stream()
+            .filter(x -> x.isAssignableFrom(type))
+            .findFirst()
+            .map(x -> (Codec<T>) new BsonStreamingCodec<>(objectMapper, x))
+            .orElse(null);
+    }
+}
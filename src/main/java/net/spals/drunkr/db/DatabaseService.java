@@ -2,6 +2,9 @@ package net.spals.drunkr.db;
 
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.function.BiConsumer;
+
+import org.bson.types.ObjectId;
 
 import net.spals.drunkr.model.*;
 
@@ -25,6 +28,14 @@ public interface DatabaseService {
      */
     List<Person> allPersons();
 
+    /**
+     * An unordered collection of users for the given ids, ids without a user are skipped.
+     *
+     * @param ids the ids of the users to get
+     * @return all users found for the given ids
+     */
+    List<Person> getPersons(Collection<ObjectId> ids);
+
     boolean insertPerson(Person person);
 
     boolean updatePerson(Person person);
@@ -33,6 +44,8 @@ public interface DatabaseService {
 
     boolean insertBacCalculation(BacCalculation bacCalculation);
 
+    boolean insertBacCalculations(List<BacCalculation> bacCalculations);
+
     /**
      * A sorted ordering of {@link BacCalculation}s for the given user by {@link BacCalculation#timestamp()}.
      *
@@ -47,10 +60,40 @@ public interface DatabaseService {
         Optional<ZonedDateTime> toTime
     );
 
+    /**
+     * The user's most recent {@link BacCalculation}, without reading the rest of their calculations.
+     *
+     * @param person the person whose calculation we want
+     * @return the latest calculation if the user has ever had one
+     */
+    Optional<BacCalculation> getLatestBacCalculation(Person person);
+
+    /**
+     * Similar to {@link #getLatestBacCalculation(Person)} but for many users at once.
+     *
+     * @param userIds the users whose calculations we want
+     * @return at most one calculation per user, users who have never had a calculation are left out
+     */
+    List<BacCalculation> getLatestBacCalculations(Collection<ObjectId> userIds);
+
     boolean insertCheckin(Checkin checkin);
 
+    /**
+     * Stores the checkins like {@link #upsertCheckins(List)}.
+     *
+     * @return true if all the checkins are stored, whether now or before
+     */
     boolean insertCheckins(List<Checkin> checkins);
 
+    /**
+     * Stores the checkins that aren't already stored, checkins from Untappd are matched by
+     * {@link Checkin#untappdId()} so polling the same checkins again is safe.
+     *
+     * @param checkins the checkins to store
+     * @return the checkins that weren't already stored, or empty if we failed to store them
+     */
+    Optional<List<Checkin>> upsertCheckins(List<Checkin> checkins);
+
     boolean removeCheckin(Checkin checkin);
 
     boolean removeCheckins(Person person);
@@ -65,6 +108,20 @@ public interface DatabaseService {
      */
     List<Checkin> getCheckins(Person person, Optional<ZonedDateTime> fromTime, Optional<ZonedDateTime> toTime);
 
+    /**
+     * Similar to {@link #getCheckins(Person, Optional, Optional)} but for many users at once.
+     *
+     * @param userIds  the users whose checkins we want
+     * @param fromTime the earliest timestamp
+     * @param toTime   the latest timestamp
+     * @return {@link Checkin}s of all the given users in the provided range sorted by timestamp
+     */
+    List<Checkin> getCheckinsByUsers(
+        Collection<ObjectId> userIds,
+        Optional<ZonedDateTime> fromTime,
+        Optional<ZonedDateTime> toTime
+    );
+
     Optional<Checkin> getCheckin(String checkinId);
 
     boolean updateCheckin(Checkin checkin);
@@ -73,6 +130,14 @@ public interface DatabaseService {
 
     boolean insertNotifications(List<Notification> notification);
 
+    /**
+     * Inserts the notifications in a single unordered write, so one bad notification does not stop the rest of them.
+     *
+     * @param notifications the notifications to insert
+     * @return the number of notifications inserted, which is less than the number given on a partial failure
+     */
+    int insertNotificationsUnordered(List<Notification> notifications);
+
     /**
      * All {@link Notification}s for which {@link Notification#pushed()} evaluates to false, and sorted by {@link Notification#timestamp()}.
      *
@@ -82,6 +147,59 @@ public interface DatabaseService {
 
     boolean removeNotification(Notification notification);
 
+    /**
+     * Sets {@link Notification#pushed()} for all of the given notifications in a single write.
+     *
+     * @param notificationIds the ids of the notifications that were sent
+     * @return true if the notifications were updated
+     */
+    boolean markNotificationsPushed(Collection<ObjectId> notificationIds);
+
+    /**
+     * Claims up to limit unpushed {@link Notification}s, oldest first, which are not leased or whose lease has expired.
+     * Unlike {@link #unpushedNotifications()} two instances will never get the same notification while it is leased.
+     *
+     * @param owner  the instance claiming the notifications
+     * @param now    the current time, leases expiring on or before now are taken over
+     * @param expiry when the claim expires, after which another instance may claim them if they are still unpushed
+     * @param limit  the most notifications to claim
+     * @return the claimed notifications sorted by timestamp
+     */
+    List<Notification> claimNotifications(String owner, ZonedDateTime now, ZonedDateTime expiry, int limit);
+
+    /**
+     * Same as {@link #claimNotifications(String, ZonedDateTime, ZonedDateTime, int)} but for the given notifications,
+     * which may already be leased by the owner.
+     *
+     * @return the claimed notifications sorted by timestamp, leaving out those pushed or leased by another instance
+     */
+    List<Notification> claimNotifications(
+        Collection<ObjectId> notificationIds,
+        String owner,
+        ZonedDateTime now,
+        ZonedDateTime expiry
+    );
+
+    /**
+     * Watches for inserted {@link Notification}s, blocking the calling thread until the stream is lost or interrupted.
+     *
+     * @param resumeToken where to resume watching from, otherwise only new inserts are seen
+     * @param onWatching  called once the stream is open, anything inserted after it starts is seen by the stream
+     * @param batchSize   the most notifications given to the listener at once
+     * @param listener    called with the inserted notifications as they arrive and the resume token just after them
+     * @return false if the stream was lost or could not be opened, i.e. mongo is not a replica set
+     */
+    boolean watchNotifications(
+        Optional<String> resumeToken,
+        Runnable onWatching,
+        int batchSize,
+        BiConsumer<List<Notification>, String> listener
+    );
+
+    Optional<String> getResumeToken(String stream);
+
+    boolean updateResumeToken(String stream, String resumeToken);
+
     /**
      * A sorted ordering of {@link Notification}s for the given user by {@link Notification#timestamp()}.
      *
@@ -104,6 +222,40 @@ public interface DatabaseService {
 
     List<Notification> unreadNotifications(Person user);
 
+    /**
+     * Stores a user's update once in their timeline, instead of a {@link Notification} per follower.
+     *
+     * @param notification the update keyed by the user it is from
+     * @return true if the update was stored
+     */
+    boolean insertTimelineNotification(Notification notification);
+
+    /**
+     * A sorted ordering of the timeline updates from the given users by {@link Notification#timestamp()}.
+     *
+     * @param userIds  the users whose timelines we want
+     * @param fromTime the earliest timestamp
+     * @param toTime   the latest timestamp
+     * @return timeline updates in the provided range sorted by timestamp
+     */
+    List<Notification> getTimelineNotifications(
+        Collection<ObjectId> userIds,
+        Optional<ZonedDateTime> fromTime,
+        Optional<ZonedDateTime> toTime
+    );
+
+    Optional<Notification> getTimelineNotification(String notificationId);
+
+    /**
+     * Timeline updates are shared by all followers, so rather than a read flag we keep how far each follower has read.
+     *
+     * @param user the follower reading timelines
+     * @return the time the user last read their timeline, empty if never
+     */
+    Optional<ZonedDateTime> getTimelineReadThrough(Person user);
+
+    boolean updateTimelineReadThrough(Person user, ZonedDateTime readThrough);
+
     boolean insertJob(JobOptions jobOptions);
 
     boolean removeJob(JobOptions jobOptions);
@@ -130,6 +282,70 @@ public interface DatabaseService {
 
     boolean updateJob(JobOptions job, ZonedDateTime lastModified);
 
+    /**
+     * Adds newly seen checkins to the running totals of the job, see {@link JobOptions#gramsOfAlcohol()},
+     * and moves its high-water mark forward in a single write.
+     * The write only happens if the stored high-water mark and version are still those of the given job,
+     * otherwise checkins were changed or another run added checkins since it was read and the caller should read
+     * the job again.
+     *
+     * @param job             the job to update, as read before reading its new checkins
+     * @param gramsOfAlcohol  the grams of alcohol of the new checkins
+     * @param checkinCount    the number of new checkins
+     * @param checkinsThrough the new high-water mark
+     * @param lastModified    the time up to which third party checkins have been recorded
+     * @return the job after the update, which includes any corrections made to it, otherwise empty if it failed
+     * or the job had changed
+     */
+    Optional<JobOptions> accumulateJob(
+        JobOptions job,
+        double gramsOfAlcohol,
+        int checkinCount,
+        ZonedDateTime checkinsThrough,
+        ZonedDateTime lastModified
+    );
+
+    /**
+     * Corrects the running totals of a user's jobs after a checkin was added, changed or removed.
+     * Only jobs which have already added a checkin at the given time are corrected,
+     * otherwise the job will pick up the change itself. Those jobs have their {@link JobOptions#version()} incremented,
+     * as a run may have read its checkins before the change.
+     *
+     * @param userId         the user the checkin belongs to
+     * @param timestamp      the time of the checkin
+     * @param gramsOfAlcohol the grams of alcohol to add, negative to remove
+     * @param checkinCount   the number of checkins to add, negative to remove
+     * @return true if the write was acknowledged
+     */
+    boolean correctJobs(ObjectId userId, ZonedDateTime timestamp, double gramsOfAlcohol, int checkinCount);
+
+    /**
+     * Claims or renews the lease of a job, see {@link net.spals.drunkr.model.field.HasLease}.
+     * The job can be claimed if it has no lease, the lease has expired or the owner already holds it.
+     *
+     * @param job    the job to claim
+     * @param owner  the instance claiming the job
+     * @param now    the current time, leases expiring on or before now are taken over
+     * @param expiry when the claim expires unless renewed
+     * @return the claimed job, otherwise empty if another instance holds the lease
+     */
+    Optional<JobOptions> claimJob(JobOptions job, String owner, ZonedDateTime now, ZonedDateTime expiry);
+
+    /**
+     * Clears the running totals of all of the user's jobs, i.e. after all their checkins are removed.
+     */
+    boolean resetJobs(Person person);
+
+    /**
+     * Similar to {@link #stopJob(JobOptions, ZonedDateTime)} but stops all the jobs in a single write.
+     */
+    boolean stopJobs(List<JobOptions> jobs, ZonedDateTime stopTime);
+
+    /**
+     * Similar to {@link #updateJob(JobOptions, ZonedDateTime)} but updates all the jobs in a single write.
+     */
+    boolean updateJobs(List<JobOptions> jobs, ZonedDateTime lastModified);
+
     /**
      * Gets the running {@link JobOptions} for a user if one exists. This assumes we have at most one job running.
      * If we have more than one, which would be a bug some where else, then this returns the one with the latest start time.
@@ -141,6 +357,15 @@ public interface DatabaseService {
      */
     Optional<JobOptions> getRunningJob(Person person, ZonedDateTime now);
 
+    /**
+     * Similar to {@link #getRunningJob(Person, ZonedDateTime)} but for many users at once.
+     *
+     * @param userIds the users to look for running jobs
+     * @param now     the current time in GMT
+     * @return the running jobs of the users, users without a running job are left out
+     */
+    List<JobOptions> getRunningJobs(Collection<ObjectId> userIds, ZonedDateTime now);
+
     boolean addFollower(Person following, Person follower);
 
     boolean removeFollower(Person following, Person follower);
@@ -153,6 +378,14 @@ public interface DatabaseService {
      */
     Set<Person> getFollowers(Person following);
 
+    /**
+     * Same as {@link #getFollowers(Person)} but only the ids of the followers, so none of the users are read.
+     *
+     * @param following the user to look for followers
+     * @return a set of ids of users following the given user
+     */
+    Set<ObjectId> getFollowerIds(Person following);
+
     /**
      * An unordered collection of users who the given user follows.
      *
@@ -161,6 +394,14 @@ public interface DatabaseService {
      */
     Set<Person> getFollowing(Person follower);
 
+    /**
+     * Same as {@link #getFollowing(Person)} but only the ids of the users, so none of the users are read.
+     *
+     * @param follower the user to look for followings
+     * @return a set of ids of users the given user follows
+     */
+    Set<ObjectId> getFollowingIds(Person follower);
+
     /**
      * Gets the latest {@link LinkCode} for the given {@link LinkType}
      *
@@ -176,7 +417,35 @@ public interface DatabaseService {
 
     Optional<UntappdLink> getUntappdLink(String untappdUserName);
 
+    /**
+     * An unordered collection of untappd links for the given users, users without a link are skipped.
+     *
+     * @param userIds the users whose links we want
+     * @return all links found for the given users
+     */
+    List<UntappdLink> getUntappdLinks(Collection<ObjectId> userIds);
+
     boolean insertUntappdLink(UntappdLink link);
 
     boolean updateLinkAccessToken(UntappdLink link, String accessToken);
+
+    /**
+     * Moves the link's {@link UntappdLink#lastCheckinId()} forward, an older id than the current one is ignored.
+     *
+     * @param link          the user's link
+     * @param lastCheckinId the newest Untappd checkin id stored for the user
+     * @return true if the update was acknowledged
+     */
+    boolean updateLinkLastCheckinId(UntappdLink link, long lastCheckinId);
+
+    /**
+     * @param link the beer's page relative to Untappd
+     * @return the beer's ABV as last fetched, if it has ever been fetched
+     */
+    Optional<Beer> getBeer(String link);
+
+    /**
+     * Stores a beer's ABV, replacing the previous fetch of the same beer if any.
+     */
+    boolean upsertBeer(Beer beer);
 }
@@ -0,0 +1,143 @@
+package net.spals.drunkr.db;
+
+import java.util.*;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.bson.types.ObjectId;
+
+/**
+ * Who follows whom, held in memory as follows are read on every notification fan out and leaderboard
+ * but only change when someone follows or unfollows.
+ * <p>
+ * Each user is given a compact int id the first time they are seen, and their followers and following are
+ * kept as sorted arrays of those ids. So a follow costs two ints rather than two {@link ObjectId}s and their boxes.
+ *
+ * @author spags
+ */
+class FollowerGraph {
+
+    private static final int[] EMPTY = new int[0];
+    private final Map<ObjectId, Integer> indexes = new HashMap<>();
+    private final List<ObjectId> ids = new ArrayList<>();
+    private final List<IntSet> followers = new ArrayList<>();
+    private final List<IntSet> following = new ArrayList<>();
+
+    /**
+     * @param userId     the user being followed
+     * @param followerId the user following them
+     * @return true if the follow was not already in the graph
+     */
+    synchronized boolean add(final ObjectId userId, final ObjectId followerId) {
+        final int user = index(userId);
+        final int follower = index(followerId);
+        following.get(follower).add(user);
+        return followers.get(user).add(follower);
+    }
+
+    /**
+     * @param userId     the user being followed
+     * @param followerId the user following them
+     * @return true if the follow was in the graph
+     */
+    synchronized boolean remove(final ObjectId userId, final ObjectId followerId) {
+        final Integer user = indexes.get(userId);
+        final Integer follower = indexes.get(followerId);
+        if (user == null || follower == null) {
+            return false;
+        }
+        following.get(follower).remove(user);
+        return followers.get(user).remove(follower);
+    }
+
+    /**
+     * Removes all of the user's follows, both their followers and who they follow.
+     *
+     * @return true if the user was in the graph
+     */
+    synchronized boolean removeUser(final ObjectId userId) {
+        final Integer user = indexes.get(userId);
+        if (user == null) {
+            return false;
+        }
+        final IntSet userFollowers = followers.get(user);
+        for (int i = 0; i < userFollowers.size; i++) {
+            following.get(userFollowers.values[i]).remove(user);
+        }
+        final IntSet userFollowing = following.get(user);
+        for (int i = 0; i < userFollowing.size; i++) {
+            followers.get(userFollowing.values[i]).remove(user);
+        }
+        followers.set(user, new IntSet());
+        following.set(user, new IntSet());
+        return true;
+    }
+
+    synchronized Set<ObjectId> getFollowerIds(final ObjectId userId) {
+        return toIds(followers, userId);
+    }
+
+    synchronized Set<ObjectId> getFollowingIds(final ObjectId followerId) {
+        return toIds(following, followerId);
+    }
+
+    private Set<ObjectId> toIds(final List<IntSet> edges, final ObjectId userId) {
+        final Integer index = indexes.get(userId);
+        if (index == null) {
+            return ImmutableSet.of();
+        }
+        final IntSet adjacent = edges.get(index);
+        final ImmutableSet.Builder<ObjectId> builder = ImmutableSet.builder();
+        for (int i = 0; i < adjacent.size; i++) {
+            builder.add(ids.get(adjacent.values[i]));
+        }
+        return builder.build();
+    }
+
+    private int index(final ObjectId userId) {
+        final Integer index = indexes.get(userId);
+        if (index != null) {
+            return index;
+        }
+        final int added = ids.size();
+        indexes.put(userId, added);
+        ids.add(userId);
+        followers.add(new IntSet());
+        following.add(new IntSet());
+        return added;
+    }
+
+    /**
+     * A sorted array of ids, most users follow a handful of others so finding and shifting them is cheap.
+     */
+    private static class IntSet {
+
+        private int[] values = EMPTY;
+        private int size;
+
+        private boolean add(final int value) {
+            final int found = Arrays.binarySearch(values, 0, size, value);
+            if (found >= 0) {
+                return false;
+            }
+            final int insertion = -(found + 1);
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.max(4, size * 2));
+            }
+            System.arraycopy(values, insertion, values, insertion + 1, size - insertion);
+            values[insertion] = value;
+            size++;
+            return true;
+        }
+
+        private boolean remove(final int value) {
+            final int found = Arrays.binarySearch(values, 0, size, value);
+            if (found < 0) {
+                return false;
+            }
+            System.arraycopy(values, found + 1, values, found, size - found - 1);
+            size--;
+            return true;
+        }
+    }
+}
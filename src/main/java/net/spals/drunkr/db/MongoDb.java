@@ -1,29 +1,46 @@
 package net.spals.drunkr.db;
 
 import static com.mongodb.client.model.Filters.*;
-import static com.mongodb.client.model.Updates.set;
+import static com.mongodb.client.model.Updates.*;
 
 import javax.annotation.PostConstruct;
+import javax.validation.constraints.NotNull;
+import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.*;
 import com.google.inject.Inject;
 
-import com.mongodb.client.MongoCollection;
-import com.mongodb.client.MongoDatabase;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.*;
 import com.mongodb.client.model.*;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
+import com.netflix.governator.annotations.Configuration;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWrapper;
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.spals.appbuilder.annotations.service.AutoBindSingleton;
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
 import net.spals.appbuilder.keystore.core.KeyStore;
+import net.spals.drunkr.common.ZonedDateTimes;
 import net.spals.drunkr.model.*;
 
 /**
@@ -49,31 +66,72 @@ class MongoDb implements DatabaseService {
     private static final String STOP_TIME = "stopTime";
     private static final String LAST_MODIFIED = "lastModified";
     private static final String TIMESTAMP = "timestamp";
+    private static final String GRAMS_OF_ALCOHOL = "gramsOfAlcohol";
+    private static final String CHECKIN_COUNT = "checkinCount";
+    private static final String CHECKINS_THROUGH = "checkinsThrough";
+    private static final String VERSION = "version";
+    private static final String READ_THROUGH = "readThrough";
+    private static final String RESUME_TOKEN = "resumeToken";
+    private static final String LEASE_OWNER = "leaseOwner";
+    private static final String LEASE_EXPIRY = "leaseExpiry";
+    private static final String PUSHED = "pushed";
+    private static final String READ = "read";
+    private static final String TYPE = "type";
+    private static final String ABV = "abv";
+    private static final String BAC = "bac";
+    private static final String CALCULATION_ID = "calculationId";
+    private static final String UNTAPPD_ID = "untappdId";
+    private static final String UNTAPPD_ID_INDEX = "userId_1_untappdId_number";
+    private static final String DEFAULT_UNTAPPD_ID_INDEX = "userId_1_untappdId_1";
     private static final Bson ORDER_BY_TIMESTAMP_ASC = Sorts.ascending(TIMESTAMP);
     private static final Bson ORDER_BY_TIMESTAMP_DESC = Sorts.descending(TIMESTAMP);
     private static final Bson ORDER_BY_START_TIME_ASC = Sorts.ascending(START_TIME);
     private static final Bson ORDER_BY_START_TIME_DESC = Sorts.descending(START_TIME);
+    private final ExecutorServiceFactory executorServiceFactory;
     private final KeyStore keyStore;
     private final MongoCollection<Person> users;
     private final MongoCollection<Follower> followers;
     private final MongoCollection<Checkin> checkins;
     private final MongoCollection<Notification> notifications;
+    private final MongoCollection<Notification> timeline;
+    private final MongoCollection<Document> timelineReads;
+    private final MongoCollection<Document> resumeTokens;
     private final MongoCollection<BacCalculation> bacCalculations;
+    private final MongoCollection<Document> latestBacs;
     private final MongoCollection<UntappdLink> untappdLinks;
     private final MongoCollection<JobOptions> jobs;
     private final MongoCollection<LinkCode> linkCodes;
+    private final MongoCollection<Document> beers;
+    private final Object followerGraphLock = new Object();
+    private volatile FollowerGraph followerGraph = new FollowerGraph();
+    // Follow changes made while the graph is reloaded, null when it isn't.
+    private List<Consumer<FollowerGraph>> followerGraphChanges;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("follower.graph.period")
+    private long followerGraphPeriod = 60;
 
     @Inject
-    MongoDb(final MongoDatabase database, final KeyStore keyStore) {
+    MongoDb(
+        final MongoDatabase database,
+        final ExecutorServiceFactory executorServiceFactory,
+        final KeyStore keyStore
+    ) {
+        this.executorServiceFactory = executorServiceFactory;
         this.keyStore = keyStore;
         users = database.getCollection("persons", Person.class);
         followers = database.getCollection("followers", Follower.class);
         checkins = database.getCollection("checkins", Checkin.class);
         notifications = database.getCollection("notifications", Notification.class);
+        timeline = database.getCollection("timeline", Notification.class);
+        timelineReads = database.getCollection("timelineReads");
+        resumeTokens = database.getCollection("resumeTokens");
         bacCalculations = database.getCollection("bacCalculations", BacCalculation.class);
+        latestBacs = database.getCollection("latestBacs");
         untappdLinks = database.getCollection("untappdLinks", UntappdLink.class);
         jobs = database.getCollection("jobs", JobOptions.class);
         linkCodes = database.getCollection("linkCodes", LinkCode.class);
+        beers = database.getCollection("beers");
     }
 
     @PostConstruct
@@ -106,20 +164,58 @@ class MongoDb implements DatabaseService {
             followersIndex
         );
 
-        checkins.createIndex(Indexes.ascending(USER_ID));
+        // Users' checkins, calculations and notifications are read by time range in time order,
+        // so index the timestamp after the user to avoid sorting them in memory.
+        checkins.createIndex(Indexes.ascending(USER_ID, TIMESTAMP));
+        // Only checkins from Untappd have an untappd id, each is stored once per user however often it's polled.
+        // Our own checkins store their empty id as null, which $exists matches, so only index numeric ids.
+        // Ids that fit are written as int32 and the rest as int64, the number alias covers both.
+        final IndexOptions untappdId = new IndexOptions()
+            .name(UNTAPPD_ID_INDEX)
+            .unique(true)
+            .partialFilterExpression(new Document(UNTAPPD_ID, new Document("$type", "number")));
+        // Mongo won't build a second index on the same keys, so drop one left under the default name.
+        final List<String> checkinIndexes = checkins.listIndexes()
+            .map(x -> x.getString("name"))
+            .into(new ArrayList<>());
+        if (checkinIndexes.contains(DEFAULT_UNTAPPD_ID_INDEX)) {
+            checkins.dropIndex(DEFAULT_UNTAPPD_ID_INDEX);
+        }
+        checkins.createIndex(
+            Indexes.compoundIndex(Indexes.ascending(USER_ID), Indexes.ascending(UNTAPPD_ID)),
+            untappdId
+        );
+
+        notifications.createIndex(Indexes.ascending(USER_ID, TIMESTAMP));
+        notifications.createIndex(Indexes.ascending(USER_ID, READ, TIMESTAMP));
+        notifications.createIndex(Indexes.ascending(PUSHED, TIMESTAMP));
 
-        notifications.createIndex(Indexes.ascending(USER_ID));
-        notifications.createIndex(Indexes.ascending("pushed"));
+        timeline.createIndex(Indexes.compoundIndex(Indexes.ascending(USER_ID), Indexes.ascending(TIMESTAMP)));
 
-        bacCalculations.createIndex(Indexes.ascending(USER_ID));
+        bacCalculations.createIndex(Indexes.ascending(USER_ID, TIMESTAMP));
 
         untappdLinks.createIndex(Indexes.ascending(USER_ID));
         untappdLinks.createIndex(Indexes.ascending(UNTAPPD_NAME));
 
-        jobs.createIndex(Indexes.ascending(USER_ID));
-
-        linkCodes.createIndex(Indexes.ascending(USER_ID));
-        linkCodes.createIndex(Indexes.ascending("type"));
+        jobs.createIndex(Indexes.ascending(USER_ID, START_TIME));
+
+        linkCodes.createIndex(Indexes.ascending(USER_ID, TYPE, TIMESTAMP));
+        linkCodes.createIndex(Indexes.ascending(TYPE));
+
+        // Followers are read from memory, so load them before serving and keep picking up other instances' follows.
+        loadFollowerGraph();
+        if (followerGraphPeriod > 0) {
+            final Key key = new Key.Builder(MongoDb.class)
+                .addTags("followers")
+                .build();
+            final ScheduledExecutorService executor = executorServiceFactory.createSingleThreadScheduledExecutor(key);
+            executor.scheduleAtFixedRate(
+                this::reloadFollowerGraph,
+                followerGraphPeriod,
+                followerGraphPeriod,
+                TimeUnit.SECONDS
+            );
+        }
     }
 
     @Override
@@ -144,6 +240,15 @@ class MongoDb implements DatabaseService {
         return ImmutableList.copyOf(persons);
     }
 
+    @Override
+    public List<Person> getPersons(final Collection<ObjectId> ids) {
+        if (ids.isEmpty()) {
+            return ImmutableList.of();
+        }
+        final Iterable<Person> persons = users.find(in(ID, ids));
+        return ImmutableList.copyOf(persons);
+    }
+
     @Override
     public boolean insertPerson(final Person person) {
         try {
@@ -164,6 +269,9 @@ class MongoDb implements DatabaseService {
     @Override
     public boolean removePerson(final Person person) {
         final DeleteResult result = users.deleteOne(eq(ID, person.id()));
+        // Their follows go with them.
+        followers.deleteMany(or(eq(FOLLOWING_ID, person.id()), eq(FOLLOWER_ID, person.id())));
+        changeFollowerGraph(graph -> graph.removeUser(person.id()));
         return result.wasAcknowledged();
     }
 
@@ -171,11 +279,61 @@ class MongoDb implements DatabaseService {
     public boolean insertBacCalculation(final BacCalculation bacCalculation) {
         try {
             bacCalculations.insertOne(bacCalculation);
-            return true;
         } catch (final Throwable x) {
             LOGGER.info("Error when inserting bacCalculation: " + bacCalculation, x);
             return false;
         }
+        updateLatestBacs(ImmutableList.of(bacCalculation));
+        return true;
+    }
+
+    @Override
+    public boolean insertBacCalculations(final List<BacCalculation> bacCalculations) {
+        try {
+            // Mongo does not allow empty mass inserts...
+            if (!bacCalculations.isEmpty()) {
+                this.bacCalculations.insertMany(bacCalculations);
+            }
+        } catch (final Throwable x) {
+            LOGGER.info("Error when inserting bacCalculations: " + bacCalculations, x);
+            return false;
+        }
+        updateLatestBacs(bacCalculations);
+        return true;
+    }
+
+    /**
+     * Keeps a copy of each user's latest calculation keyed by the user, so reading it doesn't read their history.
+     * The calculations are stored either way, so a failure here only leaves the copy behind until the next one.
+     */
+    private void updateLatestBacs(final List<BacCalculation> bacCalculations) {
+        if (bacCalculations.isEmpty()) {
+            return;
+        }
+        final UpdateOptions upsert = new UpdateOptions().upsert(true);
+        final List<WriteModel<Document>> writes = bacCalculations.stream()
+            .map(
+                x -> {
+                    final long timestamp = x.timestamp().toInstant().toEpochMilli();
+                    return new UpdateOneModel<Document>(
+                        // Calculations may be stored out of order, only replace an older copy.
+                        and(eq(ID, x.userId()), or(not(exists(TIMESTAMP)), lt(TIMESTAMP, timestamp))),
+                        combine(set(CALCULATION_ID, x.id()), set(BAC, x.bac()), set(TIMESTAMP, timestamp)),
+                        upsert
+                    );
+                }
+            )
+            .collect(Collectors.toList());
+        try {
+            latestBacs.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+        } catch (final MongoBulkWriteException x) {
+            // A newer copy didn't match our filter so we tried to insert a second one for the user, keep the newer.
+            if (!x.getWriteErrors().stream().allMatch(error -> error.getCategory() == ErrorCategory.DUPLICATE_KEY)) {
+                LOGGER.info("Error when updating latest bacCalculations, failed: " + x.getWriteErrors(), x);
+            }
+        } catch (final Throwable x) {
+            LOGGER.info("Error when updating latest bacCalculations: " + bacCalculations, x);
+        }
     }
 
     @Override
@@ -194,6 +352,69 @@ class MongoDb implements DatabaseService {
         return ImmutableList.copyOf(checkins);
     }
 
+    @Override
+    public Optional<BacCalculation> getLatestBacCalculation(final Person person) {
+        final Document latest = latestBacs.find(eq(ID, person.id())).first();
+        if (latest != null) {
+            return Optional.of(toBacCalculation(latest));
+        }
+        return findLatestBacCalculation(person.id());
+    }
+
+    @Override
+    public List<BacCalculation> getLatestBacCalculations(final Collection<ObjectId> userIds) {
+        if (userIds.isEmpty()) {
+            return ImmutableList.of();
+        }
+        final Map<ObjectId, BacCalculation> latest = Streams.stream(latestBacs.find(in(ID, userIds)))
+            .map(this::toBacCalculation)
+            .collect(Collectors.toMap(BacCalculation::userId, x -> x));
+        final List<ObjectId> missing = userIds.stream()
+            .filter(x -> !latest.containsKey(x))
+            .collect(Collectors.toList());
+        if (missing.isEmpty()) {
+            return ImmutableList.copyOf(latest.values());
+        }
+        // Read the (userId, timestamp) index backwards taking each user's first calculation, grouped into the same
+        // shape as their copy would have been.
+        final List<Bson> pipeline = ImmutableList.of(
+            Aggregates.match(in(USER_ID, missing)),
+            Aggregates.sort(Sorts.descending(USER_ID, TIMESTAMP)),
+            Aggregates.group(
+                "$" + USER_ID,
+                Accumulators.first(CALCULATION_ID, "$" + ID),
+                Accumulators.first(BAC, "$" + BAC),
+                Accumulators.first(TIMESTAMP, "$" + TIMESTAMP)
+            )
+        );
+        return ImmutableList.<BacCalculation>builder()
+            .addAll(latest.values())
+            .addAll(
+                Streams.stream(bacCalculations.aggregate(pipeline, Document.class))
+                    .map(this::toBacCalculation)
+                    .iterator()
+            )
+            .build();
+    }
+
+    /**
+     * For users whose latest calculation was stored before we kept a copy of it,
+     * reads the (userId, timestamp) index backwards.
+     */
+    private Optional<BacCalculation> findLatestBacCalculation(final ObjectId userId) {
+        return Optional.ofNullable(bacCalculations.find(eq(USER_ID, userId)).sort(ORDER_BY_TIMESTAMP_DESC).first());
+    }
+
+    private BacCalculation toBacCalculation(final Document latest) {
+        final Instant timestamp = Instant.ofEpochMilli(latest.getLong(TIMESTAMP));
+        return new BacCalculation.Builder()
+            .id(latest.getObjectId(CALCULATION_ID))
+            .userId(latest.getObjectId(ID))
+            .bac(latest.getDouble(BAC))
+            .timestamp(ZonedDateTime.ofInstant(timestamp, ZonedDateTimes.UTC))
+            .build();
+    }
+
     @Override
     public boolean insertCheckin(final Checkin checkin) {
         try {
@@ -207,18 +428,57 @@ class MongoDb implements DatabaseService {
 
     @Override
     public boolean insertCheckins(final List<Checkin> checkins) {
+        return upsertCheckins(checkins).isPresent();
+    }
+
+    @Override
+    public Optional<List<Checkin>> upsertCheckins(final List<Checkin> checkins) {
+        // Mongo does not allow empty bulk writes...
+        if (checkins.isEmpty()) {
+            return Optional.of(ImmutableList.of());
+        }
+        final CodecRegistry registry = this.checkins.getCodecRegistry();
+        final UpdateOptions upsert = new UpdateOptions().upsert(true);
+        final List<WriteModel<Checkin>> writes = checkins.stream()
+            .map(
+                x -> new UpdateOneModel<Checkin>(
+                    checkinKey(x),
+                    new BsonDocument("$setOnInsert", BsonDocumentWrapper.asBsonDocument(x, registry)),
+                    upsert
+                )
+            )
+            .collect(Collectors.toList());
         try {
-            // Mongo does not allow empty mass inserts...
-            if (!checkins.isEmpty()) {
-                this.checkins.insertMany(checkins);
+            final BulkWriteResult result = this.checkins.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+            return Optional.of(upserted(checkins, result));
+        } catch (final MongoBulkWriteException x) {
+            // Another poll stored the same checkin between our filter and insert, so it was already stored.
+            if (x.getWriteErrors().stream().allMatch(error -> error.getCategory() == ErrorCategory.DUPLICATE_KEY)) {
+                return Optional.of(upserted(checkins, x.getWriteResult()));
             }
-            return true;
+            LOGGER.info("Error when upserting checkins, failed: " + x.getWriteErrors(), x);
+            return Optional.empty();
         } catch (final Throwable x) {
-            LOGGER.info("Error when inserting checkin: " + checkins, x);
-            return false;
+            LOGGER.info("Error when upserting checkins: " + checkins, x);
+            return Optional.empty();
         }
     }
 
+    /**
+     * Checkins from Untappd are keyed by their untappd id, as each poll creates a new {@link Checkin#id()}.
+     */
+    private Bson checkinKey(final Checkin checkin) {
+        return checkin.untappdId()
+            .map(x -> and(eq(USER_ID, checkin.userId()), eq(UNTAPPD_ID, x)))
+            .orElseGet(() -> eq(ID, checkin.id()));
+    }
+
+    private List<Checkin> upserted(final List<Checkin> checkins, final BulkWriteResult result) {
+        return result.getUpserts().stream()
+            .map(x -> checkins.get(x.getIndex()))
+            .collect(Collectors.toList());
+    }
+
     @Override
     public boolean removeCheckin(final Checkin checkin) {
         return checkins.deleteOne(eq(ID, checkin.id())).wasAcknowledged();
@@ -245,6 +505,25 @@ class MongoDb implements DatabaseService {
         return ImmutableList.copyOf(checkins);
     }
 
+    @Override
+    public List<Checkin> getCheckinsByUsers(
+        final Collection<ObjectId> userIds,
+        final Optional<ZonedDateTime> fromTime,
+        final Optional<ZonedDateTime> toTime
+    ) {
+        if (userIds.isEmpty()) {
+            return ImmutableList.of();
+        }
+        final ImmutableList.Builder<Bson> builder = ImmutableList.builder();
+        builder.add(in(USER_ID, userIds));
+        fromTime.ifPresent(x -> builder.add(gte(TIMESTAMP, x.toInstant().toEpochMilli())));
+        toTime.ifPresent(x -> builder.add(lte(TIMESTAMP, x.toInstant().toEpochMilli())));
+
+        final Iterable<Checkin> checkins = this.checkins.find(and(builder.build()))
+            .sort(ORDER_BY_TIMESTAMP_ASC);
+        return ImmutableList.copyOf(checkins);
+    }
+
     @Override
     public Optional<Checkin> getCheckin(final String checkinId) {
         final Checkin checkin = checkins.find(eq(ID, new ObjectId(checkinId))).first();
@@ -282,9 +561,27 @@ class MongoDb implements DatabaseService {
         }
     }
 
+    @Override
+    public int insertNotificationsUnordered(final List<Notification> notifications) {
+        try {
+            // Mongo does not allow empty mass inserts...
+            if (!notifications.isEmpty()) {
+                this.notifications.insertMany(notifications, new InsertManyOptions().ordered(false));
+            }
+            return notifications.size();
+        } catch (final MongoBulkWriteException x) {
+            // Unordered so everything but the failed writes were inserted.
+            LOGGER.info("Error when inserting notifications, failed: " + x.getWriteErrors(), x);
+            return notifications.size() - x.getWriteErrors().size();
+        } catch (final Throwable x) {
+            LOGGER.info("Error when inserting notifications: " + notifications, x);
+            return 0;
+        }
+    }
+
     @Override
     public List<Notification> unpushedNotifications() {
-        final Iterable<Notification> notifications = this.notifications.find(eq("pushed", false))
+        final Iterable<Notification> notifications = this.notifications.find(eq(PUSHED, false))
             .sort(ORDER_BY_TIMESTAMP_ASC);
         return ImmutableList.copyOf(notifications);
     }
@@ -294,6 +591,131 @@ class MongoDb implements DatabaseService {
         return notifications.deleteOne(eq(ID, notification.id())).wasAcknowledged();
     }
 
+    @Override
+    public boolean markNotificationsPushed(final Collection<ObjectId> notificationIds) {
+        if (notificationIds.isEmpty()) {
+            return true;
+        }
+        final UpdateResult result = notifications.updateMany(in(ID, notificationIds), set(PUSHED, true));
+        return result.wasAcknowledged();
+    }
+
+    @Override
+    public List<Notification> claimNotifications(
+        final String owner,
+        final ZonedDateTime now,
+        final ZonedDateTime expiry,
+        final int limit
+    ) {
+        try {
+            // Our own unexpired leases are skipped too, otherwise we'd keep claiming the same notifications.
+            final Bson claimable = and(eq(PUSHED, false), leaseExpired(now));
+            final List<ObjectId> ids = notifications.withDocumentClass(Document.class)
+                .find(claimable)
+                .sort(ORDER_BY_TIMESTAMP_ASC)
+                .limit(limit)
+                .projection(Projections.include(ID))
+                .map(x -> x.getObjectId(ID))
+                .into(new ArrayList<>());
+            if (ids.isEmpty()) {
+                return ImmutableList.of();
+            }
+            return claim(ids, claimable, owner, expiry);
+        } catch (final Throwable x) {
+            LOGGER.info("Error when claiming notifications for: " + owner, x);
+            return ImmutableList.of();
+        }
+    }
+
+    @Override
+    public List<Notification> claimNotifications(
+        final Collection<ObjectId> notificationIds,
+        final String owner,
+        final ZonedDateTime now,
+        final ZonedDateTime expiry
+    ) {
+        if (notificationIds.isEmpty()) {
+            return ImmutableList.of();
+        }
+        try {
+            final Bson claimable = and(eq(PUSHED, false), or(eq(LEASE_OWNER, owner), leaseExpired(now)));
+            return claim(ImmutableList.copyOf(notificationIds), claimable, owner, expiry);
+        } catch (final Throwable x) {
+            LOGGER.info("Error when claiming notifications: " + notificationIds, x);
+            return ImmutableList.of();
+        }
+    }
+
+    /**
+     * Mongo can't update many and return what it updated, so we lease those still claimable in one write and
+     * read back the ones holding our lease. Another instance claiming the same ones at once gets the others.
+     */
+    private List<Notification> claim(
+        final List<ObjectId> ids,
+        final Bson claimable,
+        final String owner,
+        final ZonedDateTime expiry
+    ) {
+        notifications.updateMany(and(in(ID, ids), claimable), lease(owner, expiry));
+        final Iterable<Notification> claimed = notifications.find(
+            and(
+                in(ID, ids),
+                eq(LEASE_OWNER, owner),
+                eq(LEASE_EXPIRY, expiry.toInstant().toEpochMilli())
+            )
+        ).sort(ORDER_BY_TIMESTAMP_ASC);
+        return ImmutableList.copyOf(claimed);
+    }
+
+    @Override
+    public boolean watchNotifications(
+        final Optional<String> resumeToken,
+        final Runnable onWatching,
+        final int batchSize,
+        final BiConsumer<List<Notification>, String> listener
+    ) {
+        final List<Bson> pipeline = ImmutableList.of(Aggregates.match(eq("operationType", "insert")));
+        final ChangeStreamIterable<Notification> stream = resumeToken.map(BsonDocument::parse)
+            .map(x -> notifications.watch(pipeline).resumeAfter(x))
+            .orElseGet(() -> notifications.watch(pipeline));
+        try (final MongoCursor<ChangeStreamDocument<Notification>> cursor = stream.iterator()) {
+            // The stream is open, so anything inserted while the caller catches up is seen by it too.
+            onWatching.run();
+            while (!Thread.currentThread().isInterrupted()) {
+                // Wait for the next insert, then take whatever else has already arrived with it.
+                final List<Notification> inserted = new ArrayList<>();
+                ChangeStreamDocument<Notification> change = cursor.next();
+                String token;
+                do {
+                    inserted.add(change.getFullDocument());
+                    token = change.getResumeToken().toJson();
+                    change = inserted.size() < batchSize ? cursor.tryNext() : null;
+                } while (change != null);
+                listener.accept(inserted, token);
+            }
+            return true;
+        } catch (final Throwable x) {
+            LOGGER.info("Error when watching notifications", x);
+            return false;
+        }
+    }
+
+    @Override
+    public Optional<String> getResumeToken(final String stream) {
+        final Document token = resumeTokens.find(eq(ID, stream)).first();
+        return Optional.ofNullable(token).map(x -> x.getString(RESUME_TOKEN));
+    }
+
+    @Override
+    public boolean updateResumeToken(final String stream, final String resumeToken) {
+        final UpdateResult result = resumeTokens.updateOne(
+            eq(ID, stream),
+            set(RESUME_TOKEN, resumeToken),
+            new UpdateOptions().upsert(true)
+        );
+        return result.wasAcknowledged();
+    }
+
     @Override
     public List<Notification> getNotifications(
         final Person person,
@@ -325,7 +747,7 @@ class MongoDb implements DatabaseService {
     public boolean markAllReadNotifications(final Person user) {
         final UpdateResult result = notifications.updateMany(
             eq(USER_ID, user.id()),
-            set("read", true)
+            set(READ, true)
         );
         return result.wasAcknowledged();
     }
@@ -335,12 +757,66 @@ class MongoDb implements DatabaseService {
         final Iterable<Notification> notifications = this.notifications.find(
             and(
                 eq(USER_ID, user.id()),
-                eq("read", false)
+                eq(READ, false)
             )
         ).sort(ORDER_BY_TIMESTAMP_ASC);
         return ImmutableList.copyOf(notifications);
     }
 
+    @Override
+    public boolean insertTimelineNotification(final Notification notification) {
+        try {
+            timeline.insertOne(notification);
+            return true;
+        } catch (final Throwable x) {
+            LOGGER.info("Error when inserting timeline notification for user: " + notification.userId(), x);
+            return false;
+        }
+    }
+
+    @Override
+    public List<Notification> getTimelineNotifications(
+        final Collection<ObjectId> userIds,
+        final Optional<ZonedDateTime> fromTime,
+        final Optional<ZonedDateTime> toTime
+    ) {
+        if (userIds.isEmpty()) {
+            return ImmutableList.of();
+        }
+        final ImmutableList.Builder<Bson> builder = ImmutableList.builder();
+        builder.add(in(USER_ID, userIds));
+        fromTime.ifPresent(x -> builder.add(gte(TIMESTAMP, x.toInstant().toEpochMilli())));
+        toTime.ifPresent(x -> builder.add(lte(TIMESTAMP, x.toInstant().toEpochMilli())));
+
+        final Iterable<Notification> notifications = timeline.find(and(builder.build()))
+            .sort(ORDER_BY_TIMESTAMP_ASC);
+        return ImmutableList.copyOf(notifications);
+    }
+
+    @Override
+    public Optional<Notification> getTimelineNotification(final String notificationId) {
+        final Notification notification = timeline.find(eq(ID, new ObjectId(notificationId))).first();
+        return Optional.ofNullable(notification);
+    }
+
+    @Override
+    public Optional<ZonedDateTime> getTimelineReadThrough(final Person user) {
+        final Document read = timelineReads.find(eq(ID, user.id())).first();
+        return Optional.ofNullable(read)
+            .map(x -> x.getLong(READ_THROUGH))
+            .map(x -> ZonedDateTime.ofInstant(Instant.ofEpochMilli(x), ZonedDateTimes.UTC));
+    }
+
+    @Override
+    public boolean updateTimelineReadThrough(final Person user, final ZonedDateTime readThrough) {
+        final UpdateResult result = timelineReads.updateOne(
+            eq(ID, user.id()),
+            set(READ_THROUGH, readThrough.toInstant().toEpochMilli()),
+            new UpdateOptions().upsert(true)
+        );
+        return result.wasAcknowledged();
+    }
+
     @Override
     public boolean insertJob(final JobOptions jobOptions) {
         try {
@@ -394,6 +870,130 @@ class MongoDb implements DatabaseService {
         return result.wasAcknowledged();
     }
 
+    @Override
+    public Optional<JobOptions> accumulateJob(
+        final JobOptions job,
+        final double gramsOfAlcohol,
+        final int checkinCount,
+        final ZonedDateTime checkinsThrough,
+        final ZonedDateTime lastModified
+    ) {
+        // Empty optionals are stored as null, which also matches jobs from before the running total was kept.
+        final Long readThrough = job.checkinsThrough()
+            .map(x -> x.toInstant().toEpochMilli())
+            .orElse(null);
+        final JobOptions updated = jobs.findOneAndUpdate(
+            and(eq(ID, job.id()), eq(CHECKINS_THROUGH, readThrough), version(job)),
+            combine(
+                inc(GRAMS_OF_ALCOHOL, gramsOfAlcohol),
+                inc(CHECKIN_COUNT, checkinCount),
+                set(CHECKINS_THROUGH, checkinsThrough.toInstant().toEpochMilli()),
+                set(LAST_MODIFIED, lastModified.toInstant().toEpochMilli())
+            ),
+            new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER)
+        );
+        return Optional.ofNullable(updated);
+    }
+
+    /**
+     * Jobs from before the version was kept don't have one, which is the same as a version of 0.
+     */
+    private Bson version(final JobOptions job) {
+        return job.version() == 0 ? or(eq(VERSION, null), eq(VERSION, 0L)) : eq(VERSION, job.version());
+    }
+
+    @Override
+    public boolean correctJobs(
+        final ObjectId userId,
+        final ZonedDateTime timestamp,
+        final double gramsOfAlcohol,
+        final int checkinCount
+    ) {
+        final long time = timestamp.toInstant().toEpochMilli();
+        // Jobs yet to add the checkin may have read their checkins before it changed, so have them read again.
+        // This has to come first, otherwise a job could move its high-water mark past the checkin in between.
+        final UpdateResult pending = jobs.updateMany(
+            and(eq(USER_ID, userId), lte(START_TIME, time), or(eq(CHECKINS_THROUGH, null), lt(CHECKINS_THROUGH, time))),
+            inc(VERSION, 1L)
+        );
+        final UpdateResult result = jobs.updateMany(
+            and(eq(USER_ID, userId), lte(START_TIME, time), gte(CHECKINS_THROUGH, time)),
+            combine(inc(GRAMS_OF_ALCOHOL, gramsOfAlcohol), inc(CHECKIN_COUNT, checkinCount))
+        );
+        return pending.wasAcknowledged() && result.wasAcknowledged();
+    }
+
+    @Override
+    public boolean resetJobs(final Person person) {
+        final UpdateResult result = jobs.updateMany(
+            eq(USER_ID, person.id()),
+            // A run may have read the checkins before they were removed, so have it read again.
+            combine(set(GRAMS_OF_ALCOHOL, 0.0), set(CHECKIN_COUNT, 0), inc(VERSION, 1L))
+        );
+        return result.wasAcknowledged();
+    }
+
+    @Override
+    public Optional<JobOptions> claimJob(
+        final JobOptions job,
+        final String owner,
+        final ZonedDateTime now,
+        final ZonedDateTime expiry
+    ) {
+        try {
+            final JobOptions claimed = jobs.findOneAndUpdate(
+                and(eq(ID, job.id()), or(eq(LEASE_OWNER, owner), leaseExpired(now))),
+                lease(owner, expiry),
+                new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER)
+            );
+            return Optional.ofNullable(claimed);
+        } catch (final Throwable x) {
+            LOGGER.info("Error when claiming job: " + job.id(), x);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * A missing lease, i.e. it has never been claimed, is treated as expired.
+     */
+    private Bson leaseExpired(final ZonedDateTime now) {
+        return or(eq(LEASE_EXPIRY, null), lte(LEASE_EXPIRY, now.toInstant().toEpochMilli()));
+    }
+
+    private Bson lease(final String owner, final ZonedDateTime expiry) {
+        return combine(set(LEASE_OWNER, owner), set(LEASE_EXPIRY, expiry.toInstant().toEpochMilli()));
+    }
+
+    @Override
+    public boolean stopJobs(final List<JobOptions> jobs, final ZonedDateTime stopTime) {
+        if (jobs.isEmpty()) {
+            return true;
+        }
+        final UpdateResult result = this.jobs.updateMany(
+            in(ID, jobIds(jobs)),
+            set(STOP_TIME, stopTime.toInstant().toEpochMilli())
+        );
+        return result.wasAcknowledged();
+    }
+
+    @Override
+    public boolean updateJobs(final List<JobOptions> jobs, final ZonedDateTime lastModified) {
+        if (jobs.isEmpty()) {
+            return true;
+        }
+        final UpdateResult result = this.jobs.updateMany(
+            in(ID, jobIds(jobs)),
+            set(LAST_MODIFIED, lastModified.toInstant().toEpochMilli())
+        );
+        return result.wasAcknowledged();
+    }
+
+    private List<ObjectId> jobIds(final List<JobOptions> jobs) {
+        return jobs.stream()
+            .map(JobOptions::id)
+            .collect(Collectors.toList());
+    }
+
     @Override
     public Optional<JobOptions> getRunningJob(final Person person, final ZonedDateTime now) {
         final Bson stopTime = or(eq(STOP_TIME, null), gt(STOP_TIME, now.toInstant().toEpochMilli()));
@@ -402,6 +1002,69 @@ class MongoDb implements DatabaseService {
         return Streams.findLast(Streams.stream(jobs));
     }
 
+    @Override
+    public List<JobOptions> getRunningJobs(final Collection<ObjectId> userIds, final ZonedDateTime now) {
+        if (userIds.isEmpty()) {
+            return ImmutableList.of();
+        }
+        final Bson stopTime = or(eq(STOP_TIME, null), gt(STOP_TIME, now.toInstant().toEpochMilli()));
+        return jobs.find(and(in(USER_ID, userIds), stopTime)).into(new ArrayList<>());
+    }
+
+    /**
+     * Loads who follows whom into memory, so reading a user's followers or following doesn't read their follows.
+     * Follows made through this instance are added as they are made, but another instance's follows are only seen
+     * once the graph is reloaded every follower.graph.period seconds.
+     * The new graph is swapped in whole, after replaying the follows changed while it was read, otherwise a change
+     * written before the read but applied after it could be lost or an unfollow revived.
+     */
+    @VisibleForTesting
+    void loadFollowerGraph() {
+        final FollowerGraph graph = new FollowerGraph();
+        synchronized (followerGraphLock) {
+            followerGraphChanges = new ArrayList<>();
+        }
+        try {
+            final Iterable<Document> follows = followers.withDocumentClass(Document.class)
+                .find()
+                .projection(
+                    Projections.fields(Projections.include(FOLLOWING_ID, FOLLOWER_ID), Projections.excludeId())
+                );
+            for (final Document follow : follows) {
+                graph.add(follow.getObjectId(FOLLOWING_ID), follow.getObjectId(FOLLOWER_ID));
+            }
+            synchronized (followerGraphLock) {
+                followerGraphChanges.forEach(change -> change.accept(graph));
+                followerGraph = graph;
+            }
+        } finally {
+            synchronized (followerGraphLock) {
+                followerGraphChanges = null;
+            }
+        }
+    }
+
+    private void reloadFollowerGraph() {
+        try {
+            loadFollowerGraph();
+        } catch (final Throwable x) {
+            // Don't let a single failure stop us from ever seeing other instances' follows again.
+            LOGGER.info("error loading follower graph", x);
+        }
+    }
+
+    /**
+     * Applies a follow change, already written, to the graph and to the one being loaded if any.
+     */
+    private void changeFollowerGraph(final Consumer<FollowerGraph> change) {
+        synchronized (followerGraphLock) {
+            change.accept(followerGraph);
+            if (followerGraphChanges != null) {
+                followerGraphChanges.add(change);
+            }
+        }
+    }
+
     @Override
     public boolean addFollower(final Person person, final Person follower) {
         final Follower follow = new Follower.Builder()
@@ -411,6 +1074,7 @@ class MongoDb implements DatabaseService {
 
         try {
             followers.insertOne(follow);
+            changeFollowerGraph(graph -> graph.add(person.id(), follower.id()));
             return true;
         } catch (final Throwable x) {
             LOGGER.info("Error when inserting follow: " + follow, x);
@@ -420,37 +1084,41 @@ class MongoDb implements DatabaseService {
 
     @Override
     public boolean removeFollower(final Person person, final Person follower) {
-        return followers.deleteOne(
+        final boolean removed = followers.deleteOne(
             and(
                 eq(FOLLOWING_ID, person.id()),
                 eq(FOLLOWER_ID, follower.id())
             )
         ).wasAcknowledged();
+        changeFollowerGraph(graph -> graph.remove(person.id(), follower.id()));
+        return removed;
     }
 
     @Override
     public Set<Person> getFollowers(final Person person) {
-        final Iterable<Follower> followers = this.followers.find(eq(FOLLOWING_ID, person.id()));
-        final Set<ObjectId> ids = Streams.stream(followers)
-            .map(Follower::followerId)
-            .collect(Collectors.toSet());
-        final Iterable<Person> persons = users.find(Filters.in(ID, ids));
+        final Iterable<Person> persons = users.find(in(ID, getFollowerIds(person)));
         return ImmutableSet.copyOf(persons);
     }
 
+    @Override
+    public Set<ObjectId> getFollowerIds(final Person person) {
+        return followerGraph.getFollowerIds(person.id());
+    }
+
     @Override
     public Set<Person> getFollowing(final Person follower) {
-        final Iterable<Follower> following = followers.find(eq(FOLLOWER_ID, follower.id()));
-        final Set<ObjectId> ids = Streams.stream(following)
-            .map(Follower::userId)
-            .collect(Collectors.toSet());
-        final Iterable<Person> persons = users.find(Filters.in(ID, ids));
+        final Iterable<Person> persons = users.find(in(ID, getFollowingIds(follower)));
         return ImmutableSet.copyOf(persons);
     }
 
+    @Override
+    public Set<ObjectId> getFollowingIds(final Person follower) {
+        return followerGraph.getFollowingIds(follower.id());
+    }
+
     @Override
     public Optional<LinkCode> getLinkCode(final Person person, final LinkType type) {
-        final Bson query = and(eq(USER_ID, person.id()), eq("type", type.name()));
+        final Bson query = and(eq(USER_ID, person.id()), eq(TYPE, type.name()));
         final Iterable<LinkCode> jobs = linkCodes.find(query).sort(ORDER_BY_TIMESTAMP_DESC).limit(1);
         return Streams.findLast(Streams.stream(jobs));
     }
@@ -476,6 +1144,15 @@ class MongoDb implements DatabaseService {
         return Optional.ofNullable(untappdLinks.find(eq(UNTAPPD_NAME, untappdUserName)).first());
     }
 
+    @Override
+    public List<UntappdLink> getUntappdLinks(final Collection<ObjectId> userIds) {
+        if (userIds.isEmpty()) {
+            return ImmutableList.of();
+        }
+        final Iterable<UntappdLink> links = untappdLinks.find(in(USER_ID, userIds));
+        return ImmutableList.copyOf(links);
+    }
+
     @Override
     public boolean insertUntappdLink(final UntappdLink link) {
         try {
@@ -497,15 +1174,62 @@ class MongoDb implements DatabaseService {
         return result.wasAcknowledged();
     }
 
+    @Override
+    public boolean updateLinkLastCheckinId(final UntappdLink link, final long lastCheckinId) {
+        // Use max so a slower poll can't move the high-water mark backwards.
+        final UpdateResult result = untappdLinks.updateOne(
+            eq(ID, link.id()),
+            max("lastCheckinId", lastCheckinId)
+        );
+        return result.wasAcknowledged();
+    }
+
+    @Override
+    public Optional<Beer> getBeer(final String link) {
+        final Document beer = beers.find(eq(ID, link)).first();
+        return Optional.ofNullable(beer)
+            .map(
+                x -> new Beer.Builder()
+                    .link(link)
+                    .abv(x.getDouble(ABV))
+                    .timestamp(ZonedDateTime.ofInstant(Instant.ofEpochMilli(x.getLong(TIMESTAMP)), ZonedDateTimes.UTC))
+                    .build()
+            );
+    }
+
+    @Override
+    public boolean upsertBeer(final Beer beer) {
+        try {
+            final UpdateResult result = beers.updateOne(
+                eq(ID, beer.link()),
+                combine(set(ABV, beer.abv()), set(TIMESTAMP, beer.timestamp().toInstant().toEpochMilli())),
+                new UpdateOptions().upsert(true)
+            );
+            return result.wasAcknowledged();
+        } catch (final Throwable x) {
+            LOGGER.info("Error when upserting beer: " + beer, x);
+            return false;
+        }
+    }
+
     @VisibleForTesting
     void deleteData() {
         users.drop();
         followers.drop();
+        synchronized (followerGraphLock) {
+            followerGraph = new FollowerGraph();
+        }
         checkins.drop();
         bacCalculations.drop();
+        latestBacs.drop();
         untappdLinks.drop();
         jobs.drop();
         notifications.drop();
+        timeline.drop();
+        timelineReads.drop();
+        resumeTokens.drop();
+        linkCodes.drop();
+        beers.drop();
     }
 
     /**
@@ -516,8 +1240,14 @@ class MongoDb implements DatabaseService {
         followers.dropIndexes();
         checkins.dropIndexes();
         bacCalculations.dropIndexes();
+        latestBacs.dropIndexes();
         untappdLinks.dropIndexes();
         jobs.dropIndexes();
         notifications.dropIndexes();
+        timeline.dropIndexes();
+        timelineReads.dropIndexes();
+        resumeTokens.dropIndexes();
+        linkCodes.dropIndexes();
+        beers.dropIndexes();
     }
 }
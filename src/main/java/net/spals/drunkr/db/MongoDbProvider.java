@@ -51,7 +51,7 @@ class MongoDbProvider implements Provider<MongoDatabase> {
         LOGGER.info("MongoUri=" + mongoUri);
         final CodecRegistry pojoCodecRegistry = fromRegistries(
             MongoClient.getDefaultCodecRegistry(),
-            fromProviders(new JacksonCodecProvider(mapper))
+            fromProviders(new BsonStreamingCodecProvider(mapper), new JacksonCodecProvider(mapper))
         );
         final MongoClientURI mongoClientUri = new MongoClientURI(mongoUri);
         final MongoClient mongoClient = new MongoClient(mongoClientUri);
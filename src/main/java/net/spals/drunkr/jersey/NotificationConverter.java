@@ -31,8 +31,12 @@ class NotificationConverter implements ParamConverter<Notification> {
 
     @Override
     public Notification fromString(final String notificationId) {
+        // Fan out on read merges timeline updates into a follower's notifications, so their ids are found there too.
         final Optional<Notification> notification = dbService.getNotification(notificationId);
-        return notification.orElseThrow(() -> new NotFoundException(i18nSupport.getLabel(
+        final Optional<Notification> found = notification.isPresent()
+            ? notification
+            : dbService.getTimelineNotification(notificationId);
+        return found.orElseThrow(() -> new NotFoundException(i18nSupport.getLabel(
             "invalid.notification",
             notificationId
         )));
@@ -0,0 +1,28 @@
+package net.spals.drunkr.model;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+import net.spals.drunkr.model.field.HasTimestamp;
+
+/**
+ * A POJO representing the ABV of a beer as last fetched from its Untappd page, where timestamp is when it was fetched.
+ *
+ * @author spags
+ */
+@FreeBuilder
+public interface Beer extends HasTimestamp {
+
+    /**
+     * The beer's page relative to Untappd, which is how checkins refer to a beer.
+     */
+    String link();
+
+    /**
+     * The beer's ABV, or 0.0 if the page had no ABV or could not be read.
+     */
+    double abv();
+
+    class Builder extends Beer_Builder {
+
+    }
+}
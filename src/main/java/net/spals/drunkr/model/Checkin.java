@@ -34,6 +34,12 @@ public interface Checkin extends HasTimestamp, HasId {
 
     Style style();
 
+    /**
+     * The id Untappd gave this checkin, absent for checkins made through drunkr.
+     * A checkin from Untappd is stored at most once per id.
+     */
+    Optional<Long> untappdId();
+
     class Builder extends Checkin_Builder implements HasIdBuilder<Builder> {
 
         public Builder() {
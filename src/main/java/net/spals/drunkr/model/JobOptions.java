@@ -19,7 +19,7 @@ import net.spals.drunkr.service.DrunkrJob;
  */
 @FreeBuilder
 @JsonDeserialize(builder = JobOptions.Builder.class)
-public interface JobOptions extends HasId, HasLastModified {
+public interface JobOptions extends HasId, HasLastModified, HasLease {
 
     ObjectId userId();
 
@@ -40,6 +40,29 @@ public interface JobOptions extends HasId, HasLastModified {
      */
     Optional<Long> period();
 
+    /**
+     * Running total of the grams of alcohol of the job's checkins up to {@link #checkinsThrough()}.
+     * Persisted so a restarted job resumes from here instead of summing every checkin again.
+     */
+    double gramsOfAlcohol();
+
+    /**
+     * Number of checkins included in {@link #gramsOfAlcohol()}.
+     */
+    int checkinCount();
+
+    /**
+     * The high-water mark of the running total, checkins after this time have yet to be added.
+     * Empty if the job hasn't added any checkins yet.
+     */
+    Optional<ZonedDateTime> checkinsThrough();
+
+    /**
+     * Incremented when a checkin after {@link #checkinsThrough()} is changed, so a run which read its checkins
+     * before the change doesn't move the high-water mark past it.
+     */
+    long version();
+
     class Builder extends JobOptions_Builder implements HasIdBuilder<Builder> {
 
         private final ZonedDateTime now;
@@ -49,6 +72,9 @@ public interface JobOptions extends HasId, HasLastModified {
             // Set the startTime and last modified as now.
             startTime(now);
             lastModified(now);
+            gramsOfAlcohol(0.0);
+            checkinCount(0);
+            version(0L);
         }
 
         public JobOptions build() {
@@ -15,7 +15,7 @@ import net.spals.drunkr.model.field.*;
  */
 @FreeBuilder
 @JsonDeserialize(builder = Notification.Builder.class)
-public interface Notification extends HasTimestamp, HasId {
+public interface Notification extends HasTimestamp, HasId, HasLease {
 
     /**
      * The user the notification is destined to.
@@ -29,6 +29,13 @@ public interface UntappdLink extends HasId {
      */
     Optional<String> accessToken();
 
+    /**
+     * The newest Untappd checkin id we have stored for this user, later polls only fetch checkins after it.
+     *
+     * @return the high-water mark of the user's Untappd checkins
+     */
+    Optional<Long> lastCheckinId();
+
     class Builder extends UntappdLink_Builder implements HasIdBuilder<Builder> {
 
         public Builder() {
@@ -0,0 +1,32 @@
+package net.spals.drunkr.model;
+
+import java.util.Optional;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import org.bson.types.ObjectId;
+import org.inferred.freebuilder.FreeBuilder;
+
+import net.spals.drunkr.model.field.HasTimestamp;
+
+/**
+ * How many Untappd API requests a user's access token has left this hour, as of the timestamp of our last request.
+ *
+ * @author spags
+ */
+@FreeBuilder
+@JsonDeserialize(builder = UntappdQuota.Builder.class)
+public interface UntappdQuota extends HasTimestamp {
+
+    ObjectId userId();
+
+    int remaining();
+
+    /**
+     * The hourly limit of the access token if Untappd told us.
+     */
+    Optional<Integer> limit();
+
+    class Builder extends UntappdQuota_Builder {
+
+    }
+}
@@ -0,0 +1,22 @@
+package net.spals.drunkr.model.field;
+
+import java.time.ZonedDateTime;
+import java.util.Optional;
+
+/**
+ * Represents an object claimed by one running instance at a time, until its lease expires.
+ *
+ * @author spags
+ */
+public interface HasLease {
+
+    /**
+     * The instance holding the lease, empty if it has never been claimed.
+     */
+    Optional<String> leaseOwner();
+
+    /**
+     * When the lease runs out, after which any instance may claim it.
+     */
+    Optional<ZonedDateTime> leaseExpiry();
+}
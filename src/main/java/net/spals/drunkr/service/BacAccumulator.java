@@ -0,0 +1,56 @@
+package net.spals.drunkr.service;
+
+import com.google.inject.Inject;
+
+import net.spals.appbuilder.annotations.service.AutoBindSingleton;
+import net.spals.drunkr.db.DatabaseService;
+import net.spals.drunkr.model.*;
+
+/**
+ * Keeps the running totals of jobs, see {@link JobOptions#gramsOfAlcohol()}, correct when checkins are changed
+ * outside of a {@link DrunkrJob}, so the job never has to sum every checkin of its session again.
+ * <p>
+ * Only checkins a job has already added to its total need correcting, anything newer the job will read itself.
+ *
+ * @author spags
+ */
+@AutoBindSingleton
+public class BacAccumulator {
+
+    private final DatabaseService dbService;
+    private final BacCalculator calculator;
+
+    @Inject
+    BacAccumulator(final DatabaseService dbService) {
+        this.dbService = dbService;
+        calculator = BacCalculator.get();
+    }
+
+    public boolean added(final Checkin checkin) {
+        return correct(checkin, 1);
+    }
+
+    public boolean updated(final Checkin checkin, final Checkin updatedCheckin) {
+        // The timestamp may have changed as well, so treat it as a removal and an addition.
+        final boolean removed = removed(checkin);
+        final boolean added = added(updatedCheckin);
+        return removed && added;
+    }
+
+    public boolean removed(final Checkin checkin) {
+        return correct(checkin, -1);
+    }
+
+    public boolean removedAll(final Person person) {
+        return dbService.resetJobs(person);
+    }
+
+    private boolean correct(final Checkin checkin, final int sign) {
+        return dbService.correctJobs(
+            checkin.userId(),
+            checkin.timestamp(),
+            sign * calculator.drinkToGramsOfAlcohol(checkin),
+            sign
+        );
+    }
+}
@@ -0,0 +1,341 @@
+package net.spals.drunkr.service;
+
+import static java.util.stream.Collectors.*;
+
+import javax.annotation.PostConstruct;
+import javax.validation.constraints.NotNull;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+
+import com.netflix.governator.annotations.Configuration;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.spals.appbuilder.annotations.service.AutoBindSingleton;
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.db.DatabaseService;
+import net.spals.drunkr.i18n.I18nSupport;
+import net.spals.drunkr.model.*;
+import net.spals.drunkr.service.untappd.CheckinPoll;
+import net.spals.drunkr.service.untappd.CheckinProvider;
+
+/**
+ * An alternative to running a {@link DrunkrJob} per session, this evaluates every running job in a single tick.
+ * <p>
+ * Each tick loads the people, untappd links and checkins of all running jobs with a handful of queries,
+ * calculates every BAC, then writes the results back in bulk. So the number of round trips to the database per tick
+ * stays the same no matter how many sessions are running. Requests to third parties, i.e. untappd, are still per job.
+ * <p>
+ * Enabled by setting job.engine to {@link #BATCH}, then jobs are no longer scheduled per session
+ * and a job's own period is ignored in favor of job.period.
+ *
+ * @author spags
+ */
+@AutoBindSingleton
+public class BacBatchEngine implements Runnable {
+
+    public static final String SESSION = "session";
+    public static final String BATCH = "batch";
+    private static final Logger LOGGER = LoggerFactory.getLogger(BacBatchEngine.class);
+    private final BacMessage bacMessage;
+    private final Map<String, CheckinProvider> checkinProviders;
+    private final DatabaseService dbService;
+    private final ExecutorServiceFactory executorServiceFactory;
+    private final FollowersNotifier notifier;
+    private final I18nSupport i18nSupport;
+    private final BacCalculator calculator;
+    /**
+     * Similar to {@link DrunkrJob}, this is only maintained in memory and not the DB, keyed by the job's id.
+     */
+    private final Map<ObjectId, ZonedDateTime> lastNotified = new ConcurrentHashMap<>();
+    /**
+     * The jobs evaluated by the last tick keyed by the job's id, so we can tell which reached their stop time since.
+     */
+    private final Map<ObjectId, JobOptions> runningJobs = new ConcurrentHashMap<>();
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("job.engine")
+    private String engine = SESSION;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("job.period")
+    private long period = 60;
+    @SuppressWarnings("FieldMayBeFinal")
+    @Configuration("job.notification")
+    private long notification = 30;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("untappd.checkin.provider")
+    private String checkinProviderKey = "api";
+    private CheckinProvider checkinProvider;
+
+    @Inject
+    BacBatchEngine(
+        final BacMessage bacMessage,
+        final Map<String, CheckinProvider> checkinProviders,
+        final DatabaseService dbService,
+        final ExecutorServiceFactory executorServiceFactory,
+        final FollowersNotifier notifier,
+        final I18nSupport i18nSupport
+    ) {
+        this.bacMessage = bacMessage;
+        this.checkinProviders = checkinProviders;
+        this.dbService = dbService;
+        this.executorServiceFactory = executorServiceFactory;
+        this.notifier = notifier;
+        this.i18nSupport = i18nSupport;
+        calculator = BacCalculator.get();
+    }
+
+    @PostConstruct
+    void submit() {
+        checkinProvider = checkinProviders.get(checkinProviderKey);
+        if (!isEnabled()) {
+            return;
+        }
+        LOGGER.info("starting batch bac engine: period=" + period);
+        final Key key = new Key.Builder(BacBatchEngine.class)
+            .build();
+        final ScheduledExecutorService executor = executorServiceFactory.createSingleThreadScheduledExecutor(key);
+        executor.scheduleAtFixedRate(this, 0, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return true if running jobs are evaluated by this engine instead of per session
+     */
+    public boolean isEnabled() {
+        return BATCH.equals(engine);
+    }
+
+    @Override
+    public void run() {
+        try {
+            tick(ZonedDateTimes.nowUTC());
+        } catch (final Throwable x) {
+            // Don't let a single bad tick stop all future ticks.
+            LOGGER.info("error running batch bac engine", x);
+        }
+    }
+
+    @VisibleForTesting
+    void tick(final ZonedDateTime now) {
+        final List<JobOptions> jobs = dbService.allRunningJobs(now).stream()
+            .filter(job -> ZonedDateTimes.isOnOrAfter(now, job.startTime()))
+            .collect(toList());
+        final Set<ObjectId> jobIds = jobs.stream().map(JobOptions::id).collect(toSet());
+        // No longer running as their stop time has passed, jobs stopped early still had a later stop time last tick.
+        final List<JobOptions> finishedJobs = runningJobs.values().stream()
+            .filter(job -> !jobIds.contains(job.id()))
+            .filter(job -> job.stopTime().map(x -> !x.isAfter(now)).orElse(false))
+            .collect(toList());
+        runningJobs.keySet().retainAll(jobIds);
+        jobs.forEach(job -> runningJobs.put(job.id(), job));
+        lastNotified.keySet().retainAll(jobIds);
+        if (jobs.isEmpty() && finishedJobs.isEmpty()) {
+            return;
+        }
+        LOGGER.info("running batch bac engine at " + now + " for jobs: " + jobs.size());
+
+        final Set<ObjectId> userIds = jobs.stream()
+            .map(JobOptions::userId)
+            .collect(toSet());
+        final Set<ObjectId> finishedUserIds = finishedJobs.stream()
+            .map(JobOptions::userId)
+            .collect(toSet());
+        final Map<ObjectId, Person> persons = dbService.getPersons(Sets.union(userIds, finishedUserIds)).stream()
+            .collect(toMap(Person::id, Function.identity()));
+        final Map<ObjectId, UntappdLink> links = dbService.getUntappdLinks(userIds).stream()
+            .collect(toMap(UntappdLink::userId, Function.identity(), (x, y) -> x));
+        // Running jobs are sorted by start time, so the first job started the earliest.
+        final Map<ObjectId, List<Checkin>> checkins = dbService.getCheckinsByUsers(
+            userIds,
+            jobs.stream().findFirst().map(JobOptions::startTime),
+            Optional.of(now)
+        ).stream().collect(groupingBy(Checkin::userId));
+
+        final Batch batch = new Batch();
+        finishedJobs.forEach(job -> stopped(batch, job, Optional.ofNullable(persons.get(job.userId())), now));
+        final List<JobOptions> evaluatedJobs = new ArrayList<>();
+        for (final JobOptions job : jobs) {
+            if (persons.containsKey(job.userId())) {
+                poll(batch, job, Optional.ofNullable(links.get(job.userId())));
+                evaluatedJobs.add(job);
+            } else {
+                LOGGER.info("Person no longer exists stopping job: " + job.userId());
+                batch.stoppedJobs.add(job);
+            }
+        }
+
+        // Persist the untappd checkins, then mark every job as having recorded all checkins up to now.
+        // Polls can overlap with what is already stored, so only the checkins we hadn't stored are new to the BAC.
+        final Optional<List<Checkin>> savedCheckins = dbService.upsertCheckins(batch.untappdCheckins);
+        final List<Checkin> newCheckins;
+        if (savedCheckins.isPresent()) {
+            // Jobs whose poll stopped early keep their last modified time, so the next tick asks for the rest.
+            dbService.updateJobs(batch.polledJobs, now);
+            // Only move the links' high-water marks once the checkins are saved, or the next poll would skip them.
+            batch.lastCheckinIds.forEach(this::updateLastCheckinId);
+            newCheckins = savedCheckins.get();
+        } else {
+            LOGGER.info("failed to save checkins : " + batch.untappdCheckins);
+            // Same as DrunkrJob, unsaved checkins still count towards this tick as we will fetch them again.
+            newCheckins = batch.untappdCheckins;
+        }
+        final Map<ObjectId, List<Checkin>> untappdCheckins = newCheckins.stream()
+            .collect(groupingBy(Checkin::userId));
+
+        for (final JobOptions job : evaluatedJobs) {
+            evaluate(
+                batch,
+                job,
+                persons.get(job.userId()),
+                checkins.getOrDefault(job.userId(), ImmutableList.of()),
+                untappdCheckins.getOrDefault(job.userId(), ImmutableList.of()),
+                now
+            );
+        }
+
+        dbService.insertBacCalculations(batch.calculations);
+        // Update the stop time as we consider any job with a stop time before now as completed.
+        dbService.stopJobs(batch.stoppedJobs, now);
+        batch.stoppedJobs.forEach(job -> runningJobs.remove(job.id()));
+        dbService.insertNotifications(batch.notifications);
+        LOGGER.info("finished batch bac engine at " + now);
+    }
+
+    private void poll(final Batch batch, final JobOptions job, final Optional<UntappdLink> link) {
+        final CheckinPoll polled = checkinProvider.get(link, Optional.of(job.lastModified()));
+        final List<Checkin> untappdCheckins = polled.checkins();
+        batch.untappdCheckins.addAll(untappdCheckins);
+        if (!polled.complete()) {
+            LOGGER.info("untappd poll stopped early, polling again from: " + job.lastModified());
+            return;
+        }
+        batch.polledJobs.add(job);
+        final Optional<Long> lastCheckinId = untappdCheckins.stream()
+            .map(Checkin::untappdId)
+            .filter(Optional::isPresent)
+            .map(Optional::get)
+            .max(Long::compare);
+        if (link.isPresent() && lastCheckinId.isPresent()) {
+            batch.lastCheckinIds.merge(link.get(), lastCheckinId.get(), Math::max);
+        }
+    }
+
+    /**
+     * @param userCheckins    the stored checkins of the user, read before this tick's untappd checkins were saved
+     * @param untappdCheckins this tick's untappd checkins that weren't already stored
+     */
+    private void evaluate(
+        final Batch batch,
+        final JobOptions job,
+        final Person person,
+        final List<Checkin> userCheckins,
+        final List<Checkin> untappdCheckins,
+        final ZonedDateTime now
+    ) {
+        // Drunkr checkins were loaded from the earliest start of all jobs, so only consider this job's.
+        final List<Checkin> drunkrCheckins = userCheckins.stream()
+            .filter(checkin -> ZonedDateTimes.isOnOrAfter(checkin.timestamp(), job.startTime()))
+            .collect(toList());
+
+        final int totalCheckins = untappdCheckins.size() + drunkrCheckins.size();
+        final double gramsOfAlcohol = Stream.concat(untappdCheckins.stream(), drunkrCheckins.stream())
+            .map(calculator::drinkToGramsOfAlcohol)
+            .reduce(0.0, Double::sum);
+        final double bac = calculator.calculate(person, gramsOfAlcohol, job.startTime(), now);
+        final double roundedBac = calculator.round(bac);
+
+        batch.calculations.add(
+            new BacCalculation.Builder()
+                .userId(person.id())
+                .bac(roundedBac)
+                .timestamp(now)
+                .build()
+        );
+
+        final String message = i18nSupport.getLabel(
+            "job.bac.state",
+            person.userName(),
+            roundedBac,
+            bacMessage.get(bac),
+            totalCheckins
+        );
+        final ZonedDateTime notified = lastNotified.get(job.id());
+        if (notified == null || ChronoUnit.MINUTES.between(notified, now) >= notification) {
+            lastNotified.put(job.id(), now);
+            // Written with the rest of the tick's notifications, instead of once per job.
+            batch.notifications.addAll(notifier.createNotifications(person, message, job.source(), now));
+        }
+
+        // Same 10 minute window as a drunkr job, see DrunkrJob#run.
+        if (roundedBac == 0.0 && now.isAfter(job.startTime().plusMinutes(10))) {
+            LOGGER.info("sober canceling job for person=" + person.userName() + " startTime=" + job.startTime());
+            batch.stoppedJobs.add(job);
+            batch.notifications.add(
+                new Notification.Builder()
+                    .userId(person.id())
+                    .message(i18nSupport.getLabel("job.stopping.sober", person.userName()))
+                    .source(job.source())
+                    .timestamp(now)
+                    .build()
+            );
+        }
+    }
+
+    /**
+     * Same as DrunkrJob, let the user know their job reached its stop time.
+     */
+    private void stopped(
+        final Batch batch,
+        final JobOptions job,
+        final Optional<Person> person,
+        final ZonedDateTime now
+    ) {
+        if (!person.isPresent()) {
+            return;
+        }
+        LOGGER.info("stop time reached for person=" + person.get().userName() + " stopTime=" + job.stopTime());
+        batch.notifications.add(
+            new Notification.Builder()
+                .userId(person.get().id())
+                .message(i18nSupport.getLabel("job.stopping.stopped", person.get().userName()))
+                .source(job.source())
+                .timestamp(now)
+                .build()
+        );
+    }
+
+    private void updateLastCheckinId(final UntappdLink link, final long lastCheckinId) {
+        if (!dbService.updateLinkLastCheckinId(link, lastCheckinId)) {
+            LOGGER.info("failed to update last untappd checkin for link: " + link.id());
+        }
+    }
+
+    /**
+     * Everything a single tick writes back to the database.
+     */
+    private static class Batch {
+
+        private final List<Checkin> untappdCheckins = new ArrayList<>();
+        private final List<JobOptions> polledJobs = new ArrayList<>();
+        private final Map<UntappdLink, Long> lastCheckinIds = new HashMap<>();
+        private final List<BacCalculation> calculations = new ArrayList<>();
+        private final List<JobOptions> stoppedJobs = new ArrayList<>();
+        private final List<Notification> notifications = new ArrayList<>();
+    }
+}
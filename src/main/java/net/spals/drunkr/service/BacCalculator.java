@@ -8,8 +8,7 @@ import java.util.Objects;
 import com.google.common.base.Preconditions;
 
 import net.spals.drunkr.common.ZonedDateTimes;
-import net.spals.drunkr.model.Checkin;
-import net.spals.drunkr.model.Gender;
+import net.spals.drunkr.model.*;
 
 /**
  * Uses the 'Widmark Formula' to calculate blood alcohol content or BAC.
@@ -46,6 +45,37 @@ class BacCalculator {
         return Math.max(bac, 0.0);
     }
 
+    /**
+     * Calculates the person's BAC for the alcohol consumed during a session.
+     * If the session has yet to start no time has elapsed.
+     *
+     * @param person         the individual drinking
+     * @param gramsOfAlcohol grams of alcohol consumed during the session
+     * @param startTime      the start of the session
+     * @param now            the time of the calculation
+     * @return blood alcohol content of the individual
+     */
+    double calculate(
+        final Person person,
+        final double gramsOfAlcohol,
+        final ZonedDateTime startTime,
+        final ZonedDateTime now
+    ) {
+        final double bodyWeight = poundsToGrams(person.weight());
+        final double hours = now.isAfter(startTime) ? durationInHours(startTime, now) : 0.0;
+        return calculate(gramsOfAlcohol, bodyWeight, person.gender(), hours);
+    }
+
+    /**
+     * Rounds a BAC to the precision we store and display, e.g. .0294 becomes .029.
+     *
+     * @param bac blood alcohol content
+     * @return the rounded blood alcohol content
+     */
+    double round(final double bac) {
+        return Math.round(bac * 1000) / 1000.0;
+    }
+
     /**
      * The water density constant of a gender.
      *
@@ -5,9 +5,9 @@ import javax.validation.constraints.NotNull;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Stream;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 
@@ -16,13 +16,13 @@ import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
-import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
 import net.spals.drunkr.common.ZonedDateTimes;
 import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.i18n.I18nSupport;
 import net.spals.drunkr.model.*;
+import net.spals.drunkr.service.untappd.CheckinPoll;
 import net.spals.drunkr.service.untappd.CheckinProvider;
+import net.spals.drunkr.service.untappd.UntappdBudget;
 
 /**
  * Calculates a user's BAC based on a starting time of drinking and their checkins to Untappd.
@@ -30,6 +30,8 @@ import net.spals.drunkr.service.untappd.CheckinProvider;
  * <p>
  * We have two sources of checkins. The checkins we store in our database and the ones we gather from third parties, untappd.
  * After getting checkins from outside sources we will store them in our database. So we only poll for checkins after {@link #lastModified}.
+ * We poll less often while the user isn't checking in, see {@link UntappdPoller}, or is running out of Untappd quota,
+ * see {@link UntappdBudget}.
  *
  * @author spags
  */
@@ -39,9 +41,12 @@ public class DrunkrJob implements Runnable {
     private final BacMessage bacMessage;
     private final Map<String, CheckinProvider> checkinProviders;
     private final DatabaseService dbService;
-    private final ExecutorServiceFactory executorServiceFactory;
     private final FollowersNotifier notifier;
     private final I18nSupport i18nSupport;
+    private final Leases leases;
+    private final UntappdPoller poller;
+    private final UntappdBudget budget;
+    private final SessionScheduler scheduler;
     private final BacCalculator calculator;
     private final JobOptions options;
     @SuppressWarnings("FieldMayBeFinal")
@@ -69,17 +74,23 @@ public class DrunkrJob implements Runnable {
         final BacMessage bacMessage,
         final Map<String, CheckinProvider> checkinProviders,
         final DatabaseService dbService,
-        final ExecutorServiceFactory executorServiceFactory,
         final FollowersNotifier notifier,
         final I18nSupport i18nSupport,
+        final Leases leases,
+        final UntappdPoller poller,
+        final UntappdBudget budget,
+        final SessionScheduler scheduler,
         @Assisted final JobOptions options
     ) {
         this.bacMessage = bacMessage;
         this.checkinProviders = checkinProviders;
         this.dbService = dbService;
-        this.executorServiceFactory = executorServiceFactory;
         this.notifier = notifier;
         this.i18nSupport = i18nSupport;
+        this.leases = leases;
+        this.poller = poller;
+        this.budget = budget;
+        this.scheduler = scheduler;
         this.options = options;
         calculator = BacCalculator.get();
         lastModified = options.lastModified();
@@ -95,43 +106,98 @@ public class DrunkrJob implements Runnable {
     @Override
     public void run() {
         final ZonedDateTime now = ZonedDateTimes.nowUTC();
+        // Renew our lease every run, if we couldn't then another instance has taken over the job.
+        final Optional<JobOptions> claimed = dbService.claimJob(options, leases.owner(), now, leases.expiry(now));
+        if (!claimed.isPresent()) {
+            LOGGER.info("Job claimed by another instance shutting down job: " + options.id());
+            shutdown(options.userId());
+            return;
+        }
+        // The job may have been stopped through another instance, which can only stop its own sessions.
+        // Reaching our own stop time is handled after this run, so the user still hears their session stopped.
+        final boolean stoppedElsewhere = claimed.get().stopTime()
+            .filter(stopTime -> !stopTime.isAfter(now))
+            .filter(stopTime -> !options.stopTime().map(stopTime::isEqual).orElse(false))
+            .isPresent();
+        if (stoppedElsewhere) {
+            LOGGER.info("Job was stopped shutting down job: " + options.id());
+            shutdown(options.userId());
+            return;
+        }
         final Optional<Person> optionalPerson = dbService.getPerson(options.userId().toHexString());
 
         if (!optionalPerson.isPresent()) {
             LOGGER.info("Person no longer exists shutting down job: " + options.userId());
             // Update the stop time as we consider any job with a stop time before now as completed.
             dbService.stopJob(options, now);
-            shutdown(options.id());
+            shutdown(options.userId());
             return;
         }
         final Person person = optionalPerson.get();
         LOGGER.info("running drunk job for person " + person.userName() + " at " + now + " with last " + lastModified);
 
-        // Drunkr Checkins via our clients.
-        final List<Checkin> drunkrCheckins = dbService.getCheckins(
-            person,
-            Optional.of(options.startTime()),
-            Optional.of(now)
-        );
+        // The running total of the session as stored, which corrections and other runs may have moved since our last.
+        // So each run only reads the checkins after its high-water mark, instead of every checkin of the session.
+        JobOptions job = claimed.get();
 
-        // Untappd Checkins via our untappd services.
-        final List<Checkin> untappdCheckins = checkinProvider.get(
-            dbService.getUntappdLink(person),
-            Optional.of(lastModified)
-        );
+        // Drunkr Checkins via our clients, only those we haven't already added to the running total.
+        final List<Checkin> drunkrCheckins = getNewCheckins(person, job, now);
+
+        // Untappd Checkins via our untappd services, unless we are backing off as the user hasn't checked in lately.
+        final boolean poll = poller.shouldPoll(person.id(), now) && canPoll(person, now);
+        final Optional<UntappdLink> link = poll ? dbService.getUntappdLink(person) : Optional.empty();
+        final CheckinPoll polled = poll
+            ? checkinProvider.get(link, Optional.of(lastModified))
+            : CheckinPoll.of(ImmutableList.of());
+        final List<Checkin> untappdCheckins = polled.checkins();
+        if (poll) {
+            poller.polled(person.id(), now, !untappdCheckins.isEmpty() || !drunkrCheckins.isEmpty());
+        } else if (!drunkrCheckins.isEmpty()) {
+            poller.checkedIn(person.id());
+        }
 
         // Persist the untappd checkins, but we want to persist after we get the already persisted results.
-        final boolean savedCheckins = dbService.insertCheckins(untappdCheckins);
-        if (!savedCheckins) {
+        // Polls can overlap, so only the checkins we hadn't already stored are new to the running total.
+        final Optional<List<Checkin>> savedCheckins = dbService.upsertCheckins(untappdCheckins);
+        if (!savedCheckins.isPresent()) {
             // Oops we failed to save checkins, lets log it and try to save next time.
             LOGGER.info("failed to save checkins : " + untappdCheckins);
-        } else {
+        } else if (poll && polled.complete()) {
             // Now we've recorded all checkins up to this point so mark lastRun.
             lastModified = now;
-            dbService.updateJob(options, lastModified);
+            link.ifPresent(x -> updateLastCheckinId(x, untappdCheckins));
+        } else if (poll) {
+            LOGGER.info("untappd poll stopped early, polling again from: " + lastModified);
         }
 
-        final int totalCheckins = untappdCheckins.size() + drunkrCheckins.size();
+        // Unsaved untappd checkins still count towards this run, but not the running total as we will fetch them again.
+        final List<Checkin> newUntappdCheckins = savedCheckins.orElse(ImmutableList.of());
+        List<Checkin> newCheckins = withCheckins(drunkrCheckins, newUntappdCheckins);
+        final List<Checkin> unsavedCheckins = savedCheckins.isPresent() ? ImmutableList.of() : untappdCheckins;
+
+        Optional<JobOptions> accumulated = accumulate(job, newCheckins, now);
+        if (!accumulated.isPresent()) {
+            // Checkins changed or another run moved the high-water mark since we read the job,
+            // so read it again and only add the checkins after it.
+            final Optional<JobOptions> reread = dbService.getJob(options.id().toHexString());
+            if (reread.isPresent()) {
+                job = reread.get();
+                newCheckins = withCheckins(getNewCheckins(person, job, now), newUntappdCheckins);
+                accumulated = accumulate(job, newCheckins, now);
+            }
+        }
+        double totalGrams = sumGramsOfAlcohol(unsavedCheckins);
+        int totalCheckins = unsavedCheckins.size();
+        if (accumulated.isPresent()) {
+            // The stored totals also include any corrections from checkins being changed or removed.
+            totalGrams += accumulated.get().gramsOfAlcohol();
+            totalCheckins += accumulated.get().checkinCount();
+        } else {
+            // Leave the high-water mark alone so the next run reads these checkins again.
+            LOGGER.info("failed to update running total for job: " + options.id());
+            totalGrams += job.gramsOfAlcohol() + sumGramsOfAlcohol(newCheckins);
+            totalCheckins += job.checkinCount() + newCheckins.size();
+        }
         LOGGER.info(
             "number of total checkins for user : "
                 + totalCheckins
@@ -139,14 +205,8 @@ public class DrunkrJob implements Runnable {
                 + person.userName()
         );
 
-        final double gramsOfAlcohol = Stream.concat(untappdCheckins.stream(), drunkrCheckins.stream())
-            .map(calculator::drinkToGramsOfAlcohol)
-            .reduce(0.0, Double::sum);
-        final double bodyWeight = calculator.poundsToGrams(person.weight());
-        final double hours = calculator.durationInHours(options.startTime());
-        final double bac = calculator.calculate(gramsOfAlcohol, bodyWeight, person.gender(), hours);
-
-        final double roundedBac = Math.round(bac * 1000) / 1000.0;
+        final double bac = calculator.calculate(person, totalGrams, options.startTime(), now);
+        final double roundedBac = calculator.round(bac);
 
         saveBac(person, roundedBac, now);
 
@@ -203,11 +263,68 @@ public class DrunkrJob implements Runnable {
         }
     }
 
-    private void shutdown(final ObjectId id) {
-        final Key key = new Key.Builder(DrunkrJob.class)
-            .addTags(id.toHexString())
-            .build();
-        executorServiceFactory.stop(key);
+    private List<Checkin> getNewCheckins(final Person person, final JobOptions job, final ZonedDateTime now) {
+        final ZonedDateTime fromTime = job.checkinsThrough()
+            .map(x -> x.plus(1, ChronoUnit.MILLIS))
+            .orElse(options.startTime());
+        return dbService.getCheckins(person, Optional.of(fromTime), Optional.of(now));
+    }
+
+    /**
+     * The untappd checkins we saved this run are new to the running total whatever their timestamp,
+     * but reading the stored checkins only finds those after the high-water mark.
+     */
+    private List<Checkin> withCheckins(final List<Checkin> storedCheckins, final List<Checkin> savedCheckins) {
+        final Map<ObjectId, Checkin> checkins = new LinkedHashMap<>();
+        storedCheckins.forEach(x -> checkins.put(x.id(), x));
+        savedCheckins.forEach(x -> checkins.putIfAbsent(x.id(), x));
+        return ImmutableList.copyOf(checkins.values());
+    }
+
+    /**
+     * Adds the new checkins to the running total, unless the job has changed since we read it.
+     */
+    private Optional<JobOptions> accumulate(
+        final JobOptions job,
+        final List<Checkin> newCheckins,
+        final ZonedDateTime now
+    ) {
+        return dbService.accumulateJob(job, sumGramsOfAlcohol(newCheckins), newCheckins.size(), now, lastModified);
+    }
+
+    private boolean canPoll(final Person person, final ZonedDateTime now) {
+        if (budget.canPoll(person.id(), now)) {
+            return true;
+        }
+        LOGGER.info(
+            "deferring untappd poll, low on quota for person " + person.userName() + ": " + budget.getQuota(person.id())
+        );
+        return false;
+    }
+
+    /**
+     * Only move the link's high-water mark once the checkins are saved, otherwise the next poll would skip them.
+     */
+    private void updateLastCheckinId(final UntappdLink link, final List<Checkin> checkins) {
+        final Optional<Long> lastCheckinId = checkins.stream()
+            .map(Checkin::untappdId)
+            .filter(Optional::isPresent)
+            .map(Optional::get)
+            .max(Long::compare);
+        if (lastCheckinId.isPresent() && !dbService.updateLinkLastCheckinId(link, lastCheckinId.get())) {
+            LOGGER.info("failed to update last untappd checkin for link: " + link.id());
+        }
+    }
+
+    private double sumGramsOfAlcohol(final List<Checkin> checkins) {
+        return checkins.stream()
+            .map(calculator::drinkToGramsOfAlcohol)
+            .reduce(0.0, Double::sum);
+    }
+
+    private void shutdown(final ObjectId userId) {
+        poller.stopped(userId);
+        scheduler.stop(userId);
     }
 
     private void saveBac(final Person person, final double bac, final ZonedDateTime now) {
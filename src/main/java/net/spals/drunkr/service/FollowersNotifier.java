@@ -1,10 +1,17 @@
 package net.spals.drunkr.service;
 
 import java.time.ZonedDateTime;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import net.spals.appbuilder.annotations.service.AutoBindSingleton;
 import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.model.*;
@@ -15,11 +22,14 @@ import net.spals.drunkr.model.*;
 @AutoBindSingleton
 public class FollowersNotifier {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(FollowersNotifier.class);
     private final DatabaseService dbService;
+    private final NotificationTimeline timeline;
 
     @Inject
-    FollowersNotifier(final DatabaseService dbService) {
+    FollowersNotifier(final DatabaseService dbService, final NotificationTimeline timeline) {
         this.dbService = dbService;
+        this.timeline = timeline;
     }
 
     void notify(
@@ -29,25 +39,102 @@ public class FollowersNotifier {
         final ZonedDateTime timestamp
     ) {
         // Notify the user initiated the job.
-        final Notification notification = new Notification.Builder()
+        dbService.insertNotification(createNotification(person, message, source, timestamp));
+
+        if (timeline.isFanOutOnRead()) {
+            publish(person, message, source, timestamp);
+            return;
+        }
+
+        // Notify all of the user's followers, we only need their ids and write them all at once.
+        final List<Notification> followerNotifications = createFollowerNotifications(
+            person,
+            message,
+            source,
+            timestamp
+        );
+        final int inserted = dbService.insertNotificationsUnordered(followerNotifications);
+        if (inserted < followerNotifications.size()) {
+            LOGGER.info(
+                "failed to notify " + (followerNotifications.size() - inserted) + " of "
+                    + followerNotifications.size() + " followers for user: " + person.userName()
+            );
+        }
+    }
+
+    /**
+     * Same as {@link #notify(Person, String, Source, ZonedDateTime)} but the notifications are returned rather than
+     * written, so notifying many users can write all of them at once. A timeline update is still published.
+     *
+     * @return the notification for the user, and with fan out on write one for each of their followers
+     */
+    List<Notification> createNotifications(
+        final Person person,
+        final String message,
+        final Source source,
+        final ZonedDateTime timestamp
+    ) {
+        final Notification notification = createNotification(person, message, source, timestamp);
+        if (timeline.isFanOutOnRead()) {
+            publish(person, message, source, timestamp);
+            return ImmutableList.of(notification);
+        }
+        return ImmutableList.<Notification>builder()
+            .add(notification)
+            .addAll(createFollowerNotifications(person, message, source, timestamp))
+            .build();
+    }
+
+    private Notification createNotification(
+        final Person person,
+        final String message,
+        final Source source,
+        final ZonedDateTime timestamp
+    ) {
+        return new Notification.Builder()
             .userId(person.id())
             .message(message)
             .source(source)
             .timestamp(timestamp)
             .build();
-        dbService.insertNotification(notification);
-
-        // Notify all of the user's followers.
-        final Set<Person> followers = dbService.getFollowers(person);
-        for (final Person follower : followers) {
-            final Notification followerNotification = new Notification.Builder()
-                .userId(follower.id())
-                .sourceUserId(person.id())
-                .source(source)
-                .message(message)
-                .timestamp(timestamp)
-                .build();
-            dbService.insertNotification(followerNotification);
+    }
+
+    private List<Notification> createFollowerNotifications(
+        final Person person,
+        final String message,
+        final Source source,
+        final ZonedDateTime timestamp
+    ) {
+        final Set<ObjectId> followerIds = dbService.getFollowerIds(person);
+        return followerIds.stream()
+            .map(
+                followerId -> new Notification.Builder()
+                    .userId(followerId)
+                    .sourceUserId(person.id())
+                    .source(source)
+                    .message(message)
+                    .timestamp(timestamp)
+                    .build()
+            )
+            .collect(Collectors.toList());
+    }
+
+    private void publish(
+        final Person person,
+        final String message,
+        final Source source,
+        final ZonedDateTime timestamp
+    ) {
+        // Store the update once, followers will merge it into their notifications when they read them.
+        final Notification update = new Notification.Builder()
+            .userId(person.id())
+            .sourceUserId(person.id())
+            .source(source)
+            .message(message)
+            .timestamp(timestamp)
+            .build();
+        if (!timeline.publish(update)) {
+            LOGGER.info("failed to publish timeline update for user: " + person.userName());
         }
     }
 }
@@ -0,0 +1,118 @@
+package net.spals.drunkr.service;
+
+import javax.validation.constraints.NotNull;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+
+import com.netflix.governator.annotations.Configuration;
+import org.bson.types.ObjectId;
+
+import net.spals.appbuilder.annotations.service.AutoBindSingleton;
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.db.DatabaseService;
+import net.spals.drunkr.model.*;
+
+/**
+ * A ranking of the user's sphere of relationships and their BAC, the most refreshed screen we have.
+ * <p>
+ * The whole ranking is read with the same number of queries however many people the user follows: their following,
+ * everyone's latest calculation and everyone's running job. Each user's ranking is then kept for
+ * leaderboard.cache.ttl seconds, keeping the most recently read leaderboard.cache.size rankings.
+ *
+ * @author spags
+ */
+@AutoBindSingleton
+public class Leaderboard {
+
+    private final DatabaseService dbService;
+    private final Map<ObjectId, Ranking> rankings;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("leaderboard.cache.size")
+    private int capacity = 1000;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("leaderboard.cache.ttl")
+    private long ttl = 30;
+
+    @Inject
+    Leaderboard(final DatabaseService dbService) {
+        this.dbService = dbService;
+        // Access ordered so the least recently read ranking is evicted first.
+        rankings = Collections.synchronizedMap(
+            new LinkedHashMap<ObjectId, Ranking>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<ObjectId, Ranking> eldest) {
+                    return size() > capacity;
+                }
+            }
+        );
+    }
+
+    @VisibleForTesting
+    void setTtl(final long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * @param user the user requesting the leaderboard
+     * @return the user and everyone they follow, ordered from the lowest BAC to the highest
+     */
+    public List<BacStatus> getLeaders(final Person user) {
+        final ZonedDateTime now = ZonedDateTimes.nowUTC();
+        final Ranking cached = rankings.get(user.id());
+        if (cached != null && cached.timestamp.plusSeconds(ttl).isAfter(now)) {
+            return cached.statuses;
+        }
+
+        final List<BacStatus> statuses = rank(user, now);
+        rankings.put(user.id(), new Ranking(statuses, now));
+        return statuses;
+    }
+
+    private List<BacStatus> rank(final Person user, final ZonedDateTime now) {
+        // This is the user's known world, the user plus their followers plus their following.
+        final Set<Person> users = ImmutableSet.<Person>builder()
+            .add(user)
+            .addAll(dbService.getFollowing(user))
+            .build();
+        final Set<ObjectId> userIds = users.stream()
+            .map(Person::id)
+            .collect(Collectors.toSet());
+        // Our jobs are run every 15 minutes, so only count a calculation performed in that window.
+        final ZonedDateTime before = now.minusMinutes(15);
+        final Map<ObjectId, Double> bacs = dbService.getLatestBacCalculations(userIds).stream()
+            .filter(x -> !x.timestamp().isBefore(before))
+            .collect(Collectors.toMap(BacCalculation::userId, BacCalculation::bac));
+        final Set<ObjectId> drinking = dbService.getRunningJobs(userIds, now).stream()
+            .map(JobOptions::userId)
+            .collect(Collectors.toSet());
+
+        return users.stream()
+            .map(
+                x -> new BacStatus.Builder()
+                    .user(x)
+                    .bac(bacs.getOrDefault(x.id(), 0.0))
+                    .isDrinking(drinking.contains(x.id()))
+                    .build()
+            )
+            .sorted(Comparator.comparingDouble(BacStatus::bac))
+            .collect(Collectors.toList());
+    }
+
+    private static class Ranking {
+
+        private final List<BacStatus> statuses;
+        private final ZonedDateTime timestamp;
+
+        private Ranking(final List<BacStatus> statuses, final ZonedDateTime timestamp) {
+            this.statuses = statuses;
+            this.timestamp = timestamp;
+        }
+    }
+}
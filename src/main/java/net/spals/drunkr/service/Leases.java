@@ -0,0 +1,64 @@
+package net.spals.drunkr.service;
+
+import javax.validation.constraints.NotNull;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import com.google.inject.Inject;
+
+import com.netflix.governator.annotations.Configuration;
+
+import net.spals.appbuilder.annotations.service.AutoBindSingleton;
+import net.spals.drunkr.model.field.HasLease;
+
+/**
+ * Identifies this instance when claiming jobs and notifications, so more than one instance can run at a time
+ * without starting the same job twice or sending the same notification twice.
+ * <p>
+ * A claim lasts for lease.duration. Whoever holds it renews it while they are still working on it,
+ * and if an instance goes away its leases expire and are claimed by another.
+ *
+ * @author spags
+ */
+@AutoBindSingleton
+public class Leases {
+
+    private final String owner;
+    /**
+     * How long a claim lasts in seconds, this must be longer than a job's period as jobs renew their lease every run.
+     */
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("lease.duration")
+    private long duration = 300;
+
+    @Inject
+    Leases() {
+        // Heroku names each dyno, but two dynos could share a name across restarts so make it unique.
+        owner = Optional.ofNullable(System.getenv("DYNO")).map(x -> x + "-").orElse("") + UUID.randomUUID();
+    }
+
+    public String owner() {
+        return owner;
+    }
+
+    public long duration() {
+        return duration;
+    }
+
+    /**
+     * @param now the time of the claim
+     * @return when a claim made now expires
+     */
+    public ZonedDateTime expiry(final ZonedDateTime now) {
+        return now.plusSeconds(duration);
+    }
+
+    /**
+     * @return true if this instance holds the lease
+     */
+    public boolean isOwner(final HasLease leased) {
+        return leased.leaseOwner().map(owner::equals).orElse(false);
+    }
+}
@@ -0,0 +1,174 @@
+package net.spals.drunkr.service;
+
+import javax.validation.constraints.NotNull;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+
+import com.netflix.governator.annotations.Configuration;
+import org.bson.types.ObjectId;
+
+import net.spals.appbuilder.annotations.service.AutoBindSingleton;
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.db.DatabaseService;
+import net.spals.drunkr.model.Notification;
+import net.spals.drunkr.model.Person;
+
+/**
+ * A user's view of their {@link Notification}s, which depending on notification.fanout includes their followings' updates.
+ * <p>
+ * With {@link #WRITE} a drinker's update is copied into a notification for each of their followers, see {@link FollowersNotifier}.
+ * With {@link #READ} the update is stored once in the drinker's timeline, and merged into a follower's notifications
+ * when they are read. Timeline updates are only read, they are not pushed to the followers.
+ * <p>
+ * A timeline update keeps its id when merged, so it can be found by id like any other notification,
+ * but as it is shared marking it read moves how far the follower has read instead.
+ *
+ * @author spags
+ */
+@AutoBindSingleton
+public class NotificationTimeline {
+
+    public static final String WRITE = "write";
+    public static final String READ = "read";
+    private final DatabaseService dbService;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("notification.fanout")
+    private String fanout = WRITE;
+
+    @Inject
+    NotificationTimeline(final DatabaseService dbService) {
+        this.dbService = dbService;
+    }
+
+    @VisibleForTesting
+    void setFanout(final String fanout) {
+        this.fanout = fanout;
+    }
+
+    /**
+     * @return true if followers read updates from the timeline instead of being sent their own copy
+     */
+    public boolean isFanOutOnRead() {
+        return READ.equals(fanout);
+    }
+
+    /**
+     * Stores an update once in the drinker's timeline for their followers to read.
+     *
+     * @param update the update keyed by the drinker
+     * @return true if the update was stored
+     */
+    boolean publish(final Notification update) {
+        return dbService.insertTimelineNotification(update);
+    }
+
+    public List<Notification> getNotifications(
+        final Person person,
+        final Optional<ZonedDateTime> fromTime,
+        final Optional<ZonedDateTime> toTime
+    ) {
+        final List<Notification> notifications = dbService.getNotifications(person, fromTime, toTime);
+        if (!isFanOutOnRead()) {
+            return notifications;
+        }
+        final Optional<ZonedDateTime> readThrough = dbService.getTimelineReadThrough(person);
+        final List<Notification> updates = getTimeline(person, fromTime, toTime, readThrough);
+        return merge(notifications, updates);
+    }
+
+    public List<Notification> unreadNotifications(final Person person) {
+        final List<Notification> notifications = dbService.unreadNotifications(person);
+        if (!isFanOutOnRead()) {
+            return notifications;
+        }
+        final Optional<ZonedDateTime> readThrough = dbService.getTimelineReadThrough(person);
+        final Optional<ZonedDateTime> fromTime = readThrough.map(x -> x.plus(1, ChronoUnit.MILLIS));
+        final List<Notification> updates = getTimeline(person, fromTime, Optional.empty(), readThrough);
+        return merge(notifications, updates);
+    }
+
+    public boolean markAllRead(final Person person) {
+        final boolean read = dbService.markAllReadNotifications(person);
+        if (!isFanOutOnRead()) {
+            return read;
+        }
+        // Timeline updates are shared by all followers, so we remember how far each follower has read instead.
+        return dbService.updateTimelineReadThrough(person, ZonedDateTimes.nowUTC()) && read;
+    }
+
+    /**
+     * @param person       the follower reading the notification
+     * @param notification a notification found by id, which may be a timeline update
+     * @return the timeline update addressed to the follower, otherwise empty if it is not one of their timeline updates
+     */
+    public Optional<Notification> getTimelineNotification(final Person person, final Notification notification) {
+        if (!isFanOutOnRead()
+            || notification.userId().equals(person.id())
+            || !dbService.getFollowingIds(person).contains(notification.userId())) {
+            return Optional.empty();
+        }
+        final Optional<ZonedDateTime> readThrough = dbService.getTimelineReadThrough(person);
+        return Optional.of(addressTo(person, notification, readThrough));
+    }
+
+    /**
+     * Marks a timeline update read, along with the follower's earlier timeline updates.
+     *
+     * @return true if the follower has read through the update
+     */
+    public boolean markRead(final Person person, final Notification update) {
+        final Optional<ZonedDateTime> readThrough = dbService.getTimelineReadThrough(person);
+        if (readThrough.map(x -> !update.timestamp().isAfter(x)).orElse(false)) {
+            return true;
+        }
+        return dbService.updateTimelineReadThrough(person, update.timestamp());
+    }
+
+    private List<Notification> getTimeline(
+        final Person person,
+        final Optional<ZonedDateTime> fromTime,
+        final Optional<ZonedDateTime> toTime,
+        final Optional<ZonedDateTime> readThrough
+    ) {
+        final Set<ObjectId> followingIds = dbService.getFollowingIds(person);
+        if (followingIds.isEmpty()) {
+            return ImmutableList.of();
+        }
+        final List<Notification> updates = dbService.getTimelineNotifications(followingIds, fromTime, toTime);
+        return updates.stream()
+            .map(x -> addressTo(person, x, readThrough))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Address the drinker's update to the follower, as it would have been with fan out on write.
+     */
+    private Notification addressTo(
+        final Person person,
+        final Notification update,
+        final Optional<ZonedDateTime> readThrough
+    ) {
+        return new Notification.Builder()
+            .mergeFrom(update)
+            .userId(person.id())
+            .read(readThrough.map(x -> !update.timestamp().isAfter(x)).orElse(false))
+            .build();
+    }
+
+    private List<Notification> merge(final List<Notification> notifications, final List<Notification> updates) {
+        if (updates.isEmpty()) {
+            return notifications;
+        }
+        final List<Notification> merged = new ArrayList<>(notifications);
+        merged.addAll(updates);
+        merged.sort(Comparator.comparing(Notification::timestamp));
+        return ImmutableList.copyOf(merged);
+    }
+}
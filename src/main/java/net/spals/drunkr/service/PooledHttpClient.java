@@ -0,0 +1,105 @@
+package net.spals.drunkr.service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+
+import com.google.inject.Inject;
+
+import com.netflix.governator.annotations.Configuration;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.filter.EncodingFilter;
+import org.glassfish.jersey.message.GZipEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.spals.appbuilder.annotations.service.AutoBindSingleton;
+
+/**
+ * The one HTTP client shared by everything calling out, i.e. Untappd, Messenger and beer pages.
+ * <p>
+ * Connections are kept alive and reused from a pool of at most http.max.connections, with at most
+ * http.max.connections.per.host to any one host. Responses are requested gzipped.
+ * Callers must read or close each response so its connection goes back to the pool.
+ *
+ * @author spags
+ */
+@AutoBindSingleton
+public class PooledHttpClient {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledHttpClient.class);
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("http.max.connections")
+    private int maxConnections = 20;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("http.max.connections.per.host")
+    private int maxConnectionsPerHost = 5;
+    /**
+     * Timeouts are in milliseconds.
+     */
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("http.connect.timeout")
+    private int connectTimeout = 5000;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("http.read.timeout")
+    private int readTimeout = 10000;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private Client client;
+
+    @Inject
+    public PooledHttpClient() {
+    }
+
+    @PostConstruct
+    public void start() {
+        LOGGER.info(
+            "starting http client: maxConnections=" + maxConnections + " maxConnectionsPerHost=" + maxConnectionsPerHost
+                + " connectTimeout=" + connectTimeout + " readTimeout=" + readTimeout
+        );
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+
+        final ClientConfig config = new ClientConfig()
+            .connectorProvider(new ApacheConnectorProvider())
+            .property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager)
+            .property(ClientProperties.CONNECT_TIMEOUT, connectTimeout)
+            .property(ClientProperties.READ_TIMEOUT, readTimeout)
+            .register(GZipEncoder.class)
+            .register(EncodingFilter.class);
+        client = ClientBuilder.newClient(config);
+    }
+
+    @PreDestroy
+    public void stop() {
+        LOGGER.info("stopping http client, closing pooled connections: " + connectionManager.getTotalStats());
+        client.close();
+        // The connector which would shut down the pool is only created on the first request, so shut it down ourselves.
+        connectionManager.shutdown();
+    }
+
+    /**
+     * @return the shared client, which must not be closed
+     */
+    public Client client() {
+        return client;
+    }
+
+    /**
+     * @return how many connections are leased, available and waited on, across all hosts
+     */
+    public PoolStats stats() {
+        return connectionManager.getTotalStats();
+    }
+}
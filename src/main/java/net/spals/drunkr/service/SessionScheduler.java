@@ -0,0 +1,41 @@
+package net.spals.drunkr.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bson.types.ObjectId;
+
+/**
+ * Schedules the periodic work of drinking sessions, i.e. {@link DrunkrJob}s.
+ * <p>
+ * A user has at most one running session, so sessions are started and stopped by the user's id.
+ *
+ * @author spags
+ */
+public interface SessionScheduler {
+
+    /**
+     * Starts running the given task periodically for the user, unless the user already has a running session.
+     *
+     * @param userId the user the session belongs to
+     * @param task   the work to run every period
+     * @param delay  the time to delay the first execution
+     * @param period the period between successive executions
+     * @param unit   the time unit of the delay and period
+     * @return true if the session was started otherwise false if one was already running
+     */
+    boolean start(ObjectId userId, Runnable task, long delay, long period, TimeUnit unit);
+
+    /**
+     * Stops the user's session. An execution in progress is allowed to finish.
+     *
+     * @param userId the user the session belongs to
+     * @return true if a running session was stopped otherwise false
+     */
+    boolean stop(ObjectId userId);
+
+    /**
+     * @param userId the user the session belongs to
+     * @return true if the user has a running session otherwise false
+     */
+    boolean isRunning(ObjectId userId);
+}
@@ -0,0 +1,232 @@
+package net.spals.drunkr.service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.constraints.NotNull;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+
+import com.netflix.governator.annotations.Configuration;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.spals.appbuilder.annotations.service.AutoBindSingleton;
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
+
+/**
+ * A hashed timing wheel holding every running session, so we no longer need a thread per session.
+ * <p>
+ * A single ticker thread advances the wheel once per {@link #tick}, and any session whose time has come is handed off
+ * to a small pool of workers. Only the ticker thread touches the wheel, starting and stopping sessions goes through
+ * {@link #sessions} and a pending queue which the ticker drains on its next tick.
+ * <p>
+ * Similar to {@link ScheduledExecutorService#scheduleAtFixedRate}, executions of a session never overlap,
+ * if an execution is still running when the next is due, the next is skipped.
+ * And if an execution throws then the session is stopped.
+ * <p>
+ * On shutdown the ticker stops, every session is stopped, and executions already handed to a worker finish.
+ *
+ * @author spags
+ */
+@AutoBindSingleton(baseClass = SessionScheduler.class)
+class TimingWheelSessionScheduler implements SessionScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimingWheelSessionScheduler.class);
+    private final ExecutorServiceFactory executorServiceFactory;
+    private final Map<ObjectId, Session> sessions = new ConcurrentHashMap<>();
+    private final Queue<Session> pending = new ConcurrentLinkedQueue<>();
+    /**
+     * Duration of a single tick in milliseconds.
+     */
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("scheduler.tick")
+    private long tick = 1000;
+    /**
+     * Number of buckets in the wheel, rounded up to a power of two.
+     */
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("scheduler.wheel.size")
+    private int wheelSize = 64;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("scheduler.workers")
+    private int workers = 4;
+    private List<Deque<Session>> wheel;
+    private int mask;
+    private long ticks;
+    private ExecutorService workerPool;
+    private ScheduledExecutorService ticker;
+    private volatile boolean stopped;
+
+    @Inject
+    TimingWheelSessionScheduler(final ExecutorServiceFactory executorServiceFactory) {
+        this.executorServiceFactory = executorServiceFactory;
+    }
+
+    @PostConstruct
+    void startTicking() {
+        LOGGER.info("starting session scheduler: tick=" + tick + " wheelSize=" + wheelSize + " workers=" + workers);
+        final int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        final List<Deque<Session>> buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayDeque<>());
+        }
+        wheel = buckets;
+        mask = size - 1;
+
+        workerPool = executorServiceFactory.createFixedThreadPool(
+            workers,
+            new Key.Builder(SessionScheduler.class).addTags("workers").build()
+        );
+        ticker = executorServiceFactory.createSingleThreadScheduledExecutor(
+            new Key.Builder(SessionScheduler.class).addTags("ticker").build()
+        );
+        ticker.scheduleAtFixedRate(this::advance, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopTicking() {
+        LOGGER.info("stopping session scheduler, stopping sessions: " + sessions.size());
+        stopped = true;
+        ticker.shutdownNow();
+        workerPool.shutdown();
+        sessions.values().forEach(x -> x.cancelled = true);
+        sessions.clear();
+        pending.clear();
+    }
+
+    @Override
+    public boolean start(
+        final ObjectId userId,
+        final Runnable task,
+        final long delay,
+        final long period,
+        final TimeUnit unit
+    ) {
+        Preconditions.checkArgument(period > 0, "period must be positive: " + period);
+        if (stopped) {
+            return false;
+        }
+        final Session session = new Session(userId, task, toTicks(delay, unit), toTicks(period, unit));
+        if (sessions.putIfAbsent(userId, session) != null) {
+            return false;
+        }
+        pending.add(session);
+        return true;
+    }
+
+    @Override
+    public boolean stop(final ObjectId userId) {
+        final Session session = sessions.remove(userId);
+        if (session == null) {
+            return false;
+        }
+        // The ticker drops cancelled sessions from the wheel when it next visits their bucket.
+        session.cancelled = true;
+        return true;
+    }
+
+    @Override
+    public boolean isRunning(final ObjectId userId) {
+        return sessions.containsKey(userId);
+    }
+
+    /**
+     * Moves the wheel forward a single tick, running anything that is due.
+     */
+    @VisibleForTesting
+    void advance() {
+        try {
+            for (Session session = pending.poll(); session != null; session = pending.poll()) {
+                if (!session.cancelled) {
+                    schedule(session, session.delayTicks);
+                }
+            }
+
+            ticks++;
+            final Deque<Session> bucket = wheel.get((int) (ticks & mask));
+            // Only visit what was in the bucket at the start of the tick, rescheduled sessions may land here again.
+            for (int i = bucket.size(); i > 0; i--) {
+                final Session session = bucket.poll();
+                if (session.cancelled) {
+                    continue;
+                }
+                if (session.rounds > 0) {
+                    session.rounds--;
+                    bucket.add(session);
+                    continue;
+                }
+                dispatch(session);
+                schedule(session, session.periodTicks);
+            }
+        } catch (final Throwable x) {
+            // Never let the ticker die, otherwise every session silently stops.
+            LOGGER.info("error advancing session scheduler", x);
+        }
+    }
+
+    private void schedule(final Session session, final long delayTicks) {
+        final long delay = Math.max(1, delayTicks);
+        session.rounds = (delay - 1) / wheel.size();
+        wheel.get((int) ((ticks + delay) & mask)).add(session);
+    }
+
+    private void dispatch(final Session session) {
+        if (!session.running.compareAndSet(false, true)) {
+            LOGGER.info("session still running, skipping execution for user: " + session.userId);
+            return;
+        }
+        workerPool.execute(
+            () -> {
+                try {
+                    session.task.run();
+                } catch (final Throwable x) {
+                    LOGGER.info("session failed, stopping session for user: " + session.userId, x);
+                    session.cancelled = true;
+                    sessions.remove(session.userId, session);
+                } finally {
+                    session.running.set(false);
+                }
+            }
+        );
+    }
+
+    private long toTicks(final long duration, final TimeUnit unit) {
+        final long millis = unit.toMillis(duration);
+        // Round up to whole ticks, a session started mid tick may run up to a tick early.
+        return (millis + tick - 1) / tick;
+    }
+
+    /**
+     * A running session and its position in the wheel.
+     */
+    private static class Session {
+
+        private final ObjectId userId;
+        private final Runnable task;
+        private final long delayTicks;
+        private final long periodTicks;
+        private final AtomicBoolean running = new AtomicBoolean();
+        private volatile boolean cancelled;
+        /**
+         * Number of full turns of the wheel left before the session is due, only accessed by the ticker.
+         */
+        private long rounds;
+
+        private Session(final ObjectId userId, final Runnable task, final long delayTicks, final long periodTicks) {
+            this.userId = userId;
+            this.task = task;
+            this.delayTicks = delayTicks;
+            this.periodTicks = periodTicks;
+        }
+    }
+}
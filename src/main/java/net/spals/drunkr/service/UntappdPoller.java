@@ -0,0 +1,105 @@
+package net.spals.drunkr.service;
+
+import javax.validation.constraints.NotNull;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.inject.Inject;
+
+import com.netflix.governator.annotations.Configuration;
+import org.bson.types.ObjectId;
+
+import net.spals.appbuilder.annotations.service.AutoBindSingleton;
+
+/**
+ * Decides when a {@link DrunkrJob} polls Untappd for checkins, so idle drinkers don't use up our Untappd requests.
+ * <p>
+ * A job polls every run while its drinker is checking in. After a poll without any checkins we wait
+ * untappd.poll.idle seconds before polling again, doubling the wait after each idle poll up to untappd.poll.max.
+ * Any checkin, from Untappd or added through drunkr, goes back to polling every run.
+ * The job still calculates BAC every run from the checkins we have stored.
+ *
+ * @author spags
+ */
+@AutoBindSingleton
+public class UntappdPoller {
+
+    private final Map<ObjectId, Backoff> backoffs = new ConcurrentHashMap<>();
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("untappd.poll.idle")
+    private long idle = 120;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("untappd.poll.max")
+    private long max = 960;
+
+    @Inject
+    UntappdPoller() {
+    }
+
+    @VisibleForTesting
+    void setConfiguration(final long idle, final long max) {
+        this.idle = idle;
+        this.max = max;
+    }
+
+    /**
+     * @return true if the user's job should poll Untappd this run
+     */
+    public boolean shouldPoll(final ObjectId userId, final ZonedDateTime now) {
+        final Backoff backoff = backoffs.get(userId);
+        return backoff == null || !now.isBefore(backoff.nextPoll);
+    }
+
+    /**
+     * Records a poll of Untappd, backing off further if the user hasn't checked in.
+     *
+     * @param checkedIn true if the user checked in since the last poll
+     */
+    public void polled(final ObjectId userId, final ZonedDateTime now, final boolean checkedIn) {
+        if (checkedIn) {
+            backoffs.remove(userId);
+            return;
+        }
+        backoffs.compute(
+            userId,
+            (id, backoff) -> {
+                final long wait = backoff == null ? idle : Math.min(backoff.wait * 2, max);
+                return new Backoff(wait, now.plusSeconds(wait));
+            }
+        );
+    }
+
+    /**
+     * The user checked in through drunkr, so they are likely checking into Untappd as well. Poll on the next run.
+     */
+    public void checkedIn(final ObjectId userId) {
+        backoffs.remove(userId);
+    }
+
+    /**
+     * Forgets the user, i.e. their job has stopped.
+     */
+    public void stopped(final ObjectId userId) {
+        backoffs.remove(userId);
+    }
+
+    /**
+     * How long we last waited between polls, and when we next poll.
+     *
+     * @author spags
+     */
+    private static class Backoff {
+
+        private final long wait;
+        private final ZonedDateTime nextPoll;
+
+        private Backoff(final long wait, final ZonedDateTime nextPoll) {
+            this.wait = wait;
+            this.nextPoll = nextPoll;
+        }
+    }
+}
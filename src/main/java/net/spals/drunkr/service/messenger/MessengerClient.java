@@ -10,8 +10,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.spals.appbuilder.annotations.service.AutoBindSingleton;
-import net.spals.drunkr.common.CloseableClient;
 import net.spals.drunkr.model.MessengerResponse;
+import net.spals.drunkr.service.PooledHttpClient;
 
 /**
  * A client that sends Messenger responses through Facebook.
@@ -25,21 +25,27 @@ public class MessengerClient {
     private static final String URL = "https://graph.facebook.com/v2.6/me/messages";
     private static final String ACCESS_TOKEN = "access_token";
     private final MessengerCredentials credentials;
+    private final PooledHttpClient httpClient;
     private final ObjectMapper mapper;
 
     @Inject
-    MessengerClient(final MessengerCredentials credentials, final ObjectMapper mapper) {
+    MessengerClient(
+        final MessengerCredentials credentials,
+        final PooledHttpClient httpClient,
+        final ObjectMapper mapper
+    ) {
         this.credentials = credentials;
+        this.httpClient = httpClient;
         this.mapper = mapper;
     }
 
     public int sendMessage(final MessengerResponse response) {
-        try (final CloseableClient client = CloseableClient.newClient()) {
+        try {
             final String responseBody = mapper.writeValueAsString(response);
             final UriBuilder uriBuilder = UriBuilder.fromUri(URL)
                 .queryParam(ACCESS_TOKEN, credentials.getPageAccessToken());
             try (
-                final Response postResponse = client.getClient()
+                final Response postResponse = httpClient.client()
                     .target(uriBuilder)
                     .request(MediaType.APPLICATION_JSON)
                     .post(Entity.json(responseBody))
@@ -1,7 +1,7 @@
 package net.spals.drunkr.service.untappd;
 
 /**
- * See {@link AbvScraper}.
+ * See {@link AbvScraper} and {@link CachingAbvProvider}.
  *
  * @author spags
  */
@@ -1,5 +1,6 @@
 package net.spals.drunkr.service.untappd;
 
+import javax.ws.rs.core.MediaType;
 import java.util.Objects;
 
 import com.google.common.base.Strings;
@@ -13,22 +14,26 @@ import us.codecraft.xsoup.XPathEvaluator;
 import us.codecraft.xsoup.Xsoup;
 
 import net.spals.appbuilder.annotations.service.AutoBindSingleton;
+import net.spals.drunkr.service.PooledHttpClient;
 
 /**
  * Scrapes a beer page looking for the ABV of the beer as checkins do not contain ABV.
+ * This is always a fetch, {@link CachingAbvProvider} is what provides the ABV to checkins.
  *
  * @author spags
  */
-@AutoBindSingleton(baseClass = AbvProvider.class)
+@AutoBindSingleton
 class AbvScraper implements AbvProvider {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AbvScraper.class);
     private static final String UNTAPPD_URL = "https://untappd.com/";
     private static final XPathEvaluator ABV_PATH = Xsoup.compile("//div[1]/div[1]/div[1]/div/div[2]/p[@class=\"abv\"]");
     private static final String NO_ABV = "No ABV";
+    private final PooledHttpClient httpClient;
 
     @Inject
-    AbvScraper() {
+    AbvScraper(final PooledHttpClient httpClient) {
+        this.httpClient = httpClient;
     }
 
     /**
@@ -45,7 +50,11 @@ class AbvScraper implements AbvProvider {
 
         final String fullUrl = UNTAPPD_URL + link;
         try {
-            final Document document = Jsoup.connect(fullUrl).get();
+            final String html = httpClient.client()
+                .target(fullUrl)
+                .request(MediaType.TEXT_HTML)
+                .get(String.class);
+            final Document document = Jsoup.parse(html, fullUrl);
             final String abv = ABV_PATH.evaluate(document).getElements().get(0).text();
             return Objects.equals(abv, NO_ABV) ? 0.0 : parseAbv(abv);
         } catch (final Throwable x) {
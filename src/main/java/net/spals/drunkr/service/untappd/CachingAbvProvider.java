@@ -0,0 +1,170 @@
+package net.spals.drunkr.service.untappd;
+
+import javax.annotation.PostConstruct;
+import javax.validation.constraints.NotNull;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.inject.Inject;
+
+import com.netflix.governator.annotations.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.spals.appbuilder.annotations.service.AutoBindSingleton;
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.db.DatabaseService;
+import net.spals.drunkr.model.Beer;
+
+/**
+ * Caches the ABVs found by {@link AbvScraper}, as the same beers show up in checkins every session.
+ * <p>
+ * Beers are first looked up in memory, keeping the most recently used abv.cache.size beers,
+ * then in the database so they survive restarts and are shared between instances. Only when both miss or the
+ * fetch is older than abv.cache.ttl do we scrape the beer's page again. Beers without an ABV, or whose page failed,
+ * are cached for the shorter abv.cache.negative.ttl so they get another chance soon.
+ * How often each is hit is logged every abv.cache.stats.period seconds, zero to never.
+ *
+ * @author spags
+ */
+@AutoBindSingleton(baseClass = AbvProvider.class)
+class CachingAbvProvider implements AbvProvider {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingAbvProvider.class);
+    private final AbvScraper abvScraper;
+    private final DatabaseService dbService;
+    private final ExecutorServiceFactory executorServiceFactory;
+    private final Map<String, Beer> beers;
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong dbHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("abv.cache.size")
+    private int capacity = 1000;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("abv.cache.ttl")
+    private long ttl = 2592000;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("abv.cache.negative.ttl")
+    private long negativeTtl = 86400;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("abv.cache.stats.period")
+    private long statsPeriod = 300;
+
+    @Inject
+    CachingAbvProvider(
+        final AbvScraper abvScraper,
+        final DatabaseService dbService,
+        final ExecutorServiceFactory executorServiceFactory
+    ) {
+        this.abvScraper = abvScraper;
+        this.dbService = dbService;
+        this.executorServiceFactory = executorServiceFactory;
+        // Access ordered so the least recently used beer is evicted first.
+        beers = Collections.synchronizedMap(
+            new LinkedHashMap<String, Beer>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Beer> eldest) {
+                    return size() > capacity;
+                }
+            }
+        );
+    }
+
+    @PostConstruct
+    void start() {
+        if (statsPeriod <= 0) {
+            return;
+        }
+        final Key key = new Key.Builder(CachingAbvProvider.class)
+            .build();
+        final ScheduledExecutorService executor = executorServiceFactory.createSingleThreadScheduledExecutor(key);
+        executor.scheduleAtFixedRate(this::logStats, statsPeriod, statsPeriod, TimeUnit.SECONDS);
+    }
+
+    @VisibleForTesting
+    void setCapacity(final int capacity) {
+        this.capacity = capacity;
+    }
+
+    @VisibleForTesting
+    void setStatsPeriod(final long statsPeriod) {
+        this.statsPeriod = statsPeriod;
+    }
+
+    @Override
+    public double scrape(final String link) {
+        if (Strings.isNullOrEmpty(link)) {
+            return 0.0;
+        }
+        final ZonedDateTime now = ZonedDateTimes.nowUTC();
+
+        final Beer cached = beers.get(link);
+        if (cached != null && isFresh(cached, now)) {
+            memoryHits.incrementAndGet();
+            return cached.abv();
+        }
+
+        final Optional<Beer> stored = dbService.getBeer(link).filter(x -> isFresh(x, now));
+        if (stored.isPresent()) {
+            dbHits.incrementAndGet();
+            beers.put(link, stored.get());
+            return stored.get().abv();
+        }
+
+        misses.incrementAndGet();
+        final Beer beer = new Beer.Builder()
+            .link(link)
+            .abv(abvScraper.scrape(link))
+            .timestamp(now)
+            .build();
+        dbService.upsertBeer(beer);
+        beers.put(link, beer);
+        return beer.abv();
+    }
+
+    @VisibleForTesting
+    void logStats() {
+        LOGGER.info(
+            "abv cache: memoryHits=" + memoryHits() + " dbHits=" + dbHits() + " misses=" + misses()
+                + " size=" + beers.size()
+        );
+    }
+
+    private boolean isFresh(final Beer beer, final ZonedDateTime now) {
+        final long seconds = beer.abv() > 0.0 ? ttl : negativeTtl;
+        return beer.timestamp().plusSeconds(seconds).isAfter(now);
+    }
+
+    /**
+     * @return how many beers were found in memory
+     */
+    long memoryHits() {
+        return memoryHits.get();
+    }
+
+    /**
+     * @return how many beers were found in the database but not in memory
+     */
+    long dbHits() {
+        return dbHits.get();
+    }
+
+    /**
+     * @return how many beers had to be scraped, as they were not cached or their cache was stale
+     */
+    long misses() {
+        return misses.get();
+    }
+}
@@ -1,17 +1,20 @@
 package net.spals.drunkr.service.untappd;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import javax.annotation.Nonnull;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
+import java.io.*;
 import java.time.ZonedDateTime;
 import java.util.*;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
-import com.google.gson.*;
+import com.google.common.primitives.Ints;
 import com.google.inject.Inject;
 
 import org.bson.types.ObjectId;
@@ -22,63 +25,64 @@ import net.spals.appbuilder.annotations.service.AutoBindInMap;
 import net.spals.appbuilder.keystore.core.KeyStore;
 import net.spals.drunkr.common.ZonedDateTimes;
 import net.spals.drunkr.model.*;
+import net.spals.drunkr.service.PooledHttpClient;
 
 /**
- * Gets a user's checkin information through Untappd's API.
+ * Gets a user's checkin information through Untappd's API, keeping within the user's quota see {@link UntappdBudget}.
+ * <p>
+ * Once we have stored a user's checkins we only ask for those after {@link UntappdLink#lastCheckinId()},
+ * so a poll without new checkins is a single request for an empty page. Pages are read as they stream in,
+ * see {@link CheckinPageReader}. A poll running out of quota stops with the checkins it got, see {@link CheckinPoll}.
  *
  * @author spags
  */
 @AutoBindInMap(baseClass = CheckinProvider.class, key = "api")
 class CheckinApiClient implements CheckinProvider {
 
-    static final String RESPONSE = "response";
-    static final String CHECKINS = "checkins";
-    static final String ITEMS = "items";
-    static final String CHECKIN_ID = "checkin_id";
-    static final String RATING_SCORE = "rating_score";
-    static final String CREATED_AT = "created_at";
-    static final String BEER = "beer";
-    static final String BEER_NAME = "beer_name";
-    static final String BEER_ABV = "beer_abv";
-    static final String BREWERY = "brewery";
-    static final String BREWERY_NAME = "brewery_name";
     private static final Logger LOGGER = LoggerFactory.getLogger(CheckinApiClient.class);
     private static final String CHECKINS_URI = "https://api.untappd.com/v4/user/checkins/";
     private static final String ACCESS_TOKEN = "access_token";
     private static final String MAX_ID = "max_id";
+    private static final String MIN_ID = "min_id";
     private static final String LIMIT = "limit";
     private static final int LIMIT_SIZE = 50;
+    private final UntappdBudget budget;
+    private final PooledHttpClient httpClient;
     private final KeyStore keyStore;
 
     @Inject
-    CheckinApiClient(final KeyStore keyStore) {
+    CheckinApiClient(final UntappdBudget budget, final PooledHttpClient httpClient, final KeyStore keyStore) {
+        this.budget = budget;
+        this.httpClient = httpClient;
         this.keyStore = keyStore;
     }
 
     @NotNull
     @Override
-    public List<Checkin> get(
+    public CheckinPoll get(
         final Optional<UntappdLink> link,
         final Optional<ZonedDateTime> startTime
     ) {
+        // Without a link that has an access token there is nothing to ask Untappd for.
+        if (!link.isPresent() || !link.get().accessToken().isPresent()) {
+            return CheckinPoll.of(ImmutableList.of());
+        }
+        final List<Checkin> checkins = new ArrayList<>();
         try {
-            // This is saying if we have a link and that link has an access token.
-            // Then decrypt and gather all checkins within the start time.
-            return link.map(
-                x -> x.accessToken().map(
-                    accessToken -> ImmutableList.copyOf(
-                        new CheckinIterable(
-                            ClientBuilder.newClient(),
-                            x.userId(),
-                            keyStore.decrypt(accessToken),
-                            startTime
-                        )
-                    )
-                ).orElse(ImmutableList.of())
-            ).orElse(ImmutableList.of());
+            final CheckinIterable iterable = new CheckinIterable(
+                httpClient.client(),
+                budget,
+                link.get().userId(),
+                keyStore.decrypt(link.get().accessToken().get()),
+                link.get().lastCheckinId(),
+                startTime
+            );
+            iterable.forEach(checkins::add);
+            return iterable.isComplete() ? CheckinPoll.of(checkins) : CheckinPoll.partial(checkins);
         } catch (final Throwable x) {
+            // Keep the pages we got, the next poll asks for the rest again.
             LOGGER.info("Failed to connect to untappd for checkins", x);
-            return ImmutableList.of();
+            return CheckinPoll.partial(checkins);
         }
     }
 
@@ -86,23 +90,30 @@ class CheckinApiClient implements CheckinProvider {
     static class CheckinIterable implements Iterable<Checkin> {
 
         private final Client client;
+        private final UntappdBudget budget;
         private final ObjectId userId;
         private final String accessToken;
+        private final Optional<Long> minId;
         private final Optional<ZonedDateTime> startTime;
         private Checkin next;
-        private JsonArray rows;
+        private List<Checkin> page;
         private int index;
+        private boolean complete = true;
 
         @VisibleForTesting
         CheckinIterable(
             final Client client,
+            final UntappdBudget budget,
             final ObjectId userId,
             final String accessToken,
+            final Optional<Long> minId,
             final Optional<ZonedDateTime> startTime
         ) {
             this.client = client;
+            this.budget = budget;
             this.userId = userId;
             this.accessToken = accessToken;
+            this.minId = minId;
             this.startTime = startTime;
 
             // Seed the initial start value to start iterating against.
@@ -132,78 +143,82 @@ class CheckinApiClient implements CheckinProvider {
             };
         }
 
-        private Optional<Integer> getLastId() {
-            if (rows == null || rows.size() == 0) {
+        /**
+         * @return false if we ran out of quota before reaching the start time or the last stored checkin
+         */
+        boolean isComplete() {
+            return complete;
+        }
+
+        private Optional<Long> getLastId() {
+            if (page == null || page.isEmpty()) {
                 return Optional.empty();
             }
-            final JsonElement row = rows.get(rows.size() - 1);
-            final JsonObject checkin = row.getAsJsonObject();
             // max_id is represented as inclusive, and we want exclusive so subtract one.
-            final int lastId = checkin.get(CHECKIN_ID).getAsInt() - 1;
-            return Optional.of(lastId);
+            return page.get(page.size() - 1).untappdId().map(x -> x - 1);
         }
 
         private Checkin getCheckin() {
-            // If we have no rows or looked at all rows grab another batch.
-            if (rows == null || index >= rows.size()) {
-                final Optional<Integer> lastId = getLastId();
-                final String response = getCheckinsJson(lastId);
-                rows = new JsonParser().parse(response)
-                    .getAsJsonObject()
-                    .getAsJsonObject(RESPONSE)
-                    .getAsJsonObject(CHECKINS)
-                    .getAsJsonArray(ITEMS);
+            // If we have no page or looked at all checkins of the page grab another page.
+            if (page == null || index >= page.size()) {
+                final Optional<Long> lastId = getLastId();
+                page = getCheckinsPage(lastId);
                 index = 0;
             }
-            // This batch contains no rows so return null.
-            if (rows.size() == 0) {
+            // This page contains no checkins so return null.
+            if (page.isEmpty()) {
                 return null;
             }
-            final JsonElement row = rows.get(index++);
-            final JsonObject checkin = row.getAsJsonObject();
-            return parseCheckin(checkin);
-        }
-
-        private Checkin parseCheckin(final JsonObject checkin) {
-            // Currently we are representing rating as an integer because the UI uses an integer.
-            final int rating = (int) checkin.get(RATING_SCORE).getAsDouble() * 100;
-            final ZonedDateTime dateTime = ZonedDateTimes.parseUntappd(checkin.get(CREATED_AT).getAsString());
-
-            final JsonObject beer = checkin.getAsJsonObject(BEER);
-            final String name = beer.get(BEER_NAME).getAsString();
-            // Convert ABV from a percentage.
-            final double abv = beer.get(BEER_ABV).getAsDouble() / 100;
-
-            final JsonObject brewery = checkin.getAsJsonObject(BREWERY);
-            final String producer = brewery.get(BREWERY_NAME).getAsString();
-
-            return new Checkin.Builder()
-                .name(name)
-                .userId(userId)
-                .producer(producer)
-                .rating(rating)
-                .style(Style.NONE)
-                .size(Style.NONE.getServingSize())
-                .timestamp(dateTime)
-                .abv(abv)
-                .build();
+            return page.get(index++);
         }
 
         /**
          * Get the user's checkins, user name is not needed if access_token is provided.
          *
          * @param maxId optional id for when you want results to start, inclusive
-         * @return json representing the user's checkin history
+         * @return a page of the user's checkin history, empty if the user's quota is used up
          */
-        private String getCheckinsJson(final Optional<Integer> maxId) {
+        private List<Checkin> getCheckinsPage(final Optional<Long> maxId) {
             final UriBuilder uriBuilder = UriBuilder.fromUri(CHECKINS_URI)
                 .queryParam(LIMIT, LIMIT_SIZE)
                 .queryParam(ACCESS_TOKEN, accessToken);
             maxId.map(x -> uriBuilder.queryParam(MAX_ID, x));
-
-            return client.target(uriBuilder)
+            // Results are still newest first, so we page back with max_id until we reach min_id, exclusive.
+            minId.map(x -> uriBuilder.queryParam(MIN_ID, x));
+
+            final ZonedDateTime now = ZonedDateTimes.nowUTC();
+            if (!budget.canRequest(userId, now)) {
+                // Stop with the checkins we have, rather than spend the user's quota or lose the pages we got.
+                LOGGER.info("Untappd quota used up, stopping poll for user: " + userId);
+                complete = false;
+                return ImmutableList.of();
+            }
+            final Response response = client.target(uriBuilder)
                 .request(MediaType.APPLICATION_JSON)
-                .get(String.class);
+                .get();
+            try {
+                budget.record(
+                    userId,
+                    getIntHeader(response, UntappdBudget.REMAINING_HEADER),
+                    getIntHeader(response, UntappdBudget.LIMIT_HEADER),
+                    now
+                );
+                if (Response.Status.Family.familyOf(response.getStatus()) != Response.Status.Family.SUCCESSFUL) {
+                    throw new IllegalStateException("Untappd request failed for user: " + userId
+                        + " status=" + response.getStatus());
+                }
+                try (final Reader json = new InputStreamReader(response.readEntity(InputStream.class), UTF_8)) {
+                    return CheckinPageReader.read(userId, json);
+                }
+            } catch (final IOException x) {
+                throw new UncheckedIOException("Failed to read untappd checkins for user: " + userId, x);
+            } finally {
+                response.close();
+            }
+        }
+
+        private Optional<Integer> getIntHeader(final Response response, final String header) {
+            return Optional.ofNullable(response.getHeaderString(header)).map(Ints::tryParse);
         }
     }
 }
@@ -0,0 +1,150 @@
+package net.spals.drunkr.service.untappd;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.stream.JsonReader;
+
+import org.bson.types.ObjectId;
+
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.model.Checkin;
+import net.spals.drunkr.model.Style;
+
+/**
+ * Reads a page of checkins from Untappd's API as the response streams in.
+ * <p>
+ * A page of 50 checkins is mostly fields we don't use, i.e. the user, venue, media and badges of each checkin.
+ * So rather than building the whole page as a tree we pull out the few fields we need and skip everything else.
+ *
+ * @author spags
+ */
+class CheckinPageReader {
+
+    static final String RESPONSE = "response";
+    static final String CHECKINS = "checkins";
+    static final String ITEMS = "items";
+    static final String CHECKIN_ID = "checkin_id";
+    static final String RATING_SCORE = "rating_score";
+    static final String CREATED_AT = "created_at";
+    static final String BEER = "beer";
+    static final String BEER_NAME = "beer_name";
+    static final String BEER_ABV = "beer_abv";
+    static final String BREWERY = "brewery";
+    static final String BREWERY_NAME = "brewery_name";
+
+    private CheckinPageReader() {
+    }
+
+    /**
+     * @param userId the user the checkins belong to
+     * @param json   the response of a user's checkins, this is not closed
+     * @return the page's checkins newest first as Untappd returns them
+     */
+    static List<Checkin> read(final ObjectId userId, final Reader json) throws IOException {
+        final List<Checkin> checkins = new ArrayList<>();
+        final JsonReader reader = new JsonReader(json);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (RESPONSE.equals(reader.nextName())) {
+                readResponse(userId, reader, checkins);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return checkins;
+    }
+
+    private static void readResponse(
+        final ObjectId userId,
+        final JsonReader reader,
+        final List<Checkin> checkins
+    ) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (CHECKINS.equals(reader.nextName())) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (ITEMS.equals(reader.nextName())) {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            checkins.add(readCheckin(userId, reader));
+                        }
+                        reader.endArray();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static Checkin readCheckin(final ObjectId userId, final JsonReader reader) throws IOException {
+        final Checkin.Builder checkin = new Checkin.Builder()
+            .userId(userId)
+            .style(Style.NONE)
+            .size(Style.NONE.getServingSize());
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case CHECKIN_ID:
+                    checkin.untappdId(reader.nextLong());
+                    break;
+                case RATING_SCORE:
+                    // Currently we are representing rating as an integer because the UI uses an integer.
+                    checkin.rating((int) reader.nextDouble() * 100);
+                    break;
+                case CREATED_AT:
+                    checkin.timestamp(ZonedDateTimes.parseUntappd(reader.nextString()));
+                    break;
+                case BEER:
+                    readBeer(reader, checkin);
+                    break;
+                case BREWERY:
+                    readBrewery(reader, checkin);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return checkin.build();
+    }
+
+    private static void readBeer(final JsonReader reader, final Checkin.Builder checkin) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case BEER_NAME:
+                    checkin.name(reader.nextString());
+                    break;
+                case BEER_ABV:
+                    // Convert ABV from a percentage.
+                    checkin.abv(reader.nextDouble() / 100);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readBrewery(final JsonReader reader, final Checkin.Builder checkin) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (BREWERY_NAME.equals(reader.nextName())) {
+                checkin.producer(reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+}
@@ -0,0 +1,43 @@
+package net.spals.drunkr.service.untappd;
+
+import java.util.List;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+import net.spals.drunkr.model.Checkin;
+import net.spals.drunkr.model.UntappdLink;
+
+/**
+ * The checkins a {@link CheckinProvider} got for a user and whether it got all of them.
+ *
+ * @author spags
+ */
+@FreeBuilder
+public interface CheckinPoll {
+
+    static CheckinPoll of(final List<Checkin> checkins) {
+        return new Builder().addAllCheckins(checkins).build();
+    }
+
+    /**
+     * A poll which stopped early, e.g. out of Untappd quota, with the checkins it got before stopping.
+     */
+    static CheckinPoll partial(final List<Checkin> checkins) {
+        return new Builder().addAllCheckins(checkins).complete(false).build();
+    }
+
+    List<Checkin> checkins();
+
+    /**
+     * False if older checkins may not have been fetched yet, so the job's last modified time and the link's
+     * {@link UntappdLink#lastCheckinId()} must stay put for the next poll to ask for them again.
+     */
+    boolean complete();
+
+    class Builder extends CheckinPoll_Builder {
+
+        public Builder() {
+            complete(true);
+        }
+    }
+}
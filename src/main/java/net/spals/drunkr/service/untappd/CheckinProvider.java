@@ -2,10 +2,8 @@ package net.spals.drunkr.service.untappd;
 
 import javax.validation.constraints.NotNull;
 import java.time.ZonedDateTime;
-import java.util.List;
 import java.util.Optional;
 
-import net.spals.drunkr.model.Checkin;
 import net.spals.drunkr.model.UntappdLink;
 
 /**
@@ -18,8 +16,9 @@ public interface CheckinProvider {
     /**
      * @param link      contains information for finding the drunkr user's untappd information
      * @param startTime lower bound of checkins to get otherwise gets all checkins
-     * @return all checkins after, inclusive, of the start time if the user is registered
+     * @return all checkins after, inclusive, of the start time if the user is registered, or those got so far if the
+     * poll stopped early
      */
     @NotNull
-    List<Checkin> get(Optional<UntappdLink> link, Optional<ZonedDateTime> startTime);
+    CheckinPoll get(Optional<UntappdLink> link, Optional<ZonedDateTime> startTime);
 }
@@ -1,24 +1,22 @@
 package net.spals.drunkr.service.untappd;
 
+import javax.annotation.PostConstruct;
 import javax.validation.constraints.NotNull;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.time.ZonedDateTime;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Longs;
 import com.google.inject.Inject;
 
+import com.netflix.governator.annotations.Configuration;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.openqa.selenium.*;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
-import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
 import org.slf4j.Logger;
@@ -27,6 +25,8 @@ import us.codecraft.xsoup.XPathEvaluator;
 import us.codecraft.xsoup.Xsoup;
 
 import net.spals.appbuilder.annotations.service.AutoBindInMap;
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
 import net.spals.drunkr.common.ZonedDateTimes;
 import net.spals.drunkr.model.*;
 
@@ -35,7 +35,11 @@ import net.spals.drunkr.model.*;
  * Then clicks "next" until all checkins are within the required start time if any, otherwise clicks until it can't click.
  * Then we parse the html into {@link Checkin}, returning the list in reverse chronological order.
  * We click first, then parse so we can grab the page source in a single hit. Otherwise we would have to consider
- * a subset of page source at a time.
+ * a subset of page source at a time. Browsers are borrowed from {@link WebDriverPool}, so they are often already
+ * logged in from a previous scrape.
+ * <p>
+ * Checkins don't contain ABV, so once the page is parsed the ABV of each distinct beer is looked up concurrently
+ * with at most untappd.abv.workers beer pages fetched at a time.
  *
  * @author spags
  */
@@ -47,6 +51,7 @@ class CheckinScraper implements CheckinProvider {
     private static final By NEXT_PATH = By.xpath("//*[@id=\"slide\"]/div[1]/div[3]/div/div/a");
     private static final By LAST_CHECKIN_PATH = By.xpath("//div[@class=\"item\"][last()]/div[2]/div[2]/div[2]/a[1]");
     private static final By ERROR_MESSAGE_PATH = By.xpath("//*[@id=\"maintenance\"]/h1");
+    private static final By CHECKIN_PATH = By.xpath("//div[@class=\"item\"]");
     private static final XPathEvaluator BEER_NAME_PATH = Xsoup.compile("//div[2]/div[1]/p/a[2]");
     private static final XPathEvaluator BREWERY_PATH = Xsoup.compile("//div[2]/div[1]/p/a[3]/text()");
     private static final XPathEvaluator CHECKIN_TIME_STAMP_PATH = Xsoup.compile(
@@ -55,13 +60,39 @@ class CheckinScraper implements CheckinProvider {
     private static final XPathEvaluator RATING_PATH = Xsoup.compile("//div[2]/div[1]/div/div/span/@class");
     private static final XPathEvaluator STYLE_PATH = Xsoup.compile("//div[2]/div[1]/div/div/p/span/text()");
     private static final XPathEvaluator ITEM_PATH = Xsoup.compile("//div[@class=\"item\"]");
+    private static final String CHECKIN_ID_ATTRIBUTE = "data-checkin-id";
     private final AbvProvider abvScraper;
+    private final ExecutorServiceFactory executorServiceFactory;
     private final LoginDriver loginDriver;
+    private final WebDriverPool driverPool;
+    /**
+     * All beer pages are on Untappd, so this is also how many requests we make of Untappd at a time.
+     */
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("untappd.abv.workers")
+    private int abvWorkers = 4;
+    private ExecutorService abvPool;
 
     @Inject
-    CheckinScraper(final AbvProvider abvScraper, final LoginDriver loginDriver) {
+    CheckinScraper(
+        final AbvProvider abvScraper,
+        final ExecutorServiceFactory executorServiceFactory,
+        final LoginDriver loginDriver,
+        final WebDriverPool driverPool
+    ) {
         this.abvScraper = abvScraper;
+        this.executorServiceFactory = executorServiceFactory;
         this.loginDriver = loginDriver;
+        this.driverPool = driverPool;
+    }
+
+    @PostConstruct
+    void submit() {
+        abvPool = executorServiceFactory.createFixedThreadPool(
+            abvWorkers,
+            new Key.Builder(CheckinScraper.class).addTags("abv").build()
+        );
     }
 
     /**
@@ -69,27 +100,26 @@ class CheckinScraper implements CheckinProvider {
      */
     @NotNull
     @Override
-    public List<Checkin> get(final Optional<UntappdLink> link, final Optional<ZonedDateTime> untilDateTime) {
+    public CheckinPoll get(final Optional<UntappdLink> link, final Optional<ZonedDateTime> untilDateTime) {
         // Untappd is an optional value if its not set don't bother setting up web driver or clicking or anything.
         if (!link.isPresent()) {
-            return ImmutableList.of();
+            return CheckinPoll.of(ImmutableList.of());
         }
 
-        try (final CloseableWebDriver closeableWebDriver = new CloseableWebDriver(createWebDriver())) {
-            final WebDriver driver = closeableWebDriver.driver;
-            driver.manage().timeouts().implicitlyWait(0, TimeUnit.MILLISECONDS);
+        try (final WebDriverPool.Session session = driverPool.borrow()) {
+            final WebDriver driver = session.driver();
 
             openPersonPage(driver, link.get());
 
             // If Untappd user name became invalid check now.
             if (!isValidPerson(driver)) {
-                return ImmutableList.of();
+                return CheckinPoll.of(ImmutableList.of());
             }
 
             final boolean needToClick = needToClick(getLastCheckin(driver), untilDateTime);
             if (needToClick) {
                 LOGGER.info("starting clicking");
-                clickNextUntilDateTime(driver, untilDateTime);
+                session.setLoggedIn(clickNextUntilDateTime(driver, session.isLoggedIn(), untilDateTime));
             } else {
                 LOGGER.info("no need to click");
             }
@@ -99,10 +129,14 @@ class CheckinScraper implements CheckinProvider {
             LOGGER.info("starting parsing checkins");
             final List<Checkin> checkins = parseCheckins(link.get(), document, untilDateTime);
             LOGGER.info("finished parsing checkins");
-            return checkins;
+            return CheckinPoll.of(checkins);
+        } catch (final InterruptedException x) {
+            LOGGER.info("interrupted waiting for a web driver", x);
+            Thread.currentThread().interrupt();
+            return CheckinPoll.partial(ImmutableList.of());
         } catch (final Throwable x) {
             LOGGER.info("error scraping for checkins", x);
-            return ImmutableList.of();
+            return CheckinPoll.partial(ImmutableList.of());
         }
     }
 
@@ -118,55 +152,46 @@ class CheckinScraper implements CheckinProvider {
             .orElse(true);
     }
 
+    /**
+     * @param loggedIn true if the driver has already logged in, in which case clicking next doesn't go to the login page
+     * @return true if the driver is logged in after clicking
+     */
     @VisibleForTesting
-    void clickNextUntilDateTime(
+    boolean clickNextUntilDateTime(
         final WebDriver driver,
+        final boolean loggedIn,
         final Optional<ZonedDateTime> untilDateTime
     ) {
         // Click next to force the login page to appear...
+        final int checkins = driver.findElements(CHECKIN_PATH).size();
         final boolean clickedNext = clickNext(driver);
 
         // If we didn't click next then it doesn't exist.
-        if (clickedNext) {
-            loginDriver.login(driver);
-
-            Optional<ZonedDateTime> lastCheckin = Optional.empty();
-            while (true) {
-                clickNext(driver);
-                final Optional<ZonedDateTime> nextLastCheckin = getLastCheckin(driver);
-
-                // Keep clicking until we have the all the beer up to start time.
-                final boolean stop = !needToClick(nextLastCheckin, untilDateTime)
-                    || Objects.equals(lastCheckin, nextLastCheckin);
-
-                if (stop) {
-                    LOGGER.info("last checkin match, stopping clicking");
-                    break;
-                }
-                lastCheckin = nextLastCheckin;
-            }
+        if (!clickedNext) {
+            return loggedIn;
         }
-    }
-
-    @VisibleForTesting
-    WebDriver createWebDriver() {
-        final ChromeOptions options = new ChromeOptions()
-            .setHeadless(true);
-        // Heroku build pack provides this environmental variable.
-        // See https://github.com/heroku/heroku-buildpack-google-chrome
-        Optional.ofNullable(System.getenv("GOOGLE_CHROME_SHIM")).ifPresent(options::setBinary);
-        // BitBucket pipelines remote web driver using Docker image
-        final Optional<String> remoteWebDriverUrl = Optional.ofNullable(System.getenv("REMOTE_CHROMEDRIVER_URL"));
-        return remoteWebDriverUrl.map(url -> new RemoteWebDriver(createUrlSafe(url), options))
-            .orElseGet(() -> new ChromeDriver(options));
-    }
-
-    private URL createUrlSafe(final String url) {
-        try {
-            return new URL(url);
-        } catch (final MalformedURLException x) {
-            throw new RuntimeException(x);
+        // A logged in session may still have been logged out by Untappd, which we only know once the click loaded
+        // either the next checkins or the login page.
+        final boolean nowLoggedIn = loggedIn
+            && !loginDriver.isLoginPage(driver, ExpectedConditions.numberOfElementsToBeMoreThan(CHECKIN_PATH, checkins))
+            || loginDriver.login(driver);
+
+        Optional<ZonedDateTime> lastCheckin = Optional.empty();
+        while (true) {
+            clickNext(driver);
+            final Optional<ZonedDateTime> nextLastCheckin = getLastCheckin(driver);
+
+            // Keep clicking until we have the all the beer up to start time.
+            final boolean stop = !needToClick(nextLastCheckin, untilDateTime)
+                || Objects.equals(lastCheckin, nextLastCheckin);
+
+            if (stop) {
+                LOGGER.info("last checkin match, stopping clicking");
+                break;
+            }
+            lastCheckin = nextLastCheckin;
         }
+        return nowLoggedIn;
     }
 
     @VisibleForTesting
@@ -230,30 +255,65 @@ class CheckinScraper implements CheckinProvider {
         final Optional<ZonedDateTime> untilDateTime
     ) {
         final Elements rows = ITEM_PATH.evaluate(document).getElements();
-        final ImmutableList.Builder<Checkin> builder = ImmutableList.builder();
+        final List<Checkin.Builder> checkins = new ArrayList<>();
+        final List<String> beerLinks = new ArrayList<>();
 
         for (final Element row : rows) {
-            final Checkin checkin = parseCheckin(link, row);
+            final Element beer = BEER_NAME_PATH.evaluate(row).getElements().first();
+            final Checkin.Builder checkin = parseCheckin(link, row, beer);
 
             if (untilDateTime.map(x -> ZonedDateTimes.isOnOrAfter(x, checkin.timestamp())).orElse(false)) {
                 break;
             }
-            builder.add(checkin);
+            checkins.add(checkin);
+            beerLinks.add(beer.attr("href"));
+        }
+
+        // The same beer is often checked in more than once, so only look up each beer once.
+        final Map<String, Double> abvs = scrapeAbvs(new LinkedHashSet<>(beerLinks));
+        final ImmutableList.Builder<Checkin> builder = ImmutableList.builder();
+        for (int i = 0; i < checkins.size(); i++) {
+            final double abv = abvs.getOrDefault(beerLinks.get(i), 0.0);
+            builder.add(checkins.get(i).abv(abv).build());
         }
         return builder.build();
     }
 
-    private Checkin parseCheckin(final UntappdLink link, final Element row) {
-        final Element beer = BEER_NAME_PATH.evaluate(row).getElements().first();
+    /**
+     * Looks up the ABV of each beer concurrently, beers whose lookup fails have an ABV of 0.0 as they would scraping.
+     */
+    private Map<String, Double> scrapeAbvs(final Set<String> beerLinks) {
+        final Map<String, Future<Double>> lookups = new LinkedHashMap<>();
+        for (final String beerLink : beerLinks) {
+            lookups.put(beerLink, abvPool.submit(() -> abvScraper.scrape(beerLink)));
+        }
+
+        final Map<String, Double> abvs = new HashMap<>();
+        for (final Map.Entry<String, Future<Double>> lookup : lookups.entrySet()) {
+            try {
+                abvs.put(lookup.getKey(), lookup.getValue().get());
+            } catch (final InterruptedException x) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (final ExecutionException x) {
+                LOGGER.info("unable to look up abv: " + lookup.getKey(), x.getCause());
+            }
+        }
+        return abvs;
+    }
+
+    /**
+     * Parses everything but the ABV, which is looked up once all the checkins are parsed.
+     */
+    private Checkin.Builder parseCheckin(final UntappdLink link, final Element row, final Element beer) {
         final String beerName = beer.text();
-        final String beerLink = beer.attr("href");
-        final double abv = abvScraper.scrape(beerLink);
         final String brewery = BREWERY_PATH.evaluate(row).get();
         final String rawDateTime = CHECKIN_TIME_STAMP_PATH.evaluate(row).get();
         final ZonedDateTime dateTime = ZonedDateTimes.parseUntappd(rawDateTime);
         final Optional<Integer> rating = Optional.ofNullable(RATING_PATH.evaluate(row).get())
             .map(this::parseRating);
         final Style style = Style.get(STYLE_PATH.evaluate(row).get());
+        final Optional<Long> untappdId = Optional.ofNullable(Longs.tryParse(row.attr(CHECKIN_ID_ATTRIBUTE)));
 
         return new Checkin.Builder()
             .userId(link.userId())
@@ -261,10 +321,9 @@ class CheckinScraper implements CheckinProvider {
             .producer(brewery)
             .timestamp(dateTime)
             .rating(rating)
-            .abv(abv)
             .style(style)
             .size(style.getServingSize())
-            .build();
+            .untappdId(untappdId);
     }
 
     /**
@@ -278,23 +337,4 @@ class CheckinScraper implements CheckinProvider {
             throw new IllegalArgumentException("invalid rating: " + rawRating);
         }
     }
-
-    /**
-     * Encapsulation to provide closing in a try/catch resource with {@link WebDriver}.
-     *
-     * @author spags
-     */
-    private static class CloseableWebDriver implements AutoCloseable {
-
-        private final WebDriver driver;
-
-        private CloseableWebDriver(final WebDriver driver) {
-            this.driver = driver;
-        }
-
-        @Override
-        public void close() {
-            driver.close();
-        }
-    }
-}
\ No newline at end of file
+}
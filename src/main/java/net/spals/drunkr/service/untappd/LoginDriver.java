@@ -6,6 +6,7 @@ import com.google.inject.Inject;
 
 import com.netflix.governator.annotations.Configuration;
 import org.openqa.selenium.*;
+import org.openqa.selenium.support.ui.ExpectedCondition;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
 import org.slf4j.Logger;
@@ -37,7 +38,12 @@ class LoginDriver {
         this.untappdMasterPassword = untappdMasterPassword;
     }
 
-    void login(final WebDriver driver) {
+    /**
+     * Waits for the login page, then logs in.
+     *
+     * @return true if the login form was submitted, otherwise the login page never appeared
+     */
+    boolean login(final WebDriver driver) {
         LOGGER.info("attempting to login");
 
         try {
@@ -45,7 +51,7 @@ class LoginDriver {
             wait.until(ExpectedConditions.visibilityOfElementLocated(USERNAME_LOGIN_PATH));
         } catch (final Throwable x) {
             LOGGER.info("failed to log in", x);
-            return;
+            return false;
         }
 
         final WebElement username = driver.findElement(USERNAME_LOGIN_PATH);
@@ -55,5 +61,24 @@ class LoginDriver {
         password.sendKeys(untappdMasterPassword);
         password.submit();
         LOGGER.info("successfully logged in");
+        return true;
+    }
+
+    /**
+     * Waits for either the login page or the page we expected, as neither has loaded straight after a click.
+     *
+     * @param loaded the page we expected had we still been logged in
+     * @return true if the driver is on the login page, i.e. a logged in session was logged out
+     */
+    boolean isLoginPage(final WebDriver driver, final ExpectedCondition<?> loaded) {
+        try {
+            final WebDriverWait wait = new WebDriverWait(driver, 5);
+            wait.until(
+                ExpectedConditions.or(ExpectedConditions.visibilityOfElementLocated(USERNAME_LOGIN_PATH), loaded)
+            );
+        } catch (final Throwable x) {
+            LOGGER.info("exception while waiting for the login page or the expected page", x);
+        }
+        return !driver.findElements(USERNAME_LOGIN_PATH).isEmpty();
     }
 }
@@ -0,0 +1,114 @@
+package net.spals.drunkr.service.untappd;
+
+import javax.validation.constraints.NotNull;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.inject.Inject;
+
+import com.netflix.governator.annotations.Configuration;
+import org.bson.types.ObjectId;
+
+import net.spals.appbuilder.annotations.service.AutoBindSingleton;
+import net.spals.drunkr.model.UntappdQuota;
+
+/**
+ * Keeps each user's Untappd requests within the hourly limit of their access token.
+ * <p>
+ * Untappd tells us how many requests a token has left with every response. While plenty remain we poll as usual.
+ * Once untappd.quota.low or fewer remain we poll the user at most once every untappd.quota.low.period seconds,
+ * and once untappd.quota.reserve or fewer remain we stop polling them. The reserve is kept so a poll already
+ * paging through checkins can finish. Limits are per hour, so an hour after our last request we poll again.
+ *
+ * @author spags
+ */
+@AutoBindSingleton
+public class UntappdBudget {
+
+    static final String REMAINING_HEADER = "X-Ratelimit-Remaining";
+    static final String LIMIT_HEADER = "X-Ratelimit-Limit";
+    private static final long WINDOW = 3600;
+    private final Map<ObjectId, UntappdQuota> quotas = new ConcurrentHashMap<>();
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("untappd.quota.reserve")
+    private int reserve = 10;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("untappd.quota.low")
+    private int low = 25;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("untappd.quota.low.period")
+    private long lowPeriod = 600;
+
+    @Inject
+    UntappdBudget() {
+    }
+
+    @VisibleForTesting
+    void setConfiguration(final int reserve, final int low, final long lowPeriod) {
+        this.reserve = reserve;
+        this.low = low;
+        this.lowPeriod = lowPeriod;
+    }
+
+    /**
+     * @return true if the user has enough quota left to start polling their checkins
+     */
+    public boolean canPoll(final ObjectId userId, final ZonedDateTime now) {
+        final UntappdQuota quota = quotas.get(userId);
+        if (quota == null || isRefilled(quota, now)) {
+            return true;
+        }
+        if (quota.remaining() <= reserve) {
+            return false;
+        }
+        // Spread what is left over the rest of the hour instead of using it all up at once.
+        return quota.remaining() > low || !now.isBefore(quota.timestamp().plusSeconds(lowPeriod));
+    }
+
+    /**
+     * @return true if the user has any quota left for another request, i.e. the next page of checkins
+     */
+    boolean canRequest(final ObjectId userId, final ZonedDateTime now) {
+        final UntappdQuota quota = quotas.get(userId);
+        return quota == null || isRefilled(quota, now) || quota.remaining() > 0;
+    }
+
+    /**
+     * Records the quota Untappd reported in response to a request, responses without a quota are ignored.
+     */
+    void record(
+        final ObjectId userId,
+        final Optional<Integer> remaining,
+        final Optional<Integer> limit,
+        final ZonedDateTime now
+    ) {
+        remaining.ifPresent(
+            x -> quotas.put(
+                userId,
+                new UntappdQuota.Builder()
+                    .userId(userId)
+                    .remaining(x)
+                    .limit(limit)
+                    .timestamp(now)
+                    .build()
+            )
+        );
+    }
+
+    /**
+     * @return the user's quota as of our last request, if we have made one
+     */
+    public Optional<UntappdQuota> getQuota(final ObjectId userId) {
+        return Optional.ofNullable(quotas.get(userId));
+    }
+
+    private boolean isRefilled(final UntappdQuota quota, final ZonedDateTime now) {
+        return !now.isBefore(quota.timestamp().plusSeconds(WINDOW));
+    }
+}
@@ -0,0 +1,202 @@
+package net.spals.drunkr.service.untappd;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.constraints.NotNull;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Optional;
+import java.util.concurrent.*;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.inject.Inject;
+
+import com.netflix.governator.annotations.Configuration;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.spals.appbuilder.annotations.service.AutoBindSingleton;
+
+/**
+ * Keeps headless browsers open between scrapes, as starting a browser and logging into Untappd is most of a scrape.
+ * <p>
+ * At most untappd.driver.pool.size browsers are open at once, borrowing waits for one to be returned.
+ * A browser is checked it is still alive before it is borrowed, and is quit after untappd.driver.max.uses scrapes
+ * so a long lived browser doesn't keep growing. Returned browsers are sent to a blank page, so nothing of one user's
+ * page is left for the next, but they keep their cookies so they stay logged in.
+ * <p>
+ * On shutdown the idle browsers are quit, and those still borrowed are quit as they are given back,
+ * otherwise the Chrome processes outlive us.
+ *
+ * @author spags
+ */
+@AutoBindSingleton
+class WebDriverPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebDriverPool.class);
+    private static final String BLANK_PAGE = "about:blank";
+    private final BlockingQueue<Session> idle = new LinkedBlockingQueue<>();
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("untappd.driver.pool.size")
+    private int size = 2;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("untappd.driver.max.uses")
+    private int maxUses = 50;
+    private Semaphore permits;
+    private volatile boolean stopped;
+
+    @Inject
+    WebDriverPool() {
+    }
+
+    @PostConstruct
+    void start() {
+        LOGGER.info("starting web driver pool: size=" + size + " maxUses=" + maxUses);
+        permits = new Semaphore(size, true);
+    }
+
+    @PreDestroy
+    void stop() {
+        LOGGER.info("stopping web driver pool, quitting idle web drivers: " + idle.size());
+        stopped = true;
+        Session session;
+        while ((session = idle.poll()) != null) {
+            quit(session);
+        }
+    }
+
+    @VisibleForTesting
+    void setConfiguration(final int size, final int maxUses) {
+        this.size = size;
+        this.maxUses = maxUses;
+    }
+
+    /**
+     * Borrows a browser, waiting if all of them are in use. Close the session to give it back.
+     */
+    Session borrow() throws InterruptedException {
+        permits.acquire();
+        try {
+            Session session;
+            while ((session = idle.poll()) != null) {
+                if (isAlive(session)) {
+                    session.uses++;
+                    return session;
+                }
+                LOGGER.info("web driver no longer alive, replacing it");
+                quit(session);
+            }
+            return new Session(createWebDriver());
+        } catch (final Throwable x) {
+            permits.release();
+            throw x;
+        }
+    }
+
+    private void release(final Session session) {
+        try {
+            if (stopped) {
+                quit(session);
+                return;
+            }
+            if (session.uses >= maxUses) {
+                LOGGER.info("web driver used " + session.uses + " times, recycling it");
+                quit(session);
+                return;
+            }
+            session.driver.get(BLANK_PAGE);
+            idle.add(session);
+            // We may have stopped while resetting it, after the idle browsers were quit.
+            if (stopped && idle.remove(session)) {
+                quit(session);
+            }
+        } catch (final Throwable x) {
+            LOGGER.info("failed to reset web driver, quitting it", x);
+            quit(session);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean isAlive(final Session session) {
+        try {
+            session.driver.getWindowHandle();
+            return true;
+        } catch (final Throwable x) {
+            return false;
+        }
+    }
+
+    private void quit(final Session session) {
+        try {
+            session.driver.quit();
+        } catch (final Throwable x) {
+            LOGGER.info("failed to quit web driver", x);
+        }
+    }
+
+    @VisibleForTesting
+    WebDriver createWebDriver() {
+        final ChromeOptions options = new ChromeOptions()
+            .setHeadless(true);
+        // Heroku build pack provides this environmental variable.
+        // See https://github.com/heroku/heroku-buildpack-google-chrome
+        Optional.ofNullable(System.getenv("GOOGLE_CHROME_SHIM")).ifPresent(options::setBinary);
+        // BitBucket pipelines remote web driver using Docker image
+        final Optional<String> remoteWebDriverUrl = Optional.ofNullable(System.getenv("REMOTE_CHROMEDRIVER_URL"));
+        final WebDriver driver = remoteWebDriverUrl.map(url -> new RemoteWebDriver(createUrlSafe(url), options))
+            .orElseGet(() -> new ChromeDriver(options));
+        driver.manage().timeouts().implicitlyWait(0, TimeUnit.MILLISECONDS);
+        return driver;
+    }
+
+    private URL createUrlSafe(final String url) {
+        try {
+            return new URL(url);
+        } catch (final MalformedURLException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * A borrowed browser, closing it gives it back to the pool.
+     *
+     * @author spags
+     */
+    class Session implements AutoCloseable {
+
+        private final WebDriver driver;
+        private int uses = 1;
+        private boolean loggedIn;
+
+        private Session(final WebDriver driver) {
+            this.driver = driver;
+        }
+
+        WebDriver driver() {
+            return driver;
+        }
+
+        /**
+         * @return true if the browser has logged into Untappd, so it doesn't need to again
+         */
+        boolean isLoggedIn() {
+            return loggedIn;
+        }
+
+        void setLoggedIn(final boolean loggedIn) {
+            this.loggedIn = loggedIn;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+}
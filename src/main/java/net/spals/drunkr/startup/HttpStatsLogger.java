@@ -0,0 +1,73 @@
+package net.spals.drunkr.startup;
+
+import javax.annotation.PostConstruct;
+import javax.validation.constraints.NotNull;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.inject.Inject;
+
+import com.netflix.governator.annotations.Configuration;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.spals.appbuilder.annotations.service.AutoBindSingleton;
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
+import net.spals.drunkr.service.PooledHttpClient;
+
+/**
+ * Logs the {@link PooledHttpClient}'s connection pool every http.stats.period seconds, zero to never.
+ * Calls waiting on a connection, i.e. pending, means http.max.connections or http.max.connections.per.host is too low.
+ *
+ * @author spags
+ */
+@AutoBindSingleton
+class HttpStatsLogger implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpStatsLogger.class);
+    private final ExecutorServiceFactory executorServiceFactory;
+    private final PooledHttpClient httpClient;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("http.stats.period")
+    private long period = 300;
+
+    @Inject
+    HttpStatsLogger(final ExecutorServiceFactory executorServiceFactory, final PooledHttpClient httpClient) {
+        this.executorServiceFactory = executorServiceFactory;
+        this.httpClient = httpClient;
+    }
+
+    @PostConstruct
+    void start() {
+        if (period <= 0) {
+            return;
+        }
+        final Key key = new Key.Builder(HttpStatsLogger.class)
+            .build();
+        final ScheduledExecutorService executor = executorServiceFactory.createSingleThreadScheduledExecutor(key);
+        executor.scheduleAtFixedRate(this, period, period, TimeUnit.SECONDS);
+    }
+
+    @VisibleForTesting
+    void setPeriod(final long period) {
+        this.period = period;
+    }
+
+    @Override
+    public void run() {
+        try {
+            final PoolStats stats = httpClient.stats();
+            LOGGER.info(
+                "http connection pool: leased=" + stats.getLeased() + " available=" + stats.getAvailable()
+                    + " pending=" + stats.getPending() + " max=" + stats.getMax()
+            );
+        } catch (final Throwable x) {
+            // Don't let a single failure stop all future logging.
+            LOGGER.info("error reading http connection pool stats", x);
+        }
+    }
+}
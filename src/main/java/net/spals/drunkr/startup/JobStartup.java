@@ -4,8 +4,11 @@ import javax.annotation.PostConstruct;
 import javax.validation.constraints.NotNull;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
-import java.util.concurrent.*;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.inject.Inject;
 
 import com.netflix.governator.annotations.Configuration;
@@ -18,11 +21,14 @@ import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
 import net.spals.drunkr.common.RunnableWrapper;
 import net.spals.drunkr.common.ZonedDateTimes;
 import net.spals.drunkr.db.DatabaseService;
-import net.spals.drunkr.service.DrunkrJob;
-import net.spals.drunkr.service.DrunkrJobFactory;
+import net.spals.drunkr.model.JobOptions;
+import net.spals.drunkr.service.*;
 
 /**
  * Starts jobs up after a dyno restart, finding all jobs with empty stop times or stop times after now.
+ * <p>
+ * Jobs are claimed before they are started, see {@link Leases}, so with more than one instance each job runs once.
+ * We keep looking for running jobs every lease.duration, to take over the jobs of an instance which went away.
  *
  * @author spags
  */
@@ -30,9 +36,12 @@ import net.spals.drunkr.service.DrunkrJobFactory;
 class JobStartup {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JobStartup.class);
+    private final BacBatchEngine batchEngine;
     private final DatabaseService dbService;
-    private final DrunkrJobFactory jobFactory;
     private final ExecutorServiceFactory executorServiceFactory;
+    private final DrunkrJobFactory jobFactory;
+    private final Leases leases;
+    private final SessionScheduler scheduler;
     @SuppressWarnings("FieldMayBeFinal")
     @NotNull
     @Configuration("job.period")
@@ -40,39 +49,68 @@ class JobStartup {
 
     @Inject
     JobStartup(
+        final BacBatchEngine batchEngine,
         final DatabaseService dbService,
+        final ExecutorServiceFactory executorServiceFactory,
         final DrunkrJobFactory jobFactory,
-        final ExecutorServiceFactory executorServiceFactory
+        final Leases leases,
+        final SessionScheduler scheduler
     ) {
+        this.batchEngine = batchEngine;
         this.dbService = dbService;
-        this.jobFactory = jobFactory;
         this.executorServiceFactory = executorServiceFactory;
+        this.jobFactory = jobFactory;
+        this.leases = leases;
+        this.scheduler = scheduler;
     }
 
     @PostConstruct
     void start() {
+        if (batchEngine.isEnabled()) {
+            LOGGER.info("batch engine enabled, running jobs are picked up by the engine");
+            return;
+        }
         LOGGER.info("restarting all jobs");
+        claimJobs();
+        final Key key = new Key.Builder(JobStartup.class)
+            .build();
+        final ScheduledExecutorService executor = executorServiceFactory.createSingleThreadScheduledExecutor(key);
+        executor.scheduleAtFixedRate(this::reclaimJobs, leases.duration(), leases.duration(), TimeUnit.SECONDS);
+    }
+
+    private void reclaimJobs() {
+        try {
+            claimJobs();
+        } catch (final Throwable x) {
+            // Don't let a single failure stop us from ever taking over jobs again.
+            LOGGER.info("error claiming running jobs", x);
+        }
+    }
+
+    @VisibleForTesting
+    void claimJobs() {
         final ZonedDateTime now = ZonedDateTimes.nowUTC();
         dbService.allRunningJobs(now).forEach(
             job -> {
-                final Key key = new Key.Builder(DrunkrJob.class)
-                    .addTags(job.userId().toHexString())
-                    .build();
-                if (executorServiceFactory.get(key).map(ExecutorService::isShutdown).orElse(true)) {
-                    LOGGER.info("Starting job for for user on startup: " + job.userId());
-                    final long delay = Math.max(0, ChronoUnit.SECONDS.between(now, job.startTime()));
-
-                    final ScheduledExecutorService executor = executorServiceFactory
-                        .createSingleThreadScheduledExecutor(key);
-                    executor.scheduleAtFixedRate(
-                        RunnableWrapper.wrap(jobFactory.createJob(job)),
-                        delay,
-                        job.period().orElse(period),
-                        TimeUnit.SECONDS
-                    );
-                } else {
+                if (scheduler.isRunning(job.userId())) {
                     LOGGER.info("Job already started for user on startup: " + job.userId());
+                    return;
                 }
+                final Optional<JobOptions> claimed = dbService.claimJob(job, leases.owner(), now, leases.expiry(now));
+                if (!claimed.isPresent()) {
+                    LOGGER.info("Job claimed by another instance for user: " + job.userId());
+                    return;
+                }
+                LOGGER.info("Starting job for for user on startup: " + job.userId());
+                final long delay = Math.max(0, ChronoUnit.SECONDS.between(now, job.startTime()));
+
+                scheduler.start(
+                    job.userId(),
+                    RunnableWrapper.wrap(jobFactory.createJob(claimed.get())),
+                    delay,
+                    job.period().orElse(period),
+                    TimeUnit.SECONDS
+                );
             }
         );
     }
@@ -1,22 +1,30 @@
 package net.spals.drunkr.startup;
 
 import javax.annotation.PostConstruct;
-import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import javax.validation.constraints.NotNull;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.RateLimiter;
 import com.google.inject.Inject;
 
+import com.netflix.governator.annotations.Configuration;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.spals.appbuilder.annotations.service.AutoBindSingleton;
 import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
 import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
+import net.spals.drunkr.common.ZonedDateTimes;
 import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.model.*;
+import net.spals.drunkr.service.Leases;
 import net.spals.drunkr.service.messenger.MessengerClient;
 import net.spals.drunkr.service.twilio.TwilioClient;
 
@@ -24,6 +32,17 @@ import net.spals.drunkr.service.twilio.TwilioClient;
  * Task for pushing notifications to users.
  * <p>
  * As {@link Source#MOBILE} is not implemented we will attempt to send to SMS and Facebook messenger instead if available.
+ * <p>
+ * Each channel has its own pool of workers and rate limit, so a burst of notifications is sent in parallel without
+ * going over what Messenger or Twilio allow, and a slow channel does not hold up the other.
+ * <p>
+ * Rather than polling, notifications can be dispatched as they are inserted by watching mongo's change stream.
+ * We remember where we were in the stream, so a restart resumes from there, and poll once to catch up whenever we
+ * (re)start watching. Inserts arriving together are claimed and sent as one batch, the same as a poll.
+ * <p>
+ * Notifications are claimed before they are sent, see {@link Leases}, so more than one instance can push notifications.
+ * A notification which failed to send is retried once its lease expires, when watching we also poll every
+ * lease.duration for these as the stream only sees inserts.
  *
  * @author spags
  */
@@ -34,84 +53,240 @@ class NotificationRunnable implements Runnable {
     static final String ID = "id";
     @VisibleForTesting
     static final String TEXT = "text";
+    @VisibleForTesting
+    static final String RESUME_TOKEN = "notifications";
+    private static final int BATCH_SIZE = 100;
+    private static final String POLL = "poll";
+    private static final String STREAM = "stream";
     private static final Logger LOGGER = LoggerFactory.getLogger(NotificationRunnable.class);
     private final DatabaseService dbService;
     private final ExecutorServiceFactory executorServiceFactory;
+    private final Leases leases;
     private final MessengerClient messengerClient;
     private final TwilioClient twilioClient;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("notification.messenger.workers")
+    private int messengerWorkers = 4;
+    /**
+     * Messages per second sent to Messenger.
+     */
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("notification.messenger.rate")
+    private double messengerRate = 10.0;
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("notification.sms.workers")
+    private int smsWorkers = 2;
+    /**
+     * Messages per second sent to Twilio, a single long code number is limited to 1 per second.
+     */
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("notification.sms.rate")
+    private double smsRate = 1.0;
+    /**
+     * Either {@link #POLL} for unpushed notifications every 5 seconds, or {@link #STREAM} to watch for inserts,
+     * which requires mongo to be running as a replica set.
+     */
+    @SuppressWarnings("FieldMayBeFinal")
+    @NotNull
+    @Configuration("notification.dispatch")
+    private String dispatch = POLL;
+    private ExecutorService messengerPool;
+    private ExecutorService smsPool;
+    private RateLimiter messengerLimiter;
+    private RateLimiter smsLimiter;
 
     @Inject
     NotificationRunnable(
         final DatabaseService dbService,
         final ExecutorServiceFactory executorServiceFactory,
+        final Leases leases,
         final MessengerClient messengerClient,
         final TwilioClient twilioClient
     ) {
         this.dbService = dbService;
         this.executorServiceFactory = executorServiceFactory;
+        this.leases = leases;
         this.messengerClient = messengerClient;
         this.twilioClient = twilioClient;
     }
 
     @PostConstruct
     void submit() {
-        LOGGER.info("starting notification process");
+        LOGGER.info(
+            "starting notification process: messengerWorkers=" + messengerWorkers + " messengerRate=" + messengerRate
+                + " smsWorkers=" + smsWorkers + " smsRate=" + smsRate
+        );
+        messengerPool = executorServiceFactory.createFixedThreadPool(
+            messengerWorkers,
+            new Key.Builder(NotificationRunnable.class).addTags("messenger").build()
+        );
+        smsPool = executorServiceFactory.createFixedThreadPool(
+            smsWorkers,
+            new Key.Builder(NotificationRunnable.class).addTags("sms").build()
+        );
+        messengerLimiter = RateLimiter.create(messengerRate);
+        smsLimiter = RateLimiter.create(smsRate);
+        if (STREAM.equals(dispatch)) {
+            LOGGER.info("watching notifications for inserts");
+            final ExecutorService watcher = executorServiceFactory.createFixedThreadPool(
+                1,
+                new Key.Builder(NotificationRunnable.class).addTags("stream").build()
+            );
+            watcher.submit(this::watch);
+        }
         final Key key = new Key.Builder(NotificationRunnable.class)
             .build();
         final ScheduledExecutorService executor = executorServiceFactory.createSingleThreadScheduledExecutor(key);
-        executor.scheduleAtFixedRate(this, 0, 5, TimeUnit.SECONDS);
+        if (STREAM.equals(dispatch)) {
+            // Watching catches up when it starts, after that only expired leases are left for polling to claim.
+            executor.scheduleAtFixedRate(this, leases.duration(), leases.duration(), TimeUnit.SECONDS);
+        } else {
+            executor.scheduleAtFixedRate(this, 0, 5, TimeUnit.SECONDS);
+        }
+    }
+
+    @VisibleForTesting
+    void setDispatch(final String dispatch) {
+        this.dispatch = dispatch;
+    }
+
+    private void watch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            if (!watchOnce()) {
+                LOGGER.info("lost notification stream, retrying in 5 seconds");
+                try {
+                    TimeUnit.SECONDS.sleep(5);
+                } catch (final InterruptedException x) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Catches up on anything inserted while we weren't watching, i.e. after a restart or losing the stream,
+     * then dispatches inserts in batches as they happen until the stream is lost.
+     * The catch up runs once the stream is open, so nothing inserted in between is missed.
+     *
+     * @return false if the stream was lost, otherwise true if we stopped watching
+     */
+    @VisibleForTesting
+    boolean watchOnce() {
+        final Optional<String> resumeToken = dbService.getResumeToken(RESUME_TOKEN);
+        return dbService.watchNotifications(resumeToken, this, BATCH_SIZE, this::dispatchInserted);
+    }
+
+    private void dispatchInserted(final List<Notification> inserted, final String resumeToken) {
+        // Resuming can replay inserts which the catch up already pushed, and other instances see the same inserts.
+        final Set<ObjectId> ids = inserted.stream()
+            .map(Notification::id)
+            .collect(Collectors.toSet());
+        final ZonedDateTime now = ZonedDateTimes.nowUTC();
+        final List<Notification> claimed = dbService.claimNotifications(ids, leases.owner(), now, leases.expiry(now));
+        if (!claimed.isEmpty()) {
+            LOGGER.info("processing inserted notifications: number=" + claimed.size());
+            dispatch(claimed);
+        }
+        dbService.updateResumeToken(RESUME_TOKEN, resumeToken);
     }
 
     @Override
     public void run() {
-        final List<Notification> notifications = dbService.unpushedNotifications();
-        if (!notifications.isEmpty()) {
-            LOGGER.info("processing notifications: number=" + notifications.size());
+        try {
+            push();
+        } catch (final Throwable x) {
+            // Don't let a single bad run stop all future runs.
+            LOGGER.info("unable to push notifications", x);
         }
+    }
+
+    private void push() {
+        List<Notification> notifications;
+        do {
+            // Claim the notifications so other instances don't send them too.
+            final ZonedDateTime now = ZonedDateTimes.nowUTC();
+            notifications = dbService.claimNotifications(leases.owner(), now, leases.expiry(now), BATCH_SIZE);
+            if (notifications.isEmpty()) {
+                return;
+            }
+            LOGGER.info("processing notifications: number=" + notifications.size());
+            dispatch(notifications);
+        } while (notifications.size() == BATCH_SIZE);
+    }
 
+    private void dispatch(final List<Notification> notifications) {
+        // Look up everyone being notified at once, rather than once per notification.
+        final Set<ObjectId> userIds = notifications.stream()
+            .map(Notification::userId)
+            .collect(Collectors.toSet());
+        final Map<ObjectId, Person> persons = dbService.getPersons(userIds).stream()
+            .collect(Collectors.toMap(Person::id, Function.identity()));
+
+        final Map<Notification, Future<?>> deliveries = new LinkedHashMap<>();
         for (final Notification notification : notifications) {
-            final Optional<Person> queriedPerson = dbService.getPerson(notification.userId().toHexString());
+            final Optional<Person> person = Optional.ofNullable(persons.get(notification.userId()));
+            deliveries.put(notification, deliver(notification, person));
+        }
 
+        // Wait for the whole batch so the next run doesn't pick up notifications still being sent.
+        final List<ObjectId> pushed = new ArrayList<>();
+        for (final Map.Entry<Notification, Future<?>> delivery : deliveries.entrySet()) {
             try {
-                // If the person exist, first try to send to messenger, then sms, then give up.
-                if (queriedPerson.isPresent()) {
-                    LOGGER.info("sending message=" + notification.message());
-                    final Person person = queriedPerson.get();
-
-                    if (notification.source().map(x -> x == Source.MESSENGER || x == Source.MOBILE).orElse(true)
-                        && person.messengerId().isPresent()
-                    ) {
-                        final String messengerId = person.messengerId().get();
-                        final MessengerResponse messageToSend = new MessengerResponse.Builder()
-                            .putRecipient(ID, messengerId)
-                            .putMessage(TEXT, notification.message())
-                            .messagingType(MessengerResponse.MessageType.UPDATE)
-                            .build();
-                        final int result = messengerClient.sendMessage(messageToSend);
-                        LOGGER.info("sent messengerId=" + messengerId + " statusCode=" + result);
-                    } else if (notification.source().map(x -> x == Source.SMS || x == Source.MOBILE).orElse(true)
-                        && person.phoneNumber().isPresent()
-                    ) {
-                        final String phoneNumber = person.phoneNumber().get();
-                        twilioClient.sendMessage(phoneNumber, notification.message());
-                    } else if (notification.source().map(x -> x == Source.MOBILE).orElse(false)) {
-                        LOGGER.info("sent to mobile, push to mobile not yet implemented");
-                    } else {
-                        LOGGER.info("no where to push the notification");
-                    }
-                }
-                markNotificationAsPushed(notification);
-            } catch (final Throwable x) {
-                LOGGER.info("unable to push notification: " + notification, x);
+                delivery.getValue().get();
+                pushed.add(delivery.getKey().id());
+            } catch (final InterruptedException x) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (final ExecutionException x) {
+                LOGGER.info("unable to push notification: " + delivery.getKey(), x.getCause());
             }
         }
+        if (!pushed.isEmpty() && !dbService.markNotificationsPushed(pushed)) {
+            LOGGER.info("failed to mark notifications as pushed: " + pushed);
+        }
     }
 
-    private void markNotificationAsPushed(final Notification notification) {
-        final Notification pushedNotification = new Notification.Builder()
-            .mergeFrom(notification)
-            .pushed(true)
-            .build();
-        dbService.updateNotification(pushedNotification);
+    /**
+     * If the person exist, first try to send to messenger, then sms, then give up.
+     */
+    private Future<?> deliver(final Notification notification, final Optional<Person> queriedPerson) {
+        if (!queriedPerson.isPresent()) {
+            return Futures.immediateFuture(null);
+        }
+        LOGGER.info("sending message=" + notification.message());
+        final Person person = queriedPerson.get();
+
+        if (notification.source().map(x -> x == Source.MESSENGER || x == Source.MOBILE).orElse(true)
+            && person.messengerId().isPresent()
+        ) {
+            final String messengerId = person.messengerId().get();
+            final MessengerResponse messageToSend = new MessengerResponse.Builder()
+                .putRecipient(ID, messengerId)
+                .putMessage(TEXT, notification.message())
+                .messagingType(MessengerResponse.MessageType.UPDATE)
+                .build();
+            return messengerPool.submit(() -> {
+                messengerLimiter.acquire();
+                final int result = messengerClient.sendMessage(messageToSend);
+                LOGGER.info("sent messengerId=" + messengerId + " statusCode=" + result);
+            });
+        } else if (notification.source().map(x -> x == Source.SMS || x == Source.MOBILE).orElse(true)
+            && person.phoneNumber().isPresent()
+        ) {
+            final String phoneNumber = person.phoneNumber().get();
+            return smsPool.submit(() -> {
+                smsLimiter.acquire();
+                twilioClient.sendMessage(phoneNumber, notification.message());
+            });
+        } else if (notification.source().map(x -> x == Source.MOBILE).orElse(false)) {
+            LOGGER.info("sent to mobile, push to mobile not yet implemented");
+        } else {
+            LOGGER.info("no where to push the notification");
+        }
+        return Futures.immediateFuture(null);
     }
 }
@@ -446,7 +446,7 @@ public class CommonTextBasedParserTest {
 
     @Test
     public void checkNoBacCalculations() {
-        when(dbService.getBacCalculations(DRUNK, Optional.empty(), Optional.empty())).thenReturn(ImmutableList.of());
+        when(dbService.getLatestBacCalculation(DRUNK)).thenReturn(Optional.empty());
 
         final String message = parser.parse(Source.SMS, DRUNK_PHONE_NUMBER, "check");
 
@@ -460,8 +460,7 @@ public class CommonTextBasedParserTest {
             .timestamp(ZonedDateTimes.nowUTC())
             .bac(.05)
             .build();
-        when(dbService.getBacCalculations(DRUNK, Optional.empty(), Optional.empty())).thenReturn(ImmutableList.of(
-            calculation));
+        when(dbService.getLatestBacCalculation(DRUNK)).thenReturn(Optional.of(calculation));
 
         final String message = parser.parse(Source.SMS, DRUNK_PHONE_NUMBER, "check");
 
@@ -0,0 +1,78 @@
+package net.spals.drunkr.api.command;
+
+import static javax.ws.rs.core.Response.Status.*;
+
+import static org.mockito.Mockito.when;
+
+import static net.spals.drunkr.common.ResponseSubject.assertThat;
+
+import javax.ws.rs.core.Response;
+import java.util.Map;
+import java.util.Optional;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.i18n.I18nSupport;
+import net.spals.drunkr.i18n.I18nSupports;
+import net.spals.drunkr.model.*;
+import net.spals.drunkr.service.untappd.UntappdBudget;
+
+/**
+ * Unit tests for {@link UntappdQuotaCommand}.
+ *
+ * @author spags
+ */
+public class UntappdQuotaCommandTest {
+
+    private static final Person USER = Persons.SPAGS;
+    private static final UntappdQuota QUOTA = new UntappdQuota.Builder()
+        .userId(USER.id())
+        .remaining(42)
+        .limit(100)
+        .timestamp(ZonedDateTimes.nowUTC())
+        .build();
+    @Mock
+    private UntappdBudget budget;
+    private I18nSupport i18nSupport;
+    private UntappdQuotaCommand command;
+    private Map<String, Object> request;
+
+    @BeforeMethod
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        i18nSupport = I18nSupports.getEnglish();
+        command = new UntappdQuotaCommand(budget, i18nSupport);
+        request = ImmutableMap.<String, Object>builder()
+            .put("user", USER)
+            .build();
+    }
+
+    @Test
+    public void quota() {
+        when(budget.getQuota(USER.id())).thenReturn(Optional.of(QUOTA));
+
+        final Response response = command.run(request);
+
+        assertThat(response)
+            .hasStatus(OK)
+            .hasEntity(QUOTA);
+    }
+
+    @Test
+    public void noQuota() {
+        when(budget.getQuota(USER.id())).thenReturn(Optional.empty());
+
+        final Response response = command.run(request);
+
+        assertThat(response)
+            .hasStatus(NOT_FOUND)
+            .hasErrorMessage(i18nSupport.getLabel("command.untappd.quota.missing", USER.userName()));
+    }
+}
@@ -4,6 +4,7 @@ import static javax.ws.rs.core.Response.Status.CREATED;
 import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -24,6 +25,8 @@ import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.i18n.I18nSupport;
 import net.spals.drunkr.i18n.I18nSupports;
 import net.spals.drunkr.model.*;
+import net.spals.drunkr.service.BacAccumulator;
+import net.spals.drunkr.service.UntappdPoller;
 
 /**
  * Unit tests to verify the {@link CheckinAddCommand} used to add {@link Checkin} for requesting {@link Person}.
@@ -43,7 +46,11 @@ public class CheckinAddCommandTest {
         .abv(.05)
         .build();
     @Mock
+    private BacAccumulator accumulator;
+    @Mock
     private DatabaseService dbService;
+    @Mock
+    private UntappdPoller poller;
     private I18nSupport i18nSupport;
     private CheckinAddCommand command;
     private Map<String, Object> request;
@@ -53,7 +60,7 @@ public class CheckinAddCommandTest {
         MockitoAnnotations.initMocks(this);
 
         i18nSupport = I18nSupports.getEnglish();
-        command = new CheckinAddCommand(dbService, i18nSupport);
+        command = new CheckinAddCommand(accumulator, dbService, i18nSupport, poller);
 
         request = ImmutableMap.<String, Object>builder()
             .put("user", DRINKER)
@@ -71,6 +78,8 @@ public class CheckinAddCommandTest {
             .hasStatus(CREATED)
             .hasEntity(CHECKIN);
         verify(dbService).insertCheckin(any());
+        verify(accumulator).added(CHECKIN);
+        verify(poller).checkedIn(DRINKER.id());
     }
 
     @Test
@@ -83,5 +92,6 @@ public class CheckinAddCommandTest {
             .hasStatus(INTERNAL_SERVER_ERROR)
             .hasErrorMessage(i18nSupport.getLabel("command.checkin.fail", CHECKIN.name()));
         verify(dbService).insertCheckin(any());
+        verify(poller, never()).checkedIn(any());
     }
 }
@@ -3,6 +3,7 @@ package net.spals.drunkr.api.command.checkin;
 import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
 import static javax.ws.rs.core.Response.Status.OK;
 
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import static net.spals.drunkr.common.ResponseSubject.assertThat;
@@ -23,6 +24,7 @@ import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.i18n.I18nSupport;
 import net.spals.drunkr.i18n.I18nSupports;
 import net.spals.drunkr.model.*;
+import net.spals.drunkr.service.BacAccumulator;
 
 /**
  * Unit tests for {@link CheckinRemoveAllCommand}.
@@ -42,6 +44,8 @@ public class CheckinRemoveAllCommandTest {
         .abv(.05)
         .build();
     @Mock
+    private BacAccumulator accumulator;
+    @Mock
     private DatabaseService dbService;
     private I18nSupport i18nSupport;
     private CheckinRemoveAllCommand command;
@@ -52,7 +56,7 @@ public class CheckinRemoveAllCommandTest {
         MockitoAnnotations.initMocks(this);
 
         i18nSupport = I18nSupports.getEnglish();
-        command = new CheckinRemoveAllCommand(dbService, i18nSupport);
+        command = new CheckinRemoveAllCommand(accumulator, dbService, i18nSupport);
 
         request = ImmutableMap.<String, Object>builder()
             .put("user", DRINKER)
@@ -70,6 +74,7 @@ public class CheckinRemoveAllCommandTest {
         assertThat(response)
             .hasStatus(OK)
             .hasEntity(checkins);
+        verify(accumulator).removedAll(DRINKER);
     }
 
     @Test
@@ -3,6 +3,7 @@ package net.spals.drunkr.api.command.checkin;
 import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
 import static javax.ws.rs.core.Response.Status.OK;
 
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import static net.spals.drunkr.common.ResponseSubject.assertThat;
@@ -23,6 +24,7 @@ import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.i18n.I18nSupport;
 import net.spals.drunkr.i18n.I18nSupports;
 import net.spals.drunkr.model.*;
+import net.spals.drunkr.service.BacAccumulator;
 
 /**
  * Unit tests for {@link CheckinRemoveCommand}.
@@ -42,6 +44,8 @@ public class CheckinRemoveCommandTest {
         .abv(.05)
         .build();
     @Mock
+    private BacAccumulator accumulator;
+    @Mock
     private DatabaseService dbService;
     private I18nSupport i18nSupport;
     private CheckinRemoveCommand command;
@@ -52,7 +56,7 @@ public class CheckinRemoveCommandTest {
         MockitoAnnotations.initMocks(this);
 
         i18nSupport = I18nSupports.getEnglish();
-        command = new CheckinRemoveCommand(dbService, i18nSupport);
+        command = new CheckinRemoveCommand(accumulator, dbService, i18nSupport);
         when(dbService.getCheckin(CHECKIN.id().toHexString())).thenReturn(Optional.of(CHECKIN));
 
         request = ImmutableMap.<String, Object>builder()
@@ -70,6 +74,7 @@ public class CheckinRemoveCommandTest {
         assertThat(response)
             .hasStatus(OK)
             .hasEntity(CHECKIN);
+        verify(accumulator).removed(CHECKIN);
     }
 
     @Test
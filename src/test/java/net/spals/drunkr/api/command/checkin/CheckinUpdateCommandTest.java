@@ -3,6 +3,7 @@ package net.spals.drunkr.api.command.checkin;
 import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
 import static javax.ws.rs.core.Response.Status.OK;
 
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import static net.spals.drunkr.common.ResponseSubject.assertThat;
@@ -24,6 +25,7 @@ import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.i18n.I18nSupport;
 import net.spals.drunkr.i18n.I18nSupports;
 import net.spals.drunkr.model.*;
+import net.spals.drunkr.service.BacAccumulator;
 
 /**
  * Unit tests for {@link CheckinFindCommand}.
@@ -43,6 +45,8 @@ public class CheckinUpdateCommandTest {
         .abv(.05)
         .build();
     @Mock
+    private BacAccumulator accumulator;
+    @Mock
     private DatabaseService dbService;
     private I18nSupport i18nSupport;
     private CheckinUpdateCommand command;
@@ -53,7 +57,7 @@ public class CheckinUpdateCommandTest {
         MockitoAnnotations.initMocks(this);
 
         i18nSupport = I18nSupports.getEnglish();
-        command = new CheckinUpdateCommand(dbService, i18nSupport, createObjectSerializer());
+        command = new CheckinUpdateCommand(accumulator, dbService, i18nSupport, createObjectSerializer());
         when(dbService.getCheckin(CHECKIN.id().toHexString())).thenReturn(Optional.of(CHECKIN));
 
         request = ImmutableMap.<String, Object>builder()
@@ -76,6 +80,7 @@ public class CheckinUpdateCommandTest {
         assertThat(response)
             .hasStatus(OK)
             .hasEntity(updatedCheckin);
+        verify(accumulator).updated(CHECKIN, updatedCheckin);
     }
 
     @Test
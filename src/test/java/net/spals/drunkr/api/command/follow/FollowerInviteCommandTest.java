@@ -79,7 +79,7 @@ public class FollowerInviteCommandTest {
 
     @Test
     public void inviteFollowerExists() {
-        when(dbService.getFollowers(USER)).thenReturn(ImmutableSet.of(FOLLOWER));
+        when(dbService.getFollowerIds(USER)).thenReturn(ImmutableSet.of(FOLLOWER.id()));
 
         final Response response = command.run(request);
 
@@ -90,7 +90,7 @@ public class FollowerInviteCommandTest {
 
     @Test
     public void inviteFollowerSuccess() {
-        when(dbService.getFollowers(USER)).thenReturn(ImmutableSet.of());
+        when(dbService.getFollowerIds(USER)).thenReturn(ImmutableSet.of());
         when(dbService.getPerson(FOLLOWER.id().toHexString())).thenReturn(Optional.of(FOLLOWER));
         when(dbService.addFollower(USER, FOLLOWER)).thenReturn(true);
 
@@ -54,7 +54,7 @@ public class FollowerRemoveCommandTest {
 
     @Test
     public void removeFollowerDoesNotExists() {
-        when(dbService.getFollowers(USER)).thenReturn(ImmutableSet.of());
+        when(dbService.getFollowerIds(USER)).thenReturn(ImmutableSet.of());
 
         final Response response = command.run(request);
 
@@ -65,7 +65,7 @@ public class FollowerRemoveCommandTest {
 
     @Test
     public void removeFollowerFail() {
-        when(dbService.getFollowers(USER)).thenReturn(ImmutableSet.of(FOLLOWER));
+        when(dbService.getFollowerIds(USER)).thenReturn(ImmutableSet.of(FOLLOWER.id()));
         when(dbService.addFollower(USER, FOLLOWER)).thenReturn(false);
 
         final Response response = command.run(request);
@@ -77,7 +77,7 @@ public class FollowerRemoveCommandTest {
 
     @Test
     public void removeFollowerSuccess() {
-        when(dbService.getFollowers(USER)).thenReturn(ImmutableSet.of(FOLLOWER));
+        when(dbService.getFollowerIds(USER)).thenReturn(ImmutableSet.of(FOLLOWER.id()));
         when(dbService.removeFollower(USER, FOLLOWER)).thenReturn(true);
 
         final Response response = command.run(request);
@@ -88,7 +88,7 @@ public class FollowingAddCommandTest {
 
     @Test
     public void addFolloweeAlreadyExists() {
-        when(dbService.getFollowing(FOLLOWER)).thenReturn(ImmutableSet.of(USER));
+        when(dbService.getFollowingIds(FOLLOWER)).thenReturn(ImmutableSet.of(USER.id()));
 
         final Response response = command.run(buildRequest(USER_PHONE_NUMBER));
 
@@ -99,7 +99,7 @@ public class FollowingAddCommandTest {
 
     @Test
     public void addFolloweeFail() {
-        when(dbService.getFollowing(FOLLOWER)).thenReturn(ImmutableSet.of());
+        when(dbService.getFollowingIds(FOLLOWER)).thenReturn(ImmutableSet.of());
         when(dbService.addFollower(FOLLOWER, USER)).thenReturn(false);
 
         final Response response = command.run(buildRequest(USER_PHONE_NUMBER));
@@ -111,7 +111,7 @@ public class FollowingAddCommandTest {
 
     @Test
     public void addFolloweeSuccess() {
-        when(dbService.getFollowing(FOLLOWER)).thenReturn(ImmutableSet.of());
+        when(dbService.getFollowingIds(FOLLOWER)).thenReturn(ImmutableSet.of());
         when(dbService.addFollower(USER, FOLLOWER)).thenReturn(true);
 
         final Response response = command.run(buildRequest(USER_PHONE_NUMBER));
@@ -132,7 +132,7 @@ public class FollowingAddCommandTest {
      */
     @Test
     public void addFolloweeSuccessNonStandardPhoneNumber() {
-        when(dbService.getFollowing(FOLLOWER)).thenReturn(ImmutableSet.of());
+        when(dbService.getFollowingIds(FOLLOWER)).thenReturn(ImmutableSet.of());
         when(dbService.addFollower(USER, FOLLOWER)).thenReturn(true);
 
         final Response response = command.run(buildRequest("575-430-4788"));
@@ -54,7 +54,7 @@ public class FollowingRemoveCommandTest {
 
     @Test
     public void removeFolloweeDoesNotExist() {
-        when(dbService.getFollowing(FOLLOWER)).thenReturn(ImmutableSet.of());
+        when(dbService.getFollowingIds(FOLLOWER)).thenReturn(ImmutableSet.of());
 
         final Response response = command.run(request);
 
@@ -65,7 +65,7 @@ public class FollowingRemoveCommandTest {
 
     @Test
     public void removeFolloweeFail() {
-        when(dbService.getFollowing(FOLLOWER)).thenReturn(ImmutableSet.of(USER));
+        when(dbService.getFollowingIds(FOLLOWER)).thenReturn(ImmutableSet.of(USER.id()));
         when(dbService.removeFollower(USER, FOLLOWER)).thenReturn(false);
 
         final Response response = command.run(request);
@@ -77,7 +77,7 @@ public class FollowingRemoveCommandTest {
 
     @Test
     public void removeFolloweeSuccess() {
-        when(dbService.getFollowing(FOLLOWER)).thenReturn(ImmutableSet.of(USER));
+        when(dbService.getFollowingIds(FOLLOWER)).thenReturn(ImmutableSet.of(USER.id()));
         when(dbService.removeFollower(USER, FOLLOWER)).thenReturn(true);
 
         final Response response = command.run(request);
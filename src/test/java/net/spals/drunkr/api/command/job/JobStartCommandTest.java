@@ -2,26 +2,22 @@ package net.spals.drunkr.api.command.job;
 
 import static javax.ws.rs.core.Response.Status.*;
 
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.*;
 
 import static net.spals.drunkr.common.ResponseSubject.assertThat;
 
 import javax.ws.rs.core.Response;
+import java.time.ZonedDateTime;
 import java.util.Optional;
-import java.util.concurrent.*;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.collect.ImmutableMap;
 
-import org.mockito.Mock;
-import org.mockito.MockitoAnnotations;
+import org.mockito.*;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
-import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
 import net.spals.drunkr.common.RunnableWrapper;
 import net.spals.drunkr.common.ZonedDateTimes;
 import net.spals.drunkr.db.DatabaseService;
@@ -29,8 +25,7 @@ import net.spals.drunkr.i18n.I18nSupport;
 import net.spals.drunkr.i18n.I18nSupports;
 import net.spals.drunkr.model.*;
 import net.spals.drunkr.model.JobOptions.Builder;
-import net.spals.drunkr.service.DrunkrJob;
-import net.spals.drunkr.service.DrunkrJobFactory;
+import net.spals.drunkr.service.*;
 
 /**
  * Unit tests for {@link JobStartCommand}.
@@ -40,6 +35,7 @@ import net.spals.drunkr.service.DrunkrJobFactory;
 public class JobStartCommandTest {
 
     private static final Person DRINKER = Persons.SPAGS;
+    private static final String OWNER = "owner";
     private static final JobOptions JOB = new Builder()
         .userId(DRINKER.id())
         .source(Source.SMS)
@@ -50,71 +46,106 @@ public class JobStartCommandTest {
         .stopTime(ZonedDateTimes.nowUTC())
         .build();
     @Mock
+    private BacBatchEngine batchEngine;
+    @Mock
     private DatabaseService dbService;
     @Mock
     private DrunkrJobFactory taskFactory;
     @Mock
-    private ExecutorServiceFactory executorServiceFactory;
-    @Mock
-    private ExecutorService executorService;
+    private Leases leases;
+    @Captor
+    private ArgumentCaptor<JobOptions> jobCaptor;
     @Mock
-    private ScheduledExecutorService executor;
+    private SessionScheduler scheduler;
     private I18nSupport i18nSupport;
     private JobStartCommand command;
     private ImmutableMap<String, Object> request;
-    private Key key;
 
     @BeforeMethod
     public void setUp() {
         MockitoAnnotations.initMocks(this);
 
         i18nSupport = I18nSupports.getEnglish();
-        command = new JobStartCommand(dbService, taskFactory, executorServiceFactory, i18nSupport);
-        when(dbService.insertJob(JOB)).thenReturn(true);
+        command = new JobStartCommand(batchEngine, dbService, taskFactory, i18nSupport, leases, scheduler);
+        when(dbService.insertJob(any())).thenReturn(true);
+        when(leases.owner()).thenReturn(OWNER);
+        when(leases.expiry(any())).thenAnswer(invocation -> invocation.<ZonedDateTime>getArgument(0).plusMinutes(5));
 
         request = ImmutableMap.<String, Object>builder()
             .put("user", DRINKER)
             .put("jobOptions", JOB)
             .build();
-        key = new Key.Builder(DrunkrJob.class)
-            .addTags(DRINKER.id().toHexString())
-            .build();
-        when(executorServiceFactory.get(key)).thenReturn(Optional.of(executorService));
-        when(executorServiceFactory.createSingleThreadScheduledExecutor(key)).thenReturn(executor);
     }
 
     @Test
-    public void startJobWithNoExecutorJob() {
-        when(executorServiceFactory.get(key)).thenReturn(Optional.empty());
+    public void startJobWithNoSession() {
+        when(dbService.getRunningJob(eq(DRINKER), any())).thenReturn(Optional.empty());
 
         final Response response = command.run(request);
 
-        verify(executor).scheduleAtFixedRate(any(RunnableWrapper.class), eq(0L), eq(60L), eq(TimeUnit.SECONDS));
-        verify(executorServiceFactory).createSingleThreadScheduledExecutor(key);
+        verify(scheduler).start(
+            eq(DRINKER.id()),
+            any(RunnableWrapper.class),
+            eq(0L),
+            eq(60L),
+            eq(TimeUnit.SECONDS)
+        );
+        verify(dbService).insertJob(jobCaptor.capture());
+        assertThat(jobCaptor.getValue().id()).isEqualTo(JOB.id());
+        assertThat(jobCaptor.getValue().leaseOwner()).isEqualTo(Optional.of(OWNER));
+        assertThat(jobCaptor.getValue().leaseExpiry().isPresent()).isTrue();
         assertThat(response)
             .hasStatus(OK)
             .hasEntity(JOB);
     }
 
     @Test
-    public void startJobWithExecutorShutdown() {
-        when(executorService.isShutdown()).thenReturn(true);
+    public void jobAlreadyStarted() {
+        // The session may be running on another instance, so the DB's running job is a duplicate.
+        when(dbService.getRunningJob(eq(DRINKER), any())).thenReturn(Optional.of(JOB));
 
         final Response response = command.run(request);
 
-        verify(executor).scheduleAtFixedRate(any(RunnableWrapper.class), eq(0L), eq(60L), eq(TimeUnit.SECONDS));
-        verify(executorServiceFactory).createSingleThreadScheduledExecutor(key);
+        verify(dbService, never()).insertJob(any());
+        verify(scheduler, never()).start(any(), any(), anyLong(), anyLong(), any());
+        assertThat(response)
+            .hasStatus(CONFLICT)
+            .hasErrorMessage(i18nSupport.getLabel("command.begin.duplicate"));
+    }
+
+    @Test
+    public void stopsStaleSession() {
+        when(dbService.getRunningJob(eq(DRINKER), any())).thenReturn(Optional.empty());
+
+        command.run(request);
+
+        final InOrder inOrder = inOrder(scheduler);
+        inOrder.verify(scheduler).stop(DRINKER.id());
+        inOrder.verify(scheduler).start(eq(DRINKER.id()), any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void startJobWithBatchEngine() {
+        when(batchEngine.isEnabled()).thenReturn(true);
+        when(dbService.getRunningJob(eq(DRINKER), any())).thenReturn(Optional.empty());
+
+        final Response response = command.run(request);
+
+        verify(dbService).insertJob(JOB);
+        verify(scheduler, never()).start(any(), any(), anyLong(), anyLong(), any());
         assertThat(response)
             .hasStatus(OK)
             .hasEntity(JOB);
     }
 
     @Test
-    public void jobAlreadyStarted() {
-        when(executorService.isShutdown()).thenReturn(false);
+    public void jobAlreadyStartedWithBatchEngine() {
+        when(batchEngine.isEnabled()).thenReturn(true);
+        when(dbService.getRunningJob(eq(DRINKER), any())).thenReturn(Optional.of(JOB));
 
         final Response response = command.run(request);
 
+        verify(dbService, never()).insertJob(any());
         assertThat(response)
             .hasStatus(CONFLICT)
             .hasErrorMessage(i18nSupport.getLabel("command.begin.duplicate"));
@@ -122,8 +153,7 @@ public class JobStartCommandTest {
 
     @Test
     public void insertJobFail() {
-        when(dbService.insertJob(JOB)).thenReturn(false);
-        when(executorService.isShutdown()).thenReturn(true);
+        when(dbService.insertJob(any())).thenReturn(false);
 
         final Response response = command.run(request);
 
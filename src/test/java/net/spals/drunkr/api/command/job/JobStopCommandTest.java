@@ -11,7 +11,6 @@ import static net.spals.drunkr.common.ResponseSubject.assertThat;
 import javax.ws.rs.core.Response;
 import java.time.ZonedDateTime;
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
 
 import com.google.common.collect.ImmutableMap;
 
@@ -19,8 +18,6 @@ import org.mockito.*;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
-import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
 import net.spals.drunkr.common.NotificationSubject;
 import net.spals.drunkr.common.ZonedDateTimes;
 import net.spals.drunkr.db.DatabaseService;
@@ -28,7 +25,7 @@ import net.spals.drunkr.i18n.I18nSupport;
 import net.spals.drunkr.i18n.I18nSupports;
 import net.spals.drunkr.model.*;
 import net.spals.drunkr.model.JobOptions.Builder;
-import net.spals.drunkr.service.DrunkrJob;
+import net.spals.drunkr.service.SessionScheduler;
 
 /**
  * Unit tests for {@link JobStopCommand}.
@@ -45,9 +42,7 @@ public class JobStopCommandTest {
     @Mock
     private DatabaseService dbService;
     @Mock
-    private ExecutorServiceFactory executorServiceFactory;
-    @Mock
-    private ExecutorService executorService;
+    private SessionScheduler scheduler;
     @Captor
     private ArgumentCaptor<ZonedDateTime> zonedDateTimeCaptor;
     @Captor
@@ -55,14 +50,13 @@ public class JobStopCommandTest {
     private I18nSupport i18nSupport;
     private JobStopCommand command;
     private ImmutableMap<String, Object> request;
-    private Key key;
 
     @BeforeMethod
     public void setUp() {
         MockitoAnnotations.initMocks(this);
 
         i18nSupport = I18nSupports.getEnglish();
-        command = new JobStopCommand(dbService, executorServiceFactory, i18nSupport);
+        command = new JobStopCommand(dbService, i18nSupport, scheduler);
         when(dbService.getJob(JOB.id().toHexString())).thenReturn(Optional.of(JOB));
         when(dbService.stopJob(eq(JOB), any())).thenReturn(true);
 
@@ -70,30 +64,16 @@ public class JobStopCommandTest {
             .put("user", DRINKER)
             .put("job", JOB)
             .build();
-        key = new Key.Builder(DrunkrJob.class)
-            .addTags(DRINKER.id().toHexString())
-            .build();
-        when(executorServiceFactory.get(key)).thenReturn(Optional.of(executorService));
-    }
-
-    @Test
-    public void noExecutorJob() {
-        when(executorServiceFactory.get(key)).thenReturn(Optional.empty());
-
-        final Response response = command.run(request);
-
-        verifyStopped(response);
-        verify(executorServiceFactory, never()).stop(key);
+        when(scheduler.stop(DRINKER.id())).thenReturn(true);
     }
 
     @Test
-    public void executorAlreadyStopped() {
-        when(executorService.isShutdown()).thenReturn(true);
+    public void noRunningSession() {
+        when(scheduler.stop(DRINKER.id())).thenReturn(false);
 
         final Response response = command.run(request);
 
         verifyStopped(response);
-        verify(executorServiceFactory, never()).stop(key);
     }
 
     @Test
@@ -120,7 +100,7 @@ public class JobStopCommandTest {
         final Response response = command.run(request);
 
         verifyStopped(response);
-        verify(executorServiceFactory).stop(key);
+        verify(scheduler).stop(DRINKER.id());
         verify(dbService).insertNotification(notificationCaptor.capture());
         NotificationSubject.assertThat(notificationCaptor.getValue())
             .hasUserId(DRINKER.id())
@@ -145,7 +125,7 @@ public class JobStopCommandTest {
 
         final Response response = command.run(request);
 
-        verify(executorServiceFactory).stop(key);
+        verify(scheduler).stop(DRINKER.id());
         verify(dbService).stopJob(eq(JOB), any());
         assertThat(response)
             .hasStatus(INTERNAL_SERVER_ERROR)
@@ -19,9 +19,9 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import net.spals.drunkr.common.ZonedDateTimes;
-import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.model.*;
 import net.spals.drunkr.model.Notification.Builder;
+import net.spals.drunkr.service.NotificationTimeline;
 
 /**
  * Unit tests for {@link NotificationFindAllCommand}.
@@ -39,7 +39,7 @@ public class NotificationFindAllCommandTest {
         .timestamp(ZonedDateTimes.nowUTC())
         .build();
     @Mock
-    private DatabaseService dbService;
+    private NotificationTimeline timeline;
     private NotificationFindAllCommand command;
     private Map<String, Object> request;
 
@@ -47,7 +47,7 @@ public class NotificationFindAllCommandTest {
     public void setUp() {
         MockitoAnnotations.initMocks(this);
 
-        command = new NotificationFindAllCommand(dbService);
+        command = new NotificationFindAllCommand(timeline);
 
         request = ImmutableMap.<String, Object>builder()
             .put("user", DRINKER)
@@ -59,7 +59,7 @@ public class NotificationFindAllCommandTest {
     @Test
     public void findAll() {
         final List<Notification> notifications = ImmutableList.of(NOTIFICATION);
-        when(dbService.getNotifications(DRINKER, Optional.of(FROM), Optional.of(TO))).thenReturn(notifications);
+        when(timeline.getNotifications(DRINKER, Optional.of(FROM), Optional.of(TO))).thenReturn(notifications);
 
         final Response response = command.run(request);
 
@@ -2,13 +2,17 @@ package net.spals.drunkr.api.command.notification;
 
 import static javax.ws.rs.core.Response.Status.OK;
 
+import static org.mockito.Mockito.when;
+
 import static net.spals.drunkr.common.ResponseSubject.assertThat;
 
 import javax.ws.rs.core.Response;
 import java.util.Map;
+import java.util.Optional;
 
 import com.google.common.collect.ImmutableMap;
 
+import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -16,6 +20,7 @@ import org.testng.annotations.Test;
 import net.spals.drunkr.common.ZonedDateTimes;
 import net.spals.drunkr.model.*;
 import net.spals.drunkr.model.Notification.Builder;
+import net.spals.drunkr.service.NotificationTimeline;
 
 /**
  * Unit tests for {@link NotificationFindCommand}.
@@ -30,6 +35,8 @@ public class NotificationFindCommandTest {
         .message("Hello World")
         .timestamp(ZonedDateTimes.nowUTC())
         .build();
+    @Mock
+    private NotificationTimeline timeline;
     private NotificationFindCommand command;
     private Map<String, Object> request;
 
@@ -37,7 +44,7 @@ public class NotificationFindCommandTest {
     public void setUp() {
         MockitoAnnotations.initMocks(this);
 
-        command = new NotificationFindCommand();
+        command = new NotificationFindCommand(timeline);
 
         request = ImmutableMap.<String, Object>builder()
             .put("user", DRINKER)
@@ -53,4 +60,19 @@ public class NotificationFindCommandTest {
             .hasStatus(OK)
             .hasEntity(NOTIFICATION);
     }
+
+    @Test
+    public void timelineNotificationFound() {
+        final Notification addressed = new Builder()
+            .mergeFrom(NOTIFICATION)
+            .userId(Persons.SPAGS.id())
+            .build();
+        when(timeline.getTimelineNotification(DRINKER, NOTIFICATION)).thenReturn(Optional.of(addressed));
+
+        final Response response = command.run(request);
+
+        assertThat(response)
+            .hasStatus(OK)
+            .hasEntity(addressed);
+    }
 }
@@ -16,9 +16,9 @@ import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.model.Person;
 import net.spals.drunkr.model.Persons;
+import net.spals.drunkr.service.NotificationTimeline;
 
 /**
  * Unit tests for {@link NotificationReadAllCommand}
@@ -29,7 +29,7 @@ public class NotificationReadAllCommandTest {
 
     private static final Person DRINKER = Persons.BROCK;
     @Mock
-    private DatabaseService dbService;
+    private NotificationTimeline timeline;
     private NotificationReadAllCommand command;
     private Map<String, Object> request;
 
@@ -37,8 +37,8 @@ public class NotificationReadAllCommandTest {
     public void setUp() {
         MockitoAnnotations.initMocks(this);
 
-        command = new NotificationReadAllCommand(dbService);
-        when(dbService.markAllReadNotifications(DRINKER)).thenReturn(true);
+        command = new NotificationReadAllCommand(timeline);
+        when(timeline.markAllRead(DRINKER)).thenReturn(true);
 
         request = ImmutableMap.<String, Object>builder()
             .put("user", DRINKER)
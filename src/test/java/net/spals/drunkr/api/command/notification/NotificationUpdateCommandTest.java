@@ -3,6 +3,9 @@ package net.spals.drunkr.api.command.notification;
 import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
 import static javax.ws.rs.core.Response.Status.OK;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import static net.spals.drunkr.common.ResponseSubject.assertThat;
@@ -25,6 +28,7 @@ import net.spals.drunkr.i18n.I18nSupport;
 import net.spals.drunkr.i18n.I18nSupports;
 import net.spals.drunkr.model.*;
 import net.spals.drunkr.model.Notification.Builder;
+import net.spals.drunkr.service.NotificationTimeline;
 
 /**
  * Unit tests for {@link NotificationUpdateCommand}.
@@ -41,6 +45,8 @@ public class NotificationUpdateCommandTest {
         .build();
     @Mock
     private DatabaseService dbService;
+    @Mock
+    private NotificationTimeline timeline;
     private I18nSupport i18nSupport;
     private NotificationUpdateCommand command;
     private Map<String, Object> request;
@@ -50,7 +56,7 @@ public class NotificationUpdateCommandTest {
         MockitoAnnotations.initMocks(this);
 
         i18nSupport = I18nSupports.getEnglish();
-        command = new NotificationUpdateCommand(dbService, i18nSupport, createObjectSerializer());
+        command = new NotificationUpdateCommand(dbService, i18nSupport, createObjectSerializer(), timeline);
         when(dbService.getNotification(NOTIFICATION.id().toHexString())).thenReturn(Optional.of(NOTIFICATION));
 
         request = ImmutableMap.<String, Object>builder()
@@ -89,4 +95,45 @@ public class NotificationUpdateCommandTest {
             .hasStatus(INTERNAL_SERVER_ERROR)
             .hasErrorMessage(i18nSupport.getLabel("command.notification.update.fail", updatedNotification.id()));
     }
+
+    @Test
+    public void timelineNotificationRead() {
+        final Notification addressed = new Builder()
+            .mergeFrom(NOTIFICATION)
+            .userId(Persons.SPAGS.id())
+            .build();
+        final Notification read = new Builder()
+            .mergeFrom(addressed)
+            .read(true)
+            .build();
+        when(timeline.getTimelineNotification(DRINKER, NOTIFICATION)).thenReturn(Optional.of(addressed));
+        when(timeline.markRead(DRINKER, read)).thenReturn(true);
+
+        final Response response = command.run(request);
+
+        assertThat(response)
+            .hasStatus(OK)
+            .hasEntity(read);
+        verify(dbService, never()).updateNotification(any());
+    }
+
+    @Test
+    public void timelineNotificationUnreadFail() {
+        final Notification addressed = new Builder()
+            .mergeFrom(NOTIFICATION)
+            .userId(Persons.SPAGS.id())
+            .read(true)
+            .build();
+        when(timeline.getTimelineNotification(DRINKER, NOTIFICATION)).thenReturn(Optional.of(addressed));
+        final Map<String, Object> unread = ImmutableMap.<String, Object>builder()
+            .put("user", DRINKER)
+            .put("notification", NOTIFICATION)
+            .put("payload", ImmutableMap.of("read", false))
+            .build();
+
+        final Response response = command.run(unread);
+
+        assertThat(response).hasStatus(INTERNAL_SERVER_ERROR);
+        verify(timeline, never()).markRead(any(), any());
+    }
 }
@@ -89,4 +89,18 @@ public class NotificationSubject extends Subject<NotificationSubject, Notificati
         }
         return this;
     }
+
+    public NotificationSubject isRead() {
+        if (!actual().read()) {
+            fail("should be read");
+        }
+        return this;
+    }
+
+    public NotificationSubject isNotRead() {
+        if (actual().read()) {
+            fail("should NOT be read");
+        }
+        return this;
+    }
 }
@@ -1,8 +1,11 @@
 package net.spals.drunkr.common;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.googlecode.catchexception.throwable.CatchThrowable.catchThrowable;
+import static com.googlecode.catchexception.throwable.CatchThrowable.caughtThrowable;
 
 import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
 
 import org.testng.annotations.Test;
@@ -57,6 +60,32 @@ public class ZonedDateTimesTest {
         assertThat(actual).isEqualTo(expected);
     }
 
+    @Test
+    public void parseUntappdEpochMilli() {
+        final ZonedDateTime expected = ZonedDateTime.of(2017, 12, 3, 23, 25, 5, 0, ZonedDateTimes.UTC);
+
+        final long actual = ZonedDateTimes.parseUntappdEpochMilli("Sun, 03 Dec 2017 21:25:05 -0200");
+
+        assertThat(actual).isEqualTo(expected.toInstant().toEpochMilli());
+    }
+
+    @Test
+    public void parseUntappdLeapDay() {
+        final ZonedDateTime expected = ZonedDateTime.of(2016, 2, 29, 12, 0, 0, 0, ZonedDateTimes.UTC);
+
+        final ZonedDateTime actual = ZonedDateTimes.parseUntappd("Mon, 29 Feb 2016 12:00:00 +0000");
+
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    public void parseUntappdInvalid() {
+        // Not of the form we expect, so it is left to the formatter to fail.
+        catchThrowable(() -> ZonedDateTimes.parseUntappd("Sun, 03 Dec 2017 23:25:05 UTC"));
+
+        assertThat(caughtThrowable()).isInstanceOf(DateTimeParseException.class);
+    }
+
     @Test
     public void formatUntappd() {
         final ZonedDateTime timestamp = ZonedDateTime.of(2017, 12, 3, 23, 25, 5, 0, ZonedDateTimes.UTC);
@@ -0,0 +1,53 @@
+package net.spals.drunkr.db;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+import org.testng.annotations.Test;
+
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.model.*;
+import net.spals.drunkr.serialization.ObjectMappers;
+
+/**
+ * Unit tests for {@link BsonStreamingCodecProvider}, as registered in front of {@link JacksonCodecProvider}.
+ *
+ * @author spags
+ */
+public class BsonStreamingCodecProviderTest {
+
+    private static final ObjectMapper MAPPER = ObjectMappers.mongoMapper();
+    private static final CodecRegistry REGISTRY = fromProviders(
+        new BsonStreamingCodecProvider(MAPPER),
+        new JacksonCodecProvider(MAPPER)
+    );
+
+    @Test
+    public void modelInterface() {
+        assertThat(REGISTRY.get(Checkin.class)).isInstanceOf(BsonStreamingCodec.class);
+    }
+
+    @Test
+    public void modelValue() {
+        // Writes ask for the codec of the value's runtime class rather than the model interface.
+        final Checkin checkin = new Checkin.Builder()
+            .userId(new ObjectId())
+            .name("Duff")
+            .style(Style.BOTTLE)
+            .size(Style.BOTTLE.getServingSize())
+            .timestamp(ZonedDateTimes.nowUTC())
+            .abv(.05)
+            .build();
+
+        assertThat(REGISTRY.get(checkin.getClass())).isInstanceOf(BsonStreamingCodec.class);
+    }
+
+    @Test
+    public void otherClass() {
+        assertThat(REGISTRY.get(BacStatus.class)).isInstanceOf(JacksonCodec.class);
+    }
+}
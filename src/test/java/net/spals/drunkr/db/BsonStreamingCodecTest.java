@@ -0,0 +1,166 @@
+package net.spals.drunkr.db;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoClient;
+import org.bson.*;
+import org.bson.codecs.*;
+import org.bson.types.ObjectId;
+import org.testng.annotations.Test;
+
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.model.*;
+import net.spals.drunkr.serialization.ObjectMappers;
+
+/**
+ * Unit tests for {@link BsonStreamingCodec}, mainly that it reads and writes the same documents as {@link JacksonCodec}.
+ *
+ * @author spags
+ */
+public class BsonStreamingCodecTest {
+
+    private static final ObjectMapper MAPPER = ObjectMappers.mongoMapper();
+    private static final ZonedDateTime NOW = ZonedDateTimes.nowUTC().truncatedTo(ChronoUnit.MILLIS);
+    private static final Person PERSON = new Person.Builder()
+        .userName("spags")
+        .gender(Gender.MALE)
+        .weight(150.0)
+        .phoneNumber("+1555555555")
+        .build();
+
+    private <T> BsonDocument encode(final Codec<T> codec, final T value) {
+        final BsonDocument document = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(document), value, EncoderContext.builder().build());
+        return document;
+    }
+
+    private <T> T decode(final Codec<T> codec, final BsonDocument document) {
+        return codec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+    }
+
+    private <T> void assertCompatible(final Class<T> type, final T value) {
+        final BsonStreamingCodec<T> codec = new BsonStreamingCodec<>(MAPPER, type);
+        final JacksonCodec<T> jacksonCodec = new JacksonCodec<>(MAPPER, MongoClient.getDefaultCodecRegistry(), type);
+
+        final BsonDocument document = encode(codec, value);
+        final BsonDocument jacksonDocument = encode(jacksonCodec, value);
+
+        assertThat(document).isEqualTo(jacksonDocument);
+        assertThat(decode(codec, jacksonDocument)).isEqualTo(decode(jacksonCodec, jacksonDocument));
+    }
+
+    @Test
+    public void person() {
+        assertCompatible(Person.class, PERSON);
+    }
+
+    @Test
+    public void follower() {
+        final Follower follower = new Follower.Builder()
+            .userId(PERSON.id())
+            .followerId(new ObjectId())
+            .build();
+
+        assertCompatible(Follower.class, follower);
+    }
+
+    @Test
+    public void checkin() {
+        final Checkin checkin = new Checkin.Builder()
+            .userId(PERSON.id())
+            .name("Duff")
+            .producer("Duff Brewery")
+            .rating(4)
+            .style(Style.BOTTLE)
+            .size(Style.BOTTLE.getServingSize())
+            .timestamp(NOW)
+            .abv(.05)
+            .untappdId(15L)
+            .build();
+
+        assertCompatible(Checkin.class, checkin);
+    }
+
+    @Test
+    public void notification() {
+        final Notification notification = new Notification.Builder()
+            .userId(PERSON.id())
+            .sourceUserId(new ObjectId())
+            .source(Source.SMS)
+            .message("Hello World")
+            .timestamp(NOW)
+            .build();
+
+        assertCompatible(Notification.class, notification);
+    }
+
+    @Test
+    public void bacCalculation() {
+        final BacCalculation bacCalculation = new BacCalculation.Builder()
+            .userId(PERSON.id())
+            .bac(.05)
+            .timestamp(NOW)
+            .build();
+
+        assertCompatible(BacCalculation.class, bacCalculation);
+    }
+
+    @Test
+    public void jobOptions() {
+        final JobOptions job = new JobOptions.Builder()
+            .userId(PERSON.id())
+            .startTime(NOW.minusMinutes(15))
+            .stopTime(NOW)
+            .period(60L)
+            .source(Source.MESSENGER)
+            .gramsOfAlcohol(14.0)
+            .checkinCount(1)
+            .checkinsThrough(NOW)
+            .build();
+
+        assertCompatible(JobOptions.class, job);
+    }
+
+    @Test
+    public void untappdLink() {
+        final UntappdLink link = new UntappdLink.Builder()
+            .userId(PERSON.id())
+            .untappdName("untappd")
+            .accessToken("token")
+            .lastCheckinId(15L)
+            .build();
+
+        assertCompatible(UntappdLink.class, link);
+    }
+
+    @Test
+    public void linkCode() {
+        final LinkCode linkCode = new LinkCode.Builder()
+            .userId(PERSON.id())
+            .link("link")
+            .code("code")
+            .type(LinkType.LINK_PHONE)
+            .timestamp(NOW)
+            .build();
+
+        assertCompatible(LinkCode.class, linkCode);
+    }
+
+    @Test
+    public void objectIdsAndTimestamps() {
+        final BacCalculation bacCalculation = new BacCalculation.Builder()
+            .userId(PERSON.id())
+            .bac(.05)
+            .timestamp(NOW)
+            .build();
+
+        final BsonDocument document = encode(new BsonStreamingCodec<>(MAPPER, BacCalculation.class), bacCalculation);
+
+        assertThat(document.get("userId")).isEqualTo(new BsonObjectId(PERSON.id()));
+        assertThat(document.get("timestamp")).isEqualTo(new BsonInt64(NOW.toInstant().toEpochMilli()));
+    }
+}
@@ -0,0 +1,107 @@
+package net.spals.drunkr.db;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.bson.types.ObjectId;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link FollowerGraph}.
+ *
+ * @author spags
+ */
+public class FollowerGraphTest {
+
+    private final ObjectId user = new ObjectId();
+    private final ObjectId follower = new ObjectId();
+    private final ObjectId otherFollower = new ObjectId();
+    private FollowerGraph graph;
+
+    @BeforeMethod
+    public void setUp() {
+        graph = new FollowerGraph();
+    }
+
+    @Test
+    public void addFollower() {
+        final boolean added = graph.add(user, follower);
+
+        assertThat(added).isTrue();
+        assertThat(graph.getFollowerIds(user)).containsExactly(follower);
+        assertThat(graph.getFollowingIds(follower)).containsExactly(user);
+        assertThat(graph.getFollowerIds(follower)).isEmpty();
+        assertThat(graph.getFollowingIds(user)).isEmpty();
+    }
+
+    @Test
+    public void addDuplicateFollower() {
+        graph.add(user, follower);
+
+        final boolean added = graph.add(user, follower);
+
+        assertThat(added).isFalse();
+        assertThat(graph.getFollowerIds(user)).containsExactly(follower);
+    }
+
+    @Test
+    public void addManyFollowers() {
+        graph.add(user, follower);
+        graph.add(user, otherFollower);
+        graph.add(follower, otherFollower);
+
+        assertThat(graph.getFollowerIds(user)).containsExactly(follower, otherFollower);
+        assertThat(graph.getFollowingIds(otherFollower)).containsExactly(user, follower);
+    }
+
+    @Test
+    public void removeFollower() {
+        graph.add(user, follower);
+        graph.add(user, otherFollower);
+
+        final boolean removed = graph.remove(user, follower);
+
+        assertThat(removed).isTrue();
+        assertThat(graph.getFollowerIds(user)).containsExactly(otherFollower);
+        assertThat(graph.getFollowingIds(follower)).isEmpty();
+    }
+
+    @Test
+    public void removeMissingFollower() {
+        graph.add(user, follower);
+
+        assertThat(graph.remove(user, otherFollower)).isFalse();
+        assertThat(graph.remove(follower, user)).isFalse();
+        assertThat(graph.getFollowerIds(user)).containsExactly(follower);
+    }
+
+    @Test
+    public void removeUser() {
+        graph.add(user, follower);
+        graph.add(follower, otherFollower);
+        graph.add(otherFollower, follower);
+
+        final boolean removed = graph.removeUser(follower);
+
+        assertThat(removed).isTrue();
+        assertThat(graph.getFollowerIds(user)).isEmpty();
+        assertThat(graph.getFollowerIds(follower)).isEmpty();
+        assertThat(graph.getFollowingIds(follower)).isEmpty();
+        assertThat(graph.getFollowerIds(otherFollower)).isEmpty();
+        assertThat(graph.getFollowingIds(otherFollower)).isEmpty();
+    }
+
+    @Test
+    public void removeUnknownUser() {
+        graph.add(user, follower);
+
+        assertThat(graph.removeUser(otherFollower)).isFalse();
+        assertThat(graph.getFollowerIds(user)).containsExactly(follower);
+    }
+
+    @Test
+    public void unknownUser() {
+        assertThat(graph.getFollowerIds(user)).isEmpty();
+        assertThat(graph.getFollowingIds(user)).isEmpty();
+    }
+}
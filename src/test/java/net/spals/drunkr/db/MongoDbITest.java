@@ -3,7 +3,12 @@ package net.spals.drunkr.db;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth8.assertThat;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import static net.spals.drunkr.model.LinkType.AUTH_USER;
@@ -12,15 +17,20 @@ import static net.spals.drunkr.model.LinkType.LINK_PHONE;
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 import org.bson.types.ObjectId;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.testng.annotations.*;
 
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
 import net.spals.appbuilder.keystore.core.KeyStore;
 import net.spals.drunkr.common.HasTimestampCorrespondence;
 import net.spals.drunkr.common.ZonedDateTimes;
@@ -55,6 +65,8 @@ public class MongoDbITest {
     @Mock
     private KeyStore keystore;
     private MongoDb dbService;
+    private MongoDb otherDbService;
+    private Runnable followerGraphReload;
 
     public MongoDbITest() {
         person = buildTestPerson();
@@ -92,10 +104,18 @@ public class MongoDbITest {
 
         // Don't encrypt any of our information for db testing purposes.
         when(keystore.encrypt(anyString())).thenAnswer(i -> i.getArguments()[0]);
-        dbService = new MongoDb(provider.get(), keystore);
+        final ExecutorServiceFactory executorServiceFactory = mock(ExecutorServiceFactory.class);
+        final ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        when(executorServiceFactory.createSingleThreadScheduledExecutor(any())).thenReturn(executor);
+        dbService = new MongoDb(provider.get(), executorServiceFactory, keystore);
         // App integration tests may add data so delete now.
         dbService.deleteData();
         dbService.buildIndexes();
+        final ArgumentCaptor<Runnable> reload = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).scheduleAtFixedRate(reload.capture(), anyLong(), anyLong(), eq(TimeUnit.SECONDS));
+        followerGraphReload = reload.getValue();
+        // Another instance sharing the database, its follows are only seen by ours once reloaded.
+        otherDbService = new MongoDb(provider.get(), executorServiceFactory, keystore);
     }
 
     @BeforeMethod
@@ -288,6 +308,60 @@ public class MongoDbITest {
         assertThat(inserted).isEqualTo(true);
     }
 
+    @Test
+    public void upsertCheckins() {
+        // Use another user so we don't change the checkins of the other tests.
+        final ObjectId userId = new ObjectId();
+        final Checkin first = new Checkin.Builder()
+            .mergeFrom(createTimestampedCheckin(present))
+            .userId(userId)
+            .untappdId(15L)
+            .build();
+        final Checkin polledAgain = new Checkin.Builder()
+            .mergeFrom(first)
+            .id(new ObjectId())
+            .build();
+        final Checkin second = new Checkin.Builder()
+            .mergeFrom(first)
+            .id(new ObjectId())
+            .untappdId(16L)
+            .build();
+
+        final Optional<List<Checkin>> upserted = dbService.upsertCheckins(ImmutableList.of(first));
+        final Optional<List<Checkin>> upsertedAgain = dbService.upsertCheckins(ImmutableList.of(polledAgain, second));
+        final Optional<Checkin> duplicate = dbService.getCheckin(polledAgain.id().toHexString());
+
+        assertThat(upserted).hasValue(ImmutableList.of(first));
+        assertThat(upsertedAgain).hasValue(ImmutableList.of(second));
+        assertThat(duplicate).isEmpty();
+    }
+
+    @Test
+    public void insertCheckinsWithoutUntappdId() {
+        // Use another user so we don't change the checkins of the other tests.
+        final ObjectId userId = new ObjectId();
+        final Checkin first = new Checkin.Builder()
+            .mergeFrom(createTimestampedCheckin(past))
+            .userId(userId)
+            .build();
+        final Checkin second = new Checkin.Builder()
+            .mergeFrom(createTimestampedCheckin(present))
+            .userId(userId)
+            .build();
+
+        final boolean insertedFirst = dbService.insertCheckin(first);
+        final boolean insertedSecond = dbService.insertCheckin(second);
+        final Optional<List<Checkin>> upserted = dbService.upsertCheckins(
+            ImmutableList.of(
+                new Checkin.Builder().mergeFrom(createTimestampedCheckin(future)).userId(userId).build()
+            )
+        );
+
+        assertThat(insertedFirst).isTrue();
+        assertThat(insertedSecond).isTrue();
+        assertThat(upserted.map(List::size)).hasValue(1);
+    }
+
     @Test(dependsOnMethods = "insertCheckins")
     public void checkinsSorted() {
         // Verify checkins are sorted when directly queried
@@ -384,6 +458,147 @@ public class MongoDbITest {
         assertThat(inserted).isEqualTo(true);
     }
 
+    @Test(dependsOnMethods = "insertOtherPerson")
+    public void insertNotificationsUnordered() {
+        final Notification first = new Notification.Builder()
+            .userId(otherPerson.id())
+            .message("Hello World")
+            .timestamp(present)
+            .build();
+        final Notification second = new Notification.Builder()
+            .userId(otherPerson.id())
+            .message("Hello World")
+            .timestamp(present)
+            .build();
+
+        // The duplicate fails but doesn't stop the second notification from being inserted.
+        final int inserted = dbService.insertNotificationsUnordered(ImmutableList.of(first, first, second));
+
+        assertThat(inserted).isEqualTo(2);
+        assertThat(dbService.getNotification(second.id().toHexString())).hasValue(second);
+    }
+
+    @Test
+    public void insertEmptyNotificationsUnordered() {
+        final int inserted = dbService.insertNotificationsUnordered(ImmutableList.of());
+
+        assertThat(inserted).isEqualTo(0);
+    }
+
+    @Test(dependsOnMethods = "insertPerson")
+    public void insertTimelineNotification() {
+        final Notification update = new Notification.Builder()
+            .userId(person.id())
+            .sourceUserId(person.id())
+            .message("Hello World")
+            .timestamp(present)
+            .build();
+
+        assertThat(dbService.insertTimelineNotification(update)).isTrue();
+        assertThat(dbService.getTimelineNotification(update.id().toHexString())).hasValue(update);
+        assertThat(
+            dbService.getTimelineNotifications(
+                ImmutableList.of(person.id()),
+                Optional.of(past),
+                Optional.of(future)
+            )
+        ).containsExactly(update);
+        assertThat(
+            dbService.getTimelineNotifications(
+                ImmutableList.of(person.id()),
+                Optional.of(present.plusMinutes(1)),
+                Optional.of(future)
+            )
+        ).isEmpty();
+    }
+
+    @Test(dependsOnMethods = "insertOtherPerson")
+    public void timelineReadThrough() {
+        assertThat(dbService.getTimelineReadThrough(otherPerson)).isEmpty();
+
+        assertThat(dbService.updateTimelineReadThrough(otherPerson, present)).isTrue();
+        assertThat(dbService.updateTimelineReadThrough(otherPerson, future)).isTrue();
+
+        assertThat(dbService.getTimelineReadThrough(otherPerson).map(x -> x.toInstant().toEpochMilli()))
+            .hasValue(future.toInstant().toEpochMilli());
+    }
+
+    @Test
+    public void claimJob() {
+        // A stopped job for someone else so it doesn't show up in the other job tests.
+        final JobOptions stoppedJob = new JobOptions.Builder()
+            .userId(new ObjectId())
+            .stopTime(past)
+            .source(Source.SMS)
+            .build();
+        dbService.insertJob(stoppedJob);
+
+        final Optional<JobOptions> claimed = dbService.claimJob(stoppedJob, "owner", present, future);
+        final Optional<JobOptions> contested = dbService.claimJob(stoppedJob, "other", present, future);
+        final Optional<JobOptions> renewed = dbService.claimJob(stoppedJob, "owner", present, future.plusMinutes(5));
+        final Optional<JobOptions> taken = dbService.claimJob(stoppedJob, "other", future.plusMinutes(5), future);
+
+        assertThat(claimed.flatMap(JobOptions::leaseOwner)).hasValue("owner");
+        assertThat(contested).isEmpty();
+        assertThat(renewed.flatMap(JobOptions::leaseOwner)).hasValue("owner");
+        assertThat(taken.flatMap(JobOptions::leaseOwner)).hasValue("other");
+    }
+
+    @Test
+    public void claimNotificationsByIds() {
+        final Notification notification = new Notification.Builder()
+            .userId(new ObjectId())
+            .message("Claim")
+            .timestamp(present)
+            .build();
+        dbService.insertNotification(notification);
+
+        final List<ObjectId> ids = ImmutableList.of(notification.id());
+
+        final List<Notification> claimed = dbService.claimNotifications(ids, "owner", present, future);
+        final List<Notification> contested = dbService.claimNotifications(ids, "other", present, future);
+        dbService.markNotificationsPushed(ids);
+        final List<Notification> pushed = dbService.claimNotifications(ids, "other", future, future);
+
+        assertThat(claimed).hasSize(1);
+        assertThat(claimed.get(0).leaseOwner()).hasValue("owner");
+        assertThat(contested).isEmpty();
+        assertThat(pushed).isEmpty();
+    }
+
+    @Test
+    public void beer() {
+        final Beer beer = new Beer.Builder()
+            .link("b/duff-brewery-duff/1")
+            .abv(.05)
+            .timestamp(present)
+            .build();
+        final Beer refetched = new Beer.Builder()
+            .mergeFrom(beer)
+            .abv(.06)
+            .timestamp(future)
+            .build();
+        assertThat(dbService.getBeer(beer.link())).isEmpty();
+
+        assertThat(dbService.upsertBeer(beer)).isTrue();
+        assertThat(dbService.upsertBeer(refetched)).isTrue();
+        final Optional<Beer> foundBeer = dbService.getBeer(beer.link());
+
+        assertThat(foundBeer.map(Beer::abv)).hasValue(.06);
+        assertThat(foundBeer.map(x -> x.timestamp().toInstant().toEpochMilli()))
+            .hasValue(future.toInstant().toEpochMilli());
+    }
+
+    @Test
+    public void resumeToken() {
+        assertThat(dbService.getResumeToken("test")).isEmpty();
+
+        assertThat(dbService.updateResumeToken("test", "{\"_data\": \"1\"}")).isTrue();
+        assertThat(dbService.updateResumeToken("test", "{\"_data\": \"2\"}")).isTrue();
+
+        assertThat(dbService.getResumeToken("test")).hasValue("{\"_data\": \"2\"}");
+    }
+
     @Test(dependsOnMethods = "insertNotifications")
     public void notificationsSorted() {
         // Verify notifications are sorted when directly queried
@@ -463,6 +678,24 @@ public class MongoDbITest {
             .containsExactly(present);
     }
 
+    @Test(dependsOnMethods = "insertBacCalculation")
+    public void latestBacCalculation() {
+        final Optional<BacCalculation> calculation = dbService.getLatestBacCalculation(person);
+
+        // Past was inserted last, but future is the latest.
+        assertThat(calculation.map(BacCalculation::timestamp)).hasValue(future);
+    }
+
+    @Test(dependsOnMethods = "insertBacCalculation")
+    public void latestBacCalculations() {
+        final List<BacCalculation> calculations = dbService.getLatestBacCalculations(
+            ImmutableSet.of(person.id(), otherPerson.id())
+        );
+
+        assertThat(calculations).comparingElementsUsing(HasTimestampCorrespondence.get())
+            .containsExactly(future);
+    }
+
     @Test(dependsOnMethods = { "insertPerson", "insertOtherPerson" })
     public void addFollower() {
         final boolean inserted = dbService.addFollower(person, otherPerson);
@@ -484,6 +717,48 @@ public class MongoDbITest {
         assertThat(followers).containsExactly(otherPerson);
     }
 
+    @Test
+    public void removePersonWithFollows() {
+        final Person removed = buildTestPerson();
+        final Person followed = buildTestPerson();
+        final Person follower = buildTestPerson();
+        dbService.insertPerson(removed);
+        dbService.addFollower(followed, removed);
+        dbService.addFollower(removed, follower);
+
+        dbService.removePerson(removed);
+
+        assertThat(dbService.getFollowerIds(followed)).isEmpty();
+        assertThat(dbService.getFollowingIds(follower)).isEmpty();
+    }
+
+    @Test
+    public void reloadFollowerGraph() {
+        final Person followed = buildTestPerson();
+        final Person follower = buildTestPerson();
+        otherDbService.addFollower(followed, follower);
+        assertThat(dbService.getFollowerIds(followed)).isEmpty();
+
+        followerGraphReload.run();
+
+        assertThat(dbService.getFollowerIds(followed)).containsExactly(follower.id());
+        assertThat(dbService.getFollowingIds(follower)).containsExactly(followed.id());
+    }
+
+    @Test(dependsOnMethods = "addFollower")
+    public void getFollowerIds() {
+        final Set<ObjectId> followerIds = dbService.getFollowerIds(person);
+
+        assertThat(followerIds).containsExactly(otherPerson.id());
+    }
+
+    @Test(dependsOnMethods = "addFollower")
+    public void getFollowingIds() {
+        final Set<ObjectId> followingIds = dbService.getFollowingIds(otherPerson);
+
+        assertThat(followingIds).containsExactly(person.id());
+    }
+
     @Test(dependsOnMethods = "addFollower")
     public void getFollowings() {
         final Set<Person> following = dbService.getFollowing(otherPerson);
@@ -491,7 +766,7 @@ public class MongoDbITest {
         assertThat(following).containsExactly(person);
     }
 
-    @Test(dependsOnMethods = { "addDuplicateFollower", "getFollowers", "getFollowings" })
+    @Test(dependsOnMethods = { "addDuplicateFollower", "getFollowers", "getFollowerIds", "getFollowings", "getFollowingIds" })
     public void removeFollower() {
         final boolean removed = dbService.removeFollower(person, otherPerson);
 
@@ -512,6 +787,16 @@ public class MongoDbITest {
         assertThat(runningJob).hasValue(job);
     }
 
+    @Test(dependsOnMethods = "insertJob")
+    public void runningJobsNoStopTime() {
+        final List<JobOptions> runningJobs = dbService.getRunningJobs(
+            ImmutableSet.of(person.id(), otherPerson.id()),
+            present
+        );
+
+        assertThat(runningJobs).containsExactly(job);
+    }
+
     @Test(dependsOnMethods = "insertJob")
     public void allRunningJobsNoStopTime() {
         final List<JobOptions> foundJob = dbService.allRunningJobs(present);
@@ -591,7 +876,84 @@ public class MongoDbITest {
         assertThat(updatedJob).isEqualTo(true);
     }
 
-    @Test(dependsOnMethods = { "updateJob" })
+    @Test(dependsOnMethods = "updateJob")
+    public void accumulateJob() {
+        final Optional<JobOptions> accumulatedJob = dbService.accumulateJob(job, 10.0, 2, present, future);
+        // The job was read before its high-water mark moved, so adding to it again is refused.
+        final Optional<JobOptions> staleJob = dbService.accumulateJob(job, 10.0, 2, future, future);
+
+        assertThat(staleJob).isEmpty();
+        assertThat(accumulatedJob).isPresent();
+        accumulatedJob.ifPresent(
+            x -> {
+                assertThat(x.gramsOfAlcohol()).isWithin(.001).of(10.0);
+                assertThat(x.checkinCount()).isEqualTo(2);
+                assertThat(x.checkinsThrough()).hasValue(present);
+                assertThat(x.lastModified()).isEqualTo(future);
+            }
+        );
+    }
+
+    @Test
+    public void accumulateJobAfterCorrection() {
+        final JobOptions readJob = new JobOptions.Builder()
+            .userId(new ObjectId())
+            .startTime(past)
+            .source(Source.SMS)
+            .build();
+        dbService.insertJob(readJob);
+        // A checkin the job has yet to add is changed after the job read its checkins.
+        dbService.correctJobs(readJob.userId(), present, 5.0, 1);
+
+        final Optional<JobOptions> staleJob = dbService.accumulateJob(readJob, 0.0, 0, future, future);
+        final Optional<JobOptions> changedJob = dbService.getJob(readJob.id().toHexString());
+
+        assertThat(staleJob).isEmpty();
+        assertThat(changedJob).isPresent();
+        changedJob.ifPresent(
+            x -> {
+                assertThat(x.version()).isEqualTo(1L);
+                assertThat(x.gramsOfAlcohol()).isWithin(.001).of(0.0);
+                assertThat(dbService.accumulateJob(x, 5.0, 1, future, future)).isPresent();
+            }
+        );
+    }
+
+    @Test(dependsOnMethods = "accumulateJob")
+    public void correctJobs() {
+        // The job hasn't added checkins after its high-water mark, so it isn't corrected.
+        final boolean ignored = dbService.correctJobs(person.id(), future, 5.0, 1);
+        final boolean corrected = dbService.correctJobs(person.id(), present, -4.0, -1);
+        final Optional<JobOptions> correctedJob = dbService.getJob(job.id().toHexString());
+
+        assertThat(correctedJob).isPresent();
+        correctedJob.ifPresent(
+            x -> {
+                assertThat(x.gramsOfAlcohol()).isWithin(.001).of(6.0);
+                assertThat(x.checkinCount()).isEqualTo(1);
+            }
+        );
+        assertThat(ignored).isEqualTo(true);
+        assertThat(corrected).isEqualTo(true);
+    }
+
+    @Test(dependsOnMethods = "correctJobs")
+    public void resetJobs() {
+        final boolean reset = dbService.resetJobs(person);
+        final Optional<JobOptions> resetJob = dbService.getJob(job.id().toHexString());
+
+        assertThat(resetJob).isPresent();
+        resetJob.ifPresent(
+            x -> {
+                assertThat(x.gramsOfAlcohol()).isWithin(.001).of(0.0);
+                assertThat(x.checkinCount()).isEqualTo(0);
+                assertThat(x.checkinsThrough()).hasValue(present);
+            }
+        );
+        assertThat(reset).isEqualTo(true);
+    }
+
+    @Test(dependsOnMethods = { "resetJobs" })
     public void removeJob() {
         final boolean removed = dbService.removeJob(job);
 
@@ -619,6 +981,20 @@ public class MongoDbITest {
         assertThat(found).hasValue(link);
     }
 
+    @Test
+    public void updateLinkLastCheckinId() {
+        final UntappdLink link = buildTestUntappdLink(person.id());
+        dbService.insertUntappdLink(link);
+
+        final boolean updated = dbService.updateLinkLastCheckinId(link, 15L);
+        // An older id must not move the high-water mark backwards.
+        dbService.updateLinkLastCheckinId(link, 13L);
+        final Optional<UntappdLink> found = dbService.getUntappdLink(person);
+
+        assertThat(updated).isTrue();
+        assertThat(found.flatMap(UntappdLink::lastCheckinId)).hasValue(15L);
+    }
+
     @Test
     public void addUntappdLink() {
         final ObjectId userId = new ObjectId();
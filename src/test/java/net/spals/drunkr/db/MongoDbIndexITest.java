@@ -0,0 +1,250 @@
+package net.spals.drunkr.db;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.mongodb.client.model.Filters.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
+import net.spals.appbuilder.keystore.core.KeyStore;
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.model.*;
+import net.spals.drunkr.serialization.ObjectMappers;
+
+/**
+ * Integration tests that the queries of {@link MongoDb} are answered by an index, i.e. Mongo neither scans a whole
+ * collection nor sorts the results in memory. Uses the database profiler to see the plan each query actually used.
+ * <p>
+ * Looking up a person by name, reading all persons or all running jobs and loading the follower graph are not covered,
+ * these scan by design. Neither are followers ids, which are read from the follower graph in memory.
+ *
+ * @author spags
+ */
+public class MongoDbIndexITest {
+
+    private static final String MONGO_URI = Optional.ofNullable(Strings.emptyToNull(System.getenv("MONGODB_URI")))
+        .orElse("mongodb://localhost:27017/drunkr_test");
+    private static final String COLLECTION_SCAN = "COLLSCAN";
+    private final ZonedDateTime now = ZonedDateTimes.nowUTC();
+    private final Optional<ZonedDateTime> from = Optional.of(now.minusHours(1));
+    private final Optional<ZonedDateTime> to = Optional.of(now.plusHours(1));
+    private final Person person = Persons.SPAGS;
+    private final Person follower = Persons.BROCK;
+    @Mock
+    private ExecutorServiceFactory executorServiceFactory;
+    @Mock
+    private ScheduledExecutorService executor;
+    @Mock
+    private KeyStore keystore;
+    private MongoDatabase database;
+    private MongoDb dbService;
+
+    @BeforeClass
+    public void classSetUp() {
+        MockitoAnnotations.initMocks(this);
+
+        final MongoDbProvider provider = new MongoDbProvider(ObjectMappers.mongoMapper());
+        provider.createDb(MONGO_URI);
+        database = provider.get();
+        when(executorServiceFactory.createSingleThreadScheduledExecutor(any())).thenReturn(executor);
+        dbService = new MongoDb(database, executorServiceFactory, keystore);
+        dbService.deleteData();
+        dbService.buildIndexes();
+
+        // A collection that doesn't exist has no plan at all, so give every collection something to find.
+        final Checkin checkin = new Checkin.Builder()
+            .userId(person.id())
+            .name("Duff")
+            .style(Style.BOTTLE)
+            .size(Style.BOTTLE.getServingSize())
+            .timestamp(now)
+            .abv(.05)
+            .build();
+        final Notification notification = new Notification.Builder()
+            .userId(person.id())
+            .message("Hello World")
+            .timestamp(now)
+            .build();
+        dbService.insertCheckins(ImmutableList.of(checkin));
+        dbService.insertBacCalculation(
+            new BacCalculation.Builder()
+                .userId(person.id())
+                .bac(.05)
+                .timestamp(now)
+                .build()
+        );
+        dbService.insertNotification(notification);
+        dbService.insertTimelineNotification(notification);
+        dbService.insertJob(
+            new JobOptions.Builder()
+                .userId(person.id())
+                .startTime(now)
+                .source(Source.SMS)
+                .build()
+        );
+        dbService.insertLinkCode(
+            new LinkCode.Builder()
+                .userId(person.id())
+                .link("link")
+                .code("code")
+                .type(LinkType.LINK_PHONE)
+                .timestamp(now)
+                .build()
+        );
+        dbService.insertUntappdLink(
+            new UntappdLink.Builder()
+                .userId(person.id())
+                .untappdName("untappd")
+                .build()
+        );
+        dbService.insertPerson(person);
+        dbService.insertPerson(follower);
+        dbService.addFollower(person, follower);
+    }
+
+    @AfterClass
+    public void classTearDown() {
+        dbService.deleteData();
+    }
+
+    /**
+     * Profiles the query and checks the plan of everything it read from the collection.
+     */
+    private void assertIndexed(final String collection, final Runnable query) {
+        // The profile can only be dropped while the profiler is off.
+        database.runCommand(new Document("profile", 0));
+        database.getCollection("system.profile").drop();
+        database.runCommand(new Document("profile", 2));
+        try {
+            query.run();
+        } finally {
+            database.runCommand(new Document("profile", 0));
+        }
+
+        final List<Document> profiled = database.getCollection("system.profile")
+            .find(and(eq("ns", database.getName() + "." + collection), exists("planSummary")))
+            .into(new ArrayList<>());
+        assertThat(profiled).isNotEmpty();
+        for (final Document operation : profiled) {
+            assertThat(operation.getString("planSummary")).doesNotContain(COLLECTION_SCAN);
+            assertThat(operation.getBoolean("hasSortStage", false)).isFalse();
+        }
+    }
+
+    @Test
+    public void getCheckins() {
+        assertIndexed("checkins", () -> dbService.getCheckins(person, from, to));
+    }
+
+    @Test
+    public void getCheckinsByUsers() {
+        assertIndexed(
+            "checkins",
+            () -> dbService.getCheckinsByUsers(ImmutableSet.of(person.id(), follower.id()), from, to)
+        );
+    }
+
+    @Test
+    public void getBacCalculations() {
+        assertIndexed("bacCalculations", () -> dbService.getBacCalculations(person, from, to));
+    }
+
+    @Test
+    public void getLatestBacCalculation() {
+        assertIndexed("latestBacs", () -> dbService.getLatestBacCalculation(person));
+    }
+
+    @Test
+    public void getLatestBacCalculations() {
+        assertIndexed("latestBacs", () -> dbService.getLatestBacCalculations(ImmutableSet.of(person.id())));
+    }
+
+    @Test
+    public void getLatestBacCalculationWithoutCopy() {
+        // Users without a copy fall back to the calculations themselves.
+        assertIndexed("bacCalculations", () -> dbService.getLatestBacCalculations(ImmutableSet.of(follower.id())));
+    }
+
+    @Test
+    public void getNotifications() {
+        assertIndexed("notifications", () -> dbService.getNotifications(person, from, to));
+    }
+
+    @Test
+    public void unreadNotifications() {
+        assertIndexed("notifications", () -> dbService.unreadNotifications(person));
+    }
+
+    @Test
+    public void unpushedNotifications() {
+        assertIndexed("notifications", () -> dbService.unpushedNotifications());
+    }
+
+    @Test
+    public void getTimelineNotifications() {
+        assertIndexed(
+            "timeline",
+            () -> dbService.getTimelineNotifications(ImmutableSet.of(person.id(), new ObjectId()), from, to)
+        );
+    }
+
+    @Test
+    public void getJobs() {
+        assertIndexed("jobs", () -> dbService.getJobs(person));
+    }
+
+    @Test
+    public void getRunningJob() {
+        assertIndexed("jobs", () -> dbService.getRunningJob(person, now));
+    }
+
+    @Test
+    public void getRunningJobs() {
+        assertIndexed("jobs", () -> dbService.getRunningJobs(ImmutableSet.of(person.id(), follower.id()), now));
+    }
+
+    @Test
+    public void getLinkCode() {
+        assertIndexed("linkCodes", () -> dbService.getLinkCode(person, LinkType.LINK_PHONE));
+    }
+
+    @Test
+    public void getUntappdLink() {
+        assertIndexed("untappdLinks", () -> dbService.getUntappdLink(person));
+    }
+
+    @Test
+    public void getUntappdLinks() {
+        assertIndexed("untappdLinks", () -> dbService.getUntappdLinks(ImmutableSet.of(person.id())));
+    }
+
+    @Test
+    public void getFollowers() {
+        // The follows are read from memory, leaving only the persons to find.
+        assertIndexed("persons", () -> dbService.getFollowers(person));
+    }
+
+    @Test
+    public void getFollowing() {
+        assertIndexed("persons", () -> dbService.getFollowing(follower));
+    }
+}
@@ -55,9 +55,20 @@ public class NotificationConverterTest {
         assertThat(notification).isEqualTo(NOTIFICATION);
     }
 
+    @Test
+    public void timelineNotificationConverted() {
+        when(dbService.getNotification(NOTIFICATION.id().toHexString())).thenReturn(Optional.empty());
+        when(dbService.getTimelineNotification(NOTIFICATION.id().toHexString())).thenReturn(Optional.of(NOTIFICATION));
+
+        final Notification notification = converter.fromString(NOTIFICATION.id().toHexString());
+
+        assertThat(notification).isEqualTo(NOTIFICATION);
+    }
+
     @Test
     public void notificationDoesNotExist() {
         when(dbService.getNotification(NOTIFICATION.id().toHexString())).thenReturn(Optional.empty());
+        when(dbService.getTimelineNotification(NOTIFICATION.id().toHexString())).thenReturn(Optional.empty());
 
         catchThrowable(() -> converter.fromString(NOTIFICATION.id().toHexString()));
 
@@ -53,4 +53,16 @@ public class JobOptionsTest {
         assertThat(options.startTime()).isEqualTo(NOW);
         assertThat(options.lastModified()).isEqualTo(PAST);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void defaultRunningTotal() {
+        final JobOptions options = new JobOptions.Builder()
+            .userId(Persons.SPAGS.id())
+            .source(Source.SMS)
+            .build();
+
+        assertThat(options.gramsOfAlcohol()).isEqualTo(0.0);
+        assertThat(options.checkinCount()).isEqualTo(0);
+        assertThat(options.checkinsThrough()).isEmpty();
+    }
+}
@@ -0,0 +1,86 @@
+package net.spals.drunkr.service;
+
+import static org.mockito.ArgumentMatchers.doubleThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+
+import java.time.ZonedDateTime;
+
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.db.DatabaseService;
+import net.spals.drunkr.model.*;
+
+/**
+ * Unit tests for {@link BacAccumulator}.
+ *
+ * @author spags
+ */
+public class BacAccumulatorTest {
+
+    private static final Person DRUNK = Persons.SPAGS;
+    private static final ZonedDateTime NOW = ZonedDateTimes.nowUTC();
+    private static final Checkin CHECKIN = new Checkin.Builder()
+        .userId(DRUNK.id())
+        .name("Duff")
+        .timestamp(NOW)
+        .style(Style.DRAFT)
+        .size(Style.DRAFT.getServingSize())
+        .abv(.05)
+        .build();
+    private static final double GRAMS = BacCalculator.get().drinkToGramsOfAlcohol(CHECKIN);
+    @Mock
+    private DatabaseService dbService;
+    private BacAccumulator accumulator;
+
+    @BeforeMethod
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        accumulator = new BacAccumulator(dbService);
+    }
+
+    @Test
+    public void added() {
+        accumulator.added(CHECKIN);
+
+        verify(dbService).correctJobs(DRUNK.id(), NOW, GRAMS, 1);
+    }
+
+    @Test
+    public void removed() {
+        accumulator.removed(CHECKIN);
+
+        verify(dbService).correctJobs(DRUNK.id(), NOW, -GRAMS, -1);
+    }
+
+    @Test
+    public void updated() {
+        final ZonedDateTime earlier = NOW.minusMinutes(30);
+        final Checkin updatedCheckin = new Checkin.Builder()
+            .mergeFrom(CHECKIN)
+            .timestamp(earlier)
+            .size(Style.DRAFT.getServingSize() * 2)
+            .build();
+
+        accumulator.updated(CHECKIN, updatedCheckin);
+
+        verify(dbService).correctJobs(DRUNK.id(), NOW, -GRAMS, -1);
+        verify(dbService).correctJobs(
+            eq(DRUNK.id()),
+            eq(earlier),
+            doubleThat(x -> Math.abs(x - GRAMS * 2) < .001),
+            eq(1)
+        );
+    }
+
+    @Test
+    public void removedAll() {
+        accumulator.removedAll(DRUNK);
+
+        verify(dbService).resetJobs(DRUNK);
+    }
+}
@@ -0,0 +1,350 @@
+package net.spals.drunkr.service;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.*;
+
+import static net.spals.drunkr.common.NotificationSubject.assertThat;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.mockito.*;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.db.DatabaseService;
+import net.spals.drunkr.i18n.I18nSupport;
+import net.spals.drunkr.i18n.I18nSupports;
+import net.spals.drunkr.model.*;
+import net.spals.drunkr.service.untappd.CheckinPoll;
+import net.spals.drunkr.service.untappd.CheckinProvider;
+
+/**
+ * Unit tests for {@link BacBatchEngine}.
+ *
+ * @author spags
+ */
+public class BacBatchEngineTest {
+
+    private static final Person DRUNK = Persons.SPAGS;
+    private static final Person OTHER_DRUNK = Persons.BROCK;
+    private static final ZonedDateTime NOW = ZonedDateTimes.nowUTC();
+    @Mock
+    private DatabaseService dbService;
+    @Mock
+    private ExecutorServiceFactory executorServiceFactory;
+    @Mock
+    private FollowersNotifier notifier;
+    @Mock
+    private CheckinProvider checkinProvider;
+    @Captor
+    private ArgumentCaptor<List<BacCalculation>> calculationsCaptor;
+    @Captor
+    private ArgumentCaptor<List<JobOptions>> jobsCaptor;
+    @Captor
+    private ArgumentCaptor<List<Notification>> notificationsCaptor;
+    private I18nSupport i18nSupport;
+    private BacBatchEngine engine;
+
+    @BeforeMethod
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        i18nSupport = I18nSupports.getEnglish();
+        engine = new BacBatchEngine(
+            new BacMessage(i18nSupport),
+            ImmutableMap.of("api", checkinProvider),
+            dbService,
+            executorServiceFactory,
+            notifier,
+            i18nSupport
+        );
+        engine.submit();
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of()));
+        when(dbService.upsertCheckins(any())).thenAnswer(invocation -> Optional.of(invocation.getArgument(0)));
+    }
+
+    private JobOptions createJob(final Person person) {
+        return new JobOptions.Builder()
+            .userId(person.id())
+            .startTime(NOW.minusMinutes(15))
+            .source(Source.SMS)
+            .build();
+    }
+
+    private Checkin createDuffCheckin(final Person person) {
+        return new Checkin.Builder()
+            .userId(person.id())
+            .name("Duff")
+            .timestamp(NOW.minusMinutes(5))
+            .style(Style.DRAFT)
+            .size(Style.DRAFT.getServingSize())
+            .abv(.05)
+            .build();
+    }
+
+    @Test
+    public void disabledByDefault() {
+        assertThat(engine.isEnabled()).isFalse();
+        verifyZeroInteractions(executorServiceFactory);
+    }
+
+    @Test
+    public void noRunningJobs() {
+        when(dbService.allRunningJobs(NOW)).thenReturn(ImmutableList.of());
+
+        engine.tick(NOW);
+
+        verify(dbService).allRunningJobs(NOW);
+        verifyNoMoreInteractions(dbService);
+    }
+
+    @Test
+    public void evaluatesAllJobsInBulk() {
+        final JobOptions job = createJob(DRUNK);
+        final JobOptions otherJob = createJob(OTHER_DRUNK);
+        when(dbService.allRunningJobs(NOW)).thenReturn(ImmutableList.of(job, otherJob));
+        when(dbService.getPersons(any())).thenReturn(ImmutableList.of(DRUNK, OTHER_DRUNK));
+        when(dbService.getCheckinsByUsers(any(), any(), any()))
+            .thenReturn(ImmutableList.of(createDuffCheckin(DRUNK), createDuffCheckin(OTHER_DRUNK)));
+
+        engine.tick(NOW);
+
+        verify(dbService).getPersons(any());
+        verify(dbService).getUntappdLinks(any());
+        verify(dbService).getCheckinsByUsers(any(), any(), any());
+        verify(dbService).insertBacCalculations(calculationsCaptor.capture());
+        assertThat(calculationsCaptor.getValue()).hasSize(2);
+        verify(dbService).updateJobs(ImmutableList.of(job, otherJob), NOW);
+        verify(dbService).stopJobs(ImmutableList.of(), NOW);
+        verify(notifier).createNotifications(eq(DRUNK), any(), eq(Source.SMS), eq(NOW));
+        verify(notifier).createNotifications(eq(OTHER_DRUNK), any(), eq(Source.SMS), eq(NOW));
+        verify(notifier, never()).notify(any(), any(), any(), any());
+    }
+
+    @Test
+    public void notificationsWrittenOnce() {
+        final JobOptions job = createJob(DRUNK);
+        final JobOptions otherJob = createJob(OTHER_DRUNK);
+        final Notification notification = new Notification.Builder()
+            .userId(DRUNK.id())
+            .message("drunk")
+            .timestamp(NOW)
+            .build();
+        final Notification otherNotification = new Notification.Builder()
+            .userId(OTHER_DRUNK.id())
+            .message("other drunk")
+            .timestamp(NOW)
+            .build();
+        when(dbService.allRunningJobs(NOW)).thenReturn(ImmutableList.of(job, otherJob));
+        when(dbService.getPersons(any())).thenReturn(ImmutableList.of(DRUNK, OTHER_DRUNK));
+        when(dbService.getCheckinsByUsers(any(), any(), any()))
+            .thenReturn(ImmutableList.of(createDuffCheckin(DRUNK), createDuffCheckin(OTHER_DRUNK)));
+        when(notifier.createNotifications(eq(DRUNK), any(), any(), any())).thenReturn(ImmutableList.of(notification));
+        when(notifier.createNotifications(eq(OTHER_DRUNK), any(), any(), any()))
+            .thenReturn(ImmutableList.of(otherNotification));
+
+        engine.tick(NOW);
+
+        verify(dbService).insertNotifications(ImmutableList.of(notification, otherNotification));
+    }
+
+    @Test
+    public void stopsSoberJobs() {
+        final JobOptions job = createJob(DRUNK);
+        when(dbService.allRunningJobs(NOW)).thenReturn(ImmutableList.of(job));
+        when(dbService.getPersons(any())).thenReturn(ImmutableList.of(DRUNK));
+
+        engine.tick(NOW);
+
+        verify(dbService).stopJobs(ImmutableList.of(job), NOW);
+        verify(dbService).insertNotifications(notificationsCaptor.capture());
+        assertThat(notificationsCaptor.getValue()).hasSize(1);
+        assertThat(notificationsCaptor.getValue().get(0))
+            .hasUserId(DRUNK.id())
+            .hasMessage(i18nSupport.getLabel("job.stopping.sober", DRUNK.userName()))
+            .isNotPushed();
+    }
+
+    @Test
+    public void advanceLastCheckinId() {
+        final JobOptions job = createJob(DRUNK);
+        final UntappdLink link = new UntappdLink.Builder()
+            .userId(DRUNK.id())
+            .untappdName("untappdUsername")
+            .build();
+        when(dbService.allRunningJobs(NOW)).thenReturn(ImmutableList.of(job));
+        when(dbService.getPersons(any())).thenReturn(ImmutableList.of(DRUNK));
+        when(dbService.getUntappdLinks(any())).thenReturn(ImmutableList.of(link));
+        when(checkinProvider.get(any(), any())).thenReturn(
+            CheckinPoll.of(
+                ImmutableList.of(
+                    new Checkin.Builder().mergeFrom(createDuffCheckin(DRUNK)).untappdId(15L).build(),
+                    new Checkin.Builder().mergeFrom(createDuffCheckin(DRUNK)).untappdId(13L).build()
+                )
+            )
+        );
+        when(dbService.updateLinkLastCheckinId(any(), anyLong())).thenReturn(true);
+
+        engine.tick(NOW);
+
+        verify(dbService).updateLinkLastCheckinId(link, 15L);
+    }
+
+    @Test
+    public void keepLastCheckinIdIfNotSaved() {
+        final JobOptions job = createJob(DRUNK);
+        final UntappdLink link = new UntappdLink.Builder()
+            .userId(DRUNK.id())
+            .untappdName("untappdUsername")
+            .build();
+        when(dbService.allRunningJobs(NOW)).thenReturn(ImmutableList.of(job));
+        when(dbService.getPersons(any())).thenReturn(ImmutableList.of(DRUNK));
+        when(dbService.getUntappdLinks(any())).thenReturn(ImmutableList.of(link));
+        when(checkinProvider.get(any(), any())).thenReturn(
+            CheckinPoll.of(
+                ImmutableList.of(new Checkin.Builder().mergeFrom(createDuffCheckin(DRUNK)).untappdId(15L).build())
+            )
+        );
+        when(dbService.upsertCheckins(any())).thenReturn(Optional.empty());
+
+        engine.tick(NOW);
+
+        verify(dbService, never()).updateLinkLastCheckinId(any(), anyLong());
+    }
+
+    @Test
+    public void keepLastModifiedIfPollStoppedEarly() {
+        final JobOptions job = createJob(DRUNK);
+        final JobOptions otherJob = createJob(OTHER_DRUNK);
+        final UntappdLink link = new UntappdLink.Builder()
+            .userId(DRUNK.id())
+            .untappdName("untappdUsername")
+            .build();
+        when(dbService.allRunningJobs(NOW)).thenReturn(ImmutableList.of(job, otherJob));
+        when(dbService.getPersons(any())).thenReturn(ImmutableList.of(DRUNK, OTHER_DRUNK));
+        when(dbService.getUntappdLinks(any())).thenReturn(ImmutableList.of(link));
+        final Checkin checkin = new Checkin.Builder().mergeFrom(createDuffCheckin(DRUNK)).untappdId(15L).build();
+        when(checkinProvider.get(eq(Optional.of(link)), any()))
+            .thenReturn(CheckinPoll.partial(ImmutableList.of(checkin)));
+
+        engine.tick(NOW);
+
+        // The checkins we got are still saved, but the job polls again from where it was for the older ones.
+        verify(dbService).upsertCheckins(ImmutableList.of(checkin));
+        verify(dbService).updateJobs(ImmutableList.of(otherJob), NOW);
+        verify(dbService, never()).updateLinkLastCheckinId(any(), anyLong());
+    }
+
+    @Test
+    public void countOnlyNewUntappdCheckins() {
+        final JobOptions job = createJob(DRUNK);
+        final Checkin stored = new Checkin.Builder().mergeFrom(createDuffCheckin(DRUNK)).untappdId(15L).build();
+        when(dbService.allRunningJobs(NOW)).thenReturn(ImmutableList.of(job));
+        when(dbService.getPersons(any())).thenReturn(ImmutableList.of(DRUNK));
+        when(dbService.getCheckinsByUsers(any(), any(), any())).thenReturn(ImmutableList.of(stored));
+        // The poll returns the checkin again, for example as the link's last checkin id failed to update.
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of(stored)));
+        when(dbService.upsertCheckins(any())).thenReturn(Optional.of(ImmutableList.of()));
+
+        engine.tick(NOW);
+
+        final BacCalculator calculator = BacCalculator.get();
+        final double bac = calculator.calculate(
+            DRUNK,
+            calculator.drinkToGramsOfAlcohol(stored),
+            job.startTime(),
+            NOW
+        );
+        verify(dbService).insertBacCalculations(calculationsCaptor.capture());
+        assertThat(calculationsCaptor.getValue().get(0).bac()).isEqualTo(calculator.round(bac));
+    }
+
+    @Test
+    public void notifyStopTimeReached() {
+        final JobOptions job = new JobOptions.Builder()
+            .mergeFrom(createJob(DRUNK))
+            .stopTime(NOW.plusMinutes(1))
+            .build();
+        final ZonedDateTime later = NOW.plusMinutes(2);
+        when(dbService.allRunningJobs(NOW)).thenReturn(ImmutableList.of(job));
+        when(dbService.allRunningJobs(later)).thenReturn(ImmutableList.of());
+        when(dbService.getPersons(any())).thenReturn(ImmutableList.of(DRUNK));
+        when(dbService.getCheckinsByUsers(any(), any(), any()))
+            .thenReturn(ImmutableList.of(createDuffCheckin(DRUNK)));
+
+        engine.tick(NOW);
+        engine.tick(later);
+
+        verify(dbService, times(2)).insertNotifications(notificationsCaptor.capture());
+        assertThat(notificationsCaptor.getValue()).hasSize(1);
+        assertThat(notificationsCaptor.getValue().get(0))
+            .hasUserId(DRUNK.id())
+            .hasMessage(i18nSupport.getLabel("job.stopping.stopped", DRUNK.userName()))
+            .isNotPushed();
+    }
+
+    @Test
+    public void noStopTimeNotificationIfStoppedEarly() {
+        final JobOptions job = createJob(DRUNK);
+        final ZonedDateTime later = NOW.plusMinutes(2);
+        when(dbService.allRunningJobs(NOW)).thenReturn(ImmutableList.of(job));
+        // For example the user stopped the job.
+        when(dbService.allRunningJobs(later)).thenReturn(ImmutableList.of());
+        when(dbService.getPersons(any())).thenReturn(ImmutableList.of(DRUNK));
+        when(dbService.getCheckinsByUsers(any(), any(), any()))
+            .thenReturn(ImmutableList.of(createDuffCheckin(DRUNK)));
+
+        engine.tick(NOW);
+        engine.tick(later);
+
+        verify(dbService, times(1)).insertNotifications(any());
+    }
+
+    @Test
+    public void stopsJobsForMissingPersons() {
+        final JobOptions job = createJob(DRUNK);
+        when(dbService.allRunningJobs(NOW)).thenReturn(ImmutableList.of(job));
+        when(dbService.getPersons(any())).thenReturn(ImmutableList.of());
+
+        engine.tick(NOW);
+
+        verify(dbService).stopJobs(jobsCaptor.capture(), eq(NOW));
+        assertThat(jobsCaptor.getValue()).containsExactly(job);
+        verify(checkinProvider, never()).get(any(), any());
+    }
+
+    @Test
+    public void skipsJobsNotYetStarted() {
+        final JobOptions job = new JobOptions.Builder()
+            .userId(DRUNK.id())
+            .startTime(NOW.plusMinutes(15))
+            .source(Source.SMS)
+            .build();
+        when(dbService.allRunningJobs(NOW)).thenReturn(ImmutableList.of(job));
+
+        engine.tick(NOW);
+
+        verify(dbService, never()).getPersons(any());
+    }
+
+    @Test
+    public void notifiesOncePerWindow() {
+        final JobOptions job = createJob(DRUNK);
+        when(dbService.allRunningJobs(any())).thenReturn(ImmutableList.of(job));
+        when(dbService.getPersons(any())).thenReturn(ImmutableList.of(DRUNK));
+        when(dbService.getCheckinsByUsers(any(), any(), any()))
+            .thenReturn(ImmutableList.of(createDuffCheckin(DRUNK)));
+
+        engine.tick(NOW);
+        engine.tick(NOW.plusMinutes(1));
+
+        verify(notifier, times(1)).createNotifications(eq(DRUNK), any(), any(), any());
+    }
+}
@@ -7,6 +7,7 @@ import static org.mockito.Mockito.*;
 import static net.spals.drunkr.common.NotificationSubject.assertThat;
 
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,14 +17,14 @@ import org.mockito.*;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
-import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
 import net.spals.drunkr.common.ZonedDateTimes;
 import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.i18n.I18nSupport;
 import net.spals.drunkr.i18n.I18nSupports;
 import net.spals.drunkr.model.*;
+import net.spals.drunkr.service.untappd.CheckinPoll;
 import net.spals.drunkr.service.untappd.CheckinProvider;
+import net.spals.drunkr.service.untappd.UntappdBudget;
 
 /**
  * Unit tests for {@link DrunkrJob}.
@@ -37,16 +38,19 @@ public class DrunkrJobTest {
     @Mock
     private DatabaseService dbService;
     @Mock
-    private ExecutorServiceFactory executorServiceFactory;
-    @Mock
     private FollowersNotifier notifier;
     @Mock
+    private SessionScheduler scheduler;
+    @Mock
     private CheckinProvider checkinProvider;
+    @Mock
+    private UntappdBudget budget;
     @Captor
     private ArgumentCaptor<String> messageCaptor;
     @Captor
     private ArgumentCaptor<Notification> notificationCaptor;
     private I18nSupport i18nSupport;
+    private UntappdPoller poller;
     private UntappdLink link;
     private DrunkrJob task;
 
@@ -54,6 +58,7 @@ public class DrunkrJobTest {
     public void setUp() {
         MockitoAnnotations.initMocks(this);
         i18nSupport = I18nSupports.getEnglish();
+        poller = new UntappdPoller();
         task = createTask(ZonedDateTimes.nowUTC().minusMinutes(15), Optional.empty());
         link = new UntappdLink.Builder()
             .userId(DRUNK.id())
@@ -61,6 +66,9 @@ public class DrunkrJobTest {
             .build();
         when(dbService.getUntappdLink(any(Person.class))).thenReturn(Optional.of(link));
         when(dbService.getPerson(DRUNK.id().toHexString())).thenReturn(Optional.of(DRUNK));
+        when(budget.canPoll(any(), any())).thenReturn(true);
+        when(dbService.claimJob(any(), anyString(), any(), any()))
+            .thenAnswer(invocation -> Optional.of(invocation.getArgument(0)));
     }
 
     /**
@@ -80,13 +88,20 @@ public class DrunkrJobTest {
             .stopTime(stopTime)
             .source(Source.SMS)
             .build();
+        return createTask(options);
+    }
+
+    private DrunkrJob createTask(final JobOptions options) {
         final DrunkrJob drunkrJob = new DrunkrJob(
             new BacMessage(I18nSupports.getEnglish()),
             ImmutableMap.of("api", checkinProvider),
             dbService,
-            executorServiceFactory,
             notifier,
             i18nSupport,
+            new Leases(),
+            poller,
+            budget,
+            scheduler,
             options
         );
         drunkrJob.setCheckinProvider();
@@ -119,25 +134,124 @@ public class DrunkrJobTest {
     @Test
     public void storeCheckins() {
         final List<Checkin> checkins = ImmutableList.of(createDuffCheckin());
-        when(checkinProvider.get(any(), any())).thenReturn(checkins);
-        when(dbService.insertCheckins(any())).thenReturn(true);
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(checkins));
+        when(dbService.upsertCheckins(any())).thenReturn(Optional.of(checkins));
         final ZonedDateTime lastModified = task.getLastModified();
 
         task.run();
 
-        verify(dbService).insertCheckins(checkins);
-        verify(dbService).updateJob(any(), any());
+        verify(dbService).upsertCheckins(checkins);
+        verify(dbService).accumulateJob(any(), anyDouble(), eq(1), any(), any());
         assertThat(task.getLastModified()).isAtLeast(lastModified);
     }
 
+    @Test
+    public void storedCheckinsNotCountedAgain() {
+        final Checkin stored = new Checkin.Builder().mergeFrom(createDuffCheckin()).untappdId(13L).build();
+        final Checkin added = new Checkin.Builder().mergeFrom(createDuffCheckin()).untappdId(15L).build();
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of(added, stored)));
+        when(dbService.upsertCheckins(any())).thenReturn(Optional.of(ImmutableList.of(added)));
+
+        task.run();
+
+        verify(dbService).accumulateJob(any(), anyDouble(), eq(1), any(), any());
+    }
+
+    @Test
+    public void advanceLastCheckinId() {
+        final List<Checkin> checkins = ImmutableList.of(
+            new Checkin.Builder().mergeFrom(createDuffCheckin()).untappdId(15L).build(),
+            new Checkin.Builder().mergeFrom(createDuffCheckin()).untappdId(13L).build()
+        );
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(checkins));
+        when(dbService.upsertCheckins(any())).thenReturn(Optional.of(checkins));
+        when(dbService.updateLinkLastCheckinId(any(), anyLong())).thenReturn(true);
+
+        task.run();
+
+        verify(dbService).updateLinkLastCheckinId(link, 15L);
+    }
+
+    @Test
+    public void keepLastCheckinIdIfNotSaved() {
+        final List<Checkin> checkins = ImmutableList.of(
+            new Checkin.Builder().mergeFrom(createDuffCheckin()).untappdId(15L).build()
+        );
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(checkins));
+        when(dbService.upsertCheckins(any())).thenReturn(Optional.empty());
+
+        task.run();
+
+        verify(dbService, never()).updateLinkLastCheckinId(any(), anyLong());
+    }
+
+    @Test
+    public void keepLastModifiedIfPollStoppedEarly() {
+        final List<Checkin> checkins = ImmutableList.of(
+            new Checkin.Builder().mergeFrom(createDuffCheckin()).untappdId(15L).build()
+        );
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.partial(checkins));
+        when(dbService.upsertCheckins(any())).thenReturn(Optional.of(checkins));
+        final ZonedDateTime lastModified = task.getLastModified();
+
+        task.run();
+
+        // The checkins we got still count, but the next run polls again for those older ones we didn't get.
+        verify(dbService).accumulateJob(any(), anyDouble(), eq(1), any(), any());
+        assertThat(task.getLastModified()).isEqualTo(lastModified);
+        verify(dbService, never()).updateLinkLastCheckinId(any(), anyLong());
+    }
+
+    @Test
+    public void backOffWhileIdle() {
+        // Started recently so the job isn't cancelled for being sober.
+        final DrunkrJob task = createTask(ZonedDateTimes.nowUTC().minusMinutes(5), Optional.empty());
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of()));
+        when(dbService.upsertCheckins(any())).thenReturn(Optional.of(ImmutableList.of()));
+
+        task.run();
+        final ZonedDateTime lastModified = task.getLastModified();
+        task.run();
+
+        verify(checkinProvider, times(1)).get(any(), any());
+        verify(dbService, times(2)).insertBacCalculation(any());
+        // The next poll must cover the runs we skipped.
+        assertThat(task.getLastModified()).isEqualTo(lastModified);
+    }
+
+    @Test
+    public void deferPollLowOnQuota() {
+        when(budget.canPoll(any(), any())).thenReturn(false);
+        final ZonedDateTime lastModified = task.getLastModified();
+
+        task.run();
+
+        verify(checkinProvider, never()).get(any(), any());
+        verify(dbService).insertBacCalculation(any());
+        assertThat(task.getLastModified()).isEqualTo(lastModified);
+    }
+
+    @Test
+    public void pollAfterDrunkrCheckin() {
+        final DrunkrJob task = createTask(ZonedDateTimes.nowUTC().minusMinutes(5), Optional.empty());
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of()));
+        when(dbService.upsertCheckins(any())).thenReturn(Optional.of(ImmutableList.of()));
+
+        task.run();
+        poller.checkedIn(DRUNK.id());
+        task.run();
+
+        verify(checkinProvider, times(2)).get(any(), any());
+    }
+
     @Test
     public void cancelJobIfSober() {
-        when(checkinProvider.get(any(), any())).thenReturn(ImmutableList.of());
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of()));
 
         task.run();
 
         verify(dbService).stopJob(any(), any());
-        verify(executorServiceFactory).stop(any(Key.class));
+        verify(scheduler).stop(DRUNK.id());
         verify(notifier).notify(eq(DRUNK), messageCaptor.capture(), eq(Source.SMS), any());
         assertThat(messageCaptor.getValue())
             .isEqualTo(createBacMessage(0, i18nSupport.getLabel("level_sober"), 0));
@@ -151,13 +265,13 @@ public class DrunkrJobTest {
 
     @Test
     public void bufferJobIfSober() {
-        when(checkinProvider.get(any(), any())).thenReturn(ImmutableList.of());
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of()));
         final ZonedDateTime now = ZonedDateTimes.nowUTC();
         task = createTask(now, Optional.empty());
 
         task.run();
 
-        verify(executorServiceFactory, never()).stop(any(Key.class));
+        verify(scheduler, never()).stop(any());
         // Confirm negative buffer...
         verify(checkinProvider).get(eq(Optional.of(link)), eq(Optional.of(now)));
     }
@@ -165,13 +279,13 @@ public class DrunkrJobTest {
     @Test
     public void cancelJobIfAfterStopTime() {
         // Even if we aren't sober, we cancel the job after the stop time.
-        when(checkinProvider.get(any(), any())).thenReturn(ImmutableList.of(createDuffCheckin()));
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of(createDuffCheckin())));
         final ZonedDateTime now = ZonedDateTimes.nowUTC();
         task = createTask(now.minusMinutes(10), Optional.of(now.minusMinutes(5)));
 
         task.run();
 
-        verify(executorServiceFactory).stop(any(Key.class));
+        verify(scheduler).stop(DRUNK.id());
         verify(notifier).notify(eq(DRUNK), messageCaptor.capture(), eq(Source.SMS), any());
         assertThat(messageCaptor.getValue())
             .isEqualTo(createBacMessage(0.03, i18nSupport.getLabel("level_lightheaded"), 1));
@@ -185,7 +299,7 @@ public class DrunkrJobTest {
 
     @Test
     public void drunkrCheckinsUsed() {
-        when(checkinProvider.get(any(), any())).thenReturn(ImmutableList.of());
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of()));
         when(dbService.getCheckins(any(), any(), any()))
             .thenReturn(ImmutableList.of(createWineCheckin()));
 
@@ -196,7 +310,7 @@ public class DrunkrJobTest {
 
     @Test
     public void continueJobIfNotSoberLastTimestampNotSet() {
-        when(checkinProvider.get(any(), any())).thenReturn(ImmutableList.of(createDuffCheckin()));
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of(createDuffCheckin())));
 
         task.run();
 
@@ -208,7 +322,7 @@ public class DrunkrJobTest {
 
     @Test
     public void continueJobIfNotSoberLastTimestampSetWithinPush() {
-        when(checkinProvider.get(any(), any())).thenReturn(ImmutableList.of(createDuffCheckin()));
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of(createDuffCheckin())));
         task.setLastNotified(ZonedDateTimes.nowUTC().minusMinutes(25));
 
         task.run();
@@ -218,7 +332,7 @@ public class DrunkrJobTest {
 
     @Test
     public void continueJobIfNotSoberLastTimestampSetOutsidePush() {
-        when(checkinProvider.get(any(), any())).thenReturn(ImmutableList.of(createDuffCheckin()));
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of(createDuffCheckin())));
         final ZonedDateTime past = ZonedDateTimes.nowUTC().minusMinutes(35);
         task.setLastNotified(past);
 
@@ -232,7 +346,7 @@ public class DrunkrJobTest {
 
     @Test
     public void addBacCalculation() {
-        when(checkinProvider.get(any(), any())).thenReturn(ImmutableList.of(createDuffCheckin()));
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of(createDuffCheckin())));
 
         task.run();
 
@@ -246,6 +360,181 @@ public class DrunkrJobTest {
         task.run();
 
         verify(dbService).stopJob(any(), any());
-        verify(executorServiceFactory).stop(any(Key.class));
+        verify(scheduler).stop(DRUNK.id());
+    }
+
+    @Test
+    public void shutdownIfLeaseLost() {
+        when(dbService.claimJob(any(), anyString(), any(), any())).thenReturn(Optional.empty());
+
+        task.run();
+
+        verify(scheduler).stop(DRUNK.id());
+        verify(dbService, never()).getPerson(anyString());
+        verify(dbService, never()).stopJob(any(), any());
+        verify(dbService, never()).insertBacCalculation(any());
+    }
+
+    @Test
+    public void shutdownIfStoppedElsewhere() {
+        when(dbService.claimJob(any(), anyString(), any(), any())).thenAnswer(
+            invocation -> Optional.of(
+                new JobOptions.Builder()
+                    .mergeFrom(invocation.<JobOptions>getArgument(0))
+                    .stopTime(ZonedDateTimes.nowUTC().minusSeconds(1))
+                    .build()
+            )
+        );
+
+        task.run();
+
+        verify(scheduler).stop(DRUNK.id());
+        verify(dbService, never()).getPerson(anyString());
+        verify(dbService, never()).insertBacCalculation(any());
+    }
+
+    @Test
+    public void rereadIfRunningTotalMoved() {
+        final Checkin checkin = createDuffCheckin();
+        // Another run of the job added the checkin after we read the job.
+        final JobOptions moved = new JobOptions.Builder()
+            .userId(DRUNK.id())
+            .startTime(ZonedDateTimes.nowUTC().minusMinutes(15))
+            .source(Source.SMS)
+            .gramsOfAlcohol(BacCalculator.get().drinkToGramsOfAlcohol(checkin))
+            .checkinCount(1)
+            .checkinsThrough(ZonedDateTimes.nowUTC())
+            .build();
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of()));
+        when(dbService.upsertCheckins(any())).thenReturn(Optional.of(ImmutableList.of()));
+        when(dbService.getCheckins(any(), any(), any()))
+            .thenReturn(ImmutableList.of(checkin))
+            .thenReturn(ImmutableList.of());
+        when(dbService.getJob(anyString())).thenReturn(Optional.of(moved));
+        when(dbService.accumulateJob(any(), anyDouble(), anyInt(), any(), any()))
+            .thenReturn(Optional.empty())
+            .thenReturn(Optional.of(moved));
+
+        task.run();
+
+        // Only the checkins after the moved high-water mark are added, so the checkin isn't counted twice.
+        verify(dbService).accumulateJob(eq(moved), eq(0.0), eq(0), any(), any());
+        verify(notifier).notify(eq(DRUNK), messageCaptor.capture(), eq(Source.SMS), any());
+        assertThat(messageCaptor.getValue())
+            .isEqualTo(createBacMessage(0.029, i18nSupport.getLabel("level_lightheaded"), 1));
+    }
+
+    @Test
+    public void rereadIfCheckinAddedAfterRead() {
+        final Checkin checkin = createDuffCheckin();
+        final double gramsOfAlcohol = BacCalculator.get().drinkToGramsOfAlcohol(checkin);
+        // The checkin was added after we read our checkins, which changed the job's version.
+        final JobOptions changed = new JobOptions.Builder()
+            .userId(DRUNK.id())
+            .startTime(ZonedDateTimes.nowUTC().minusMinutes(15))
+            .source(Source.SMS)
+            .version(1L)
+            .build();
+        final JobOptions accumulated = new JobOptions.Builder()
+            .mergeFrom(changed)
+            .gramsOfAlcohol(gramsOfAlcohol)
+            .checkinCount(1)
+            .checkinsThrough(ZonedDateTimes.nowUTC())
+            .build();
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of()));
+        when(dbService.upsertCheckins(any())).thenReturn(Optional.of(ImmutableList.of()));
+        when(dbService.getCheckins(any(), any(), any()))
+            .thenReturn(ImmutableList.of())
+            .thenReturn(ImmutableList.of(checkin));
+        when(dbService.getJob(anyString())).thenReturn(Optional.of(changed));
+        when(dbService.accumulateJob(any(), anyDouble(), anyInt(), any(), any()))
+            .thenReturn(Optional.empty())
+            .thenReturn(Optional.of(accumulated));
+
+        task.run();
+
+        verify(dbService).accumulateJob(eq(changed), eq(gramsOfAlcohol), eq(1), any(), any());
+        verify(notifier).notify(eq(DRUNK), messageCaptor.capture(), eq(Source.SMS), any());
+        assertThat(messageCaptor.getValue())
+            .isEqualTo(createBacMessage(0.029, i18nSupport.getLabel("level_lightheaded"), 1));
+    }
+
+    @Test
+    public void rereadKeepsSavedUntappdCheckins() {
+        final Checkin saved = new Checkin.Builder()
+            .mergeFrom(createDuffCheckin())
+            .timestamp(ZonedDateTimes.nowUTC().minusMinutes(10))
+            .untappdId(15L)
+            .build();
+        final double gramsOfAlcohol = BacCalculator.get().drinkToGramsOfAlcohol(saved);
+        // Another run moved the high-water mark past the untappd checkin we saved, before it was stored.
+        final JobOptions moved = new JobOptions.Builder()
+            .userId(DRUNK.id())
+            .startTime(ZonedDateTimes.nowUTC().minusMinutes(15))
+            .source(Source.SMS)
+            .checkinsThrough(ZonedDateTimes.nowUTC().minusMinutes(5))
+            .build();
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of(saved)));
+        when(dbService.upsertCheckins(any())).thenReturn(Optional.of(ImmutableList.of(saved)));
+        when(dbService.getCheckins(any(), any(), any())).thenReturn(ImmutableList.of());
+        when(dbService.getJob(anyString())).thenReturn(Optional.of(moved));
+        when(dbService.accumulateJob(any(), anyDouble(), anyInt(), any(), any()))
+            .thenReturn(Optional.empty())
+            .thenReturn(Optional.of(moved));
+
+        task.run();
+
+        verify(dbService).accumulateJob(eq(moved), eq(gramsOfAlcohol), eq(1), any(), any());
+    }
+
+    @Test
+    public void resumeFromRunningTotal() {
+        final ZonedDateTime checkinsThrough = ZonedDateTimes.nowUTC().minusMinutes(5);
+        final double gramsOfAlcohol = BacCalculator.get().drinkToGramsOfAlcohol(createDuffCheckin());
+        final JobOptions options = new JobOptions.Builder()
+            .userId(DRUNK.id())
+            .startTime(ZonedDateTimes.nowUTC().minusMinutes(15))
+            .source(Source.SMS)
+            .gramsOfAlcohol(gramsOfAlcohol)
+            .checkinCount(1)
+            .checkinsThrough(checkinsThrough)
+            .build();
+        task = createTask(options);
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of()));
+
+        task.run();
+
+        // Only checkins after the high-water mark are read.
+        verify(dbService).getCheckins(
+            eq(DRUNK),
+            eq(Optional.of(checkinsThrough.plus(1, ChronoUnit.MILLIS))),
+            any()
+        );
+        verify(notifier).notify(eq(DRUNK), messageCaptor.capture(), eq(Source.SMS), any());
+        assertThat(messageCaptor.getValue())
+            .isEqualTo(createBacMessage(0.029, i18nSupport.getLabel("level_lightheaded"), 1));
+    }
+
+    @Test
+    public void runningTotalIncludesCorrections() {
+        when(checkinProvider.get(any(), any())).thenReturn(CheckinPoll.of(ImmutableList.of()));
+        when(dbService.getCheckins(any(), any(), any())).thenReturn(ImmutableList.of(createDuffCheckin()));
+        // The stored total no longer has the checkin, as it was removed by the user.
+        when(dbService.accumulateJob(any(), anyDouble(), anyInt(), any(), any()))
+            .thenAnswer(
+                i -> Optional.of(
+                    new JobOptions.Builder()
+                        .mergeFrom((JobOptions) i.getArguments()[0])
+                        .checkinsThrough((ZonedDateTime) i.getArguments()[3])
+                        .build()
+                )
+            );
+
+        task.run();
+
+        verify(dbService).accumulateJob(any(), anyDouble(), eq(1), any(), any());
+        verify(notifier).notify(eq(DRUNK), messageCaptor.capture(), eq(Source.SMS), any());
+        assertThat(messageCaptor.getValue())
+            .isEqualTo(createBacMessage(0, i18nSupport.getLabel("level_sober"), 0));
     }
 }
@@ -1,15 +1,22 @@
 package net.spals.drunkr.service;
 
-import static org.mockito.Mockito.times;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import static net.spals.drunkr.common.NotificationSubject.assertThat;
 
 import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
+import org.bson.types.ObjectId;
 import org.mockito.*;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -26,25 +33,32 @@ public class FollowersNotifierTest {
     private static final ZonedDateTime NOW = ZonedDateTimes.nowUTC();
     @Mock
     private DatabaseService dbService;
+    @Mock
+    private NotificationTimeline timeline;
     @Captor
     private ArgumentCaptor<Notification> notificationCaptor;
+    @Captor
+    private ArgumentCaptor<List<Notification>> notificationsCaptor;
     private FollowersNotifier notifier;
 
     @BeforeMethod
     public void setUp() {
         MockitoAnnotations.initMocks(this);
-        notifier = new FollowersNotifier(dbService);
+        notifier = new FollowersNotifier(dbService, timeline);
     }
 
     @Test
     public void withFollower() {
-        when(dbService.getFollowers(DRUNK)).thenReturn(ImmutableSet.of(FOLLOWER));
+        when(dbService.getFollowerIds(DRUNK)).thenReturn(ImmutableSet.of(FOLLOWER.id()));
 
         notifier.notify(DRUNK, MESSAGE, Source.SMS, NOW);
 
-        verify(dbService, times(2)).insertNotification(notificationCaptor.capture());
+        verify(dbService).insertNotification(notificationCaptor.capture());
+        verify(dbService).insertNotificationsUnordered(notificationsCaptor.capture());
 
-        assertThat(notificationCaptor.getValue())
+        assertThat(notificationCaptor.getValue()).hasUserId(DRUNK.id());
+        assertThat(notificationsCaptor.getValue()).hasSize(1);
+        assertThat(notificationsCaptor.getValue().get(0))
             .hasUserId(FOLLOWER.id())
             .hasSourceUserId(DRUNK.id())
             .hasSource(Source.SMS)
@@ -52,9 +66,39 @@ public class FollowersNotifierTest {
             .isNotPushed();
     }
 
+    @Test
+    public void withManyFollowers() {
+        final ObjectId otherFollowerId = new ObjectId();
+        when(dbService.getFollowerIds(DRUNK)).thenReturn(ImmutableSet.of(FOLLOWER.id(), otherFollowerId));
+
+        notifier.notify(DRUNK, MESSAGE, Source.SMS, NOW);
+
+        verify(dbService).insertNotificationsUnordered(notificationsCaptor.capture());
+        verify(dbService, never()).getFollowers(DRUNK);
+
+        assertThat(notificationsCaptor.getValue().stream().map(Notification::userId).collect(Collectors.toList()))
+            .containsExactly(FOLLOWER.id(), otherFollowerId);
+    }
+
+    @Test
+    public void fanOutOnRead() {
+        when(timeline.isFanOutOnRead()).thenReturn(true);
+        when(timeline.publish(notificationCaptor.capture())).thenReturn(true);
+
+        notifier.notify(DRUNK, MESSAGE, Source.SMS, NOW);
+
+        verify(dbService, never()).getFollowerIds(DRUNK);
+        verify(dbService, never()).insertNotificationsUnordered(anyList());
+        assertThat(notificationCaptor.getValue())
+            .hasUserId(DRUNK.id())
+            .hasSourceUserId(DRUNK.id())
+            .hasSource(Source.SMS)
+            .hasMessage(MESSAGE);
+    }
+
     @Test
     public void withNoFollowers() {
-        when(dbService.getFollowers(DRUNK)).thenReturn(ImmutableSet.of());
+        when(dbService.getFollowerIds(DRUNK)).thenReturn(ImmutableSet.of());
 
         notifier.notify(DRUNK, MESSAGE, Source.SMS, NOW);
 
@@ -65,5 +109,40 @@ public class FollowersNotifierTest {
             .hasSource(Source.SMS)
             .hasMessage(MESSAGE)
             .isNotPushed();
+        verify(dbService).insertNotificationsUnordered(ImmutableList.of());
+    }
+
+    @Test
+    public void createWithFollower() {
+        when(dbService.getFollowerIds(DRUNK)).thenReturn(ImmutableSet.of(FOLLOWER.id()));
+
+        final List<Notification> notifications = notifier.createNotifications(DRUNK, MESSAGE, Source.SMS, NOW);
+
+        assertThat(notifications).hasSize(2);
+        assertThat(notifications.get(0))
+            .hasUserId(DRUNK.id())
+            .hasEmptySourceUserId()
+            .hasMessage(MESSAGE);
+        assertThat(notifications.get(1))
+            .hasUserId(FOLLOWER.id())
+            .hasSourceUserId(DRUNK.id())
+            .hasMessage(MESSAGE);
+        verify(dbService, never()).insertNotification(any());
+        verify(dbService, never()).insertNotificationsUnordered(anyList());
+    }
+
+    @Test
+    public void createFanOutOnRead() {
+        when(timeline.isFanOutOnRead()).thenReturn(true);
+        when(timeline.publish(notificationCaptor.capture())).thenReturn(true);
+
+        final List<Notification> notifications = notifier.createNotifications(DRUNK, MESSAGE, Source.SMS, NOW);
+
+        assertThat(notifications).hasSize(1);
+        assertThat(notifications.get(0)).hasUserId(DRUNK.id());
+        assertThat(notificationCaptor.getValue())
+            .hasUserId(DRUNK.id())
+            .hasSourceUserId(DRUNK.id());
+        verify(dbService, never()).getFollowerIds(DRUNK);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,172 @@
+package net.spals.drunkr.service;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import com.google.common.collect.*;
+
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.db.DatabaseService;
+import net.spals.drunkr.model.*;
+import net.spals.drunkr.model.JobOptions.Builder;
+
+/**
+ * Unit tests for {@link Leaderboard}.
+ *
+ * @author spags
+ */
+public class LeaderboardTest {
+
+    private static final Person DRUNK = Persons.SPAGS;
+    private static final Person OTHER_DRUNK = Persons.BROCK;
+    private static final JobOptions JOB = new Builder()
+        .userId(DRUNK.id())
+        .source(Source.SMS)
+        .build();
+    private static final JobOptions OTHER_JOB = new Builder()
+        .userId(OTHER_DRUNK.id())
+        .source(Source.SMS)
+        .build();
+    @Mock
+    private DatabaseService dbService;
+    private Leaderboard leaderboard;
+
+    @BeforeMethod
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        leaderboard = new Leaderboard(dbService);
+
+        // Drunk has a follower and is following other drunk.
+        when(dbService.getFollowing(DRUNK)).thenReturn(ImmutableSet.of(OTHER_DRUNK));
+        when(dbService.getFollowers(DRUNK)).thenReturn(ImmutableSet.of(OTHER_DRUNK));
+        // As long as return a job, it will evaluate drinking to true. We don't care about the job details.
+        when(dbService.getRunningJobs(any(), any())).thenReturn(ImmutableList.of(JOB, OTHER_JOB));
+    }
+
+    private BacCalculation createBac(final Person person, final double bac) {
+        return new BacCalculation.Builder()
+            .userId(person.id())
+            .bac(bac)
+            .timestamp(ZonedDateTimes.nowUTC())
+            .build();
+    }
+
+    @Test
+    public void withDrunkMoreDrunk() {
+        when(dbService.getLatestBacCalculations(any()))
+            .thenReturn(ImmutableList.of(createBac(OTHER_DRUNK, 0.05), createBac(DRUNK, 0.08)));
+
+        final List<BacStatus> leaders = leaderboard.getLeaders(DRUNK);
+
+        assertThat(leaders).containsExactly(
+            new BacStatus.Builder().user(OTHER_DRUNK).bac(0.05).isDrinking(true).build(),
+            new BacStatus.Builder().user(DRUNK).bac(0.08).isDrinking(true).build()
+        ).inOrder();
+    }
+
+    @Test
+    public void withOtherDrunkMoreDrunk() {
+        when(dbService.getLatestBacCalculations(any()))
+            .thenReturn(ImmutableList.of(createBac(OTHER_DRUNK, 0.08), createBac(DRUNK, 0.05)));
+
+        final List<BacStatus> leaders = leaderboard.getLeaders(DRUNK);
+
+        assertThat(leaders).containsExactly(
+            new BacStatus.Builder().user(DRUNK).bac(0.05).isDrinking(true).build(),
+            new BacStatus.Builder().user(OTHER_DRUNK).bac(0.08).isDrinking(true).build()
+        ).inOrder();
+    }
+
+    @Test
+    public void noCalculations() {
+        when(dbService.getLatestBacCalculations(any()))
+            .thenReturn(ImmutableList.of(createBac(DRUNK, 0.05)));
+
+        final List<BacStatus> leaders = leaderboard.getLeaders(DRUNK);
+
+        assertThat(leaders).containsExactly(
+            new BacStatus.Builder().user(OTHER_DRUNK).bac(0.00).isDrinking(true).build(),
+            new BacStatus.Builder().user(DRUNK).bac(0.05).isDrinking(true).build()
+        ).inOrder();
+    }
+
+    @Test
+    public void staleCalculation() {
+        final BacCalculation stale = new BacCalculation.Builder()
+            .mergeFrom(createBac(OTHER_DRUNK, 0.08))
+            .timestamp(ZonedDateTimes.nowUTC().minusHours(1))
+            .build();
+        when(dbService.getLatestBacCalculations(any()))
+            .thenReturn(ImmutableList.of(stale, createBac(DRUNK, 0.05)));
+
+        final List<BacStatus> leaders = leaderboard.getLeaders(DRUNK);
+
+        assertThat(leaders).containsExactly(
+            new BacStatus.Builder().user(OTHER_DRUNK).bac(0.00).isDrinking(true).build(),
+            new BacStatus.Builder().user(DRUNK).bac(0.05).isDrinking(true).build()
+        ).inOrder();
+    }
+
+    @Test
+    public void notDrinking() {
+        when(dbService.getRunningJobs(any(), any())).thenReturn(ImmutableList.of(JOB));
+        when(dbService.getLatestBacCalculations(any()))
+            .thenReturn(ImmutableList.of(createBac(DRUNK, 0.05)));
+
+        final List<BacStatus> leaders = leaderboard.getLeaders(DRUNK);
+
+        assertThat(leaders).containsExactly(
+            new BacStatus.Builder().user(OTHER_DRUNK).bac(0.00).isDrinking(false).build(),
+            new BacStatus.Builder().user(DRUNK).bac(0.05).isDrinking(true).build()
+        ).inOrder();
+    }
+
+    @Test
+    public void batchedQueries() {
+        when(dbService.getLatestBacCalculations(any()))
+            .thenReturn(ImmutableList.of(createBac(DRUNK, 0.05)));
+
+        leaderboard.getLeaders(DRUNK);
+
+        verify(dbService).getLatestBacCalculations(ImmutableSet.of(DRUNK.id(), OTHER_DRUNK.id()));
+        verify(dbService).getRunningJobs(any(), any());
+    }
+
+    @Test
+    public void cachedRanking() {
+        when(dbService.getLatestBacCalculations(any()))
+            .thenReturn(ImmutableList.of(createBac(DRUNK, 0.05)));
+
+        final List<BacStatus> leaders = leaderboard.getLeaders(DRUNK);
+        final List<BacStatus> cached = leaderboard.getLeaders(DRUNK);
+
+        assertThat(cached).isEqualTo(leaders);
+        verify(dbService).getFollowing(DRUNK);
+        verify(dbService).getLatestBacCalculations(any());
+    }
+
+    @Test
+    public void expiredRanking() {
+        leaderboard.setTtl(0);
+        when(dbService.getLatestBacCalculations(any()))
+            .thenReturn(ImmutableList.of(createBac(DRUNK, 0.05)));
+
+        leaderboard.getLeaders(DRUNK);
+        leaderboard.getLeaders(DRUNK);
+
+        verify(dbService, times(2)).getFollowing(DRUNK);
+        verify(dbService, times(2)).getLatestBacCalculations(any());
+    }
+}
@@ -0,0 +1,197 @@
+package net.spals.drunkr.service;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import static net.spals.drunkr.common.NotificationSubject.assertThat;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.bson.types.ObjectId;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.db.DatabaseService;
+import net.spals.drunkr.model.*;
+
+/**
+ * Unit tests for {@link NotificationTimeline}.
+ *
+ * @author spags
+ */
+public class NotificationTimelineTest {
+
+    private static final Person DRUNK = Persons.SPAGS;
+    private static final Person FOLLOWER = Persons.BROCK;
+    private static final ZonedDateTime NOW = ZonedDateTimes.nowUTC();
+    private static final Optional<ZonedDateTime> FROM = Optional.of(NOW.minusHours(1));
+    private static final Optional<ZonedDateTime> TO = Optional.of(NOW);
+    private static final Notification OWN = new Notification.Builder()
+        .userId(FOLLOWER.id())
+        .message("Own")
+        .timestamp(NOW.minusMinutes(10))
+        .build();
+    private static final Notification OLD_UPDATE = new Notification.Builder()
+        .userId(DRUNK.id())
+        .sourceUserId(DRUNK.id())
+        .message("Old")
+        .timestamp(NOW.minusMinutes(30))
+        .build();
+    private static final Notification NEW_UPDATE = new Notification.Builder()
+        .userId(DRUNK.id())
+        .sourceUserId(DRUNK.id())
+        .message("New")
+        .timestamp(NOW.minusMinutes(5))
+        .build();
+    @Mock
+    private DatabaseService dbService;
+    private NotificationTimeline timeline;
+
+    @BeforeMethod
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        timeline = new NotificationTimeline(dbService);
+        when(dbService.getNotifications(FOLLOWER, FROM, TO)).thenReturn(ImmutableList.of(OWN));
+        when(dbService.unreadNotifications(FOLLOWER)).thenReturn(ImmutableList.of(OWN));
+        when(dbService.getFollowingIds(FOLLOWER)).thenReturn(ImmutableSet.of(DRUNK.id()));
+    }
+
+    @Test
+    public void fanOutOnWrite() {
+        final List<Notification> notifications = timeline.getNotifications(FOLLOWER, FROM, TO);
+
+        assertThat(timeline.isFanOutOnRead()).isFalse();
+        assertThat(notifications).containsExactly(OWN);
+        verify(dbService, never()).getTimelineNotifications(any(), any(), any());
+    }
+
+    @Test
+    public void mergedOnRead() {
+        timeline.setFanout(NotificationTimeline.READ);
+        when(dbService.getTimelineReadThrough(FOLLOWER)).thenReturn(Optional.of(NOW.minusMinutes(20)));
+        when(dbService.getTimelineNotifications(ImmutableSet.of(DRUNK.id()), FROM, TO))
+            .thenReturn(ImmutableList.of(OLD_UPDATE, NEW_UPDATE));
+
+        final List<Notification> notifications = timeline.getNotifications(FOLLOWER, FROM, TO);
+
+        assertThat(notifications).hasSize(3);
+        assertThat(notifications.get(0))
+            .hasUserId(FOLLOWER.id())
+            .hasSourceUserId(DRUNK.id())
+            .hasMessage("Old")
+            .isRead();
+        assertThat(notifications.get(1)).isEqualTo(OWN);
+        assertThat(notifications.get(2))
+            .hasUserId(FOLLOWER.id())
+            .hasSourceUserId(DRUNK.id())
+            .hasMessage("New")
+            .isNotRead();
+    }
+
+    @Test
+    public void unreadOnRead() {
+        timeline.setFanout(NotificationTimeline.READ);
+        final ZonedDateTime readThrough = NOW.minusMinutes(20);
+        when(dbService.getTimelineReadThrough(FOLLOWER)).thenReturn(Optional.of(readThrough));
+        when(dbService.getTimelineNotifications(
+            ImmutableSet.of(DRUNK.id()),
+            Optional.of(readThrough.plus(1, ChronoUnit.MILLIS)),
+            Optional.empty()
+        )).thenReturn(ImmutableList.of(NEW_UPDATE));
+
+        final List<Notification> notifications = timeline.unreadNotifications(FOLLOWER);
+
+        assertThat(notifications).hasSize(2);
+        assertThat(notifications.get(0)).isEqualTo(OWN);
+        assertThat(notifications.get(1))
+            .hasUserId(FOLLOWER.id())
+            .hasMessage("New")
+            .isNotRead();
+    }
+
+    @Test
+    public void noFollowingOnRead() {
+        timeline.setFanout(NotificationTimeline.READ);
+        when(dbService.getFollowingIds(FOLLOWER)).thenReturn(ImmutableSet.of());
+
+        final List<Notification> notifications = timeline.getNotifications(FOLLOWER, FROM, TO);
+
+        assertThat(notifications).containsExactly(OWN);
+        verify(dbService, never()).getTimelineNotifications(any(), any(), any());
+    }
+
+    @Test
+    public void markAllReadOnWrite() {
+        when(dbService.markAllReadNotifications(FOLLOWER)).thenReturn(true);
+
+        assertThat(timeline.markAllRead(FOLLOWER)).isTrue();
+        verify(dbService, never()).updateTimelineReadThrough(any(), any());
+    }
+
+    @Test
+    public void markAllReadOnRead() {
+        timeline.setFanout(NotificationTimeline.READ);
+        when(dbService.markAllReadNotifications(FOLLOWER)).thenReturn(true);
+        when(dbService.updateTimelineReadThrough(eq(FOLLOWER), any())).thenReturn(true);
+
+        assertThat(timeline.markAllRead(FOLLOWER)).isTrue();
+        verify(dbService).updateTimelineReadThrough(eq(FOLLOWER), any());
+    }
+
+    @Test
+    public void timelineNotificationOnRead() {
+        timeline.setFanout(NotificationTimeline.READ);
+        when(dbService.getTimelineReadThrough(FOLLOWER)).thenReturn(Optional.of(NOW.minusMinutes(20)));
+
+        final Optional<Notification> notification = timeline.getTimelineNotification(FOLLOWER, OLD_UPDATE);
+
+        assertThat(notification).isPresent();
+        assertThat(notification.get().id()).isEqualTo(OLD_UPDATE.id());
+        assertThat(notification.get())
+            .hasUserId(FOLLOWER.id())
+            .hasSourceUserId(DRUNK.id())
+            .isRead();
+    }
+
+    @Test
+    public void notTimelineNotification() {
+        timeline.setFanout(NotificationTimeline.READ);
+
+        final Notification notFollowed = new Notification.Builder()
+            .mergeFrom(NEW_UPDATE)
+            .userId(new ObjectId())
+            .build();
+
+        assertThat(timeline.getTimelineNotification(FOLLOWER, OWN)).isEmpty();
+        assertThat(timeline.getTimelineNotification(FOLLOWER, notFollowed)).isEmpty();
+    }
+
+    @Test
+    public void timelineNotificationOnWrite() {
+        assertThat(timeline.getTimelineNotification(FOLLOWER, NEW_UPDATE)).isEmpty();
+    }
+
+    @Test
+    public void markRead() {
+        when(dbService.getTimelineReadThrough(FOLLOWER)).thenReturn(Optional.of(NOW.minusMinutes(20)));
+        when(dbService.updateTimelineReadThrough(FOLLOWER, NEW_UPDATE.timestamp())).thenReturn(true);
+
+        assertThat(timeline.markRead(FOLLOWER, NEW_UPDATE)).isTrue();
+        assertThat(timeline.markRead(FOLLOWER, OLD_UPDATE)).isTrue();
+        // Reading an earlier update doesn't move how far they've read back.
+        verify(dbService).updateTimelineReadThrough(any(), any());
+    }
+}
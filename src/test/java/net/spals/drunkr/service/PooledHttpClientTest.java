@@ -0,0 +1,50 @@
+package net.spals.drunkr.service;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static com.googlecode.catchexception.throwable.CatchThrowable.catchThrowable;
+import static com.googlecode.catchexception.throwable.CatchThrowable.caughtThrowable;
+
+import org.apache.http.pool.PoolStats;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link PooledHttpClient}.
+ *
+ * @author spags
+ */
+public class PooledHttpClientTest {
+
+    private PooledHttpClient httpClient;
+
+    @BeforeMethod
+    public void setUp() {
+        httpClient = new PooledHttpClient();
+        httpClient.start();
+    }
+
+    @Test
+    public void sharedClient() {
+        assertThat(httpClient.client()).isSameAs(httpClient.client());
+    }
+
+    @Test
+    public void emptyPool() {
+        final PoolStats stats = httpClient.stats();
+
+        assertThat(stats.getMax()).isEqualTo(20);
+        assertThat(stats.getLeased()).isEqualTo(0);
+        assertThat(stats.getAvailable()).isEqualTo(0);
+        assertThat(stats.getPending()).isEqualTo(0);
+    }
+
+    @Test
+    public void stop() {
+        httpClient.stop();
+
+        catchThrowable(() -> httpClient.client().target("https://api.untappd.com"));
+
+        assertThat(caughtThrowable()).isInstanceOf(IllegalStateException.class);
+    }
+}
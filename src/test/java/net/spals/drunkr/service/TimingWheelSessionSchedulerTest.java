@@ -0,0 +1,163 @@
+package net.spals.drunkr.service;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.bson.types.ObjectId;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
+
+/**
+ * Unit tests for {@link TimingWheelSessionScheduler}.
+ *
+ * @author spags
+ */
+public class TimingWheelSessionSchedulerTest {
+
+    private static final ObjectId USER_ID = new ObjectId();
+    @Mock
+    private ExecutorServiceFactory executorServiceFactory;
+    @Mock
+    private ScheduledExecutorService ticker;
+    private AtomicInteger runs;
+    private TimingWheelSessionScheduler scheduler;
+
+    @BeforeMethod
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(executorServiceFactory.createFixedThreadPool(anyInt(), any(Key.class)))
+            .thenReturn(MoreExecutors.newDirectExecutorService());
+        when(executorServiceFactory.createSingleThreadScheduledExecutor(any(Key.class))).thenReturn(ticker);
+        runs = new AtomicInteger();
+        scheduler = new TimingWheelSessionScheduler(executorServiceFactory);
+        scheduler.startTicking();
+    }
+
+    private void advance(final int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            scheduler.advance();
+        }
+    }
+
+    @Test
+    public void runsAfterDelayThenEveryPeriod() {
+        scheduler.start(USER_ID, runs::incrementAndGet, 2, 3, TimeUnit.SECONDS);
+
+        advance(1);
+        assertThat(runs.get()).isEqualTo(0);
+        advance(1);
+        assertThat(runs.get()).isEqualTo(1);
+        advance(3);
+        assertThat(runs.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void periodLongerThanWheel() {
+        scheduler.start(USER_ID, runs::incrementAndGet, 0, 150, TimeUnit.SECONDS);
+
+        advance(1);
+        assertThat(runs.get()).isEqualTo(1);
+        advance(149);
+        assertThat(runs.get()).isEqualTo(1);
+        advance(1);
+        assertThat(runs.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void onlyOneSessionPerUser() {
+        assertThat(scheduler.start(USER_ID, runs::incrementAndGet, 0, 1, TimeUnit.SECONDS)).isTrue();
+        assertThat(scheduler.start(USER_ID, runs::incrementAndGet, 0, 1, TimeUnit.SECONDS)).isFalse();
+
+        advance(1);
+
+        assertThat(runs.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void stopSession() {
+        scheduler.start(USER_ID, runs::incrementAndGet, 0, 1, TimeUnit.SECONDS);
+        advance(1);
+
+        assertThat(scheduler.stop(USER_ID)).isTrue();
+        advance(5);
+
+        assertThat(runs.get()).isEqualTo(1);
+        assertThat(scheduler.isRunning(USER_ID)).isFalse();
+        assertThat(scheduler.stop(USER_ID)).isFalse();
+    }
+
+    @Test
+    public void stopFromWithinSession() {
+        scheduler.start(
+            USER_ID,
+            () -> {
+                runs.incrementAndGet();
+                scheduler.stop(USER_ID);
+            },
+            0,
+            1,
+            TimeUnit.SECONDS
+        );
+
+        advance(5);
+
+        assertThat(runs.get()).isEqualTo(1);
+        assertThat(scheduler.isRunning(USER_ID)).isFalse();
+    }
+
+    @Test
+    public void failingSessionStops() {
+        scheduler.start(
+            USER_ID,
+            () -> {
+                runs.incrementAndGet();
+                throw new IllegalStateException();
+            },
+            0,
+            1,
+            TimeUnit.SECONDS
+        );
+
+        advance(5);
+
+        assertThat(runs.get()).isEqualTo(1);
+        assertThat(scheduler.isRunning(USER_ID)).isFalse();
+    }
+
+    @Test
+    public void restartAfterStop() {
+        scheduler.start(USER_ID, runs::incrementAndGet, 0, 1, TimeUnit.SECONDS);
+        scheduler.stop(USER_ID);
+
+        assertThat(scheduler.start(USER_ID, runs::incrementAndGet, 0, 1, TimeUnit.SECONDS)).isTrue();
+        advance(1);
+
+        assertThat(runs.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void stopTicking() {
+        scheduler.start(USER_ID, runs::incrementAndGet, 0, 1, TimeUnit.SECONDS);
+
+        scheduler.stopTicking();
+
+        verify(ticker).shutdownNow();
+        assertThat(scheduler.isRunning(USER_ID)).isFalse();
+        assertThat(scheduler.start(USER_ID, runs::incrementAndGet, 0, 1, TimeUnit.SECONDS)).isFalse();
+    }
+}
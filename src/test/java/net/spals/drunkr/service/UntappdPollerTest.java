@@ -0,0 +1,86 @@
+package net.spals.drunkr.service;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.time.ZonedDateTime;
+
+import org.bson.types.ObjectId;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.spals.drunkr.common.ZonedDateTimes;
+
+/**
+ * Unit tests for {@link UntappdPoller}.
+ *
+ * @author spags
+ */
+public class UntappdPollerTest {
+
+    private static final ObjectId USER_ID = new ObjectId();
+    private static final ZonedDateTime NOW = ZonedDateTimes.nowUTC();
+    private UntappdPoller poller;
+
+    @BeforeMethod
+    public void setUp() {
+        poller = new UntappdPoller();
+        poller.setConfiguration(120, 300);
+    }
+
+    @Test
+    public void pollNewUser() {
+        assertThat(poller.shouldPoll(USER_ID, NOW)).isTrue();
+    }
+
+    @Test
+    public void pollEveryRunWhileCheckingIn() {
+        poller.polled(USER_ID, NOW, true);
+
+        assertThat(poller.shouldPoll(USER_ID, NOW)).isTrue();
+    }
+
+    @Test
+    public void backOffWhileIdle() {
+        poller.polled(USER_ID, NOW, false);
+
+        assertThat(poller.shouldPoll(USER_ID, NOW.plusSeconds(60))).isFalse();
+        assertThat(poller.shouldPoll(USER_ID, NOW.plusSeconds(120))).isTrue();
+    }
+
+    @Test
+    public void backOffDoubles() {
+        poller.polled(USER_ID, NOW, false);
+        final ZonedDateTime next = NOW.plusSeconds(120);
+        poller.polled(USER_ID, next, false);
+
+        assertThat(poller.shouldPoll(USER_ID, next.plusSeconds(239))).isFalse();
+        assertThat(poller.shouldPoll(USER_ID, next.plusSeconds(240))).isTrue();
+    }
+
+    @Test
+    public void backOffCapped() {
+        ZonedDateTime now = NOW;
+        for (int i = 0; i < 5; i++) {
+            poller.polled(USER_ID, now, false);
+            now = now.plusHours(1);
+        }
+
+        assertThat(poller.shouldPoll(USER_ID, now.minusHours(1).plusSeconds(300))).isTrue();
+    }
+
+    @Test
+    public void snapBackOnCheckin() {
+        poller.polled(USER_ID, NOW, false);
+        poller.checkedIn(USER_ID);
+
+        assertThat(poller.shouldPoll(USER_ID, NOW)).isTrue();
+    }
+
+    @Test
+    public void snapBackOnPolledCheckin() {
+        poller.polled(USER_ID, NOW, false);
+        poller.polled(USER_ID, NOW.plusSeconds(120), true);
+
+        assertThat(poller.shouldPoll(USER_ID, NOW.plusSeconds(120))).isTrue();
+    }
+}
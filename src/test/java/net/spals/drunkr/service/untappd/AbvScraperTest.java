@@ -5,6 +5,8 @@ import static com.google.common.truth.Truth.assertThat;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import net.spals.drunkr.service.PooledHttpClient;
+
 /**
  * Tests that Untappd did not change any of their XPaths via making sure we can scrape some beer.
  * This relies on me having a beer in the last month.
@@ -18,7 +20,9 @@ public class AbvScraperTest {
 
     @BeforeMethod
     public void setUp() {
-        scraper = new AbvScraper();
+        final PooledHttpClient httpClient = new PooledHttpClient();
+        httpClient.start();
+        scraper = new AbvScraper(httpClient);
     }
 
     @Test(enabled=false)
@@ -0,0 +1,165 @@
+package net.spals.drunkr.service.untappd;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.db.DatabaseService;
+import net.spals.drunkr.model.Beer;
+
+/**
+ * Unit tests for {@link CachingAbvProvider}.
+ *
+ * @author spags
+ */
+public class CachingAbvProviderTest {
+
+    private static final String LINK = "b/fort-point-beer-company-westfalia/574187";
+    private static final String OTHER_LINK = "b/duff-brewery-duff/1";
+    private static final double ABV = .056;
+    private static final Key KEY = new Key.Builder(CachingAbvProvider.class)
+        .build();
+    @Mock
+    private AbvScraper abvScraper;
+    @Mock
+    private DatabaseService dbService;
+    @Mock
+    private ExecutorServiceFactory executorServiceFactory;
+    @Mock
+    private ScheduledExecutorService executor;
+    private CachingAbvProvider provider;
+
+    @BeforeMethod
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        provider = new CachingAbvProvider(abvScraper, dbService, executorServiceFactory);
+        when(executorServiceFactory.createSingleThreadScheduledExecutor(KEY)).thenReturn(executor);
+        when(dbService.getBeer(anyString())).thenReturn(Optional.empty());
+        when(abvScraper.scrape(LINK)).thenReturn(ABV);
+    }
+
+    private Beer createBeer(final double abv, final long ageInSeconds) {
+        return new Beer.Builder()
+            .link(LINK)
+            .abv(abv)
+            .timestamp(ZonedDateTimes.nowUTC().minusSeconds(ageInSeconds))
+            .build();
+    }
+
+    @Test
+    public void missThenMemoryHit() {
+        final double first = provider.scrape(LINK);
+        final double second = provider.scrape(LINK);
+
+        assertThat(first).isEqualTo(ABV);
+        assertThat(second).isEqualTo(ABV);
+        verify(abvScraper).scrape(LINK);
+        verify(dbService).getBeer(LINK);
+        assertThat(provider.misses()).isEqualTo(1);
+        assertThat(provider.memoryHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void missStoresBeer() {
+        final ArgumentCaptor<Beer> captor = ArgumentCaptor.forClass(Beer.class);
+
+        provider.scrape(LINK);
+
+        verify(dbService).upsertBeer(captor.capture());
+        assertThat(captor.getValue().link()).isEqualTo(LINK);
+        assertThat(captor.getValue().abv()).isEqualTo(ABV);
+    }
+
+    @Test
+    public void dbHit() {
+        when(dbService.getBeer(LINK)).thenReturn(Optional.of(createBeer(.07, 60)));
+
+        final double abv = provider.scrape(LINK);
+
+        assertThat(abv).isEqualTo(.07);
+        verify(abvScraper, never()).scrape(anyString());
+        verify(dbService, never()).upsertBeer(any());
+        assertThat(provider.dbHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void staleDbEntryRefreshed() {
+        when(dbService.getBeer(LINK)).thenReturn(Optional.of(createBeer(.07, 2592000 + 60)));
+
+        final double abv = provider.scrape(LINK);
+
+        assertThat(abv).isEqualTo(ABV);
+        verify(abvScraper).scrape(LINK);
+        assertThat(provider.misses()).isEqualTo(1);
+    }
+
+    @Test
+    public void negativeEntryCached() {
+        when(dbService.getBeer(LINK)).thenReturn(Optional.of(createBeer(0.0, 60)));
+
+        final double abv = provider.scrape(LINK);
+
+        assertThat(abv).isEqualTo(0.0);
+        verify(abvScraper, never()).scrape(anyString());
+    }
+
+    @Test
+    public void negativeEntryExpiresSooner() {
+        when(dbService.getBeer(LINK)).thenReturn(Optional.of(createBeer(0.0, 86400 + 60)));
+
+        final double abv = provider.scrape(LINK);
+
+        assertThat(abv).isEqualTo(ABV);
+        verify(abvScraper).scrape(LINK);
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        provider.setCapacity(1);
+
+        provider.scrape(LINK);
+        provider.scrape(OTHER_LINK);
+        provider.scrape(LINK);
+
+        verify(abvScraper, times(2)).scrape(LINK);
+        assertThat(provider.memoryHits()).isEqualTo(0);
+    }
+
+    @Test
+    public void emptyLink() {
+        final double abv = provider.scrape("");
+
+        assertThat(abv).isEqualTo(0.0);
+        verifyZeroInteractions(abvScraper, dbService);
+    }
+
+    @Test
+    public void statsScheduled() {
+        provider.start();
+
+        verify(executor).scheduleAtFixedRate(any(Runnable.class), eq(300L), eq(300L), eq(TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void statsDisabled() {
+        provider.setStatsPeriod(0);
+
+        provider.start();
+
+        verifyZeroInteractions(executorServiceFactory);
+    }
+}
@@ -1,21 +1,33 @@
 package net.spals.drunkr.service.untappd;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
 
+import static com.googlecode.catchexception.throwable.CatchThrowable.catchThrowable;
+import static com.googlecode.catchexception.throwable.CatchThrowable.caughtThrowable;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import static net.spals.drunkr.service.untappd.CheckinApiClient.*;
+import static net.spals.drunkr.service.untappd.CheckinPageReader.*;
 
 import javax.ws.rs.client.*;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.bson.types.ObjectId;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeMethod;
@@ -24,6 +36,7 @@ import org.testng.annotations.Test;
 import net.spals.drunkr.common.ZonedDateTimes;
 import net.spals.drunkr.model.Checkin;
 import net.spals.drunkr.model.Persons;
+import net.spals.drunkr.model.UntappdQuota;
 
 /**
  * A maybe complex test suite to create parsable json to give to {@link CheckinIterable} for logical verification.
@@ -41,6 +54,11 @@ public class CheckinIterableTest {
     private WebTarget target;
     @Mock
     private Invocation.Builder targetBuilder;
+    @Mock
+    private Response response;
+    @Captor
+    private ArgumentCaptor<UriBuilder> uriCaptor;
+    private UntappdBudget budget;
     private ZonedDateTime now;
 
     private static String buildBeerJson(final String name, final double abv) {
@@ -86,12 +104,19 @@ public class CheckinIterableTest {
             + "\n}";
     }
 
+    private static InputStream stream(final String json) {
+        return new ByteArrayInputStream(json.getBytes(UTF_8));
+    }
+
     @BeforeMethod
     public void setUp() {
         MockitoAnnotations.initMocks(this);
 
         when(client.target(any(UriBuilder.class))).thenReturn(target);
         when(target.request(MediaType.APPLICATION_JSON)).thenReturn(targetBuilder);
+        when(targetBuilder.get()).thenReturn(response);
+        when(response.getStatus()).thenReturn(200);
+        budget = new UntappdBudget();
         now = ZonedDateTimes.nowUTC();
     }
 
@@ -114,14 +139,16 @@ public class CheckinIterableTest {
             )
         );
         // We must follow with empty batch to terminate the iterable.
-        when(targetBuilder.get(String.class))
-            .thenReturn(json)
-            .thenReturn(EMPTY_CHECKINS);
+        when(response.readEntity(InputStream.class))
+            .thenReturn(stream(json))
+            .thenReturn(stream(EMPTY_CHECKINS));
 
         final Iterable<Checkin> checkins = new CheckinIterable(
             client,
+            budget,
             USER_ID,
             ACCESS_TOKEN,
+            Optional.empty(),
             Optional.empty()
         );
 
@@ -149,15 +176,17 @@ public class CheckinIterableTest {
             )
         );
         // We must follow with empty batch to terminate the iterable.
-        when(targetBuilder.get(String.class))
-            .thenReturn(firstBatch)
-            .thenReturn(secondBatch)
-            .thenReturn(EMPTY_CHECKINS);
+        when(response.readEntity(InputStream.class))
+            .thenReturn(stream(firstBatch))
+            .thenReturn(stream(secondBatch))
+            .thenReturn(stream(EMPTY_CHECKINS));
 
         final Iterable<Checkin> checkins = new CheckinIterable(
             client,
+            budget,
             USER_ID,
             ACCESS_TOKEN,
+            Optional.empty(),
             Optional.empty()
         );
 
@@ -183,17 +212,134 @@ public class CheckinIterableTest {
             )
         );
         // We must follow with empty batch to terminate the iterable.
-        when(targetBuilder.get(String.class))
-            .thenReturn(json)
-            .thenReturn(EMPTY_CHECKINS);
+        when(response.readEntity(InputStream.class))
+            .thenReturn(stream(json))
+            .thenReturn(stream(EMPTY_CHECKINS));
+
+        final Iterable<Checkin> checkins = new CheckinIterable(
+            client,
+            budget,
+            USER_ID,
+            ACCESS_TOKEN,
+            Optional.empty(),
+            Optional.of(now.minusMinutes(2))
+        );
+
+        assertThat(checkins).hasSize(1);
+    }
+
+    @Test
+    public void untappdIds() {
+        final String json = buildCheckins(
+            buildCheckin(
+                15,
+                4.0,
+                now,
+                buildBeerJson("Duff Lite", 5.0),
+                buildBreweryJson("Duff")
+            )
+        );
+        when(response.readEntity(InputStream.class))
+            .thenReturn(stream(json))
+            .thenReturn(stream(EMPTY_CHECKINS));
+
+        final Iterable<Checkin> checkins = new CheckinIterable(
+            client,
+            budget,
+            USER_ID,
+            ACCESS_TOKEN,
+            Optional.empty(),
+            Optional.empty()
+        );
+
+        assertThat(checkins.iterator().next().untappdId()).hasValue(15L);
+    }
+
+    @Test
+    public void fetchAfterMinId() {
+        when(response.readEntity(InputStream.class)).thenReturn(stream(EMPTY_CHECKINS));
 
         final Iterable<Checkin> checkins = new CheckinIterable(
             client,
+            budget,
             USER_ID,
             ACCESS_TOKEN,
+            Optional.of(15L),
             Optional.of(now.minusMinutes(2))
         );
 
+        // Nothing new since the last checkin we stored costs a single request.
+        assertThat(checkins).isEmpty();
+        verify(targetBuilder, times(1)).get();
+        verify(client).target(uriCaptor.capture());
+        assertThat(uriCaptor.getValue().build().getQuery()).contains("min_id=15");
+    }
+
+    @Test
+    public void recordsQuota() {
+        when(response.getHeaderString(UntappdBudget.REMAINING_HEADER)).thenReturn("42");
+        when(response.getHeaderString(UntappdBudget.LIMIT_HEADER)).thenReturn("100");
+        when(response.readEntity(InputStream.class)).thenReturn(stream(EMPTY_CHECKINS));
+
+        final Iterable<Checkin> checkins = new CheckinIterable(
+            client,
+            budget,
+            USER_ID,
+            ACCESS_TOKEN,
+            Optional.empty(),
+            Optional.empty()
+        );
+
+        assertThat(checkins).isEmpty();
+        assertThat(budget.getQuota(USER_ID).map(UntappdQuota::remaining)).hasValue(42);
+        assertThat(budget.getQuota(USER_ID).flatMap(UntappdQuota::limit)).hasValue(100);
+    }
+
+    @Test
+    public void stopsWhenQuotaUsedUp() {
+        final String json = buildCheckins(
+            buildCheckin(
+                15,
+                4.0,
+                now,
+                buildBeerJson("Duff Lite", 5.0),
+                buildBreweryJson("Duff")
+            )
+        );
+        when(response.getHeaderString(UntappdBudget.REMAINING_HEADER)).thenReturn("0");
+        when(response.readEntity(InputStream.class)).thenReturn(stream(json));
+        final CheckinIterable checkins = new CheckinIterable(
+            client,
+            budget,
+            USER_ID,
+            ACCESS_TOKEN,
+            Optional.empty(),
+            Optional.empty()
+        );
+
+        // The first page used the last request, so we stop with its checkins rather than ask for the next page.
         assertThat(checkins).hasSize(1);
+        assertThat(checkins.isComplete()).isFalse();
+        verify(targetBuilder, times(1)).get();
+    }
+
+    @Test
+    public void failedRequest() {
+        when(response.getStatus()).thenReturn(429);
+        when(response.getHeaderString(UntappdBudget.REMAINING_HEADER)).thenReturn("0");
+
+        catchThrowable(
+            () -> new CheckinIterable(
+                client,
+                budget,
+                USER_ID,
+                ACCESS_TOKEN,
+                Optional.empty(),
+                Optional.empty()
+            )
+        );
+
+        assertThat(caughtThrowable()).isInstanceOf(IllegalStateException.class);
+        assertThat(budget.getQuota(USER_ID).map(UntappdQuota::remaining)).hasValue(0);
     }
-}
\ No newline at end of file
+}
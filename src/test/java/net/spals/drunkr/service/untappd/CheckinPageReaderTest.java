@@ -0,0 +1,78 @@
+package net.spals.drunkr.service.untappd;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+import org.testng.annotations.Test;
+
+import net.spals.drunkr.common.ZonedDateTimes;
+import net.spals.drunkr.model.Checkin;
+import net.spals.drunkr.model.Persons;
+import net.spals.drunkr.model.Style;
+
+/**
+ * Unit tests for {@link CheckinPageReader}, with the fields we don't use of a real response.
+ *
+ * @author spags
+ */
+public class CheckinPageReaderTest {
+
+    private static final ObjectId USER_ID = Persons.SPAGS.id();
+    private static final ZonedDateTime NOW = ZonedDateTimes.nowUTC().truncatedTo(ChronoUnit.SECONDS);
+
+    private static String buildPage(final String items) {
+        return "{"
+            + "\"meta\": {\"code\": 200, \"response_time\": {\"time\": 0.1, \"measure\": \"seconds\"}},"
+            + "\"notifications\": [],"
+            + "\"response\": {"
+            + "\"pagination\": {\"since_url\": \"\", \"next_url\": \"\", \"max_id\": 14},"
+            + "\"checkins\": {\"count\": 1, \"items\": [" + items + "]}"
+            + "}"
+            + "}";
+    }
+
+    @Test
+    public void readCheckin() throws IOException {
+        final String json = buildPage(
+            "{"
+                + "\"checkin_id\": 15,"
+                + "\"created_at\": \"" + ZonedDateTimes.formatUntappd(NOW) + "\","
+                + "\"checkin_comment\": \"\","
+                + "\"rating_score\": 4,"
+                + "\"user\": {\"uid\": 1, \"user_name\": \"spags\", \"contact\": {}},"
+                + "\"beer\": {\"bid\": 2, \"beer_name\": \"Duff Lite\", \"beer_abv\": 5.0, \"beer_active\": 1},"
+                + "\"brewery\": {\"brewery_id\": 3, \"brewery_name\": \"Duff\", \"location\": {\"lat\": 0.0}},"
+                + "\"venue\": [],"
+                + "\"comments\": {\"total_count\": 0, \"items\": []},"
+                + "\"media\": {\"count\": 0, \"items\": []}"
+                + "}"
+        );
+
+        final List<Checkin> checkins = CheckinPageReader.read(USER_ID, new StringReader(json));
+
+        assertThat(checkins).hasSize(1);
+        final Checkin checkin = checkins.get(0);
+        assertThat(checkin.userId()).isEqualTo(USER_ID);
+        assertThat(checkin.untappdId()).hasValue(15L);
+        assertThat(checkin.name()).isEqualTo("Duff Lite");
+        assertThat(checkin.producer()).hasValue("Duff");
+        assertThat(checkin.rating()).hasValue(400);
+        assertThat(checkin.abv()).isWithin(1e-9).of(.05);
+        assertThat(checkin.timestamp()).isEqualTo(NOW);
+        assertThat(checkin.style()).isEqualTo(Style.NONE);
+    }
+
+    @Test
+    public void emptyPage() throws IOException {
+        final List<Checkin> checkins = CheckinPageReader.read(USER_ID, new StringReader(buildPage("")));
+
+        assertThat(checkins).isEmpty();
+    }
+}
@@ -10,6 +10,7 @@ import java.util.List;
 import java.util.Optional;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import com.netflix.governator.configuration.ConfigurationKey;
 import com.typesafe.config.*;
@@ -18,8 +19,10 @@ import org.openqa.selenium.WebDriver;
 import org.testng.annotations.*;
 
 import net.spals.appbuilder.config.provider.TypesafeConfigurationProvider;
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
 import net.spals.drunkr.common.ZonedDateTimes;
 import net.spals.drunkr.model.*;
+import net.spals.drunkr.service.PooledHttpClient;
 
 /**
  * Tests that Untappd did not change any of their XPaths via making sure we can scrape some beer.
@@ -40,7 +43,9 @@ public class CheckinScraperITest {
         .build();
     private WebDriver driver;
     private AbvScraper abvScraper;
+    private ExecutorServiceFactory executorServiceFactory;
     private LoginDriver loginDriver;
+    private WebDriverPool driverPool;
     private CheckinScraper scraper;
 
     @BeforeClass
@@ -56,11 +61,19 @@ public class CheckinScraperITest {
         final ConfigurationKey passwordKey = new ConfigurationKey("untappd.master.password", ImmutableList.of());
         final String password = provider.getStringProperty(passwordKey, "").get();
 
-        abvScraper = new AbvScraper();
+        final PooledHttpClient httpClient = new PooledHttpClient();
+        httpClient.start();
+        abvScraper = new AbvScraper(httpClient);
+        executorServiceFactory = mock(ExecutorServiceFactory.class);
         loginDriver = new LoginDriver();
         loginDriver.setConfiguration(user, password);
-        scraper = new CheckinScraper(abvScraper, loginDriver);
-        driver = scraper.createWebDriver();
+        when(executorServiceFactory.createFixedThreadPool(anyInt(), any()))
+            .thenReturn(MoreExecutors.newDirectExecutorService());
+        driverPool = spy(new WebDriverPool());
+        driverPool.start();
+        scraper = new CheckinScraper(abvScraper, executorServiceFactory, loginDriver, driverPool);
+        scraper.submit();
+        driver = driverPool.createWebDriver();
     }
 
     @AfterClass
@@ -73,7 +86,7 @@ public class CheckinScraperITest {
         final List<Checkin> checkins = scraper.get(
             Optional.of(VALID_LINK),
             Optional.of(ZonedDateTimes.nowUTC().minusMonths(1))
-        );
+        ).checkins();
 
         assertThat(checkins).isNotEmpty();
     }
@@ -83,7 +96,7 @@ public class CheckinScraperITest {
         final List<Checkin> checkins = scraper.get(
             Optional.of(INVALID_LINK),
             Optional.of(ZonedDateTimes.nowUTC().minusMonths(1))
-        );
+        ).checkins();
 
         assertThat(checkins).isEmpty();
     }
@@ -98,15 +111,12 @@ public class CheckinScraperITest {
     }
 
     @Test(enabled=false)
-    public void emptyUntappdLink() {
-        // Create a spy to verify no web driver was created. Don't set to the field to remain idempotent.
-        final CheckinScraper scraper = spy(new CheckinScraper(abvScraper, loginDriver));
-
+    public void emptyUntappdLink() throws InterruptedException {
         // Don't open a page but try clicking, which we won't do.
-        final List<Checkin> checkins = scraper.get(Optional.empty(), Optional.empty());
+        final List<Checkin> checkins = scraper.get(Optional.empty(), Optional.empty()).checkins();
 
         assertThat(checkins).isEmpty();
-        verify(scraper, never()).createWebDriver();
+        verify(driverPool, never()).borrow();
     }
 
     @Test(enabled=false)
@@ -133,7 +143,7 @@ public class CheckinScraperITest {
     public void clickingSanity() {
         scraper.openPersonPage(driver, VALID_LINK);
         final Optional<ZonedDateTime> firstLastCheckin = scraper.getLastCheckin(driver);
-        scraper.clickNextUntilDateTime(driver, Optional.of(ZonedDateTimes.nowUTC().minusMonths(6)));
+        scraper.clickNextUntilDateTime(driver, false, Optional.of(ZonedDateTimes.nowUTC().minusMonths(6)));
 
         final Optional<ZonedDateTime> finalLastCheckin = scraper.getLastCheckin(driver);
         assertThat(firstLastCheckin).isNotEqualTo(finalLastCheckin);
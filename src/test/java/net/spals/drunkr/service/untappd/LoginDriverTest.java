@@ -0,0 +1,54 @@
+package net.spals.drunkr.service.untappd;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.*;
+
+import com.google.common.collect.ImmutableList;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link LoginDriver}.
+ *
+ * @author spags
+ */
+public class LoginDriverTest {
+
+    private static final By USERNAME_LOGIN_PATH = By.id("username");
+    private WebDriver driver;
+    private LoginDriver loginDriver;
+
+    @BeforeMethod
+    public void setUp() {
+        driver = mock(WebDriver.class);
+        loginDriver = new LoginDriver();
+    }
+
+    @Test
+    public void loginPage() {
+        final WebElement username = mock(WebElement.class);
+        when(username.isDisplayed()).thenReturn(true);
+        when(driver.findElement(USERNAME_LOGIN_PATH)).thenReturn(username);
+        when(driver.findElements(USERNAME_LOGIN_PATH)).thenReturn(ImmutableList.of(username));
+
+        final boolean loginPage = loginDriver.isLoginPage(driver, (ExpectedCondition<Boolean>) x -> false);
+
+        assertThat(loginPage).isTrue();
+    }
+
+    @Test
+    public void expectedPage() {
+        when(driver.findElement(USERNAME_LOGIN_PATH)).thenThrow(new NoSuchElementException("username"));
+        when(driver.findElements(USERNAME_LOGIN_PATH)).thenReturn(ImmutableList.of());
+
+        final boolean loginPage = loginDriver.isLoginPage(driver, (ExpectedCondition<Boolean>) x -> true);
+
+        assertThat(loginPage).isFalse();
+    }
+}
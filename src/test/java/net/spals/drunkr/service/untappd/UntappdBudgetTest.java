@@ -0,0 +1,88 @@
+package net.spals.drunkr.service.untappd;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+
+import java.time.ZonedDateTime;
+import java.util.Optional;
+
+import org.bson.types.ObjectId;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.spals.drunkr.common.ZonedDateTimes;
+
+/**
+ * Unit tests for {@link UntappdBudget}.
+ *
+ * @author spags
+ */
+public class UntappdBudgetTest {
+
+    private static final ObjectId USER_ID = new ObjectId();
+    private static final ZonedDateTime NOW = ZonedDateTimes.nowUTC();
+    private UntappdBudget budget;
+
+    @BeforeMethod
+    public void setUp() {
+        budget = new UntappdBudget();
+        budget.setConfiguration(10, 25, 600);
+    }
+
+    private void record(final int remaining) {
+        budget.record(USER_ID, Optional.of(remaining), Optional.of(100), NOW);
+    }
+
+    @Test
+    public void unknownQuota() {
+        assertThat(budget.canPoll(USER_ID, NOW)).isTrue();
+        assertThat(budget.canRequest(USER_ID, NOW)).isTrue();
+        assertThat(budget.getQuota(USER_ID)).isEmpty();
+    }
+
+    @Test
+    public void plentyOfQuota() {
+        record(50);
+
+        assertThat(budget.canPoll(USER_ID, NOW)).isTrue();
+    }
+
+    @Test
+    public void lowQuotaCoalesced() {
+        record(20);
+
+        assertThat(budget.canPoll(USER_ID, NOW.plusSeconds(60))).isFalse();
+        assertThat(budget.canPoll(USER_ID, NOW.plusSeconds(600))).isTrue();
+    }
+
+    @Test
+    public void reserveDeferred() {
+        record(10);
+
+        assertThat(budget.canPoll(USER_ID, NOW.plusSeconds(600))).isFalse();
+        assertThat(budget.canRequest(USER_ID, NOW)).isTrue();
+    }
+
+    @Test
+    public void usedUp() {
+        record(0);
+
+        assertThat(budget.canRequest(USER_ID, NOW)).isFalse();
+    }
+
+    @Test
+    public void refilledAfterAnHour() {
+        record(0);
+
+        assertThat(budget.canPoll(USER_ID, NOW.plusHours(1))).isTrue();
+        assertThat(budget.canRequest(USER_ID, NOW.plusHours(1))).isTrue();
+    }
+
+    @Test
+    public void missingHeaderIgnored() {
+        record(50);
+        budget.record(USER_ID, Optional.empty(), Optional.empty(), NOW.plusSeconds(1));
+
+        assertThat(budget.getQuota(USER_ID).map(x -> x.remaining())).hasValue(50);
+    }
+}
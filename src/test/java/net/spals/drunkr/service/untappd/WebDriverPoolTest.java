@@ -0,0 +1,110 @@
+package net.spals.drunkr.service.untappd;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.*;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link WebDriverPool}.
+ *
+ * @author spags
+ */
+public class WebDriverPoolTest {
+
+    private WebDriver driver;
+    private WebDriver otherDriver;
+    private WebDriverPool pool;
+
+    @BeforeMethod
+    public void setUp() {
+        driver = mock(WebDriver.class);
+        otherDriver = mock(WebDriver.class);
+        pool = spy(new WebDriverPool());
+        pool.setConfiguration(1, 2);
+        pool.start();
+        doReturn(driver, otherDriver).when(pool).createWebDriver();
+    }
+
+    @Test
+    public void reusesDriver() throws InterruptedException {
+        try (final WebDriverPool.Session session = pool.borrow()) {
+            session.setLoggedIn(true);
+        }
+
+        try (final WebDriverPool.Session session = pool.borrow()) {
+            assertThat(session.driver()).isSameAs(driver);
+            assertThat(session.isLoggedIn()).isTrue();
+        }
+        verify(pool).createWebDriver();
+    }
+
+    @Test
+    public void resetBetweenUsers() throws InterruptedException {
+        try (final WebDriverPool.Session ignored = pool.borrow()) {
+            verify(driver, never()).get("about:blank");
+        }
+
+        verify(driver).get("about:blank");
+        verify(driver, never()).quit();
+    }
+
+    @Test
+    public void recycledAfterMaxUses() throws InterruptedException {
+        pool.borrow().close();
+        pool.borrow().close();
+
+        try (final WebDriverPool.Session session = pool.borrow()) {
+            assertThat(session.driver()).isSameAs(otherDriver);
+            assertThat(session.isLoggedIn()).isFalse();
+        }
+        verify(driver).quit();
+    }
+
+    @Test
+    public void deadDriverReplaced() throws InterruptedException {
+        pool.borrow().close();
+        when(driver.getWindowHandle()).thenThrow(new WebDriverException("session deleted"));
+
+        try (final WebDriverPool.Session session = pool.borrow()) {
+            assertThat(session.driver()).isSameAs(otherDriver);
+        }
+        verify(driver).quit();
+    }
+
+    @Test
+    public void failedResetQuitsDriver() throws InterruptedException {
+        doThrow(new WebDriverException("tab crashed")).when(driver).get("about:blank");
+
+        pool.borrow().close();
+
+        try (final WebDriverPool.Session session = pool.borrow()) {
+            assertThat(session.driver()).isSameAs(otherDriver);
+        }
+        verify(driver).quit();
+    }
+
+    @Test
+    public void stopQuitsIdleDrivers() throws InterruptedException {
+        pool.borrow().close();
+
+        pool.stop();
+
+        verify(driver).quit();
+    }
+
+    @Test
+    public void stopQuitsBorrowedDriversOnReturn() throws InterruptedException {
+        final WebDriverPool.Session session = pool.borrow();
+        pool.stop();
+        verify(driver, never()).quit();
+
+        session.close();
+
+        verify(driver).quit();
+        verify(driver, never()).get("about:blank");
+    }
+}
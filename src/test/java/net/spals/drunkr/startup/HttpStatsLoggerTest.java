@@ -0,0 +1,66 @@
+package net.spals.drunkr.startup;
+
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.pool.PoolStats;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory;
+import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
+import net.spals.drunkr.service.PooledHttpClient;
+
+/**
+ * Unit tests for {@link HttpStatsLogger}.
+ *
+ * @author spags
+ */
+public class HttpStatsLoggerTest {
+
+    private static final Key KEY = new Key.Builder(HttpStatsLogger.class)
+        .build();
+    @Mock
+    private ExecutorServiceFactory executorServiceFactory;
+    @Mock
+    private ScheduledExecutorService executor;
+    @Mock
+    private PooledHttpClient httpClient;
+    private HttpStatsLogger statsLogger;
+
+    @BeforeMethod
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        statsLogger = new HttpStatsLogger(executorServiceFactory, httpClient);
+        when(executorServiceFactory.createSingleThreadScheduledExecutor(KEY)).thenReturn(executor);
+        when(httpClient.stats()).thenReturn(new PoolStats(1, 0, 2, 20));
+    }
+
+    @Test
+    public void scheduled() {
+        statsLogger.start();
+
+        verify(executor).scheduleAtFixedRate(statsLogger, 300, 300, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void disabled() {
+        statsLogger.setPeriod(0);
+
+        statsLogger.start();
+
+        verifyZeroInteractions(executorServiceFactory);
+    }
+
+    @Test
+    public void logsStats() {
+        statsLogger.run();
+
+        verify(httpClient).stats();
+    }
+}
@@ -3,7 +3,8 @@ package net.spals.drunkr.startup;
 import static org.mockito.Mockito.*;
 
 import java.util.Optional;
-import java.util.concurrent.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.collect.ImmutableList;
 
@@ -19,8 +20,7 @@ import net.spals.drunkr.common.ZonedDateTimes;
 import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.model.*;
 import net.spals.drunkr.model.JobOptions.Builder;
-import net.spals.drunkr.service.DrunkrJob;
-import net.spals.drunkr.service.DrunkrJobFactory;
+import net.spals.drunkr.service.*;
 
 /**
  * Unit tests for {@link JobStartup}.
@@ -30,64 +30,79 @@ import net.spals.drunkr.service.DrunkrJobFactory;
 public class JobStartupTest {
 
     private static final Person DRINKER = Persons.SPAGS;
+    private static final String OWNER = "owner";
+    private static final Key KEY = new Key.Builder(JobStartup.class)
+        .build();
     private static final JobOptions JOB = new Builder()
         .userId(DRINKER.id())
         .source(Source.SMS)
         .stopTime(ZonedDateTimes.nowUTC())
         .build();
     @Mock
-    private DatabaseService dbService;
+    private BacBatchEngine batchEngine;
     @Mock
-    private DrunkrJobFactory taskFactory;
+    private DatabaseService dbService;
     @Mock
     private ExecutorServiceFactory executorServiceFactory;
     @Mock
-    private ExecutorService executorService;
-    @Mock
     private ScheduledExecutorService executor;
+    @Mock
+    private DrunkrJobFactory taskFactory;
+    @Mock
+    private Leases leases;
+    @Mock
+    private SessionScheduler scheduler;
     private JobStartup startup;
-    private Key key;
 
     @BeforeMethod
     public void setUp() {
         MockitoAnnotations.initMocks(this);
 
-        startup = new JobStartup(dbService, taskFactory, executorServiceFactory);
-
-        key = new Key.Builder(DrunkrJob.class)
-            .addTags(DRINKER.id().toHexString())
-            .build();
-        when(executorServiceFactory.createSingleThreadScheduledExecutor(key)).thenReturn(executor);
+        startup = new JobStartup(batchEngine, dbService, executorServiceFactory, taskFactory, leases, scheduler);
+        when(executorServiceFactory.createSingleThreadScheduledExecutor(KEY)).thenReturn(executor);
+        when(leases.owner()).thenReturn(OWNER);
+        when(leases.duration()).thenReturn(300L);
+        when(dbService.claimJob(eq(JOB), eq(OWNER), any(), any())).thenReturn(Optional.of(JOB));
     }
 
     private void verifyNoJobEnqueued() {
-        verify(executor, never()).scheduleAtFixedRate(
+        verify(scheduler, never()).start(any(), any(), anyLong(), anyLong(), any());
+    }
+
+    private void verifyJobEnqueued() {
+        verify(scheduler).start(
+            eq(DRINKER.id()),
             any(RunnableWrapper.class),
             eq(0L),
-            eq(900L),
+            eq(60L),
             eq(TimeUnit.SECONDS)
         );
-        verify(executorServiceFactory, never()).createSingleThreadScheduledExecutor(key);
-    }
-
-    private void verifyJobEnqueued() {
-        verify(executor).scheduleAtFixedRate(any(RunnableWrapper.class), eq(0L), eq(60L), eq(TimeUnit.SECONDS));
-        verify(executorServiceFactory).createSingleThreadScheduledExecutor(key);
     }
 
     @Test
     public void restartJob() {
-        when(executorServiceFactory.get(key)).thenReturn(Optional.empty());
+        when(scheduler.isRunning(DRINKER.id())).thenReturn(false);
         when(dbService.allRunningJobs(any())).thenReturn(ImmutableList.of(JOB));
 
         startup.start();
 
         verifyJobEnqueued();
+        verify(executor).scheduleAtFixedRate(any(Runnable.class), eq(300L), eq(300L), eq(TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void jobClaimedByAnotherInstance() {
+        when(scheduler.isRunning(DRINKER.id())).thenReturn(false);
+        when(dbService.allRunningJobs(any())).thenReturn(ImmutableList.of(JOB));
+        when(dbService.claimJob(eq(JOB), eq(OWNER), any(), any())).thenReturn(Optional.empty());
+
+        startup.claimJobs();
+
+        verifyNoJobEnqueued();
     }
 
     @Test
     public void noJobs() {
-        when(executorServiceFactory.get(key)).thenReturn(Optional.empty());
         when(dbService.allRunningJobs(any())).thenReturn(ImmutableList.of());
 
         startup.start();
@@ -96,24 +111,23 @@ public class JobStartupTest {
     }
 
     @Test
-    public void jobExecutorAlreadyRunning() {
-        when(executorServiceFactory.get(key)).thenReturn(Optional.of(executorService));
-        when(executorService.isShutdown()).thenReturn(false);
+    public void batchEngineEnabled() {
+        when(batchEngine.isEnabled()).thenReturn(true);
         when(dbService.allRunningJobs(any())).thenReturn(ImmutableList.of(JOB));
 
         startup.start();
 
         verifyNoJobEnqueued();
+        verify(executorServiceFactory, never()).createSingleThreadScheduledExecutor(any());
     }
 
     @Test
-    public void jobExecutorShutdown() {
-        when(executorServiceFactory.get(key)).thenReturn(Optional.empty());
-        when(executorService.isShutdown()).thenReturn(true);
+    public void jobSessionAlreadyRunning() {
+        when(scheduler.isRunning(DRINKER.id())).thenReturn(true);
         when(dbService.allRunningJobs(any())).thenReturn(ImmutableList.of(JOB));
 
         startup.start();
 
-        verifyJobEnqueued();
+        verifyNoJobEnqueued();
     }
 }
\ No newline at end of file
@@ -1,16 +1,25 @@
 package net.spals.drunkr.startup;
 
+import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Mockito.*;
 
 import static net.spals.drunkr.startup.NotificationRunnable.ID;
+import static net.spals.drunkr.startup.NotificationRunnable.RESUME_TOKEN;
 import static net.spals.drunkr.startup.NotificationRunnable.TEXT;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
 
+import org.bson.types.ObjectId;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeMethod;
@@ -21,6 +30,7 @@ import net.spals.appbuilder.executor.core.ExecutorServiceFactory.Key;
 import net.spals.drunkr.common.ZonedDateTimes;
 import net.spals.drunkr.db.DatabaseService;
 import net.spals.drunkr.model.*;
+import net.spals.drunkr.service.Leases;
 import net.spals.drunkr.service.messenger.MessengerClient;
 import net.spals.drunkr.service.twilio.TwilioClient;
 
@@ -34,6 +44,7 @@ public class NotificationRunnableTest {
     private static final Person DRUNK = Persons.SPAGS;
     private static final String DRUNK_PHONE_NUMBER = Persons.SPAGS_NUMBER;
     private static final String MESSENGER_ID = "messengerId";
+    private static final String OWNER = "owner";
     private static final Person DRUNK_NO_PHONE_NUMBER = new Person.Builder()
         .mergeFrom(DRUNK)
         .phoneNumber(Optional.empty())
@@ -47,26 +58,14 @@ public class NotificationRunnableTest {
         .message("Hello World")
         .timestamp(ZonedDateTimes.nowUTC())
         .build();
-    private static final Notification PUSHED_NOTIFICATION = new Notification.Builder()
-        .mergeFrom(NOTIFICATION)
-        .pushed(true)
-        .build();
     private static final Notification SMS_NOTIFICATION = new Notification.Builder()
         .mergeFrom(NOTIFICATION)
         .source(Source.SMS)
         .build();
-    private static final Notification SMS_PUSHED_NOTIFICATION = new Notification.Builder()
-        .mergeFrom(SMS_NOTIFICATION)
-        .pushed(true)
-        .build();
     private static final Notification MESSENGER_NOTIFICATION = new Notification.Builder()
         .mergeFrom(NOTIFICATION)
         .source(Source.MESSENGER)
         .build();
-    private static final Notification MESSENGER_PUSHED_NOTIFICATION = new Notification.Builder()
-        .mergeFrom(MESSENGER_NOTIFICATION)
-        .pushed(true)
-        .build();
     private static final MessengerResponse MESSAGE = new MessengerResponse.Builder()
         .putRecipient(ID, MESSENGER_ID)
         .putMessage(TEXT, NOTIFICATION.message())
@@ -74,11 +73,24 @@ public class NotificationRunnableTest {
         .build();
     private static final Key KEY = new Key.Builder(NotificationRunnable.class)
         .build();
+    private static final Key MESSENGER_KEY = new Key.Builder(NotificationRunnable.class)
+        .addTags("messenger")
+        .build();
+    private static final Key SMS_KEY = new Key.Builder(NotificationRunnable.class)
+        .addTags("sms")
+        .build();
+    private static final Key STREAM_KEY = new Key.Builder(NotificationRunnable.class)
+        .addTags("stream")
+        .build();
+    private static final String RESUME = "{\"_data\": \"1\"}";
+    private static final String NEXT_RESUME = "{\"_data\": \"2\"}";
     @Mock
     private DatabaseService dbService;
     @Mock
     private ExecutorServiceFactory executorServiceFactory;
     @Mock
+    private Leases leases;
+    @Mock
     private MessengerClient messengerClient;
     @Mock
     private TwilioClient twilioClient;
@@ -93,45 +105,51 @@ public class NotificationRunnableTest {
         runnable = new NotificationRunnable(
             dbService,
             executorServiceFactory,
+            leases,
             messengerClient,
             twilioClient
         );
         when(executorServiceFactory.createSingleThreadScheduledExecutor(KEY)).thenReturn(executor);
+        when(leases.owner()).thenReturn(OWNER);
+        when(leases.duration()).thenReturn(300L);
+        when(executorServiceFactory.createFixedThreadPool(anyInt(), any()))
+            .thenAnswer(invocation -> MoreExecutors.newDirectExecutorService());
+        runnable.submit();
     }
 
     @Test
     public void noNotifications() {
-        when(dbService.unpushedNotifications()).thenReturn(ImmutableList.of());
+        when(dbService.claimNotifications(eq(OWNER), any(), any(), eq(100))).thenReturn(ImmutableList.of());
 
         runnable.run();
 
         verify(twilioClient, never()).sendMessage(anyString(), anyString());
         verify(messengerClient, never()).sendMessage(any());
-        verify(dbService, never()).updateNotification(any());
+        verify(dbService, never()).markNotificationsPushed(any());
     }
 
     @Test
     public void fromSmsNotification() {
-        when(dbService.unpushedNotifications()).thenReturn(ImmutableList.of(SMS_NOTIFICATION));
-        when(dbService.getPerson(DRUNK.id().toHexString())).thenReturn(Optional.of(DRUNK));
+        when(dbService.claimNotifications(eq(OWNER), any(), any(), eq(100))).thenReturn(ImmutableList.of(SMS_NOTIFICATION));
+        when(dbService.getPersons(ImmutableSet.of(DRUNK.id()))).thenReturn(ImmutableList.of(DRUNK));
 
         runnable.run();
 
         verify(twilioClient).sendMessage(DRUNK_PHONE_NUMBER, NOTIFICATION.message());
         verify(messengerClient, never()).sendMessage(any());
-        verify(dbService).updateNotification(SMS_PUSHED_NOTIFICATION);
+        verify(dbService).markNotificationsPushed(ImmutableList.of(SMS_NOTIFICATION.id()));
     }
 
     @Test
     public void fromSmsNotificationNoPhoneNumber() {
-        when(dbService.unpushedNotifications()).thenReturn(ImmutableList.of(SMS_NOTIFICATION));
-        when(dbService.getPerson(DRUNK.id().toHexString())).thenReturn(Optional.of(DRUNK_NO_PHONE_NUMBER));
+        when(dbService.claimNotifications(eq(OWNER), any(), any(), eq(100))).thenReturn(ImmutableList.of(SMS_NOTIFICATION));
+        when(dbService.getPersons(ImmutableSet.of(DRUNK.id()))).thenReturn(ImmutableList.of(DRUNK_NO_PHONE_NUMBER));
 
         runnable.run();
 
         verify(twilioClient, never()).sendMessage(anyString(), anyString());
         verify(messengerClient, never()).sendMessage(any());
-        verify(dbService).updateNotification(SMS_PUSHED_NOTIFICATION);
+        verify(dbService).markNotificationsPushed(ImmutableList.of(SMS_NOTIFICATION.id()));
     }
 
     /**
@@ -139,38 +157,38 @@ public class NotificationRunnableTest {
      */
     @Test
     public void noSourceOnlyPhoneNumber() {
-        when(dbService.unpushedNotifications()).thenReturn(ImmutableList.of(NOTIFICATION));
-        when(dbService.getPerson(DRUNK.id().toHexString())).thenReturn(Optional.of(DRUNK));
+        when(dbService.claimNotifications(eq(OWNER), any(), any(), eq(100))).thenReturn(ImmutableList.of(NOTIFICATION));
+        when(dbService.getPersons(ImmutableSet.of(DRUNK.id()))).thenReturn(ImmutableList.of(DRUNK));
 
         runnable.run();
 
         verify(twilioClient).sendMessage(DRUNK_PHONE_NUMBER, NOTIFICATION.message());
         verify(messengerClient, never()).sendMessage(any());
-        verify(dbService).updateNotification(PUSHED_NOTIFICATION);
+        verify(dbService).markNotificationsPushed(ImmutableList.of(NOTIFICATION.id()));
     }
 
     @Test
     public void fromMessengerNotification() {
-        when(dbService.unpushedNotifications()).thenReturn(ImmutableList.of(MESSENGER_NOTIFICATION));
-        when(dbService.getPerson(DRUNK.id().toHexString())).thenReturn(Optional.of(DRUNK_WITH_MESSENGER));
+        when(dbService.claimNotifications(eq(OWNER), any(), any(), eq(100))).thenReturn(ImmutableList.of(MESSENGER_NOTIFICATION));
+        when(dbService.getPersons(ImmutableSet.of(DRUNK.id()))).thenReturn(ImmutableList.of(DRUNK_WITH_MESSENGER));
 
         runnable.run();
 
         verify(twilioClient, never()).sendMessage(anyString(), anyString());
         verify(messengerClient).sendMessage(MESSAGE);
-        verify(dbService).updateNotification(MESSENGER_PUSHED_NOTIFICATION);
+        verify(dbService).markNotificationsPushed(ImmutableList.of(MESSENGER_NOTIFICATION.id()));
     }
 
     @Test
     public void fromMessengerNotificationNoMessenger() {
-        when(dbService.unpushedNotifications()).thenReturn(ImmutableList.of(MESSENGER_NOTIFICATION));
-        when(dbService.getPerson(DRUNK.id().toHexString())).thenReturn(Optional.of(DRUNK));
+        when(dbService.claimNotifications(eq(OWNER), any(), any(), eq(100))).thenReturn(ImmutableList.of(MESSENGER_NOTIFICATION));
+        when(dbService.getPersons(ImmutableSet.of(DRUNK.id()))).thenReturn(ImmutableList.of(DRUNK));
 
         runnable.run();
 
         verify(twilioClient, never()).sendMessage(anyString(), anyString());
         verify(messengerClient, never()).sendMessage(any());
-        verify(dbService).updateNotification(MESSENGER_PUSHED_NOTIFICATION);
+        verify(dbService).markNotificationsPushed(ImmutableList.of(MESSENGER_NOTIFICATION.id()));
     }
 
     /**
@@ -178,47 +196,178 @@ public class NotificationRunnableTest {
      */
     @Test
     public void noSourceMessenger() {
-        when(dbService.unpushedNotifications()).thenReturn(ImmutableList.of(NOTIFICATION));
-        when(dbService.getPerson(DRUNK.id().toHexString())).thenReturn(Optional.of(DRUNK_WITH_MESSENGER));
+        when(dbService.claimNotifications(eq(OWNER), any(), any(), eq(100))).thenReturn(ImmutableList.of(NOTIFICATION));
+        when(dbService.getPersons(ImmutableSet.of(DRUNK.id()))).thenReturn(ImmutableList.of(DRUNK_WITH_MESSENGER));
 
         runnable.run();
 
         verify(twilioClient, never()).sendMessage(anyString(), anyString());
         verify(messengerClient).sendMessage(MESSAGE);
-        verify(dbService).updateNotification(PUSHED_NOTIFICATION);
+        verify(dbService).markNotificationsPushed(ImmutableList.of(NOTIFICATION.id()));
     }
 
     @Test
     public void personDoesNotExist() {
-        when(dbService.unpushedNotifications()).thenReturn(ImmutableList.of(NOTIFICATION));
-        when(dbService.getPerson(DRUNK.id().toHexString())).thenReturn(Optional.empty());
+        when(dbService.claimNotifications(eq(OWNER), any(), any(), eq(100))).thenReturn(ImmutableList.of(NOTIFICATION));
+        when(dbService.getPersons(ImmutableSet.of(DRUNK.id()))).thenReturn(ImmutableList.of());
 
         runnable.run();
 
         verify(twilioClient, never()).sendMessage(anyString(), anyString());
         verify(messengerClient, never()).sendMessage(any());
-        verify(dbService).updateNotification(PUSHED_NOTIFICATION);
+        verify(dbService).markNotificationsPushed(ImmutableList.of(NOTIFICATION.id()));
     }
 
     @Test
     public void handleThrowNoUpdate() {
-        when(dbService.unpushedNotifications()).thenReturn(ImmutableList.of(NOTIFICATION));
-        // This will throw an NPE that we will handle.
-        when(dbService.getPerson(any())).thenReturn(null);
+        when(dbService.claimNotifications(eq(OWNER), any(), any(), eq(100))).thenReturn(ImmutableList.of(NOTIFICATION));
+        when(dbService.getPersons(ImmutableSet.of(DRUNK.id()))).thenReturn(ImmutableList.of(DRUNK));
+        when(twilioClient.sendMessage(anyString(), anyString())).thenThrow(new RuntimeException());
+
+        runnable.run();
+
+        verify(twilioClient).sendMessage(DRUNK_PHONE_NUMBER, NOTIFICATION.message());
+        verify(dbService, never()).markNotificationsPushed(any());
+    }
+
+    @Test
+    public void handleThrowOthersUpdated() {
+        final Person other = new Person.Builder()
+            .mergeFrom(Persons.BROCK)
+            .messengerId(MESSENGER_ID)
+            .phoneNumber(Optional.empty())
+            .build();
+        final Notification otherNotification = new Notification.Builder()
+            .mergeFrom(NOTIFICATION)
+            .id(new ObjectId())
+            .userId(other.id())
+            .build();
+        when(dbService.claimNotifications(eq(OWNER), any(), any(), eq(100))).thenReturn(ImmutableList.of(NOTIFICATION, otherNotification));
+        when(dbService.getPersons(ImmutableSet.of(DRUNK.id(), other.id())))
+            .thenReturn(ImmutableList.of(DRUNK, other));
+        when(twilioClient.sendMessage(anyString(), anyString())).thenThrow(new RuntimeException());
+
+        runnable.run();
+
+        verify(messengerClient).sendMessage(MESSAGE);
+        verify(dbService).markNotificationsPushed(ImmutableList.of(otherNotification.id()));
+    }
+
+    @Test
+    public void batchedLookup() {
+        final Notification otherNotification = new Notification.Builder()
+            .mergeFrom(NOTIFICATION)
+            .id(new ObjectId())
+            .build();
+        when(dbService.claimNotifications(eq(OWNER), any(), any(), eq(100))).thenReturn(ImmutableList.of(NOTIFICATION, otherNotification));
+        when(dbService.getPersons(ImmutableSet.of(DRUNK.id()))).thenReturn(ImmutableList.of(DRUNK));
 
         runnable.run();
 
-        verify(dbService).getPerson(any());
+        verify(dbService).getPersons(ImmutableSet.of(DRUNK.id()));
+        verify(dbService, never()).getPerson(anyString());
+        verify(twilioClient, times(2)).sendMessage(DRUNK_PHONE_NUMBER, NOTIFICATION.message());
+        verify(dbService).markNotificationsPushed(ImmutableList.of(NOTIFICATION.id(), otherNotification.id()));
+    }
+
+    @Test
+    public void watchDispatchesInserts() {
+        final Notification otherNotification = new Notification.Builder()
+            .mergeFrom(NOTIFICATION)
+            .id(new ObjectId())
+            .build();
+        final List<Notification> inserted = ImmutableList.of(NOTIFICATION, otherNotification);
+        when(dbService.claimNotifications(eq(OWNER), any(), any(), eq(100))).thenReturn(ImmutableList.of());
+        when(dbService.getResumeToken(RESUME_TOKEN)).thenReturn(Optional.of(RESUME));
+        when(dbService.claimNotifications(eq(ImmutableSet.of(NOTIFICATION.id(), otherNotification.id())), eq(OWNER), any(), any()))
+            .thenReturn(inserted);
+        when(dbService.getPersons(ImmutableSet.of(DRUNK.id()))).thenReturn(ImmutableList.of(DRUNK));
+        when(dbService.watchNotifications(eq(Optional.of(RESUME)), any(), eq(100), any())).thenAnswer(invocation -> {
+            final BiConsumer<List<Notification>, String> listener = invocation.getArgument(3);
+            listener.accept(inserted, NEXT_RESUME);
+            return false;
+        });
+
+        final boolean watched = runnable.watchOnce();
+
+        assertThat(watched).isFalse();
+        verify(twilioClient, times(2)).sendMessage(DRUNK_PHONE_NUMBER, NOTIFICATION.message());
+        verify(dbService).markNotificationsPushed(ImmutableList.of(NOTIFICATION.id(), otherNotification.id()));
+        verify(dbService).updateResumeToken(RESUME_TOKEN, NEXT_RESUME);
+    }
+
+    @Test
+    public void watchCatchesUpOnceWatching() {
+        when(dbService.claimNotifications(eq(OWNER), any(), any(), eq(100))).thenReturn(ImmutableList.of());
+        when(dbService.getResumeToken(RESUME_TOKEN)).thenReturn(Optional.empty());
+        when(dbService.watchNotifications(eq(Optional.empty()), any(), eq(100), any())).thenAnswer(invocation -> {
+            // Nothing is caught up until the stream is open.
+            verify(dbService, never()).claimNotifications(eq(OWNER), any(), any(), eq(100));
+            final Runnable onWatching = invocation.getArgument(1);
+            onWatching.run();
+            return false;
+        });
+
+        runnable.watchOnce();
+
+        verify(dbService).claimNotifications(eq(OWNER), any(), any(), eq(100));
+    }
+
+    @Test
+    public void watchSkipsAlreadyClaimed() {
+        when(dbService.claimNotifications(eq(OWNER), any(), any(), eq(100))).thenReturn(ImmutableList.of());
+        when(dbService.getResumeToken(RESUME_TOKEN)).thenReturn(Optional.empty());
+        when(dbService.claimNotifications(eq(ImmutableSet.of(NOTIFICATION.id())), eq(OWNER), any(), any()))
+            .thenReturn(ImmutableList.of());
+        when(dbService.watchNotifications(eq(Optional.empty()), any(), eq(100), any())).thenAnswer(invocation -> {
+            final BiConsumer<List<Notification>, String> listener = invocation.getArgument(3);
+            listener.accept(ImmutableList.of(NOTIFICATION), NEXT_RESUME);
+            return true;
+        });
+
+        final boolean watched = runnable.watchOnce();
+
+        assertThat(watched).isTrue();
         verify(twilioClient, never()).sendMessage(anyString(), anyString());
-        verify(messengerClient, never()).sendMessage(any());
-        verify(dbService, never()).updateNotification(PUSHED_NOTIFICATION);
+        verify(dbService, never()).markNotificationsPushed(any());
+        verify(dbService).updateResumeToken(RESUME_TOKEN, NEXT_RESUME);
     }
 
     @Test
-    public void handleSubmit() {
+    public void handleSubmitStream() {
+        final ExecutorService watcher = mock(ExecutorService.class);
+        when(executorServiceFactory.createFixedThreadPool(1, STREAM_KEY)).thenReturn(watcher);
+        runnable.setDispatch("stream");
+
         runnable.submit();
 
+        verify(watcher).submit(any(Runnable.class));
+        verify(executor).scheduleAtFixedRate(runnable, 300, 300, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void streamReclaimsExpiredLeases() {
+        final ExecutorService watcher = mock(ExecutorService.class);
+        when(executorServiceFactory.createFixedThreadPool(1, STREAM_KEY)).thenReturn(watcher);
+        runnable.setDispatch("stream");
+        runnable.submit();
+        final ArgumentCaptor<Runnable> catchUp = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).scheduleAtFixedRate(catchUp.capture(), eq(300L), eq(300L), eq(TimeUnit.SECONDS));
+        // The notification was claimed before but never sent, and its lease has since expired.
+        when(dbService.claimNotifications(eq(OWNER), any(), any(), eq(100))).thenReturn(ImmutableList.of(SMS_NOTIFICATION));
+        when(dbService.getPersons(ImmutableSet.of(DRUNK.id()))).thenReturn(ImmutableList.of(DRUNK));
+
+        catchUp.getValue().run();
+
+        verify(twilioClient).sendMessage(DRUNK_PHONE_NUMBER, NOTIFICATION.message());
+        verify(dbService).markNotificationsPushed(ImmutableList.of(SMS_NOTIFICATION.id()));
+    }
+
+    @Test
+    public void handleSubmit() {
         verify(executorServiceFactory).createSingleThreadScheduledExecutor(KEY);
         verify(executor).scheduleAtFixedRate(runnable, 0, 5, TimeUnit.SECONDS);
+        verify(executorServiceFactory).createFixedThreadPool(4, MESSENGER_KEY);
+        verify(executorServiceFactory).createFixedThreadPool(2, SMS_KEY);
     }
 }
\ No newline at end of file